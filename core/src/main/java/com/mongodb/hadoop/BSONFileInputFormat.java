@@ -17,6 +17,7 @@ package com.mongodb.hadoop;
 
 import com.mongodb.hadoop.input.BSONFileRecordReader;
 import com.mongodb.hadoop.input.BSONFileSplit;
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.splitter.BSONSplitter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -72,9 +73,16 @@ public class BSONFileInputFormat extends FileInputFormat {
             return new BSONFileRecordReader();
         }
 
+        FileSplit fileSplit = (FileSplit) split;
+        if (BSONBlockFile.isBlockFile(
+          fileSplit.getPath().getFileSystem(context.getConfiguration()),
+          fileSplit.getPath())) {
+            // The reader finds the blocks within the split from the index.
+            return new BSONFileRecordReader();
+        }
+
         // Split was not created by BSONSplitter, and we need to find the
         // first document to begin iterating.
-        FileSplit fileSplit = (FileSplit) split;
         BSONSplitter splitter = new BSONSplitter();
         splitter.setConf(context.getConfiguration());
         splitter.setInputPath(fileSplit.getPath());
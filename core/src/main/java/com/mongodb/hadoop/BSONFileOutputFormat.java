@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.output.BSONFileRecordWriter;
 import com.mongodb.hadoop.splitter.BSONSplitter;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -34,6 +35,13 @@ public class BSONFileOutputFormat<K, V> extends FileOutputFormat<K, V> {
 
     @Override
     public RecordWriter<K, V> getRecordWriter(final TaskAttemptContext context) throws IOException {
+        if (MongoConfigUtil.isBSONOutputBlockCompressed(context.getConfiguration())) {
+            Path outPath = getDefaultWorkFile(context, BSONBlockFile.EXTENSION);
+            LOG.info("block-compressed output going into " + outPath);
+            return new BSONFileRecordWriter<K, V>(
+              BSONBlockFile.createWriter(outPath, context.getConfiguration()));
+        }
+
         // Open data output stream
 
         Path outPath = getDefaultWorkFile(context, ".bson");
@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.input;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.hadoop.util.MongoPathRetriever;
 import org.apache.commons.logging.Log;
@@ -83,6 +84,9 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
     private BSONDecoder decoder;
     private Configuration configuration;
     private Decompressor decompressor;
+    private BSONBlockFile.Reader blockReader;
+    private int nextBlock;
+    private int endBlock;
 
     public BSONFileRecordReader() {
         this(BSON_RR_POSITION_NOT_GIVEN);
@@ -104,14 +108,15 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
         CompressionCodec codec = new CompressionCodecFactory(configuration)
           .getCodec(fileSplit.getPath());
         inRaw = fs.open(file, 16 * 1024 * 1024);
-        inRaw.seek(
-          startingPosition == BSON_RR_POSITION_NOT_GIVEN
-            ? fileSplit.getStart() : startingPosition);
-        if (codec != null) {
-            decompressor = CodecPool.getDecompressor(codec);
-            in = codec.createInputStream(inRaw, decompressor);
+        if (BSONBlockFile.isBlockFile(fs, file)) {
+            // Read the blocks that start within the split.
+            blockReader = new BSONBlockFile.Reader(
+              inRaw, fs.getFileStatus(file).getLen(), configuration);
+            nextBlock = blockReader.findBlock(fileSplit.getStart());
+            endBlock = blockReader.findBlock(
+              fileSplit.getStart() + fileSplit.getLength());
         } else {
-            in = inRaw;
+            initStream(codec);
         }
 
         if (MongoConfigUtil.getLazyBSON(configuration)) {
@@ -124,6 +129,18 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
 
     }
 
+    private void initStream(final CompressionCodec codec) throws IOException {
+        inRaw.seek(
+          startingPosition == BSON_RR_POSITION_NOT_GIVEN
+            ? fileSplit.getStart() : startingPosition);
+        if (codec != null) {
+            decompressor = CodecPool.getDecompressor(codec);
+            in = codec.createInputStream(inRaw, decompressor);
+        } else {
+            in = inRaw;
+        }
+    }
+
     @Override
     public void initialize(final InputSplit inputSplit, final TaskAttemptContext context) throws IOException, InterruptedException {
         init(inputSplit, context.getConfiguration());
@@ -132,8 +149,17 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
     @Override
     public boolean nextKeyValue() throws IOException, InterruptedException {
         try {
-            // Cannot rely on getPos() from a CompressionInputStream.
-            if (null == decompressor) {
+            if (blockReader != null) {
+                if (!nextBlockDocument()) {
+                    try {
+                        close();
+                    } catch (final Exception e) {
+                        LOG.warn(e.getMessage(), e);
+                    }
+                    return false;
+                }
+            } else if (null == decompressor) {
+                // Cannot rely on getPos() from a CompressionInputStream.
                 long pos = ((Seekable) in).getPos();
                 if (pos >= fileSplit.getStart() + fileSplit.getLength()) {
                     try {
@@ -181,6 +207,21 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
         }
     }
 
+    /**
+     * Move to the next block of a block-compressed BSON file if the current
+     * one has been read.
+     * @return {@code true} if there is another document in the split
+     */
+    private boolean nextBlockDocument() throws IOException {
+        while (null == in || 0 == in.available()) {
+            if (nextBlock >= endBlock) {
+                return false;
+            }
+            in = blockReader.readBlock(nextBlock++);
+        }
+        return true;
+    }
+
     @Override
     public Object getCurrentKey() throws IOException, InterruptedException {
         Object key = null;
@@ -220,6 +261,9 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
         if (decompressor != null) {
             CodecPool.returnDecompressor(decompressor);
         }
+        if (blockReader != null) {
+            blockReader.close();
+        }
     }
 
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.hadoop.util.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads documents from a cursor on a background thread into a bounded queue,
+ * so that the server can be fetching the next batch while the mapper is
+ * still working on the previous one.
+ *
+ * Errors raised by the cursor are thrown from {@link #hasNext()} once the
+ * documents read before them have been consumed. The cursor itself must only
+ * be closed after this has been {@link #close() closed}, which waits for the
+ * background thread to stop using it.
+ */
+public class DocumentPrefetcher implements Iterator<DBObject>, Closeable {
+
+    private static final ThreadFactory THREAD_FACTORY =
+      new DaemonThreadFactory("mongo-prefetch");
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+    private volatile boolean closed;
+    private Object next;
+
+    /**
+     * Start reading documents ahead.
+     * @param source the documents to read, usually a DBCursor
+     * @param capacity the number of documents to hold ahead of the consumer
+     */
+    public DocumentPrefetcher(
+      final Iterator<DBObject> source, final int capacity) {
+        queue = new ArrayBlockingQueue<Object>(Math.max(1, capacity));
+        thread = THREAD_FACTORY.newThread(new Runnable() {
+            @Override
+            public void run() {
+                fill(source);
+            }
+        });
+        thread.start();
+    }
+
+    private void fill(final Iterator<DBObject> source) {
+        try {
+            Object last = END;
+            try {
+                while (!closed && source.hasNext()) {
+                    queue.put(source.next());
+                }
+            } catch (Throwable t) {
+                // Errors too, or the consumer would wait forever for END.
+                last = new Failure(t);
+            }
+            if (!closed) {
+                queue.put(last);
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting for the consumer.
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null == next) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MongoInterruptedException(
+                  "Interrupted while waiting for documents", e);
+            }
+        }
+        if (next instanceof Failure) {
+            Throwable cause = ((Failure) next).cause;
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MongoException("Could not read ahead", cause);
+        }
+        return next != END;
+    }
+
+    @Override
+    public DBObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DBObject document = (DBObject) next;
+        next = null;
+        return document;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading ahead and discard the documents that were not consumed.
+     * This returns once the background thread no longer uses the cursor.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        queue.clear();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // The cursor must not be closed under the thread.
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        Failure(final Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the indexes of collections within the JVM, so that finding the
+ * index to hint for the min/max bounds of a split does not take a round trip
+ * to the server for every split.
+ */
+public final class MongoIndexCache {
+
+    // How long the indexes of a collection are trusted before being read
+    // again.
+    private static final long EXPIRY_MILLIS = 10 * 60 * 1000;
+
+    private static final ConcurrentMap<String, CachedIndexes> INDEXES =
+      new ConcurrentHashMap<String, CachedIndexes>();
+
+    private MongoIndexCache() {
+    }
+
+    /**
+     * Find the name of the index whose key consists of exactly the given
+     * fields. If no cached index matches, the indexes are read again in case
+     * the index was created since they were cached.
+     * @param collection the collection
+     * @param fields the fields of the index key, in any order
+     * @return the name of the index, or {@code null} if there is none
+     */
+    public static String findIndexName(
+      final DBCollection collection, final Set<String> fields) {
+        String namespace = collection.getFullName();
+        CachedIndexes cached = INDEXES.get(namespace);
+        if (cached != null && !cached.isExpired()) {
+            String name = cached.findIndexName(fields);
+            if (name != null) {
+                return name;
+            }
+        }
+        cached = new CachedIndexes(collection.getIndexInfo());
+        INDEXES.put(namespace, cached);
+        return cached.findIndexName(fields);
+    }
+
+    /**
+     * Forget the indexes of all collections.
+     */
+    public static void clear() {
+        INDEXES.clear();
+    }
+
+    private static class CachedIndexes {
+        private final List<DBObject> indexes;
+        private final long created = System.currentTimeMillis();
+
+        CachedIndexes(final List<DBObject> indexes) {
+            this.indexes = indexes;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - created > EXPIRY_MILLIS;
+        }
+
+        String findIndexName(final Set<String> fields) {
+            for (DBObject index : indexes) {
+                Set<String> indexFields = ((DBObject) index.get("key")).keySet();
+                if (indexFields.size() == fields.size()
+                  && indexFields.containsAll(fields)) {
+                    return (String) index.get("name");
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+/**
+ * Hadoop counters describing the documents read from MongoDB.
+ */
+public enum MongoInputCounter {
+    /** The number of documents read. */
+    DOCUMENTS_READ,
+    /**
+     * The BSON size of the documents read, in bytes. Documents read through
+     * an aggregation pipeline are not counted.
+     */
+    BYTES_READ
+}
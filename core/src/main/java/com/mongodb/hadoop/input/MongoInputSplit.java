@@ -16,11 +16,15 @@
 
 package com.mongodb.hadoop.input;
 
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.Cursor;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.DBRef;
 import com.mongodb.MongoClientURI;
 import com.mongodb.MongoException;
 import com.mongodb.hadoop.util.Bits;
@@ -39,14 +43,53 @@ import org.bson.BSONObject;
 import org.bson.BasicBSONCallback;
 import org.bson.BasicBSONDecoder;
 import org.bson.BasicBSONEncoder;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 public class MongoInputSplit extends InputSplit implements Writable, org.apache.hadoop.mapred.InputSplit {
     private static final Log LOG = LogFactory.getLog(MongoInputSplit.class);
+
+    // The BSON types in each type bracket, in the order that an index sorts
+    // them. Null and missing fields are matched with {field: null} instead.
+    private static final int[][] TYPE_BRACKETS = {
+        {-1},               // MinKey
+        {},                 // null
+        {1, 16, 18, 19},    // numbers
+        {2, 14},            // strings and symbols
+        {3},                // objects
+        {4},                // arrays
+        {5},                // binary data
+        {7},                // ObjectId
+        {8},                // booleans
+        {9},                // dates
+        {17},               // timestamps
+        {11},               // regular expressions
+        {12},               // DBPointer
+        {13},               // JavaScript
+        {15},               // JavaScript with scope
+        {127}               // MaxKey
+    };
+    private static final int MIN_KEY_BRACKET = 0;
+    private static final int NULL_BRACKET = 1;
+    private static final int MAX_KEY_BRACKET = TYPE_BRACKETS.length - 1;
+    private static final int UNKNOWN_BRACKET = -1;
     //CHECKSTYLE:OFF
     protected MongoClientURI inputURI;
     protected MongoClientURI authURI;
@@ -59,6 +102,15 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
     protected Integer limit;
     protected Integer skip;
     protected boolean notimeout = false;
+    protected long estimatedCount = -1;
+    protected long estimatedSize = -1;
+    protected String hint;
+    protected int batchSize;
+    protected int prefetchBatches;
+    protected int resumeAttempts = 3;
+    protected long resumeBackoff = 1000;
+    protected String readHost;
+    protected List<DBObject> pipeline;
     protected transient DBCursor cursor;
 
     protected transient BSONEncoder _bsonEncoder = new BasicBSONEncoder();
@@ -80,6 +132,15 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         setSort(other.getSort());
         setLimit(other.getLimit());
         setSkip(other.getSkip());
+        setEstimatedCount(other.getEstimatedCount());
+        setEstimatedSize(other.getEstimatedSize());
+        setHint(other.getHint());
+        setBatchSize(other.getBatchSize());
+        setPrefetchBatches(other.getPrefetchBatches());
+        setResumeAttempts(other.getResumeAttempts());
+        setResumeBackoff(other.getResumeBackoff());
+        setReadHost(other.getReadHost());
+        setPipeline(other.getPipeline());
     }
 
     public MongoInputSplit(final Configuration conf) {
@@ -94,6 +155,11 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         setSort(MongoConfigUtil.getSort(conf));
         setLimit(MongoConfigUtil.getLimit(conf));
         setSkip(MongoConfigUtil.getSkip(conf));
+        setBatchSize(MongoConfigUtil.getInputBatchSize(conf));
+        setPrefetchBatches(MongoConfigUtil.getPrefetchBatches(conf));
+        setResumeAttempts(MongoConfigUtil.getResumeMaxAttempts(conf));
+        setResumeBackoff(MongoConfigUtil.getResumeBackoff(conf));
+        setPipeline(MongoConfigUtil.getPipeline(conf));
     }
 
     public void setInputURI(final MongoClientURI inputURI) {
@@ -118,15 +184,86 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
 
     @Override
     public String[] getLocations() {
+        if (this.readHost != null) {
+            return new String[]{this.readHost};
+        }
         if (this.inputURI == null) {
             return null;
         }
         return this.inputURI.getHosts().toArray(new String[inputURI.getHosts().size()]);
     }
 
+    /**
+     * Get the estimated size of the split in bytes, so that Hadoop can tell
+     * splits apart by size.
+     * @return the estimated size, or {@code Long.MAX_VALUE} if it is unknown
+     */
     @Override
     public long getLength() {
-        return Long.MAX_VALUE;
+        return estimatedSize >= 0 ? estimatedSize : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the estimated number of documents in the split, or -1 if it is
+     *         unknown
+     */
+    public long getEstimatedCount() {
+        return estimatedCount;
+    }
+
+    /**
+     * Set the estimated number of documents in the split, which is used to
+     * report progress while reading it.
+     * @param estimatedCount the number of documents, or -1 if unknown
+     */
+    public void setEstimatedCount(final long estimatedCount) {
+        this.estimatedCount = estimatedCount;
+    }
+
+    /**
+     * @return the estimated size of the split in bytes, or -1 if it is
+     *         unknown
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Set the estimated size of the split in bytes.
+     * @param estimatedSize the size of the split, or -1 if unknown
+     */
+    public void setEstimatedSize(final long estimatedSize) {
+        this.estimatedSize = estimatedSize;
+    }
+
+    /**
+     * @return the name of the index to use for the min/max bounds of this
+     *         split, or {@code null} if it has not been resolved yet
+     */
+    public String getHint() {
+        return hint;
+    }
+
+    /**
+     * Set the name of the index to use for the min/max bounds of this split,
+     * so that the index does not have to be looked up when the split is read.
+     * @param hint the name of the index, or {@code null} to look it up
+     */
+    public void setHint(final String hint) {
+        this.hint = hint;
+    }
+
+    /**
+     * @return the fields of the min or max bound of this split, or
+     *         {@code null} if the split has no bounds
+     */
+    public Set<String> getBoundFields() {
+        if (this.min != null && !this.min.keySet().isEmpty()) {
+            return this.min.keySet();
+        } else if (this.max != null && !this.max.keySet().isEmpty()) {
+            return this.max.keySet();
+        }
+        return null;
     }
 
     public String getKeyField() {
@@ -201,6 +338,99 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         this.skip = skip;
     }
 
+    /**
+     * @return the number of documents in each batch of the cursor, or
+     *         {@code 0} to leave it to the server
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of batches to read ahead of the record reader, or
+     *         {@code 0} not to read ahead
+     */
+    public int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    public void setPrefetchBatches(final int prefetchBatches) {
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    /**
+     * @return how many times in a row the cursor may be reopened after a
+     *         retryable error
+     */
+    public int getResumeAttempts() {
+        return resumeAttempts;
+    }
+
+    public void setResumeAttempts(final int resumeAttempts) {
+        this.resumeAttempts = resumeAttempts;
+    }
+
+    /**
+     * @return how long to wait, in milliseconds, before the cursor is first
+     *         reopened after a retryable error
+     */
+    public long getResumeBackoff() {
+        return resumeBackoff;
+    }
+
+    public void setResumeBackoff(final long resumeBackoff) {
+        this.resumeBackoff = resumeBackoff;
+    }
+
+    /**
+     * @return the member of the replica set to read from, as
+     *         {@code host:port}, or {@code null} to read from the members
+     *         chosen by the input URI
+     */
+    public String getReadHost() {
+        return readHost;
+    }
+
+    /**
+     * Set the member of the replica set to read from. The split connects to
+     * it directly, and reports it as its only location.
+     * @param readHost the member, as {@code host:port}, or {@code null} to
+     *                 read from the members chosen by the input URI
+     */
+    public void setReadHost(final String readHost) {
+        this.readHost = readHost;
+    }
+
+    /**
+     * @return the stages of the aggregation pipeline that this split runs on
+     *         its documents, or {@code null} if it is read with a query
+     */
+    public List<DBObject> getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Set the aggregation pipeline that this split runs on its documents.
+     * @param pipeline the stages of the pipeline, or {@code null} to read the
+     *                 documents with a query
+     */
+    public void setPipeline(final List<DBObject> pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @return the number of documents to read ahead of the record reader
+     */
+    public int getPrefetchCapacity() {
+        int batch = batchSize > 0
+          ? batchSize : MongoConfigUtil.DEFAULT_INPUT_PREFETCH_BATCH_SIZE;
+        return (int) Math.min(Integer.MAX_VALUE, (long) batch * prefetchBatches);
+    }
+
     @Override
     public void write(final DataOutput out) throws IOException {
         BSONObject spec = BasicDBObjectBuilder.start()
@@ -215,6 +445,15 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
           .add("notimeout", getNoTimeout())
           .add("limit", limit)
           .add("skip", skip)
+          .add("estimatedCount", estimatedCount)
+          .add("estimatedSize", estimatedSize)
+          .add("hint", hint)
+          .add("batchSize", batchSize)
+          .add("prefetchBatches", prefetchBatches)
+          .add("resumeAttempts", resumeAttempts)
+          .add("resumeBackoff", resumeBackoff)
+          .add("readHost", readHost)
+          .add("pipeline", pipeline)
           .get();
         byte[] buf = _bsonEncoder.encode(spec);
         out.write(buf);
@@ -261,60 +500,339 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         setSkip((Integer) spec.get("skip"));
 
         setNoTimeout((Boolean) spec.get("notimeout"));
+
+        Number estimate = (Number) spec.get("estimatedCount");
+        setEstimatedCount(estimate != null ? estimate.longValue() : -1);
+        estimate = (Number) spec.get("estimatedSize");
+        setEstimatedSize(estimate != null ? estimate.longValue() : -1);
+
+        setHint((String) spec.get("hint"));
+
+        Number batches = (Number) spec.get("batchSize");
+        setBatchSize(batches != null ? batches.intValue() : 0);
+        batches = (Number) spec.get("prefetchBatches");
+        setPrefetchBatches(batches != null ? batches.intValue() : 0);
+        Number resume = (Number) spec.get("resumeAttempts");
+        setResumeAttempts(resume != null ? resume.intValue() : 3);
+        resume = (Number) spec.get("resumeBackoff");
+        setResumeBackoff(resume != null ? resume.longValue() : 1000);
+        setReadHost((String) spec.get("readHost"));
+        List<?> stages = (List<?>) spec.get("pipeline");
+        if (stages != null) {
+            List<DBObject> temps = new ArrayList<DBObject>(stages.size());
+            for (Object stage : stages) {
+                temps.add(new BasicDBObject(((BSONObject) stage).toMap()));
+            }
+            setPipeline(temps);
+        } else {
+            setPipeline(null);
+        }
     }
 
     public DBCursor getCursor() {
         if (this.cursor == null) {
-            DBCollection coll;
-            if (this.authURI != null) {
-                coll = MongoConfigUtil.getCollectionWithAuth(this.inputURI, this.authURI);
-            } else {
-                coll = MongoConfigUtil.getCollection(this.inputURI);
-            }
-
-            this.cursor = coll.find(this.query, this.fields).sort(this.sort);
+            this.cursor = createCursor(getCollection(), this.fields);
             if (this.notimeout) {
                 this.cursor.noCursorTimeout(true);
             }
-            DBObject bound = null;
-            if (this.min != null && !this.min.keySet().isEmpty())
-                bound = this.min;
-            else if (this.max != null && !this.max.keySet().isEmpty())
-                bound = this.max;
-            if (bound != null) {
-                Set<String> boundFields = bound.keySet();
-
-                String indexName = null;
-                for (DBObject index : coll.getIndexInfo()) {
-                    //try {
-                        DBObject key = (DBObject) index.get("key");
-                        Set<String> indexFields = key.keySet();
-                        if (indexFields.size() == boundFields.size() && indexFields.containsAll(boundFields)) {
-                            indexName = (String) index.get("name");
-                            break;
-                        }
-                    //} catch (Exception e) {}
-                }
-                if (indexName != null) {
-                    this.cursor.hint(indexName);
-                } else {
-                    throw new MongoException("Failed to detect a suitable hint index for cursor min/max");
-                }
+            if (this.batchSize > 0) {
+                this.cursor.batchSize(this.batchSize);
+            }
+        }
+        return this.cursor;
+    }
+
+    /**
+     * Determine whether this split contains no documents, by asking for the
+     * {@code _id} of its first document only. This does not open the cursor
+     * returned by {@link #getCursor()}.
+     * @return {@code true} if no documents fall within this split
+     */
+    public boolean isEmpty() {
+        DBCollection coll = getCollection();
+        DBCursor probe = null;
+        try {
+            probe = createCursor(coll, new BasicDBObject("_id", 1))
+              .limit(1).batchSize(1);
+            return !probe.hasNext();
+        } finally {
+            if (probe != null) {
+                probe.close();
+            }
+            MongoConfigUtil.close(coll.getDB().getMongoClient());
+        }
+    }
+
+    /**
+     * Get the stages that this split runs to read its documents with an
+     * aggregation pipeline: a {@code $match} for its query and min/max
+     * bounds, then its sort, skip, limit and projection, and finally its own
+     * pipeline. The bounds become a range on their field, like
+     * {@link MongoConfigUtil#SPLITS_USE_RANGEQUERY}, so they must pass
+     * {@link #checkAggregationBounds()}. A range with an open end, or with
+     * MinKey or MaxKey as an end, also matches the values of the types that
+     * sort beyond its other end.
+     * @return the stages
+     * @throws MongoException if the bounds of the split cannot be turned into
+     *         a range
+     */
+    public List<DBObject> getAggregationPipeline() {
+        List<DBObject> stages = new ArrayList<DBObject>();
+        stages.add(new BasicDBObject("$match", getBoundedQuery()));
+        if (this.sort != null && !this.sort.keySet().isEmpty()) {
+            stages.add(new BasicDBObject("$sort", this.sort));
+        }
+        if (this.skip != null && this.skip > 0) {
+            stages.add(new BasicDBObject("$skip", this.skip));
+        }
+        if (this.limit != null && this.limit > 0) {
+            stages.add(new BasicDBObject("$limit", this.limit));
+        }
+        if (this.fields != null && !this.fields.keySet().isEmpty()) {
+            stages.add(new BasicDBObject("$project", this.fields));
+        }
+        if (this.pipeline != null) {
+            stages.addAll(this.pipeline);
+        }
+        return stages;
+    }
+
+    private DBObject getBoundedQuery() {
+        BasicDBObject match = new BasicDBObject();
+        if (this.query != null) {
+            match.putAll(this.query);
+        }
+        String field = checkAggregationBounds();
+        if (null == field) {
+            return match;
+        }
+        DBObject bounds = getRangeCondition(field);
+        if (match.keySet().isEmpty()) {
+            return bounds;
+        }
+        if (!match.containsField(field) && !bounds.containsField("$or")) {
+            match.putAll(bounds);
+            return match;
+        }
+        // Keep the condition of the query on the same field.
+        BasicDBList conditions = new BasicDBList();
+        conditions.add(match);
+        conditions.add(bounds);
+        return new BasicDBObject("$and", conditions);
+    }
+
+    /**
+     * Get a condition that matches the same values of a field as the min/max
+     * bounds of this split, which have passed
+     * {@link #checkAggregationBounds()}.
+     * @param field the field of the bounds
+     * @return the condition
+     */
+    private DBObject getRangeCondition(final String field) {
+        boolean hasMin = this.min != null && this.min.containsField(field);
+        boolean hasMax = this.max != null && this.max.containsField(field);
+        BasicDBObject range = new BasicDBObject();
+        if (hasMin) {
+            range.put("$gte", this.min.get(field));
+        }
+        if (hasMax) {
+            range.put("$lt", this.max.get(field));
+        }
+        BasicDBObject bounded = new BasicDBObject(field, range);
+
+        // The range only matches values of the type of its typed end, but an
+        // index also holds the types that sort between that end and an open
+        // one. MinKey and MaxKey values are read by a find from an open min
+        // bound or up to an open max bound, but not up to a MaxKey bound.
+        int lower = getLowerBracket(field);
+        int upper = getUpperBracket(field);
+        int from;
+        int to;
+        if (lower == MIN_KEY_BRACKET && upper != MAX_KEY_BRACKET) {
+            from = MIN_KEY_BRACKET;
+            to = upper;
+        } else if (upper == MAX_KEY_BRACKET && lower != MIN_KEY_BRACKET) {
+            from = lower + 1;
+            to = hasMax ? MAX_KEY_BRACKET : MAX_KEY_BRACKET + 1;
+        } else {
+            return bounded;
+        }
+        List<Integer> types = new ArrayList<Integer>();
+        boolean nulls = false;
+        for (int bracket = from; bracket < to; bracket++) {
+            if (bracket == NULL_BRACKET) {
+                nulls = true;
+            }
+            for (int type : TYPE_BRACKETS[bracket]) {
+                types.add(type);
             }
-            if (this.min != null) {
-                this.cursor.min(this.min);
+        }
+        BasicDBList branches = new BasicDBList();
+        branches.add(bounded);
+        if (!types.isEmpty()) {
+            branches.add(new BasicDBObject(
+              field, new BasicDBObject("$type", types)));
+        }
+        if (nulls) {
+            branches.add(new BasicDBObject(field, null));
+        }
+        return branches.size() > 1
+               ? new BasicDBObject("$or", branches) : bounded;
+    }
+
+    /**
+     * Check that the min/max bounds of this split can be turned into the
+     * range of {@link #getAggregationPipeline()}. A find follows the order of
+     * the index between its bounds, but a range only matches values of the
+     * same type as its ends, so the bounds must be on a single field and both
+     * ends must have the same type, unless one of them is open, MinKey or
+     * MaxKey. The types beyond a typed end that sort before MaxKey or after
+     * MinKey are matched by their BSON type instead.
+     * @return the field of the bounds, or {@code null} if there are none
+     * @throws MongoException if the bounds are on more than one field, or
+     *         their ends have different types
+     */
+    public String checkAggregationBounds() {
+        Set<String> boundFields = getBoundFields();
+        if (null == boundFields) {
+            return null;
+        }
+        if (boundFields.size() != 1) {
+            throw new MongoException(
+              "Cannot run an aggregation pipeline on a split with compound bounds: min="
+                + this.min + ", max=" + this.max);
+        }
+        String field = boundFields.iterator().next();
+        int lower = getLowerBracket(field);
+        int upper = getUpperBracket(field);
+        if (lower == UNKNOWN_BRACKET || upper == UNKNOWN_BRACKET) {
+            // Only a range between two values of the same class can be
+            // matched without knowing where their type sorts.
+            if (lower != upper || !this.min.get(field).getClass().equals(
+              this.max.get(field).getClass())) {
+                throw new MongoException(
+                  "Cannot run an aggregation pipeline on a split whose bounds have"
+                    + " an unknown type: min=" + this.min + ", max=" + this.max);
             }
-            if (this.max != null) {
-                this.cursor.max(this.max);
+        } else if (lower != upper && lower != MIN_KEY_BRACKET
+          && upper != MAX_KEY_BRACKET) {
+            throw new MongoException(
+              "Cannot run an aggregation pipeline on a split whose bounds have"
+                + " different types: min=" + this.min + ", max=" + this.max);
+        }
+        return field;
+    }
+
+    private int getLowerBracket(final String field) {
+        return this.min != null && this.min.containsField(field)
+               ? typeBracket(this.min.get(field)) : MIN_KEY_BRACKET;
+    }
+
+    private int getUpperBracket(final String field) {
+        return this.max != null && this.max.containsField(field)
+               ? typeBracket(this.max.get(field)) : MAX_KEY_BRACKET;
+    }
+
+    /**
+     * Get the type bracket of a value, within which a query compares values.
+     * @param value the value
+     * @return the index of the bracket in {@code TYPE_BRACKETS}, or
+     *         {@code UNKNOWN_BRACKET} for values of other classes
+     */
+    private static int typeBracket(final Object value) {
+        if (value instanceof MinKey) {
+            return MIN_KEY_BRACKET;
+        } else if (null == value) {
+            return NULL_BRACKET;
+        } else if (value instanceof Number) {
+            return 2;
+        } else if (value instanceof String || value instanceof Symbol) {
+            return 3;
+        } else if (value instanceof List) {
+            return 5;
+        } else if (value instanceof BSONObject || value instanceof Map
+          || value instanceof DBRef) {
+            return 4;
+        } else if (value instanceof byte[] || value instanceof Binary
+          || value instanceof UUID) {
+            return 6;
+        } else if (value instanceof ObjectId) {
+            return 7;
+        } else if (value instanceof Boolean) {
+            return 8;
+        } else if (value instanceof Date) {
+            return 9;
+        } else if (value instanceof BSONTimestamp) {
+            return 10;
+        } else if (value instanceof Pattern) {
+            return 11;
+        } else if (value instanceof CodeWScope) {
+            return 14;
+        } else if (value instanceof Code) {
+            return 13;
+        } else if (value instanceof MaxKey) {
+            return MAX_KEY_BRACKET;
+        }
+        return UNKNOWN_BRACKET;
+    }
+
+    /**
+     * Run the stages of {@link #getAggregationPipeline()} on a collection.
+     * @param coll the collection, from {@link #getCollection()}
+     * @return the cursor over the results
+     */
+    Cursor aggregate(final DBCollection coll) {
+        AggregationOptions.Builder options =
+          AggregationOptions.builder().allowDiskUse(true);
+        if (this.batchSize > 0) {
+            options.batchSize(this.batchSize);
+        }
+        return coll.aggregate(getAggregationPipeline(), options.build());
+    }
+
+    DBCollection getCollection() {
+        MongoClientURI uri = this.inputURI;
+        MongoClientURI auth = this.authURI;
+        if (this.readHost != null) {
+            uri = MongoConfigUtil.getDirectURI(uri, this.readHost);
+            if (auth != null) {
+                auth = MongoConfigUtil.getDirectURI(auth, this.readHost);
             }
-            if (skip != null) {
-                cursor = cursor.skip(skip);
+        }
+        if (auth != null) {
+            return MongoConfigUtil.getCollectionWithAuth(uri, auth);
+        }
+        return MongoConfigUtil.getCollection(uri);
+    }
+
+    private DBCursor createCursor(
+      final DBCollection coll, final DBObject projection) {
+        DBCursor cursor = coll.find(this.query, projection).sort(this.sort);
+        Set<String> boundFields = getBoundFields();
+        if (boundFields != null) {
+            String indexName = this.hint;
+            if (null == indexName) {
+                indexName = MongoIndexCache.findIndexName(coll, boundFields);
             }
-            if (limit != null) {
-                cursor = cursor.limit(limit);
+            if (indexName != null) {
+                cursor.hint(indexName);
+            } else {
+                throw new MongoException("Failed to detect a suitable hint index for cursor min/max");
             }
         }
-        return this.cursor;
+        if (this.min != null) {
+            cursor.min(this.min);
+        }
+        if (this.max != null) {
+            cursor.max(this.max);
+        }
+        if (skip != null) {
+            cursor = cursor.skip(skip);
+        }
+        if (limit != null) {
+            cursor = cursor.limit(limit);
+        }
+        return cursor;
     }
 
     @Override
@@ -334,6 +852,7 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
           + ", fields=" + this.fields
           + ", limit=" + this.limit
           + ", skip=" + this.skip
+          + (this.pipeline != null ? ", pipeline=" + this.pipeline : "")
           + ", notimeout=" + this.notimeout + '}';
     }
 
@@ -348,6 +867,7 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         result = 31 * result + (this.notimeout ? 1 : 0);
         result = 31 * result + (this.limit != null ? this.limit.hashCode() : 0);
         result = 31 * result + (this.skip != null ? this.skip.hashCode() : 0);
+        result = 31 * result + (this.pipeline != null ? this.pipeline.hashCode() : 0);
         return result;
     }
 
@@ -390,6 +910,9 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
           || !skip.equals(that.getSkip())) {
             return false;
         }
+        if (pipeline != null ? !pipeline.equals(that.getPipeline()) : that.getPipeline() != null) {
+            return false;
+        }
         return true;
     }
 
@@ -18,18 +18,22 @@ package com.mongodb.hadoop.input;
 
 // Mongo
 
-import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.MongoException;
-import com.mongodb.hadoop.util.MongoConfigUtil;
+import com.mongodb.hadoop.util.CompatUtils;
 import com.mongodb.hadoop.util.MongoPathRetriever;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.bson.BSONObject;
 
+import java.io.IOException;
+import java.util.Iterator;
+
 // Hadoop
 // Commons
 
@@ -37,14 +41,23 @@ public class MongoRecordReader extends RecordReader<Object, BSONObject> {
 
     public MongoRecordReader(final MongoInputSplit split) {
         this.split = split;
-        cursor = split.getCursor();
+        cursor = new ResumableCursor(split);
+        if (split.getPrefetchBatches() > 0) {
+            prefetcher = new DocumentPrefetcher(
+              cursor, split.getPrefetchCapacity());
+            documents = prefetcher;
+        } else {
+            documents = cursor;
+        }
     }
 
     @Override
     public void close() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
         if (cursor != null) {
             cursor.close();
-            MongoConfigUtil.close(cursor.getCollection().getDB().getMongoClient());
         }
     }
 
@@ -59,44 +72,73 @@ public class MongoRecordReader extends RecordReader<Object, BSONObject> {
         return current;
     }
 
+    /**
+     * Report progress as the fraction of the estimated number of documents in
+     * the split that have been read. Progress stays just short of complete
+     * until the cursor is exhausted, in case the estimate is too low.
+     * @return the progress of the reader
+     */
     public float getProgress() {
-        try {
-            return cursor.hasNext() ? 0.0f : 1.0f;
-        } catch (MongoException e) {
+        if (finished) {
             return 1.0f;
         }
+        long total = split.getEstimatedCount();
+        if (total <= 0) {
+            return 0.0f;
+        }
+        return Math.min(MAX_UNFINISHED_PROGRESS, (float) seen / total);
     }
 
     @Override
     public void initialize(final InputSplit split, final TaskAttemptContext context) {
-        total = 1.0f;
+        CompatUtils.TaskAttemptContext compatContext =
+          CompatUtils.getTaskAttemptContext(context);
+        documentsRead = compatContext.getCounter(MongoInputCounter.DOCUMENTS_READ);
+        bytesRead = compatContext.getCounter(MongoInputCounter.BYTES_READ);
     }
 
     @Override
-    public boolean nextKeyValue() {
+    public boolean nextKeyValue() throws IOException {
         try {
-            if (!cursor.hasNext()) {
+            if (!documents.hasNext()) {
+                finished = true;
                 LOG.info("Read " + seen + " documents from:");
                 LOG.info(split.toString());
                 return false;
             }
 
-            current = cursor.next();
+            current = documents.next();
             seen++;
+            if (documentsRead != null) {
+                documentsRead.increment(1);
+            }
+            if (bytesRead != null) {
+                // The prefetcher may have decoded documents ahead of this one.
+                long total = cursor.getBytesRead();
+                bytesRead.increment(total - bytesReported);
+                bytesReported = total;
+            }
 
             return true;
         } catch (MongoException e) {
-            LOG.error("Exception reading next key/val from mongo: " + e.getMessage());
-            return false;
+            // Ending the split here would silently lose the rest of it.
+            throw new IOException("Couldn't get next key/value from mongodb: ", e);
         }
     }
 
 
     private BSONObject current;
     private final MongoInputSplit split;
-    private final DBCursor cursor;
-    private float seen = 0;
-    private float total;
+    private final ResumableCursor cursor;
+    private final Iterator<DBObject> documents;
+    private DocumentPrefetcher prefetcher;
+    private long seen = 0;
+    private long bytesReported = 0;
+    private boolean finished = false;
+    private Counter documentsRead;
+    private Counter bytesRead;
+
+    private static final float MAX_UNFINISHED_PROGRESS = 0.99f;
 
     private static final Log LOG = LogFactory.getLog(MongoRecordReader.class);
 
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.Cursor;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBDecoder;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.MongoCursorNotFoundException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoInterruptedException;
+import com.mongodb.MongoNodeIsRecoveringException;
+import com.mongodb.MongoNotPrimaryException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.hadoop.util.BSONComparator;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import com.mongodb.hadoop.util.MongoPathRetriever;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Iterates over the documents of a {@link MongoInputSplit}, reopening the
+ * cursor after a retryable error, such as a primary stepdown, a network error
+ * or a cursor that timed out on the server.
+ *
+ * A split with min/max bounds is read in the order of the index on its
+ * bounds, so the cursor is reopened with the bound fields of the last
+ * document read as its new min bound. Documents with the same bound fields
+ * as the last one that were already read are skipped. Splits without bounds,
+ * or with a sort or a projection that leaves out a bound field, cannot be
+ * resumed, and their errors are thrown as before. Neither can splits with an
+ * aggregation pipeline, which are read from an aggregation cursor instead of
+ * a query. The cursor is reopened
+ * up to {@link MongoInputSplit#getResumeAttempts()} times in a row, waiting
+ * twice as long each time, starting at
+ * {@link MongoInputSplit#getResumeBackoff()} milliseconds.
+ *
+ * The BSON size of each document decoded from a query is added to
+ * {@link #getBytesRead()}. Aggregation cursors decode their documents with
+ * the collection's own codec, so documents read through a pipeline are not
+ * counted.
+ */
+public class ResumableCursor implements Iterator<DBObject>, Closeable {
+
+    private static final Log LOG = LogFactory.getLog(ResumableCursor.class);
+
+    private static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+
+    private final MongoInputSplit split;
+    // The bound fields of the split, or null if it cannot be resumed.
+    private final List<String> positionFields;
+    private Cursor cursor;
+    // The collection of an aggregation cursor, whose client must be released.
+    private DBCollection aggregated;
+    private DBObject pending;
+    private BasicDBObject lastPosition;
+    // The number of documents read at lastPosition.
+    private int atLastPosition;
+    // The number of documents at lastPosition still to skip after resuming.
+    private int toSkip;
+    private long seen;
+    private int failures;
+    private boolean closed;
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final DBDecoderFactory decoderFactory = new DBDecoderFactory() {
+        @Override
+        public DBDecoder create() {
+            return new DefaultDBDecoder() {
+                @Override
+                public DBObject decode(
+                  final byte[] bytes, final DBCollection collection) {
+                    bytesRead.addAndGet(bytes.length);
+                    return super.decode(bytes, collection);
+                }
+            };
+        }
+    };
+
+    /**
+     * Create a new ResumableCursor. The cursor is opened when the first
+     * document is asked for.
+     * @param split the split to read
+     */
+    public ResumableCursor(final MongoInputSplit split) {
+        this.split = split;
+        positionFields = getPositionFields(split);
+    }
+
+    /**
+     * @return {@code true} if the cursor can be reopened after errors
+     */
+    public boolean isResumable() {
+        return positionFields != null;
+    }
+
+    /**
+     * @return the total BSON size, in bytes, of the documents decoded from
+     *         queries so far, which may include documents that were read
+     *         again after resuming
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (null == pending) {
+            try {
+                if (null == cursor) {
+                    cursor = split.getPipeline() != null
+                             ? openAggregation(split) : open(split);
+                }
+                if (!cursor.hasNext()) {
+                    return false;
+                }
+                DBObject document = cursor.next();
+                if (toSkip > 0) {
+                    if (0 == compare(getPosition(document), lastPosition)) {
+                        --toSkip;
+                        continue;
+                    }
+                    toSkip = 0;
+                }
+                pending = document;
+                failures = 0;
+            } catch (MongoException e) {
+                resume(e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public DBObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DBObject document = pending;
+        pending = null;
+        ++seen;
+        if (positionFields != null) {
+            BasicDBObject position = getPosition(document);
+            if (lastPosition != null && 0 == compare(position, lastPosition)) {
+                ++atLastPosition;
+            } else {
+                lastPosition = position;
+                atLastPosition = 1;
+            }
+        }
+        return document;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        closeCursor();
+    }
+
+    /**
+     * Open a cursor on a split.
+     * @param toRead the split
+     * @return the cursor
+     */
+    protected DBCursor openCursor(final MongoInputSplit toRead) {
+        return toRead.getCursor();
+    }
+
+    /**
+     * Open an aggregation cursor on a split with an aggregation pipeline.
+     * @param toRead the split
+     * @return the cursor
+     */
+    protected Cursor openAggregation(final MongoInputSplit toRead) {
+        aggregated = toRead.getCollection();
+        return toRead.aggregate(aggregated);
+    }
+
+    /**
+     * Close a cursor opened by {@link #openCursor} and release its client.
+     * @param toClose the cursor
+     */
+    protected void closeCursor(final DBCursor toClose) {
+        try {
+            toClose.close();
+        } finally {
+            MongoConfigUtil.close(
+              toClose.getCollection().getDB().getMongoClient());
+        }
+    }
+
+    private void closeCursor() {
+        if (cursor != null) {
+            Cursor toClose = cursor;
+            cursor = null;
+            try {
+                if (toClose instanceof DBCursor) {
+                    closeCursor((DBCursor) toClose);
+                } else {
+                    toClose.close();
+                }
+            } catch (MongoException e) {
+                // The cursor is usually dead already.
+                LOG.debug("Could not close cursor: " + e.getMessage());
+            }
+        }
+        if (aggregated != null) {
+            DBCollection toRelease = aggregated;
+            aggregated = null;
+            MongoConfigUtil.close(toRelease.getDB().getMongoClient());
+        }
+    }
+
+    private void resume(final MongoException e) {
+        if (closed || null == positionFields || !isRetryable(e)
+          || failures >= split.getResumeAttempts()) {
+            throw e;
+        }
+        ++failures;
+        long backoff = Math.min(
+          MAX_BACKOFF_MILLIS, split.getResumeBackoff() << (failures - 1));
+        LOG.warn("Reading " + split + " failed after " + seen
+          + " documents, resuming after " + lastPosition + " in " + backoff
+          + "ms (attempt " + failures + " of " + split.getResumeAttempts()
+          + "): " + e.getMessage());
+        closeCursor();
+        if (backoff > 0) {
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new MongoInterruptedException(
+                  "Interrupted while waiting to resume reading", ie);
+            }
+        }
+
+        MongoInputSplit resumed = new MongoInputSplit(split);
+        // The member the split was given may be the one that went away, so
+        // let the input URI choose again.
+        resumed.setReadHost(null);
+        if (lastPosition != null) {
+            resumed.setMin(lastPosition);
+            toSkip = atLastPosition;
+            // Documents before the new min bound were skipped already.
+            resumed.setSkip(null);
+            if (split.getLimit() != null && split.getLimit() > 0) {
+                resumed.setLimit((int) Math.max(
+                  1, split.getLimit() - seen + atLastPosition));
+            }
+        }
+        cursor = open(resumed);
+    }
+
+    private DBCursor open(final MongoInputSplit toRead) {
+        DBCursor opened = openCursor(toRead);
+        opened.setDecoderFactory(decoderFactory);
+        return opened;
+    }
+
+    private BasicDBObject getPosition(final DBObject document) {
+        BasicDBObject position = new BasicDBObject();
+        for (String field : positionFields) {
+            position.put(field, MongoPathRetriever.get(document, field));
+        }
+        return position;
+    }
+
+    private static int compare(
+      final BasicDBObject position, final BasicDBObject other) {
+        return BSONComparator.getInstance().compare(position, other);
+    }
+
+    /**
+     * Determine whether an error might not happen again on a new cursor.
+     * @param e the error
+     * @return {@code true} if reading can be resumed after the error
+     */
+    static boolean isRetryable(final MongoException e) {
+        return e instanceof MongoSocketException
+          || e instanceof MongoNotPrimaryException
+          || e instanceof MongoNodeIsRecoveringException
+          || e instanceof MongoCursorNotFoundException
+          || e instanceof MongoTimeoutException
+          || e.hasErrorLabel("RetryableReadError");
+    }
+
+    private static List<String> getPositionFields(final MongoInputSplit split) {
+        Set<String> boundFields = split.getBoundFields();
+        DBObject sort = split.getSort();
+        if (null == boundFields || split.getPipeline() != null || (sort != null && !sort.keySet().isEmpty())) {
+            return null;
+        }
+        DBObject fields = split.getFields();
+        for (String field : boundFields) {
+            if (!isProjected(fields, field)) {
+                return null;
+            }
+        }
+        return new ArrayList<String>(boundFields);
+    }
+
+    private static boolean isProjected(
+      final DBObject projection, final String field) {
+        if (null == projection || projection.keySet().isEmpty()) {
+            return true;
+        }
+        if (projection.containsField(field)) {
+            return isIncluded(projection.get(field));
+        }
+        if ("_id".equals(field)) {
+            return true;
+        }
+        // Fields that are not mentioned are only left out by a projection
+        // that includes other fields.
+        for (String name : projection.keySet()) {
+            if (!"_id".equals(name) && isIncluded(projection.get(name))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIncluded(final Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        // An expression or $slice and the like.
+        return true;
+    }
+}
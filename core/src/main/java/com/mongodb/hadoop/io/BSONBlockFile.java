@@ -0,0 +1,347 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.io;
+
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A container for BSON documents that is both compressed and splittable.
+ *
+ * Documents are grouped into blocks, each of which is compressed on its own
+ * with any {@link CompressionCodec}, so a reader can start at any block. An
+ * index of the blocks is written at the end of the file. The layout is:
+ *
+ * <pre>
+ * header:  magic (8 bytes), codec class name (modified UTF-8)
+ * block:   uncompressed length (int), compressed length (int), data
+ * ...
+ * index:   for each block: offset (long), number of documents (int)
+ * trailer: number of blocks (int), offset of index (long), magic (8 bytes)
+ * </pre>
+ *
+ * All numbers are big-endian, as written by {@link java.io.DataOutput}.
+ */
+public final class BSONBlockFile {
+
+    /** The extension given to block-compressed BSON files. */
+    public static final String EXTENSION = ".bsonz";
+
+    private static final byte[] MAGIC = {'B', 'S', 'O', 'N', 'B', 'L', 'K', 1};
+    private static final int TRAILER_SIZE = 4 + 8 + MAGIC.length;
+    private static final int INDEX_ENTRY_SIZE = 8 + 4;
+
+    private BSONBlockFile() {
+    }
+
+    /**
+     * Determine whether a file is a block-compressed BSON file.
+     * @param fs the FileSystem containing the file
+     * @param path the path to the file
+     * @return {@code true} if the file begins like a block-compressed BSON
+     *         file, {@code false} otherwise
+     * @throws IOException when an error occurs reading the file
+     */
+    public static boolean isBlockFile(final FileSystem fs, final Path path)
+      throws IOException {
+        if (fs.getFileStatus(path).getLen() < MAGIC.length + TRAILER_SIZE) {
+            return false;
+        }
+        FSDataInputStream in = fs.open(path);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            return Arrays.equals(MAGIC, magic);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Create a block-compressed BSON file with the codec and block size from
+     * {@link com.mongodb.hadoop.util.MongoConfigUtil#BSON_OUTPUT_BLOCK_CODEC}
+     * and {@link com.mongodb.hadoop.util.MongoConfigUtil#BSON_OUTPUT_BLOCK_SIZE}.
+     * @param path the path to the new file
+     * @param conf the Configuration
+     * @return a Writer for the file
+     * @throws IOException when an error occurs creating the file
+     */
+    public static Writer createWriter(final Path path, final Configuration conf)
+      throws IOException {
+        CompressionCodec codec = ReflectionUtils.newInstance(
+          MongoConfigUtil.getBSONOutputBlockCodec(conf), conf);
+        return new Writer(
+          path.getFileSystem(conf).create(path), codec,
+          MongoConfigUtil.getBSONOutputBlockSize(conf));
+    }
+
+    /**
+     * Writes documents to a block-compressed BSON file.
+     */
+    public static class Writer {
+        private final FSDataOutputStream out;
+        private final CompressionCodec codec;
+        private final Compressor compressor;
+        private final int blockSize;
+        private final DataOutputBuffer block = new DataOutputBuffer();
+        private final DataOutputBuffer compressed = new DataOutputBuffer();
+        private final DataOutputBuffer index = new DataOutputBuffer();
+        private int blockDocs;
+        private int numBlocks;
+
+        /**
+         * Create a new Writer and write the file header.
+         * @param out the stream to write the file to
+         * @param codec the codec with which to compress each block
+         * @param blockSize the number of uncompressed bytes after which a
+         *                  block is written
+         * @throws IOException when an error occurs writing the header
+         */
+        public Writer(
+          final FSDataOutputStream out, final CompressionCodec codec,
+          final int blockSize) throws IOException {
+            this.out = out;
+            this.codec = codec;
+            this.blockSize = blockSize;
+            compressor = CodecPool.getCompressor(codec);
+            out.write(MAGIC);
+            out.writeUTF(codec.getClass().getName());
+        }
+
+        /**
+         * Add an encoded document to the file.
+         * @param doc the buffer holding the document
+         * @param offset the offset of the document in {@code doc}
+         * @param length the length of the document
+         * @throws IOException when an error occurs writing a block
+         */
+        public void append(final byte[] doc, final int offset, final int length)
+          throws IOException {
+            block.write(doc, offset, length);
+            ++blockDocs;
+            if (block.getLength() >= blockSize) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (0 == blockDocs) {
+                return;
+            }
+            compressed.reset();
+            if (compressor != null) {
+                compressor.reset();
+            }
+            CompressionOutputStream compressedOut =
+              codec.createOutputStream(compressed, compressor);
+            compressedOut.write(block.getData(), 0, block.getLength());
+            compressedOut.finish();
+
+            index.writeLong(out.getPos());
+            index.writeInt(blockDocs);
+            out.writeInt(block.getLength());
+            out.writeInt(compressed.getLength());
+            out.write(compressed.getData(), 0, compressed.getLength());
+            ++numBlocks;
+            block.reset();
+            blockDocs = 0;
+        }
+
+        /**
+         * Write the last block and the index, and close the file.
+         * @throws IOException when an error occurs writing the file
+         */
+        public void close() throws IOException {
+            try {
+                writeBlock();
+                long indexOffset = out.getPos();
+                out.write(index.getData(), 0, index.getLength());
+                out.writeInt(numBlocks);
+                out.writeLong(indexOffset);
+                out.write(MAGIC);
+            } finally {
+                CodecPool.returnCompressor(compressor);
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the blocks of a block-compressed BSON file.
+     */
+    public static class Reader {
+        private final FSDataInputStream in;
+        private final CompressionCodec codec;
+        private final Decompressor decompressor;
+        private final long[] offsets;
+        private final int[] docCounts;
+        private final long indexOffset;
+        private byte[] compressed = new byte[0];
+        private byte[] block = new byte[0];
+        private boolean closed;
+
+        /**
+         * Create a new Reader and read the index of the file.
+         * @param in the stream over the file
+         * @param length the length of the file
+         * @param conf the Configuration, used to load the codec
+         * @throws IOException if the file is not a block-compressed BSON file
+         *         or an error occurs reading it
+         */
+        public Reader(
+          final FSDataInputStream in, final long length,
+          final Configuration conf) throws IOException {
+            this.in = in;
+            in.seek(0);
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a block-compressed BSON file.");
+            }
+            String codecName = in.readUTF();
+            try {
+                codec = (CompressionCodec) ReflectionUtils.newInstance(
+                  conf.getClassByName(codecName), conf);
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Could not load codec " + codecName, e);
+            }
+
+            in.seek(length - TRAILER_SIZE);
+            int numBlocks = in.readInt();
+            indexOffset = in.readLong();
+            in.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic)
+              || indexOffset + (long) numBlocks * INDEX_ENTRY_SIZE
+              != length - TRAILER_SIZE) {
+                throw new IOException(
+                  "Block-compressed BSON file is truncated or corrupt.");
+            }
+            in.seek(indexOffset);
+            offsets = new long[numBlocks];
+            docCounts = new int[numBlocks];
+            for (int i = 0; i < numBlocks; ++i) {
+                offsets[i] = in.readLong();
+                docCounts[i] = in.readInt();
+            }
+            decompressor = CodecPool.getDecompressor(codec);
+        }
+
+        /**
+         * @return the number of blocks in the file
+         */
+        public int getBlockCount() {
+            return offsets.length;
+        }
+
+        /**
+         * @param block the index of a block
+         * @return the position of the block in the file
+         */
+        public long getBlockOffset(final int block) {
+            return offsets[block];
+        }
+
+        /**
+         * @param block the index of a block
+         * @return the number of documents in the block
+         */
+        public int getDocumentCount(final int block) {
+            return docCounts[block];
+        }
+
+        /**
+         * @return the position in the file at which the blocks end
+         */
+        public long getDataEnd() {
+            return indexOffset;
+        }
+
+        /**
+         * Get the index of the first block that starts at or after the given
+         * position.
+         * @param pos a position in the file
+         * @return the index of the block, or {@link #getBlockCount()} if no
+         *         block starts at or after {@code pos}
+         */
+        public int findBlock(final long pos) {
+            int i = Arrays.binarySearch(offsets, pos);
+            return i >= 0 ? i : -(i + 1);
+        }
+
+        /**
+         * Decompress a block. The returned stream is only valid until the
+         * next block is read.
+         * @param i the index of the block
+         * @return a stream over the documents in the block
+         * @throws IOException when an error occurs reading the block
+         */
+        public InputStream readBlock(final int i) throws IOException {
+            in.seek(offsets[i]);
+            int blockLength = in.readInt();
+            int compressedLength = in.readInt();
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            in.readFully(compressed, 0, compressedLength);
+            if (block.length < blockLength) {
+                block = new byte[blockLength];
+            }
+            if (decompressor != null) {
+                decompressor.reset();
+            }
+            CompressionInputStream blockIn = codec.createInputStream(
+              new ByteArrayInputStream(compressed, 0, compressedLength),
+              decompressor);
+            IOUtils.readFully(blockIn, block, 0, blockLength);
+            return new ByteArrayInputStream(block, 0, blockLength);
+        }
+
+        /**
+         * Release the decompressor and close the file.
+         * @throws IOException when an error occurs closing the file
+         */
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+            } finally {
+                CodecPool.returnDecompressor(decompressor);
+            }
+        }
+    }
+}
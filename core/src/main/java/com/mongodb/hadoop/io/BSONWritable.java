@@ -43,6 +43,7 @@ import org.bson.BasicBSONCallback;
 import org.bson.BasicBSONDecoder;
 import org.bson.BasicBSONEncoder;
 import org.bson.BasicBSONObject;
+import org.bson.LazyBSONObject;
 import org.bson.io.BasicOutputBuffer;
 import com.mongodb.hadoop.util.Bits;
 
@@ -64,6 +65,17 @@ public class BSONWritable implements WritableComparable {
 
     private BSONObject doc;
 
+    // The document as BSON, valid only while rawValid is true. The array is
+    // reused across calls to readFields, so it may be longer than rawLength.
+    private byte[] raw;
+    private int rawLength;
+    private boolean rawValid;
+
+    private BSONEncoder encoder;
+    private BasicOutputBuffer encodeBuffer;
+    private BSONDecoder decoder;
+    private BSONCallback callback;
+
     public BSONWritable() {
         doc = new BasicBSONObject();
     }
@@ -75,66 +87,127 @@ public class BSONWritable implements WritableComparable {
 
     public void setDoc(final BSONObject doc) {
         this.doc = doc;
+        rawValid = false;
     }
 
+    /**
+     * Get the document held by this BSONWritable, decoding it first if it was
+     * read with {@link #readFields(DataInput)} and has not been decoded yet.
+     * Because the returned document may be modified, it is re-encoded the next
+     * time this BSONWritable is written.
+     *
+     * @return the document
+     */
     public BSONObject getDoc() {
+        BSONObject result = decode();
+        rawValid = false;
+        return result;
+    }
+
+    /**
+     * Decode the raw bytes into {@code doc}, if that has not been done yet.
+     * Unlike {@link #getDoc()}, this does not give up the raw bytes, so it
+     * must only be used where the document is not modified.
+     */
+    BSONObject decode() {
+        if (doc == null && rawValid) {
+            if (decoder == null) {
+                decoder = new BasicBSONDecoder();
+                callback = new BasicBSONCallback();
+            }
+            try {
+                callback.reset();
+                decoder.decode(raw, callback);
+                doc = (BSONObject) callback.get();
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Decoded a BSON Object: " + doc);
+                }
+            } catch (Exception e) {
+                LOG.info("Could not decode BSON document." + e);
+                doc = new BasicDBObject();
+                rawValid = false;
+            }
+        }
         return doc;
     }
 
     /**
      * {@inheritDoc}
      *
+     * If the document was read with {@link #readFields(DataInput)} and has
+     * not been handed out by {@link #getDoc()} since, or if it is a
+     * {@link LazyBSONObject}, its bytes are written as they were read.
+     *
      * @see Writable#write(DataOutput)
      */
     public void write(final DataOutput out) throws IOException {
-        BSONEncoder enc = new BasicBSONEncoder();
-        BasicOutputBuffer buf = new BasicOutputBuffer();
-        enc.set(buf);
-        enc.putObject(doc);
-        enc.done();
-        buf.pipe(new DataOutputOutputStreamAdapter(out));
+        if (rawValid) {
+            out.write(raw, 0, rawLength);
+            return;
+        }
+        if (doc instanceof LazyBSONObject) {
+            // LazyBSONObjects are read-only, so their bytes are still valid.
+            ((LazyBSONObject) doc).pipe(new DataOutputOutputStreamAdapter(out));
+            return;
+        }
+        if (encoder == null) {
+            encoder = new BasicBSONEncoder();
+            encodeBuffer = new BasicOutputBuffer();
+        }
+        encodeBuffer.truncateToPosition(0);
+        encoder.set(encodeBuffer);
+        encoder.putObject(doc);
+        encoder.done();
+        encodeBuffer.pipe(new DataOutputOutputStreamAdapter(out));
     }
 
 
     /**
      * {@inheritDoc}
      *
+     * The document is not decoded until it is needed.
+     *
      * @see Writable#readFields(DataInput)
      */
     public void readFields(final DataInput in) throws IOException {
-        BSONDecoder dec = new BasicBSONDecoder();
-        BSONCallback cb = new BasicBSONCallback();
         // Read the BSON length from the start of the record
-        byte[] l = new byte[4];
         try {
-            in.readFully(l);
-            int dataLen = Bits.readInt(l);
+            ensureCapacity(4);
+            in.readFully(raw, 0, 4);
+            int dataLen = Bits.readInt(raw);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("*** Expected DataLen: " + dataLen);
             }
-            byte[] data = new byte[dataLen + 4];
-            System.arraycopy(l, 0, data, 0, 4);
-            in.readFully(data, 4, dataLen - 4);
-            dec.decode(data, cb);
-            doc = (BSONObject) cb.get();
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Decoded a BSON Object: " + doc);
-            }
+            ensureCapacity(dataLen);
+            in.readFully(raw, 4, dataLen - 4);
+            rawLength = dataLen;
+            rawValid = true;
+            doc = null;
         } catch (Exception e) {
             /* If we can't read another length it's not an error, just return quietly. */
             // TODO - Figure out how to gracefully mark this as an empty
             LOG.info("No Length Header available." + e);
-            doc = new BasicDBObject();
+            setDoc(new BasicDBObject());
         }
 
     }
 
+    private void ensureCapacity(final int length) {
+        if (raw == null || raw.length < length) {
+            byte[] newRaw = new byte[length];
+            if (raw != null) {
+                System.arraycopy(raw, 0, newRaw, 0, Math.min(4, raw.length));
+            }
+            raw = newRaw;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public String toString() {
-        return "<BSONWritable:" + doc + ">";
+        return "<BSONWritable:" + decode() + ">";
     }
 
     /**
@@ -256,13 +329,15 @@ public class BSONWritable implements WritableComparable {
         if (obj == null || getClass() != obj.getClass()) {
             return false;
         }
-        final BSONWritable other = (BSONWritable) obj;
-        return !(doc != other.doc && (doc == null || !doc.equals(other.doc)));
+        final BSONObject thisDoc = decode();
+        final BSONObject otherDoc = ((BSONWritable) obj).decode();
+        return !(thisDoc != otherDoc && (thisDoc == null || !thisDoc.equals(otherDoc)));
     }
 
     @Override
     public int hashCode() {
-        return doc != null ? doc.hashCode() : 0;
+        final BSONObject thisDoc = decode();
+        return thisDoc != null ? thisDoc.hashCode() : 0;
     }
 
 }
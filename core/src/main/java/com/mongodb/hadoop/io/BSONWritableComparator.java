@@ -40,20 +40,22 @@ public class BSONWritableComparator extends WritableComparator {
 
     public int compare(final WritableComparable a, final WritableComparable b) {
         if (a instanceof BSONWritable && b instanceof BSONWritable) {
-            return BSONComparator.getInstance().compare(((BSONWritable) a).getDoc(), ((BSONWritable) b).getDoc());
+            return BSONComparator.getInstance().compare(((BSONWritable) a).decode(), ((BSONWritable) b).decode());
         } else {
             //return super.compare( a, b );
             return -1;
         }
     }
 
+    /**
+     * Compare two serialized BSONWritables without deserializing them.
+     */
     public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
-        //return BSONComparator.getInstance().compare(b1, s1, l1, b2, s2, l2);
-        return super.compare(b1, s1, l1, b2, s2, l2);
+        return BSONComparator.getInstance().compare(b1, s1, l1, b2, s2, l2);
     }
 
     public int compare(final Object a, final Object b) {
-        return BSONComparator.getInstance().compare(((BSONWritable) a).getDoc(), ((BSONWritable) b).getDoc());
+        return BSONComparator.getInstance().compare(((BSONWritable) a).decode(), ((BSONWritable) b).decode());
         //return super.compare( a, b );
     }
 }
@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.mapred;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.mapred.input.BSONFileRecordReader;
 import com.mongodb.hadoop.mapred.input.BSONFileSplit;
@@ -110,7 +111,8 @@ public class BSONFileInputFormat extends FileInputFormat {
         FileSplit fileSplit = (FileSplit) split;
         FileSystem fs = FileSystem.get(fileSplit.getPath().toUri(), job);
         if (split instanceof BSONFileSplit
-          || !isSplitable(fs, fileSplit.getPath())) {
+          || !isSplitable(fs, fileSplit.getPath())
+          || BSONBlockFile.isBlockFile(fs, fileSplit.getPath())) {
             BSONFileRecordReader reader = new BSONFileRecordReader();
             reader.initialize(split, job);
             return reader;
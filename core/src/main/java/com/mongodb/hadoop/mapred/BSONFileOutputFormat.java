@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.mapred;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.mapred.output.BSONFileRecordWriter;
 import com.mongodb.hadoop.splitter.BSONSplitter;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -35,6 +36,13 @@ public class BSONFileOutputFormat<K, V> extends FileOutputFormat<K, V> {
 
     public RecordWriter<K, V> getRecordWriter(final FileSystem ignored, final JobConf job, final String name,
                                               final Progressable progress) throws IOException {
+        if (MongoConfigUtil.isBSONOutputBlockCompressed(job)) {
+            Path outPath = getDefaultWorkFile(job, name, BSONBlockFile.EXTENSION);
+            LOG.info("block-compressed output going into " + outPath);
+            return new BSONFileRecordWriter<K, V>(
+              BSONBlockFile.createWriter(outPath, job));
+        }
+
         Path outPath = getDefaultWorkFile(job, name, ".bson");
         LOG.info("output going into " + outPath);
 
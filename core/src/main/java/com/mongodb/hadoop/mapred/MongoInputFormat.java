@@ -22,6 +22,7 @@ import com.mongodb.hadoop.mapred.input.MongoRecordReader;
 import com.mongodb.hadoop.splitter.MongoSplitter;
 import com.mongodb.hadoop.splitter.MongoSplitterFactory;
 import com.mongodb.hadoop.splitter.SplitFailedException;
+import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -46,8 +47,9 @@ public class MongoInputFormat implements InputFormat<BSONWritable, BSONWritable>
         }
 
         final MongoInputSplit mis = (MongoInputSplit) split;
+        MongoConfigUtil.configureClients(job);
 
-        return new MongoRecordReader(mis);
+        return new MongoRecordReader(mis, reporter);
     }
 
     public InputSplit[] getSplits(final JobConf job, final int numSplits) throws IOException {
@@ -16,45 +16,79 @@
 
 package com.mongodb.hadoop.mapred.input;
 
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.DocumentPrefetcher;
+import com.mongodb.hadoop.input.MongoInputCounter;
 import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.input.ResumableCursor;
 import com.mongodb.hadoop.io.BSONWritable;
-import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.mapred.Counters;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.TaskAttemptContext;
 import org.bson.BasicBSONObject;
 
 import java.io.IOException;
+import java.util.Iterator;
 
 @SuppressWarnings("deprecation")
 public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritable> {
 
     private static final Log LOG = LogFactory.getLog(MongoRecordReader.class);
     
-    private final DBCursor cursor;
+    private final ResumableCursor cursor;
+    private final Iterator<DBObject> documents;
+    private DocumentPrefetcher prefetcher;
     private BSONWritable currentVal = new BSONWritable();
     private BSONWritable currentKey = new BSONWritable();
-    private float seen = 0;
-    private float total;
+    private long seen = 0;
+    private long bytesReported = 0;
+    private boolean finished = false;
     private String keyField;
+    private Counters.Counter documentsRead;
+    private Counters.Counter bytesRead;
 
     private MongoInputSplit split;
 
+    private static final float MAX_UNFINISHED_PROGRESS = 0.99f;
+
     public MongoRecordReader(final MongoInputSplit split) {
         this.split = split;
-        cursor = split.getCursor();
+        cursor = new ResumableCursor(split);
         keyField = split.getKeyField();
+        if (split.getPrefetchBatches() > 0) {
+            prefetcher = new DocumentPrefetcher(
+              cursor, split.getPrefetchCapacity());
+            documents = prefetcher;
+        } else {
+            documents = cursor;
+        }
+    }
+
+    /**
+     * Create a new MongoRecordReader that keeps the
+     * {@link MongoInputCounter} counters of the task up to date.
+     * @param split the MongoInputSplit to read
+     * @param reporter the Reporter for the task
+     */
+    public MongoRecordReader(final MongoInputSplit split, final Reporter reporter) {
+        this(split);
+        if (reporter != null) {
+            documentsRead = reporter.getCounter(MongoInputCounter.DOCUMENTS_READ);
+            bytesRead = reporter.getCounter(MongoInputCounter.BYTES_READ);
+        }
     }
 
     public void close() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
         if (cursor != null) {
             cursor.close();
-            MongoConfigUtil.close(cursor.getCollection().getDB().getMongoClient());
         }
     }
 
@@ -75,38 +109,52 @@ public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritabl
         return this.currentVal;
     }
 
+    /**
+     * Report progress as the fraction of the estimated number of documents in
+     * the split that have been read. Progress stays just short of complete
+     * until the cursor is exhausted, in case the estimate is too low.
+     * @return the progress of the reader
+     */
     public float getProgress() {
-        try {
-            if (cursor.hasNext()) {
-                return 0.0f;
-            } else {
-                return 1.0f;
-            }
-        } catch (MongoException e) {
+        if (finished) {
             return 1.0f;
         }
+        long total = split.getEstimatedCount();
+        if (total <= 0) {
+            return 0.0f;
+        }
+        return Math.min(MAX_UNFINISHED_PROGRESS, (float) seen / total);
     }
 
     public long getPos() {
-        return 0; // no progress to be reported, just working on it
+        return seen;
     }
 
     public void initialize(final InputSplit split, final TaskAttemptContext context) {
-        total = 1.0f;
     }
 
     public boolean nextKeyValue() throws IOException {
         try {
-            if (!cursor.hasNext()) {
+            if (!documents.hasNext()) {
+                finished = true;
                 LOG.info("Read " + seen + " documents from:");
                 LOG.info(split.toString());
                 return false;
             }
 
-            DBObject next = cursor.next();
+            DBObject next = documents.next();
             this.currentVal.setDoc(next);
             this.currentKey.setDoc(new BasicBSONObject("_id", next.get("_id")));
             seen++;
+            if (documentsRead != null) {
+                documentsRead.increment(1);
+            }
+            if (bytesRead != null) {
+                // The prefetcher may have decoded documents ahead of this one.
+                long total = cursor.getBytesRead();
+                bytesRead.increment(total - bytesReported);
+                bytesReported = total;
+            }
 
             return true;
         } catch (MongoException e) {
@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.mapred.output;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.mapred.Reporter;
@@ -30,6 +31,10 @@ public class BSONFileRecordWriter<K, V> extends com.mongodb.hadoop.output.BSONFi
         super(outFile, splitFile, splitSize);
     }
 
+    public BSONFileRecordWriter(final BSONBlockFile.Writer blockWriter) {
+        super(blockWriter);
+    }
+
     public void close(final Reporter reporter) throws IOException {
         this.close((TaskAttemptContext) null);
     }
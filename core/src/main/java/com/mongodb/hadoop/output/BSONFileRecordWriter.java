@@ -19,6 +19,7 @@ package com.mongodb.hadoop.output;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBObject;
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.io.MongoUpdateWritable;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -36,6 +37,7 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
     private BSONEncoder bsonEnc = new BasicBSONEncoder();
     private FSDataOutputStream outFile = null;
     private FSDataOutputStream splitsFile = null;
+    private BSONBlockFile.Writer blockWriter = null;
     private long bytesWritten = 0L;
     private long currentSplitLen = 0;
     private long currentSplitStart = 0;
@@ -52,10 +54,22 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
         this(outFile, null, 0);
     }
 
+    /**
+     * Create a BSONFileRecordWriter that writes a block-compressed BSON file,
+     * which needs no ".splits" file.
+     * @param blockWriter the writer for the file
+     */
+    public BSONFileRecordWriter(final BSONBlockFile.Writer blockWriter) {
+        this.blockWriter = blockWriter;
+    }
+
     public void close(final TaskAttemptContext context) throws IOException {
         if (this.outFile != null) {
             this.outFile.close();
         }
+        if (this.blockWriter != null) {
+            this.blockWriter.close();
+        }
         writeSplitData(0, true);
         if (this.splitsFile != null) {
             this.splitsFile.close();
@@ -107,6 +121,10 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
         }
 
         outputByteBuf = bsonEnc.encode(toEncode);
+        if (blockWriter != null) {
+            blockWriter.append(outputByteBuf, 0, outputByteBuf.length);
+            return;
+        }
         destination.write(outputByteBuf, 0, outputByteBuf.length);
         bytesWritten += outputByteBuf.length;
         writeSplitData(outputByteBuf.length, false);
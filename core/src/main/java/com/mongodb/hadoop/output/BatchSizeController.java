@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses how many operations to send to MongoDB in each bulk write.
+ *
+ * When adaptive batching is disabled, this is always
+ * {@link MongoConfigUtil#OUTPUT_BATCH_SIZE}. Otherwise, that setting is the
+ * initial batch size, which is grown while bulk writes complete well within
+ * {@link MongoConfigUtil#OUTPUT_BATCH_TARGET_LATENCY}, and halved when a
+ * bulk write takes longer than that or fails.
+ */
+class BatchSizeController {
+
+    /** The most write operations the server accepts in one batch. */
+    static final int MAX_BATCH_SIZE = 100000;
+
+    private final boolean adaptive;
+    private final long targetLatencyNanos;
+    private int batchSize;
+
+    BatchSizeController(final Configuration conf) {
+        adaptive = MongoConfigUtil.isAdaptiveBatching(conf);
+        targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(
+          MongoConfigUtil.getBatchTargetLatency(conf));
+        batchSize = Math.min(
+          MAX_BATCH_SIZE, Math.max(1, MongoConfigUtil.getBatchSize(conf)));
+    }
+
+    /**
+     * @return the number of operations to send in the next bulk write
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Record a successful bulk write.
+     * @param operations the number of operations in the batch
+     * @param elapsedNanos how long the bulk write took
+     * @return the change in batch size: positive if it was increased,
+     *         negative if it was decreased, zero otherwise
+     */
+    int onSuccess(final int operations, final long elapsedNanos) {
+        if (!adaptive) {
+            return 0;
+        }
+        if (elapsedNanos > targetLatencyNanos) {
+            return shrink();
+        }
+        // Only a batch that was filled up says anything about whether a
+        // larger batch would do better.
+        if (operations >= batchSize && elapsedNanos < targetLatencyNanos / 2) {
+            int old = batchSize;
+            batchSize = Math.min(MAX_BATCH_SIZE, batchSize + Math.max(1, batchSize / 4));
+            return batchSize - old;
+        }
+        return 0;
+    }
+
+    /**
+     * Record a failed bulk write.
+     * @return the change in batch size, as for {@link #onSuccess}
+     */
+    int onError() {
+        return adaptive ? shrink() : 0;
+    }
+
+    private int shrink() {
+        int old = batchSize;
+        batchSize = Math.max(1, batchSize / 2);
+        return batchSize - old;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkUpdateRequestBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.DBEncoder;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.io.MongoUpdateWritable;
+import com.mongodb.hadoop.util.CompatUtils;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
+import org.bson.io.BasicOutputBuffer;
+
+/**
+ * Accumulates write operations into a {@link BulkWriteOperation} and
+ * executes them against a collection one batch at a time. A batch is sent
+ * once it holds as many operations as chosen by a
+ * {@link BatchSizeController}, or once its encoded size reaches
+ * {@link MongoConfigUtil#OUTPUT_BATCH_BYTES}. Each bulk write is recorded
+ * in the {@link MongoOutputCounter} counters of the task.
+ */
+public class BulkWriteBuffer {
+
+    private static final Log LOG = LogFactory.getLog(BulkWriteBuffer.class);
+
+    private final DBCollection collection;
+    private final CompatUtils.TaskAttemptContext context;
+    private final boolean ordered;
+    private final long maxBytes;
+    private final BatchSizeController controller;
+    private final DBEncoder encoder = DefaultDBEncoder.FACTORY.create();
+    private final BasicOutputBuffer encodeBuffer = new BasicOutputBuffer();
+    private BulkWriteOperation bulkOp;
+    private int curBatchSize;
+    private long curBatchBytes;
+
+    /**
+     * Create a new BulkWriteBuffer.
+     * @param collection the collection to write to
+     * @param context the TaskAttemptContext, whose Configuration holds the
+     *                batching settings
+     */
+    public BulkWriteBuffer(
+      final DBCollection collection,
+      final CompatUtils.TaskAttemptContext context) {
+        Configuration conf = context.getConfiguration();
+        this.collection = collection;
+        this.context = context;
+        this.ordered = MongoConfigUtil.isBulkOrdered(conf);
+        this.maxBytes = MongoConfigUtil.getBatchBytes(conf);
+        this.controller = new BatchSizeController(conf);
+        this.bulkOp = newBulkOperation();
+    }
+
+    /**
+     * Queue an insert of the given document.
+     * @param doc the document to insert
+     */
+    public void insert(final DBObject doc) {
+        insert(doc, sizeOf(doc));
+    }
+
+    private void insert(final DBObject doc, final int size) {
+        bulkOp.insert(doc);
+        queued(size);
+    }
+
+    /**
+     * Queue a replacement of the document with the same {@code _id} as the
+     * given document, inserting it if it does not exist yet. Writing the same
+     * document more than once has the same effect as writing it once, so
+     * a failed or speculative task attempt can safely be re-run. Documents
+     * without an {@code _id} are inserted instead.
+     * @param doc the document to write
+     */
+    public void upsertById(final DBObject doc) {
+        Object id = doc.get("_id");
+        if (null == id) {
+            insert(doc);
+            return;
+        }
+        bulkOp.find(new BasicDBObject("_id", id)).upsert().replaceOne(doc);
+        queued(sizeOf(doc));
+    }
+
+    /**
+     * Queue the update described by a {@link MongoUpdateWritable}.
+     * @param muw the MongoUpdateWritable
+     */
+    public void update(final MongoUpdateWritable muw) {
+        update(muw, -1);
+    }
+
+    private void update(final MongoUpdateWritable muw, final int size) {
+        DBObject query = new BasicDBObject(muw.getQuery().toMap());
+        DBObject modifiers = new BasicDBObject(muw.getModifiers().toMap());
+        BulkWriteRequestBuilder writeBuilder = bulkOp.find(query);
+        if (muw.isReplace()) {
+            writeBuilder.replaceOne(modifiers);
+        } else if (muw.isUpsert()) {
+            BulkUpdateRequestBuilder updateBuilder = writeBuilder.upsert();
+            if (muw.isMultiUpdate()) {
+                updateBuilder.update(modifiers);
+            } else {
+                updateBuilder.updateOne(modifiers);
+            }
+        } else {
+            // No-upsert update.
+            if (muw.isMultiUpdate()) {
+                writeBuilder.update(modifiers);
+            } else {
+                writeBuilder.updateOne(modifiers);
+            }
+        }
+        queued(size >= 0 ? size : sizeOf(query) + sizeOf(modifiers));
+    }
+
+    /**
+     * Queue an operation read back from the temporary output of a task.
+     * @param op either a {@link DBObject} to insert or a
+     *           {@link MongoUpdateWritable}
+     */
+    public void add(final Object op) {
+        add(op, -1);
+    }
+
+    /**
+     * Queue an operation read back from the temporary output of a task,
+     * whose encoded size is already known.
+     * @param op either a {@link DBObject} to insert or a
+     *           {@link MongoUpdateWritable}
+     * @param size the encoded size of the operation in bytes, or a negative
+     *             number if it should be measured
+     */
+    public void add(final Object op, final int size) {
+        if (op instanceof MongoUpdateWritable) {
+            update((MongoUpdateWritable) op, size);
+        } else {
+            DBObject doc = (DBObject) op;
+            insert(doc, size >= 0 ? size : sizeOf(doc));
+        }
+    }
+
+    /**
+     * @return the number of operations waiting to be sent to MongoDB
+     */
+    public int size() {
+        return curBatchSize;
+    }
+
+    /**
+     * @return {@code true} if the current batch should be flushed
+     */
+    public boolean isFull() {
+        return curBatchSize >= controller.getBatchSize() || isFullByBytes();
+    }
+
+    private boolean isFullByBytes() {
+        return maxBytes > 0 && curBatchBytes >= maxBytes;
+    }
+
+    /**
+     * Execute all queued operations, if there are any, and start a new batch.
+     * @throws MongoException if the batch could not be written
+     */
+    public void flush() {
+        if (0 == curBatchSize) {
+            return;
+        }
+        boolean fullByBytes = isFullByBytes()
+          && curBatchSize < controller.getBatchSize();
+        long start = System.nanoTime();
+        try {
+            bulkOp.execute();
+            increment(MongoOutputCounter.BULK_WRITES, 1);
+            increment(MongoOutputCounter.BULK_OPERATIONS, curBatchSize);
+            increment(MongoOutputCounter.BULK_BYTES, curBatchBytes);
+            if (fullByBytes) {
+                increment(MongoOutputCounter.BATCHES_LIMITED_BY_BYTES, 1);
+            }
+            resized(controller.onSuccess(
+              curBatchSize, System.nanoTime() - start));
+        } catch (MongoException e) {
+            LOG.error("Could not write to MongoDB", e);
+            increment(MongoOutputCounter.BULK_WRITE_ERRORS, 1);
+            resized(controller.onError());
+            throw e;
+        } finally {
+            bulkOp = newBulkOperation();
+            curBatchSize = 0;
+            curBatchBytes = 0;
+        }
+    }
+
+    private void queued(final int size) {
+        ++curBatchSize;
+        curBatchBytes += size;
+    }
+
+    private void resized(final int change) {
+        if (change > 0) {
+            increment(MongoOutputCounter.BATCH_SIZE_INCREASED, 1);
+        } else if (change < 0) {
+            increment(MongoOutputCounter.BATCH_SIZE_DECREASED, 1);
+        }
+        if (change != 0 && LOG.isDebugEnabled()) {
+            LOG.debug("Batch size is now " + controller.getBatchSize());
+        }
+    }
+
+    private void increment(final MongoOutputCounter name, final long amount) {
+        Counter counter = context.getCounter(name);
+        if (counter != null) {
+            counter.increment(amount);
+        }
+    }
+
+    /**
+     * Measure the encoded size of a document, if batches are limited by size.
+     */
+    private int sizeOf(final DBObject doc) {
+        if (maxBytes <= 0) {
+            return 0;
+        }
+        encodeBuffer.truncateToPosition(0);
+        return encoder.writeObject(encodeBuffer, doc);
+    }
+
+    private BulkWriteOperation newBulkOperation() {
+        if (ordered) {
+            return collection.initializeOrderedBulkOperation();
+        }
+        return collection.initializeUnorderedBulkOperation();
+    }
+}
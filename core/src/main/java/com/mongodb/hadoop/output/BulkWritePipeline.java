@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.DBCollection;
+import com.mongodb.hadoop.util.CompatUtils;
+import com.mongodb.hadoop.util.DaemonThreadFactory;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sends write operations to MongoDB from several writer threads. The thread
+ * that decodes operations hands them to the writers through a bounded queue,
+ * so that decoding overlaps with the round trips for earlier batches, and
+ * each writer has its own {@link BulkWriteBuffer} in flight.
+ */
+class BulkWritePipeline {
+
+    private static final Log LOG = LogFactory.getLog(BulkWritePipeline.class);
+
+    // Tells a writer that there are no more operations.
+    private static final QueuedOperation END = new QueuedOperation(null, 0);
+
+    private final BlockingQueue<QueuedOperation> queue;
+    private final ExecutorService executor;
+    private final List<Future<Void>> writers;
+    private final AtomicReference<Throwable> failure =
+      new AtomicReference<Throwable>();
+
+    /**
+     * Create a new BulkWritePipeline and start its writer threads.
+     * @param collection the collection to write to
+     * @param context the TaskAttemptContext, used to report progress after
+     *                each batch
+     * @param numWriters the number of writer threads
+     */
+    BulkWritePipeline(
+      final DBCollection collection,
+      final CompatUtils.TaskAttemptContext context,
+      final int numWriters) {
+        // Hold up to one batch per writer while the writers are busy.
+        queue = new ArrayBlockingQueue<QueuedOperation>(
+          Math.max(1, MongoConfigUtil.getBatchSize(
+            context.getConfiguration())) * numWriters);
+        executor = Executors.newFixedThreadPool(
+          numWriters, new DaemonThreadFactory("mongo-bulk-writer"));
+        writers = new ArrayList<Future<Void>>(numWriters);
+        for (int i = 0; i < numWriters; ++i) {
+            writers.add(executor.submit(
+              new Writer(new BulkWriteBuffer(collection, context), context)));
+        }
+    }
+
+    /**
+     * Hand an operation to the writers, waiting for room in the queue if
+     * necessary.
+     * @param op the operation, as accepted by {@link BulkWriteBuffer#add}
+     * @param size the encoded size of the operation in bytes
+     * @throws IOException if interrupted while waiting, or if a writer has
+     *         stopped
+     * @throws com.mongodb.MongoException if a writer has failed
+     */
+    void put(final Object op, final int size) throws IOException {
+        put(new QueuedOperation(op, size));
+    }
+
+    private void put(final QueuedOperation op) throws IOException {
+        try {
+            while (!queue.offer(op, 100, TimeUnit.MILLISECONDS)) {
+                // All writers may have stopped.
+                checkFailure();
+                checkWriters();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+              "Interrupted while queueing write operation");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Wait for the writers to send all queued operations to MongoDB.
+     * @throws IOException if interrupted while waiting, or if a writer has
+     *         stopped
+     * @throws com.mongodb.MongoException if a writer has failed
+     */
+    void finish() throws IOException {
+        for (int i = 0; i < writers.size(); ++i) {
+            put(END);
+        }
+        executor.shutdown();
+        try {
+            for (Future<Void> writer : writers) {
+                writer.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+              "Interrupted while waiting for writes to finish");
+        } catch (ExecutionException e) {
+            // The failure is usually recorded by the writer itself.
+            LOG.debug("Writer failed", e.getCause());
+            failure.compareAndSet(null, e.getCause());
+        } catch (CancellationException e) {
+            failure.compareAndSet(null, e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stop all writers without waiting for queued operations to be sent.
+     */
+    void abort() {
+        executor.shutdownNow();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure.get();
+        if (e != null) {
+            abort();
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IOException("Bulk writer failed", e);
+        }
+    }
+
+    /**
+     * Fail if no writer is left to take operations from the queue, even
+     * though none of them recorded a failure.
+     */
+    private void checkWriters() throws IOException {
+        for (Future<Void> writer : writers) {
+            if (!writer.isDone()) {
+                return;
+            }
+        }
+        abort();
+        throw new IOException("All bulk writers have stopped");
+    }
+
+    private class Writer implements Callable<Void> {
+        private final BulkWriteBuffer buffer;
+        private final Progressable progress;
+
+        Writer(final BulkWriteBuffer buffer, final Progressable progress) {
+            this.buffer = buffer;
+            this.progress = progress;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            try {
+                QueuedOperation op;
+                while ((op = queue.take()) != END) {
+                    buffer.add(op.op, op.size);
+                    if (buffer.isFull()) {
+                        buffer.flush();
+                        progress.progress();
+                    }
+                }
+                buffer.flush();
+                progress.progress();
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } catch (Error e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            }
+            return null;
+        }
+    }
+
+    private static class QueuedOperation {
+        private final Object op;
+        private final int size;
+
+        QueuedOperation(final Object op, final int size) {
+            this.op = op;
+            this.size = size;
+        }
+    }
+}
@@ -17,12 +17,7 @@
 package com.mongodb.hadoop.output;
 
 import com.mongodb.BasicDBObject;
-import com.mongodb.BulkUpdateRequestBuilder;
-import com.mongodb.BulkWriteOperation;
-import com.mongodb.BulkWriteRequestBuilder;
 import com.mongodb.DBCollection;
-import com.mongodb.DBObject;
-import com.mongodb.MongoException;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.io.MongoUpdateWritable;
 import com.mongodb.hadoop.io.MongoWritableTypes;
@@ -78,6 +73,10 @@ public class MongoOutputCommitter extends OutputCommitter {
 
     public boolean needsTaskCommit(
       final CompatUtils.TaskAttemptContext taskContext) throws IOException {
+        // Direct output has already been written by the MongoRecordWriter.
+        if (MongoConfigUtil.isDirectOutput(taskContext.getConfiguration())) {
+            return false;
+        }
         try {
             FileSystem fs = FileSystem.get(taskContext.getConfiguration());
             // Commit is only necessary if there was any output.
@@ -98,7 +97,7 @@ public class MongoOutputCommitter extends OutputCommitter {
         // Get temporary file.
         Path tempFilePath = getTaskAttemptPath(taskContext);
         LOG.info("Committing from temporary file: " + tempFilePath.toString());
-        long filePos = 0, fileLen;
+        long fileLen;
         FSDataInputStream inputStream = null;
         try {
             FileSystem fs = FileSystem.get(taskContext.getConfiguration());
@@ -110,79 +109,109 @@ public class MongoOutputCommitter extends OutputCommitter {
             throw e;
         }
 
-        int maxDocs = MongoConfigUtil.getBatchSize(
-          taskContext.getConfiguration());
-        int curBatchSize = 0;
-
-        BulkWriteOperation bulkOp;
-        if (MongoConfigUtil.isBulkOrdered(taskContext.getConfiguration())) {
-            bulkOp = collection.initializeOrderedBulkOperation();
+        Configuration conf = taskContext.getConfiguration();
+        int numWriters = MongoConfigUtil.getBulkWriteThreads(conf);
+        if (numWriters > 1) {
+            if (MongoConfigUtil.isBulkOrdered(conf)) {
+                LOG.info("Using a single writer thread for ordered bulk "
+                    + "writes; set " + MongoConfigUtil.OUTPUT_BULK_ORDERED
+                    + " to false to use " + numWriters + " threads.");
+                numWriters = 1;
+            }
+            commitPipelined(
+              inputStream, fileLen, numWriters, taskContext);
         } else {
-            bulkOp = collection.initializeUnorderedBulkOperation();
+            commitSequential(inputStream, fileLen, taskContext);
         }
 
+        cleanupAfterCommit(inputStream, taskContext);
+    }
+
+    /**
+     * Read operations from the temporary file and write them to MongoDB,
+     * one batch at a time, from the calling thread.
+     */
+    private void commitSequential(
+      final FSDataInputStream inputStream,
+      final long fileLen,
+      final CompatUtils.TaskAttemptContext taskContext) throws IOException {
+        BulkWriteBuffer buffer = new BulkWriteBuffer(collection, taskContext);
+
         // Read Writables out of the temporary file.
         BSONWritable bw = new BSONWritable();
-        MongoUpdateWritable muw = new MongoUpdateWritable();
+        long filePos = 0;
         while (filePos < fileLen) {
-            try {
-                // Determine writable type, and perform corresponding operation
-                // on MongoDB.
-                int mwType = inputStream.readInt();
-                if (MongoWritableTypes.BSON_WRITABLE == mwType) {
-                    bw.readFields(inputStream);
-                    bulkOp.insert(new BasicDBObject(bw.getDoc().toMap()));
-                } else if (MongoWritableTypes.MONGO_UPDATE_WRITABLE == mwType) {
-                    muw.readFields(inputStream);
-                    DBObject query = new BasicDBObject(muw.getQuery().toMap());
-                    DBObject modifiers =
-                        new BasicDBObject(muw.getModifiers().toMap());
-                    BulkWriteRequestBuilder writeBuilder = bulkOp.find(query);
-                    if (muw.isReplace()) {
-                        writeBuilder.replaceOne(modifiers);
-                    } else if (muw.isUpsert()) {
-                        BulkUpdateRequestBuilder updateBuilder =
-                          writeBuilder.upsert();
-                        if (muw.isMultiUpdate()) {
-                            updateBuilder.update(modifiers);
-                        } else {
-                            updateBuilder.updateOne(modifiers);
-                        }
-                    } else {
-                        // No-upsert update.
-                        if (muw.isMultiUpdate()) {
-                            writeBuilder.update(modifiers);
-                        } else {
-                            writeBuilder.updateOne(modifiers);
-                        }
-                    }
-                } else {
-                    throw new IOException("Unrecognized type: " + mwType);
-                }
-                filePos = inputStream.getPos();
-                // Write to MongoDB if the batch is full, or if this is the last
-                // operation to be performed for the Task.
-                if (++curBatchSize >= maxDocs || filePos >= fileLen) {
-                    try {
-                        bulkOp.execute();
-                    } catch (MongoException e) {
-                        LOG.error("Could not write to MongoDB", e);
-                        throw e;
-                    }
-                    bulkOp = collection.initializeOrderedBulkOperation();
-                    curBatchSize = 0;
+            Object op = readOperation(inputStream, bw);
+            long nextPos = inputStream.getPos();
+            buffer.add(op, (int) (nextPos - filePos));
+            filePos = nextPos;
+            // Write to MongoDB if the batch is full, or if this is the last
+            // operation to be performed for the Task.
+            if (buffer.isFull() || filePos >= fileLen) {
+                buffer.flush();
 
-                    // Signal progress back to Hadoop framework so that we
-                    // don't time out.
-                    taskContext.progress();
-                }
-            } catch (IOException e) {
-                LOG.error("Error reading from temporary file", e);
-                throw e;
+                // Signal progress back to Hadoop framework so that we
+                // don't time out.
+                taskContext.progress();
             }
         }
+    }
 
-        cleanupAfterCommit(inputStream, taskContext);
+    /**
+     * Read operations from the temporary file in the calling thread, while
+     * several writer threads send them to MongoDB.
+     */
+    private void commitPipelined(
+      final FSDataInputStream inputStream,
+      final long fileLen,
+      final int numWriters,
+      final CompatUtils.TaskAttemptContext taskContext) throws IOException {
+        LOG.info("Committing with " + numWriters + " writer threads.");
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection, taskContext, numWriters);
+        boolean finished = false;
+        try {
+            BSONWritable bw = new BSONWritable();
+            long filePos = 0;
+            while (filePos < fileLen) {
+                Object op = readOperation(inputStream, bw);
+                long nextPos = inputStream.getPos();
+                pipeline.put(op, (int) (nextPos - filePos));
+                filePos = nextPos;
+            }
+            pipeline.finish();
+            finished = true;
+        } finally {
+            if (!finished) {
+                pipeline.abort();
+            }
+        }
+    }
+
+    /**
+     * Read the next operation from the temporary file.
+     * @return either a DBObject to insert or a MongoUpdateWritable
+     */
+    private static Object readOperation(
+      final FSDataInputStream inputStream, final BSONWritable bw)
+      throws IOException {
+        try {
+            // Determine writable type, and perform corresponding operation
+            // on MongoDB.
+            int mwType = inputStream.readInt();
+            if (MongoWritableTypes.BSON_WRITABLE == mwType) {
+                bw.readFields(inputStream);
+                return new BasicDBObject(bw.getDoc().toMap());
+            } else if (MongoWritableTypes.MONGO_UPDATE_WRITABLE == mwType) {
+                MongoUpdateWritable muw = new MongoUpdateWritable();
+                muw.readFields(inputStream);
+                return muw;
+            }
+            throw new IOException("Unrecognized type: " + mwType);
+        } catch (IOException e) {
+            LOG.error("Error reading from temporary file", e);
+            throw e;
+        }
     }
 
     public void abortTask(final CompatUtils.TaskAttemptContext taskContext)
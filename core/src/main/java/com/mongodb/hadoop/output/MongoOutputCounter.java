@@ -0,0 +1,44 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+/**
+ * Hadoop counters describing the bulk writes sent to MongoDB. The average
+ * batch size of a job is {@code BULK_OPERATIONS / BULK_WRITES}, in
+ * operations, and {@code BULK_BYTES / BULK_WRITES}, in bytes.
+ */
+public enum MongoOutputCounter {
+    /** The number of bulk writes executed. */
+    BULK_WRITES,
+    /** The number of operations sent in all bulk writes. */
+    BULK_OPERATIONS,
+    /**
+     * The encoded size of all operations sent, in bytes. Records written
+     * directly to MongoDB are only measured while
+     * {@link com.mongodb.hadoop.util.MongoConfigUtil#OUTPUT_BATCH_BYTES} is
+     * set.
+     */
+    BULK_BYTES,
+    /** The number of bulk writes that failed. */
+    BULK_WRITE_ERRORS,
+    /** The number of batches sent early because they reached the size limit in bytes. */
+    BATCHES_LIMITED_BY_BYTES,
+    /** The number of times the adaptive batch size was increased. */
+    BATCH_SIZE_INCREASED,
+    /** The number of times the adaptive batch size was decreased. */
+    BATCH_SIZE_DECREASED
+}
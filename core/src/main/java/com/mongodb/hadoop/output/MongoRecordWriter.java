@@ -45,6 +45,7 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
     private final CompatUtils.TaskAttemptContext context;
     private final BSONWritable bsonWritable;
     private FSDataOutputStream outputStream;
+    private BulkWriteBuffer buffer;
 
     public MongoRecordWriter(
       final DBCollection c,
@@ -53,6 +54,12 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
         context = ctx;
         bsonWritable = new BSONWritable();
 
+        if (MongoConfigUtil.isDirectOutput(ctx.getConfiguration())) {
+            LOG.info("Writing directly to " + c.getFullName());
+            buffer = new BulkWriteBuffer(c, ctx);
+            return;
+        }
+
         // Initialize output stream.
         try {
             FileSystem fs = FileSystem.get(ctx.getConfiguration());
@@ -77,6 +84,14 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
 
     @Override
     public void close(final TaskAttemptContext context) {
+        if (buffer != null) {
+            try {
+                buffer.flush();
+            } finally {
+                MongoConfigUtil.close(collection.getDB().getMongoClient());
+            }
+            return;
+        }
         if (outputStream != null) {
             try {
                 outputStream.close();
@@ -89,36 +104,58 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
 
     @Override
     public void write(final K key, final V value) throws IOException {
-        if (value instanceof MongoUpdateWritable) {
+        if (buffer != null) {
+            writeDirect(key, value);
+        } else if (value instanceof MongoUpdateWritable) {
             outputStream.writeInt(MongoWritableTypes.MONGO_UPDATE_WRITABLE);
             ((MongoUpdateWritable) value).write(outputStream);
         } else {
-            DBObject o = new BasicDBObject();
-            if (key instanceof BSONWritable) {
-                o.put("_id", ((BSONWritable) key).getDoc());
-            } else if (key instanceof BSONObject) {
-                o.put("_id", key);
-            } else {
-                o.put("_id", BSONWritable.toBSON(key));
-            }
-
-            if (value instanceof BSONWritable) {
-                o.putAll(((BSONWritable) value).getDoc());
-            } else if (value instanceof MongoOutput) {
-                ((MongoOutput) value).appendAsValue(o);
-            } else if (value instanceof BSONObject) {
-                o.putAll((BSONObject) value);
-            } else if (value instanceof Map) {
-                o.putAll((Map) value);
-            } else {
-                o.put("value", BSONWritable.toBSON(value));
-            }
             outputStream.writeInt(MongoWritableTypes.BSON_WRITABLE);
-            bsonWritable.setDoc(o);
+            bsonWritable.setDoc(toDBObject(key, value));
             bsonWritable.write(outputStream);
         }
     }
 
+    /**
+     * Queue a write in the in-memory batch, sending the batch to MongoDB
+     * when it is full.
+     */
+    private void writeDirect(final K key, final V value) {
+        if (value instanceof MongoUpdateWritable) {
+            buffer.update((MongoUpdateWritable) value);
+        } else {
+            buffer.upsertById(toDBObject(key, value));
+        }
+        if (buffer.isFull()) {
+            buffer.flush();
+            context.progress();
+        }
+    }
+
+    private DBObject toDBObject(final K key, final V value) {
+        DBObject o = new BasicDBObject();
+        if (key instanceof BSONWritable) {
+            o.put("_id", ((BSONWritable) key).getDoc());
+        } else if (key instanceof BSONObject) {
+            o.put("_id", key);
+        } else {
+            o.put("_id", BSONWritable.toBSON(key));
+        }
+
+        if (value instanceof BSONWritable) {
+            o.putAll(((BSONWritable) value).getDoc());
+        } else if (value instanceof MongoOutput) {
+            ((MongoOutput) value).appendAsValue(o);
+        } else if (value instanceof BSONObject) {
+            o.putAll((BSONObject) value);
+        } else if (value instanceof Map) {
+            o.putAll((Map) value);
+        } else {
+            o.put("value", BSONWritable.toBSON(value));
+        }
+        return o;
+    }
+
     /**
      * Add an index to be ensured before the Job starts running.
      * @param index a DBObject describing the keys of the index.
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.IOException;
+
+/**
+ * Finds the documents in a BSON file by reading only their length prefixes.
+ *
+ * A BSON file is a sequence of documents, each of which starts with its own
+ * length as a little-endian int32, so the documents can be walked without
+ * decoding them. Starting from an arbitrary offset, a document boundary is
+ * recognized by structural validation: a plausible length, top-level
+ * elements that exactly fill that length, and a few more documents that
+ * follow on from it in the same way.
+ */
+class BSONDocumentScanner {
+
+    /** The size of an empty document. */
+    static final int MIN_DOCUMENT_SIZE = 5;
+    /** The largest document the server will return, including overhead. */
+    static final int MAX_DOCUMENT_SIZE = 16 * 1024 * 1024 + 16 * 1024;
+
+    // How many consecutive documents must check out to accept a boundary.
+    private static final int CHAIN_LENGTH = 4;
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final FSDataInputStream in;
+    private final long length;
+    private final byte[] header = new byte[MIN_DOCUMENT_SIZE];
+    private byte[] window;
+
+    /**
+     * Create a new BSONDocumentScanner.
+     * @param in the stream over the BSON file
+     * @param length the length of the BSON file
+     */
+    BSONDocumentScanner(final FSDataInputStream in, final long length) {
+        this.in = in;
+        this.length = length;
+    }
+
+    /**
+     * Get the size of the document that starts at the given position. The
+     * position must be known to be a document boundary.
+     * @param pos the position of the document
+     * @return the size of the document in bytes
+     * @throws IOException if the length prefix cannot be read or does not
+     *         fit in the file
+     */
+    int documentSize(final long pos) throws IOException {
+        in.seek(pos);
+        in.readFully(header, 0, 4);
+        int size = readInt(header, 0);
+        if (size < MIN_DOCUMENT_SIZE || pos + size > length) {
+            throw new IOException(String.format(
+              "Invalid BSON document length %d at offset %d.", size, pos));
+        }
+        return size;
+    }
+
+    /**
+     * Find the first document boundary at or after a given position.
+     * @param from the position at which to start looking
+     * @param limit the position before which a boundary must start
+     * @return the position of the boundary, or -1 if none was found before
+     *         {@code limit}
+     * @throws IOException when an error occurs reading the file
+     */
+    long nextDocument(final long from, final long limit) throws IOException {
+        long end = Math.min(limit, length);
+        if (null == window) {
+            window = new byte[WINDOW_SIZE];
+        }
+        long windowStart = from;
+        while (windowStart < end) {
+            int windowLen = (int) Math.min(WINDOW_SIZE, length - windowStart);
+            in.seek(windowStart);
+            in.readFully(window, 0, windowLen);
+            int candidates = (int) Math.min(windowLen, end - windowStart);
+            for (int i = 0; i < candidates; ++i) {
+                long pos = windowStart + i;
+                // Rule out most positions without leaving the window.
+                if (i + MIN_DOCUMENT_SIZE <= windowLen
+                  && !isPlausibleHeader(pos, window, i)) {
+                    continue;
+                }
+                if (isDocumentStart(pos)) {
+                    return pos;
+                }
+            }
+            windowStart += candidates;
+        }
+        return -1;
+    }
+
+    /**
+     * Decide whether a document starts at the given position.
+     * @param pos the position to check
+     * @return {@code true} if the document at {@code pos} and the documents
+     *         after it are structurally valid
+     * @throws IOException when an error occurs reading the file
+     */
+    boolean isDocumentStart(final long pos) throws IOException {
+        long p = pos;
+        for (int i = 0; i < CHAIN_LENGTH && p < length; ++i) {
+            int size = validDocumentSize(p);
+            if (size < 0) {
+                return false;
+            }
+            p += size;
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of a structurally valid document at the given
+     *         position, or -1 if there is none
+     */
+    private int validDocumentSize(final long pos) throws IOException {
+        if (pos + MIN_DOCUMENT_SIZE > length) {
+            return -1;
+        }
+        in.seek(pos);
+        in.readFully(header, 0, MIN_DOCUMENT_SIZE);
+        if (!isPlausibleHeader(pos, header, 0)) {
+            return -1;
+        }
+        int size = readInt(header, 0);
+        return isValidDocument(pos, size) ? size : -1;
+    }
+
+    /**
+     * Walk the top-level elements of a document, skipping over their values
+     * without reading them, and check that they end right before its
+     * terminating null byte.
+     */
+    private boolean isValidDocument(final long pos, final int size)
+      throws IOException {
+        long end = pos + size - 1;
+        long p = pos + 4;
+        in.seek(p);
+        while (p < end) {
+            int type = in.read();
+            // Skip the field name.
+            p = skipCString(p + 1, end);
+            if (p < 0) {
+                return false;
+            }
+            long valueSize = valueSize(type, p, end);
+            if (valueSize < 0 || p + valueSize > end) {
+                return false;
+            }
+            p += valueSize;
+            in.seek(p);
+        }
+        return p == end && in.read() == 0;
+    }
+
+    /**
+     * @return the size of the value of the given type at the given position,
+     *         or -1 if it is not valid
+     */
+    private long valueSize(final int type, final long p, final long end)
+      throws IOException {
+        switch (type) {
+            case 0x06:
+            case 0x0A:
+            case 0x7F:
+            case 0xFF:
+                return 0;
+            case 0x08:
+                return 1;
+            case 0x10:
+                return 4;
+            case 0x01:
+            case 0x09:
+            case 0x11:
+            case 0x12:
+                return 8;
+            case 0x07:
+                return 12;
+            case 0x13:
+                return 16;
+            case 0x02:
+            case 0x0D:
+            case 0x0E:
+                int stringSize = readIntAt(p, end);
+                return stringSize < 1 ? -1 : 4L + stringSize;
+            case 0x03:
+            case 0x04:
+            case 0x0F:
+                int docSize = readIntAt(p, end);
+                return docSize < MIN_DOCUMENT_SIZE ? -1 : docSize;
+            case 0x05:
+                int binarySize = readIntAt(p, end);
+                return binarySize < 0 ? -1 : 5L + binarySize;
+            case 0x0B:
+                long patternEnd = skipCString(p, end);
+                long optionsEnd = patternEnd < 0 ? -1 : skipCString(patternEnd, end);
+                return optionsEnd < 0 ? -1 : optionsEnd - p;
+            case 0x0C:
+                int refSize = readIntAt(p, end);
+                return refSize < 1 ? -1 : 4L + refSize + 12;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return the position after the null byte ending the string at the
+     *         current position {@code p}, or -1 if it does not end before
+     *         {@code end}
+     */
+    private long skipCString(final long p, final long end) throws IOException {
+        long q = p;
+        while (q < end) {
+            int b = in.read();
+            ++q;
+            if (b <= 0) {
+                return b == 0 ? q : -1;
+            }
+        }
+        return -1;
+    }
+
+    private int readIntAt(final long p, final long end) throws IOException {
+        if (p + 4 > end) {
+            return -1;
+        }
+        in.seek(p);
+        in.readFully(header, 0, 4);
+        return readInt(header, 0);
+    }
+
+    private boolean isPlausibleHeader(
+      final long pos, final byte[] bytes, final int offset) {
+        int size = readInt(bytes, offset);
+        if (size < MIN_DOCUMENT_SIZE || size > MAX_DOCUMENT_SIZE
+          || pos + size > length) {
+            return false;
+        }
+        int type = bytes[offset + 4] & 0xFF;
+        if (MIN_DOCUMENT_SIZE == size) {
+            // An empty document is just its length and a null byte.
+            return 0 == type;
+        }
+        return (type >= 0x01 && type <= 0x13) || 0x7F == type || 0xFF == type;
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF)
+          | (bytes[offset + 1] & 0xFF) << 8
+          | (bytes[offset + 2] & 0xFF) << 16
+          | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -18,7 +18,9 @@ package com.mongodb.hadoop.splitter;
 
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.hadoop.input.BSONFileSplit;
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.util.CompatUtils;
+import com.mongodb.hadoop.util.DaemonThreadFactory;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -44,23 +46,41 @@ import org.bson.BSONObject;
 import org.bson.BasicBSONCallback;
 import org.bson.BasicBSONDecoder;
 import org.bson.BasicBSONEncoder;
-import org.bson.LazyBSONCallback;
-import org.bson.LazyBSONDecoder;
-import org.bson.LazyBSONObject;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class BSONSplitter extends Configured implements Tool {
     private static final String CORE_JAR = "mongo-hadoop-core.jar";
     private static final Log LOG = LogFactory.getLog(BSONSplitter.class);
+    private static final int BOUNDARY_CACHE_FILES = 64;
+
+    // Document boundaries found in the most recently used files, shared by
+    // all tasks in this JVM. Keyed on path, length, and modification time.
+    private static final Map<String, NavigableSet<Long>> BOUNDARY_CACHE =
+      new LinkedHashMap<String, NavigableSet<Long>>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(
+            final Map.Entry<String, NavigableSet<Long>> eldest) {
+              return size() > BOUNDARY_CACHE_FILES;
+          }
+      };
 
     private ArrayList<BSONFileSplit> splitsList;
     private Path inputPath;
     private final BasicBSONCallback callback = new BasicBSONCallback();
-    private final LazyBSONCallback lazyCallback = new LazyBSONCallback();
-    private final LazyBSONDecoder lazyDec = new LazyBSONDecoder();
     private final BasicBSONDecoder bsonDec = new BasicBSONDecoder();
     private final BasicBSONEncoder bsonEnc = new BasicBSONEncoder();
 
@@ -202,6 +222,12 @@ public class BSONSplitter extends Configured implements Tool {
             return;
         }
         if (length != 0) {
+            FileSystem fs = file.getPath().getFileSystem(getConf());
+            if (BSONBlockFile.isBlockFile(fs, file.getPath())) {
+                // The block index takes the place of a splits file.
+                readSplitsForBlockFile(file);
+                return;
+            }
             splitsList = (ArrayList<BSONFileSplit>) splitFile(file);
             writeSplits();
         } else {
@@ -209,11 +235,64 @@ public class BSONSplitter extends Configured implements Tool {
         }
     }
 
+    /**
+     * Calculate the splits for a block-compressed BSON file from its block
+     * index. Each split holds whole blocks, and ends at the first block
+     * boundary at least the split size past its start.
+     *
+     * @param file the FileStatus of the block-compressed BSON file.
+     * @throws IOException when an error occurs reading from the file
+     *
+     * @see com.mongodb.hadoop.io.BSONBlockFile
+     */
+    public void readSplitsForBlockFile(final FileStatus file)
+      throws IOException {
+        Path path = file.getPath();
+        FileSystem fs = path.getFileSystem(getConf());
+        long splitSize = getSplitSize(getConf(), file);
+        ArrayList<BSONFileSplit> splits = new ArrayList<BSONFileSplit>();
+        BSONBlockFile.Reader reader = new BSONBlockFile.Reader(
+          fs.open(path), file.getLen(), getConf());
+        try {
+            int numBlocks = reader.getBlockCount();
+            int first = 0;
+            while (first < numBlocks) {
+                long start = reader.getBlockOffset(first);
+                int next = first + 1;
+                while (next < numBlocks
+                  && reader.getBlockOffset(next) - start < splitSize) {
+                    ++next;
+                }
+                long end = next < numBlocks
+                  ? reader.getBlockOffset(next) : reader.getDataEnd();
+                splits.add(createFileSplit(file, fs, start, end - start));
+                first = next;
+            }
+        } finally {
+            reader.close();
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format(
+              "Found %d splits in block-compressed file %s.",
+              splits.size(), path));
+        }
+        splitsList = splits;
+    }
+
     /**
      * Calculate the splits for a given input file according to the settings
      * for split size only. This method does not respect options like
      * {@link com.mongodb.hadoop.util.MongoConfigUtil#BSON_READ_SPLITS bson.split.read_splits}.
      *
+     * The file is divided into regions along its block boundaries, which are
+     * scanned in parallel by up to
+     * {@link com.mongodb.hadoop.util.MongoConfigUtil#BSON_SPLIT_THREADS bson.split.threads}
+     * threads. Only the length prefix of each document is read. The scan of
+     * each region begins at the first document boundary found after the
+     * start of the region, and is checked against where the scan of the
+     * previous region left off; if they differ, the region is scanned again
+     * from the right position.
+     *
      * @param file the FileStatus for which to calculate splits.
      * @return a List of the calculated splits.
      *
@@ -226,46 +305,74 @@ public class BSONSplitter extends Configured implements Tool {
         FileSystem fs = path.getFileSystem(getConf());
         long length = file.getLen();
 
-        int numDocsRead = 0;
         long splitSize = getSplitSize(getConf(), file);
+        long regionSize = Math.max(splitSize, file.getBlockSize());
+        int numRegions = (int) ((length + regionSize - 1) / regionSize);
+        int numThreads = Math.min(
+          numRegions, MongoConfigUtil.getBSONSplitThreads(getConf()));
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Generating splits for " + path + " of up to " + splitSize + " bytes.");
+            LOG.debug(String.format(
+              "Generating splits for %s of up to %d bytes from %d regions "
+                + "using %d threads.",
+              path, splitSize, numRegions, numThreads));
         }
+
+        ExecutorService executor = null;
+        List<Future<RegionScan>> scans = null;
+        if (numThreads > 1) {
+            executor = Executors.newFixedThreadPool(
+              numThreads, new DaemonThreadFactory("bson-splitter"));
+            scans = new ArrayList<Future<RegionScan>>(numRegions);
+            for (int i = 0; i < numRegions; ++i) {
+                scans.add(executor.submit(new RegionScanner(
+                  fs, path, length, i * regionSize,
+                  Math.min(length, (i + 1) * regionSize), splitSize)));
+            }
+        }
+
         FSDataInputStream fsDataStream = fs.open(path);
-        long curSplitLen = 0;
-        long curSplitStart = 0;
+        BSONDocumentScanner scanner =
+          new BSONDocumentScanner(fsDataStream, length);
         try {
-            while (fsDataStream.getPos() + 1 < length) {
-                lazyCallback.reset();
-                lazyDec.decode(fsDataStream, lazyCallback);
-                LazyBSONObject bo = (LazyBSONObject) lazyCallback.get();
-                int bsonDocSize = bo.getBSONSize();
-                if (curSplitLen + bsonDocSize >= splitSize) {
-                    BSONFileSplit split = createFileSplit(file, fs,
-                      curSplitStart, curSplitLen);
-                    splits.add(split);
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(String.format("Creating new split (%d) %s", splits.size(), split));
+            // Where the next region actually begins.
+            long expectedStart = 0;
+            for (int i = 0; i < numRegions; ++i) {
+                long regionEnd = Math.min(length, (i + 1) * regionSize);
+                RegionScan scan = null;
+                if (scans != null) {
+                    try {
+                        scan = scans.get(i).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(
+                          "Interrupted while calculating splits");
+                    } catch (ExecutionException e) {
+                        LOG.debug("Could not scan region " + i, e.getCause());
+                    }
+                }
+                if (null == scan || scan.start != expectedStart) {
+                    if (scan != null && LOG.isDebugEnabled()) {
+                        LOG.debug(String.format(
+                          "Region %d was scanned from %d instead of %d; "
+                            + "scanning it again.",
+                          i, scan.start, expectedStart));
                     }
-                    curSplitStart = fsDataStream.getPos() - bsonDocSize;
-                    curSplitLen = 0;
+                    scan = scanRegion(
+                      scanner, expectedStart, regionEnd, length, splitSize);
                 }
-                curSplitLen += bsonDocSize;
-                numDocsRead++;
-                if (numDocsRead % 1000 == 0) {
-                    float splitProgress = 100f * ((float) fsDataStream.getPos() / length);
+                for (long[] range : scan.ranges) {
+                    BSONFileSplit split = createFileSplit(
+                      file, fs, range[0], range[1]);
+                    splits.add(split);
                     if (LOG.isDebugEnabled()) {
-                        LOG.debug(String.format("Read %d docs calculating splits for %s; %3.3f%% complete.",
-                            numDocsRead, file.getPath(), splitProgress));
+                        LOG.debug(String.format("Creating new split (%d) %s", splits.size(), split));
                     }
                 }
-            }
-            if (curSplitLen > 0) {
-                BSONFileSplit split = createFileSplit(file, fs,
-                  curSplitStart, curSplitLen);
-                splits.add(split);
+                expectedStart = scan.end;
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug(String.format("Final split (%d) %s", splits.size(), split.getPath()));
+                    float splitProgress = 100f * ((float) regionEnd / length);
+                    LOG.debug(String.format("Scanned %d of %d regions calculating splits for %s; %3.3f%% complete.",
+                        i + 1, numRegions, path, splitProgress));
                 }
             }
             if (LOG.isDebugEnabled()) {
@@ -274,11 +381,52 @@ public class BSONSplitter extends Configured implements Tool {
         } catch (IOException e) {
             LOG.warn("IOException: " + e);
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             fsDataStream.close();
         }
         return splits;
     }
 
+    /**
+     * Split up the documents that start within a region of a BSON file.
+     * Documents are added to a split until the next one would make it
+     * {@code splitSize} bytes or longer.
+     *
+     * @param scanner the scanner to read document lengths with.
+     * @param start the position of the first document in the region.
+     * @param regionEnd the end of the region.
+     * @param length the length of the file.
+     * @param splitSize the maximum size of a split.
+     * @return the splits in the region, and where the next region begins.
+     * @throws IOException when an error occurs reading from the file.
+     */
+    private static RegionScan scanRegion(
+      final BSONDocumentScanner scanner, final long start,
+      final long regionEnd, final long length, final long splitSize)
+      throws IOException {
+        RegionScan scan = new RegionScan(start);
+        long pos = start;
+        long curSplitStart = start;
+        long curSplitLen = 0;
+        while (pos < regionEnd && pos + 1 < length) {
+            int bsonDocSize = scanner.documentSize(pos);
+            if (curSplitLen > 0 && curSplitLen + bsonDocSize >= splitSize) {
+                scan.ranges.add(new long[]{curSplitStart, curSplitLen});
+                curSplitStart = pos;
+                curSplitLen = 0;
+            }
+            curSplitLen += bsonDocSize;
+            pos += bsonDocSize;
+        }
+        if (curSplitLen > 0) {
+            scan.ranges.add(new long[]{curSplitStart, curSplitLen});
+        }
+        scan.end = pos;
+        return scan;
+    }
+
     /**
      * Write out the splits file, if doing so has been enabled. Splits must
      * already have been calculated previously by a call to {@link
@@ -372,6 +520,13 @@ public class BSONSplitter extends Configured implements Tool {
      * iterating the given split. This may not be at the beginning of the split
      * if the splits were not calculated by BSONSplitter.
      *
+     * The position is found from document length prefixes alone. If a
+     * document boundary is already known a short way before the split, either
+     * from the ".splits" file or from an earlier call in this JVM, documents
+     * are skipped from there. Otherwise, the first position after the start
+     * of the split that passes structural validation is used. Either way,
+     * only the neighbourhood of the split is read.
+     *
      * @param split the FileSplit for which to find the starting position.
      * @return the position of the first complete document within the split.
      * @throws IOException when an error occurs while reading a file
@@ -381,61 +536,92 @@ public class BSONSplitter extends Configured implements Tool {
 
         FileSystem fs = split.getPath().getFileSystem(getConf());
         FileStatus file = fs.getFileStatus(split.getPath());
-        ArrayList<BSONFileSplit> splits;
-        BSONFileSplit[] splitsArr;
+        NavigableSet<Long> boundaries = getKnownBoundaries(fs, file);
 
-        // Get splits calculated on document boundaries.
-        if (MongoConfigUtil.getBSONReadSplits(getConf())) {
-            // Use the splits file to load splits on document boundaries.
-            try {
-                // Try to use the existing splits file.
-                loadSplitsFromSplitFile(
-                  file, getSplitsFilePath(file.getPath(), getConf()));
-            } catch (NoSplitFileException e) {
-                // Create a splits file from scratch.
-                readSplitsForFile(file);
-            }
-            splits = getAllSplits();
-        } else {
-            // Can't use a splits file, so create splits from scratch.
-            splits = (ArrayList<BSONFileSplit>) splitFile(file);
-        }
-        splitsArr = new BSONFileSplit[splits.size()];
-        splits.toArray(splitsArr);
-
-        // Get the first pre-calculated split occurring before the start of
-        // the given split.
-        long previousStart = split.getStart();
-        long startIterating = 0;
-        for (BSONFileSplit bfs : splitsArr) {
-            if (bfs.getStart() >= split.getStart()) {
-                startIterating = previousStart;
-                break;
-            }
-            previousStart = bfs.getStart();
+        long splitStart = split.getStart();
+        Long known = boundaries.floor(splitStart);
+        if (known != null && known == splitStart) {
+            return splitStart;
         }
 
-        // Beginning at 'startIterating', jump to the first document that begins
-        // at or beyond the given split.
         FSDataInputStream fsDataStream = null;
-        long pos = startIterating;
+        long pos;
         try {
             fsDataStream = fs.open(split.getPath());
-            fsDataStream.seek(pos);
-            while (pos < split.getStart()) {
-                callback.reset();
-                bsonDec.decode(fsDataStream, callback);
-                pos = fsDataStream.getPos();
+            BSONDocumentScanner scanner =
+              new BSONDocumentScanner(fsDataStream, file.getLen());
+            if (known != null
+              && splitStart - known <= getSplitSize(getConf(), file)) {
+                // Jump to the first document that begins at or beyond the
+                // given split.
+                pos = known;
+                while (pos < splitStart) {
+                    pos += scanner.documentSize(pos);
+                }
+            } else {
+                pos = scanner.nextDocument(splitStart, file.getLen());
+                if (pos < 0) {
+                    // No document begins within the rest of the file.
+                    pos = file.getLen();
+                }
             }
         } finally {
             if (null != fsDataStream) {
                 fsDataStream.close();
             }
         }
+        boundaries.add(pos);
 
         return pos;
     }
 
+    /**
+     * Get the document boundaries known so far in a file, loading them from
+     * the ".splits" file the first time the file is seen.
+     */
+    private NavigableSet<Long> getKnownBoundaries(
+      final FileSystem fs, final FileStatus file) throws IOException {
+        String key = file.getPath() + ":" + file.getLen() + ":"
+          + file.getModificationTime();
+        synchronized (BOUNDARY_CACHE) {
+            NavigableSet<Long> boundaries = BOUNDARY_CACHE.get(key);
+            if (boundaries != null) {
+                return boundaries;
+            }
+        }
+        NavigableSet<Long> boundaries = new ConcurrentSkipListSet<Long>();
+        boundaries.add(0L);
+        if (MongoConfigUtil.getBSONReadSplits(getConf())) {
+            Path splitFile = getSplitsFilePath(file.getPath(), getConf());
+            FSDataInputStream fsDataStream = null;
+            try {
+                FileStatus splitFileStatus = fs.getFileStatus(splitFile);
+                fsDataStream = fs.open(splitFile);
+                while (fsDataStream.getPos() < splitFileStatus.getLen()) {
+                    callback.reset();
+                    bsonDec.decode(fsDataStream, callback);
+                    boundaries.add(
+                      (Long) ((BSONObject) callback.get()).get("s"));
+                }
+                LOG.info("Found split file at : " + splitFileStatus);
+            } catch (FileNotFoundException e) {
+                LOG.debug("No split file at " + splitFile);
+            } finally {
+                if (null != fsDataStream) {
+                    fsDataStream.close();
+                }
+            }
+        }
+        synchronized (BOUNDARY_CACHE) {
+            NavigableSet<Long> existing = BOUNDARY_CACHE.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            BOUNDARY_CACHE.put(key, boundaries);
+        }
+        return boundaries;
+    }
+
     /**
      * Get the path to the ".splits" file for a BSON file.
      * @param filePath the path to the BSON file.
@@ -584,6 +770,69 @@ public class BSONSplitter extends Configured implements Tool {
         return 0;
     }
 
+    /**
+     * The splits found within one region of a BSON file.
+     */
+    private static class RegionScan {
+        // The position of the first document in the region.
+        private final long start;
+        // The position of the first document after the region.
+        private long end;
+        // The start and length of each split.
+        private final List<long[]> ranges = new ArrayList<long[]>();
+
+        RegionScan(final long start) {
+            this.start = start;
+        }
+    }
+
+    /**
+     * Scans one region of a BSON file, starting from the first document
+     * boundary that can be found in it.
+     */
+    private static class RegionScanner implements Callable<RegionScan> {
+        private final FileSystem fs;
+        private final Path path;
+        private final long length;
+        private final long regionStart;
+        private final long regionEnd;
+        private final long splitSize;
+
+        RegionScanner(
+          final FileSystem fs, final Path path, final long length,
+          final long regionStart, final long regionEnd,
+          final long splitSize) {
+            this.fs = fs;
+            this.path = path;
+            this.length = length;
+            this.regionStart = regionStart;
+            this.regionEnd = regionEnd;
+            this.splitSize = splitSize;
+        }
+
+        @Override
+        public RegionScan call() throws IOException {
+            FSDataInputStream stream = fs.open(path);
+            try {
+                BSONDocumentScanner scanner =
+                  new BSONDocumentScanner(stream, length);
+                long start = regionStart;
+                if (start > 0) {
+                    start = scanner.nextDocument(
+                      start, start + BSONDocumentScanner.MAX_DOCUMENT_SIZE);
+                    if (start < 0) {
+                        // Leave this region to be scanned sequentially.
+                        return null;
+                    }
+                }
+                return scanRegion(
+                  scanner, start, regionEnd, length, splitSize);
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
     public static void main(final String[] args) throws Exception {
         System.exit(ToolRunner.run(new BSONSplitter(), args));
     }
@@ -0,0 +1,459 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the splits calculated for a collection in
+ * {@link MongoConfigUtil#INPUT_SPLITS_CACHE_DIR}, so that later jobs with the
+ * same input settings do not have to calculate them again.
+ *
+ * Cached splits are keyed by a hash of all {@code mongo.input.*} and
+ * {@code mongo.splitter.*} settings, which include the namespace, query,
+ * split key and splitter settings. Before they are used, a fingerprint of the
+ * collection is compared with the one taken when they were calculated: its
+ * document count and data size must be within
+ * {@link MongoConfigUtil#INPUT_SPLITS_CACHE_MAX_DRIFT}, and, if the collection
+ * is sharded, the epoch and version of the collection and the version of its
+ * latest chunk must be unchanged. Otherwise the splitter that
+ * {@link MongoSplitterFactory#getSplitterByStats} chooses calculates the
+ * splits, and the cache is updated.
+ *
+ * The cache holds every split, including those that are empty when they are
+ * calculated, since documents may be inserted into their ranges later. If
+ * {@link MongoConfigUtil#ENABLE_FILTER_EMPTY_SPLITS} is set, empty splits are
+ * left out of the cached plan each time it is used instead.
+ *
+ * Cache files are only readable by their owner, and the user names and
+ * passwords of the URIs of the splits are not written to them; they are
+ * taken from the current job when the splits are read. Files older than
+ * {@link MongoConfigUtil#INPUT_SPLITS_CACHE_MAX_AGE} are not used, and are
+ * deleted when the cache is written.
+ */
+public class CachingMongoSplitter extends MongoSplitter {
+
+    private static final Log LOG = LogFactory.getLog(CachingMongoSplitter.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_SETTINGS = "mongo.input.splits.cache.";
+    private static final String FILE_PREFIX = "splits-";
+    private static final FsPermission FILE_PERMISSION =
+      new FsPermission((short) 0600);
+
+    public CachingMongoSplitter() {
+    }
+
+    public CachingMongoSplitter(final Configuration conf) {
+        super(conf);
+    }
+
+    @Override
+    public List<InputSplit> calculateSplits() throws SplitFailedException {
+        Configuration conf = getConfiguration();
+        MongoClientURI inputURI = MongoConfigUtil.getInputURI(conf);
+        Path file = new Path(
+          MongoConfigUtil.getSplitsCacheDir(conf), getCacheKey(conf));
+        Fingerprint fingerprint = takeFingerprint(inputURI);
+
+        List<InputSplit> splits = null;
+        if (fingerprint != null) {
+            splits = readCache(conf, file, fingerprint);
+            if (splits != null) {
+                LOG.info("Using " + splits.size() + " cached splits for "
+                  + inputURI.getDatabase() + "." + inputURI.getCollection()
+                  + " from " + file);
+            }
+        }
+        if (null == splits) {
+            Configuration unfiltered = new Configuration(conf);
+            MongoConfigUtil.setEnableFilterEmptySplits(unfiltered, false);
+            splits = calculateUncachedSplits(inputURI, unfiltered);
+            if (fingerprint != null) {
+                writeCache(conf, file, fingerprint, splits);
+            }
+        }
+        if (MongoConfigUtil.isFilterEmptySplitsEnabled(conf)) {
+            splits = filterEmptySplitsInParallel(splits);
+        }
+        return splits;
+    }
+
+    /**
+     * Calculate the splits of the input collection with the splitter that
+     * {@link MongoSplitterFactory#getSplitterByStats} chooses.
+     * @param inputURI the input collection
+     * @param conf the Configuration, with empty splits kept
+     * @return the splits
+     * @throws SplitFailedException if the splits could not be calculated
+     */
+    protected List<InputSplit> calculateUncachedSplits(
+      final MongoClientURI inputURI, final Configuration conf)
+      throws SplitFailedException {
+        return MongoSplitterFactory.getSplitterByStats(inputURI, conf)
+          .calculateSplits();
+    }
+
+    /**
+     * @return the name of the cache file for the input settings in a
+     *         Configuration
+     */
+    static String getCacheKey(final Configuration conf) {
+        Map<String, String> settings = new TreeMap<String, String>();
+        for (Map.Entry<String, String> entry : conf) {
+            String name = entry.getKey();
+            if ((name.startsWith("mongo.input.")
+              || name.startsWith("mongo.splitter."))
+              && !name.startsWith(CACHE_SETTINGS)) {
+                settings.put(name, entry.getValue());
+            }
+        }
+        return FILE_PREFIX + MD5Hash.digest(settings.toString());
+    }
+
+    /**
+     * Read cached splits, if there are any for the given fingerprint.
+     * @return the splits, or {@code null} if they were not cached, are too
+     *         old, were calculated for a different fingerprint, or could not
+     *         be read
+     */
+    static List<InputSplit> readCache(
+      final Configuration conf, final Path file, final Fingerprint current) {
+        FSDataInputStream in = null;
+        try {
+            FileSystem fs = file.getFileSystem(conf);
+            if (!fs.exists(file)) {
+                return null;
+            }
+            if (isExpired(conf, fs.getFileStatus(file))) {
+                LOG.info("Cached splits in " + file + " are too old.");
+                return null;
+            }
+            in = fs.open(file);
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            Fingerprint cached = new Fingerprint(
+              in.readBoolean() ? in.readUTF() : null,
+              in.readLong(), in.readLong());
+            if (!current.matches(
+              cached, MongoConfigUtil.getSplitsCacheMaxDrift(conf))) {
+                LOG.info("Cached splits in " + file + " are out of date: "
+                  + cached + " is now " + current);
+                return null;
+            }
+            int count = in.readInt();
+            List<InputSplit> splits = new ArrayList<InputSplit>(count);
+            String inputUserInfo =
+              getUserInfo(MongoConfigUtil.getInputURI(conf));
+            String authUserInfo =
+              getUserInfo(MongoConfigUtil.getAuthURI(conf));
+            for (int i = 0; i < count; ++i) {
+                MongoInputSplit split = new MongoInputSplit();
+                split.readFields(in);
+                split.setInputURI(
+                  withUserInfo(split.getInputURI(), inputUserInfo));
+                split.setAuthURI(
+                  withUserInfo(split.getAuthURI(), authUserInfo));
+                splits.add(split);
+            }
+            return splits;
+        } catch (IOException e) {
+            LOG.warn("Could not read cached splits from " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    LOG.warn("Could not close " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cache splits along with the fingerprint of the collection they were
+     * calculated for. The file is replaced as a whole, so that concurrent
+     * jobs never read a partial plan, and expired files are deleted. Failures
+     * are logged and ignored.
+     */
+    static void writeCache(
+      final Configuration conf, final Path file, final Fingerprint fingerprint,
+      final List<InputSplit> splits) {
+        for (InputSplit split : splits) {
+            if (split.getClass() != MongoInputSplit.class) {
+                LOG.info("Not caching splits of type "
+                  + split.getClass().getName());
+                return;
+            }
+        }
+        Path temp = new Path(
+          file.getParent(), "." + file.getName() + "." + System.nanoTime());
+        FSDataOutputStream out = null;
+        try {
+            FileSystem fs = file.getFileSystem(conf);
+            // Only the owner may read the queries and hosts of the splits.
+            out = FileSystem.create(fs, temp, FILE_PERMISSION);
+            out.writeInt(FORMAT_VERSION);
+            out.writeBoolean(fingerprint.version != null);
+            if (fingerprint.version != null) {
+                out.writeUTF(fingerprint.version);
+            }
+            out.writeLong(fingerprint.count);
+            out.writeLong(fingerprint.size);
+            out.writeInt(splits.size());
+            for (InputSplit split : splits) {
+                MongoInputSplit copy = new MongoInputSplit((MongoInputSplit) split);
+                copy.setInputURI(withUserInfo(copy.getInputURI(), null));
+                copy.setAuthURI(withUserInfo(copy.getAuthURI(), null));
+                copy.write(out);
+            }
+            out.close();
+            out = null;
+            fs.delete(file, false);
+            if (!fs.rename(temp, file)) {
+                LOG.warn("Could not move cached splits to " + file);
+                fs.delete(temp, false);
+            }
+            deleteExpired(conf, fs, file.getParent());
+        } catch (IOException e) {
+            LOG.warn("Could not cache splits in " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOG.warn("Could not close " + temp, e);
+                }
+            }
+        }
+    }
+
+    private static boolean isExpired(
+      final Configuration conf, final FileStatus status) {
+        return System.currentTimeMillis() - status.getModificationTime()
+          > MongoConfigUtil.getSplitsCacheMaxAge(conf);
+    }
+
+    /**
+     * Delete the cache files, and the temporary files of failed writes, that
+     * are older than {@link MongoConfigUtil#INPUT_SPLITS_CACHE_MAX_AGE}.
+     */
+    static void deleteExpired(
+      final Configuration conf, final FileSystem fs, final Path dir)
+      throws IOException {
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if ((name.startsWith(FILE_PREFIX)
+              || name.startsWith("." + FILE_PREFIX))
+              && !status.isDirectory() && isExpired(conf, status)) {
+                LOG.info("Deleting expired cached splits " + status.getPath());
+                fs.delete(status.getPath(), false);
+            }
+        }
+    }
+
+    /**
+     * @return the user name and password of a URI, followed by {@code @}, or
+     *         {@code null} if it has none
+     */
+    static String getUserInfo(final MongoClientURI uri) {
+        if (null == uri) {
+            return null;
+        }
+        String str = uri.getURI();
+        int start = str.indexOf("://") + 3;
+        int end = str.indexOf('/', start);
+        int at = str.lastIndexOf('@', end < 0 ? str.length() : end);
+        return at < start ? null : str.substring(start, at + 1);
+    }
+
+    /**
+     * Replace the user name and password of a URI.
+     * @param uri the URI, or {@code null}
+     * @param userInfo the user name and password, as returned by
+     *                 {@link #getUserInfo(MongoClientURI)}, or {@code null}
+     *                 to remove them
+     * @return the new URI
+     */
+    static MongoClientURI withUserInfo(
+      final MongoClientURI uri, final String userInfo) {
+        if (null == uri) {
+            return null;
+        }
+        String current = getUserInfo(uri);
+        if (null == current && null == userInfo) {
+            return uri;
+        }
+        String str = uri.getURI();
+        int start = str.indexOf("://") + 3;
+        String rest = str.substring(
+          start + (null == current ? 0 : current.length()));
+        return new MongoClientURI(str.substring(0, start)
+          + (null == userInfo ? "" : userInfo) + rest);
+    }
+
+    /**
+     * Take a fingerprint of the input collection.
+     * @return the fingerprint, or {@code null} if it could not be taken, in
+     *         which case the cache is not used
+     */
+    Fingerprint takeFingerprint(final MongoClientURI inputURI) {
+        MongoClientURI authURI = MongoConfigUtil.getAuthURI(getConfiguration());
+        DBCollection coll = null;
+        try {
+            if (authURI != null) {
+                coll = MongoConfigUtil.getCollectionWithAuth(inputURI, authURI);
+            } else {
+                coll = MongoConfigUtil.getCollection(inputURI);
+            }
+            CommandResult stats = coll.getStats();
+            if (!stats.ok()) {
+                LOG.warn("Could not get collection stats: "
+                  + stats.getErrorMessage());
+                return null;
+            }
+            String version = null;
+            if (stats.getBoolean("sharded", false)) {
+                version = getShardVersion(coll);
+                if (null == version) {
+                    return null;
+                }
+            }
+            return new Fingerprint(
+              version, ((Number) stats.get("count")).longValue(),
+              ((Number) stats.get("size")).longValue());
+        } catch (MongoException e) {
+            LOG.warn("Could not take fingerprint of "
+              + inputURI.getDatabase() + "." + inputURI.getCollection()
+              + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (coll != null) {
+                MongoConfigUtil.close(coll.getDB().getMongoClient());
+            }
+        }
+    }
+
+    /**
+     * @return the epoch and version of a sharded collection and the version
+     *         of its most recently changed chunk, or {@code null} if the
+     *         collection is not in config.collections
+     */
+    private static String getShardVersion(final DBCollection coll) {
+        DB config = coll.getDB().getSisterDB("config");
+        DBObject collection = config.getCollection("collections").findOne(
+          new BasicDBObject("_id", coll.getFullName()));
+        if (null == collection) {
+            return null;
+        }
+        // Chunks refer to their collection by namespace before MongoDB 5.0
+        // and by UUID after.
+        DBObject latest = findLatestChunk(
+          config, new BasicDBObject("ns", coll.getFullName()));
+        if (null == latest && collection.get("uuid") != null) {
+            latest = findLatestChunk(
+              config, new BasicDBObject("uuid", collection.get("uuid")));
+        }
+        return collection.get("lastmodEpoch") + "/"
+          + collection.get("lastmod") + "/"
+          + (null == latest ? null : latest.get("lastmod"));
+    }
+
+    private static DBObject findLatestChunk(
+      final DB config, final DBObject query) {
+        DBCursor cursor = config.getCollection("chunks").find(query)
+          .sort(new BasicDBObject("lastmod", -1)).limit(1);
+        try {
+            return cursor.hasNext() ? cursor.next() : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * What a collection looked like when its splits were calculated.
+     */
+    static class Fingerprint {
+        private final String version;
+        private final long count;
+        private final long size;
+
+        /**
+         * @param version the shard version of the collection, or
+         *                {@code null} if it is not sharded
+         * @param count the number of documents in the collection
+         * @param size the size of the data in the collection, in bytes
+         */
+        Fingerprint(final String version, final long count, final long size) {
+            this.version = version;
+            this.count = count;
+            this.size = size;
+        }
+
+        /**
+         * @return {@code true} if splits calculated for the cached
+         *         fingerprint can still be used for this one
+         */
+        boolean matches(final Fingerprint cached, final float maxDrift) {
+            if (version == null
+              ? cached.version != null : !version.equals(cached.version)) {
+                return false;
+            }
+            return withinDrift(count, cached.count, maxDrift)
+              && withinDrift(size, cached.size, maxDrift);
+        }
+
+        private static boolean withinDrift(
+          final long now, final long then, final float maxDrift) {
+            return Math.abs(now - then) <= maxDrift * Math.max(1, then);
+        }
+
+        @Override
+        public String toString() {
+            return "{version=" + version + ", count=" + count
+              + ", size=" + size + "}";
+        }
+    }
+}
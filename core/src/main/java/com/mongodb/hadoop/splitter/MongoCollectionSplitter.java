@@ -23,6 +23,8 @@ import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.MongoIndexCache;
 import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
@@ -39,6 +41,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 public abstract class MongoCollectionSplitter extends MongoSplitter {
 
@@ -69,14 +72,13 @@ public abstract class MongoCollectionSplitter extends MongoSplitter {
     /**
      * Contacts the config server and builds a map of each shard's name to its
      * host(s) by examining config.shards.
+     * @param configDB the config database, as returned by {@link #getConfigDB()}
      * @return a Map of shard name onto shard hostnames
      */
-    protected Map<String, List<String>> getShardsMap() {
+    protected Map<String, List<String>> getShardsMap(final DB configDB) {
         DBCursor cur = null;
         HashMap<String, List<String>> shardsMap = new HashMap<String, List<String>>();
-        DB configDB;
         try {
-            configDB = getConfigDB();
             DBCollection shardsCollection = configDB.getCollection("shards");
             cur = shardsCollection.find();
             while (cur.hasNext()) {
@@ -97,6 +99,12 @@ public abstract class MongoCollectionSplitter extends MongoSplitter {
         return shardsMap;
     }
 
+    /**
+     * Get the config database through a client to the input URI. The client
+     * must be released with {@link MongoConfigUtil#close} once the caller is
+     * done with it.
+     * @return the config database
+     */
     protected DB getConfigDB() {
         MongoClient mongo;
         MongoClientURI inputURI = MongoConfigUtil.getInputURI(getConfiguration());
@@ -166,6 +174,128 @@ public abstract class MongoCollectionSplitter extends MongoSplitter {
         return rewriteURI(originalURI, Collections.singletonList(newURI));
     }
 
+    /**
+     * Get the statistics of a collection for estimating the size of its
+     * splits.
+     * @param collection the collection
+     * @return the result of the collStats command, or {@code null} if it
+     *         could not be run
+     */
+    protected static DBObject getStatsForEstimate(
+      final DBCollection collection) {
+        try {
+            DBObject stats = collection.getStats();
+            if (stats.get("ok") != null
+              && ((Number) stats.get("ok")).intValue() == 1) {
+                return stats;
+            }
+            LOG.warn("Could not get collection stats: " + stats);
+        } catch (MongoException e) {
+            LOG.warn("Could not get collection stats: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Record in each split with min/max bounds the name of the index that
+     * matches its bounds, so that tasks do not have to look up the indexes
+     * of the collection before reading.
+     * @param splits the splits, all of type {@link MongoInputSplit}
+     * @param collection the input collection
+     */
+    protected static void resolveHints(
+      final List<? extends InputSplit> splits, final DBCollection collection) {
+        for (InputSplit split : splits) {
+            MongoInputSplit mis = (MongoInputSplit) split;
+            Set<String> boundFields = mis.getBoundFields();
+            if (boundFields != null && null == mis.getHint()) {
+                mis.setHint(
+                  MongoIndexCache.findIndexName(collection, boundFields));
+            }
+        }
+    }
+
+    /**
+     * Get the statistics of one shard from the statistics of a sharded
+     * collection.
+     * @param stats collection statistics, as returned by the collStats
+     *              command through a mongos, or {@code null}
+     * @param shard the name of the shard
+     * @return the statistics of the shard, or {@code null} if there are none
+     */
+    protected static DBObject getShardStats(
+      final DBObject stats, final String shard) {
+        if (null == stats || !(stats.get("shards") instanceof DBObject)) {
+            return null;
+        }
+        Object shardStats = ((DBObject) stats.get("shards")).get(shard);
+        return shardStats instanceof DBObject ? (DBObject) shardStats : null;
+    }
+
+    /**
+     * Get the statistics of the input collection, using the same client as
+     * {@link #getConfigDB()}.
+     * @param configDB the config database, as returned by {@link #getConfigDB()}
+     * @return the statistics of the input collection, or {@code null} if
+     *         they could not be read
+     */
+    protected DBObject getInputStatsForEstimate(final DB configDB) {
+        MongoClientURI inputURI =
+          MongoConfigUtil.getInputURI(getConfiguration());
+        return getStatsForEstimate(
+          configDB.getMongoClient().getDB(inputURI.getDatabase())
+            .getCollection(inputURI.getCollection()));
+    }
+
+    /**
+     * Get statistics for the documents in a range of split keys, to pass to
+     * {@link #estimateSplitSizes} when the splits only cover that range. Their
+     * size is estimated from the average document size of the collection.
+     * @param stats collection statistics, as returned by the collStats
+     *              command, or {@code null}
+     * @param count the number of documents in the range
+     * @return statistics with the count and size of the documents in the
+     *         range, or {@code null} if they cannot be estimated
+     */
+    protected static DBObject getRangeStats(
+      final DBObject stats, final long count) {
+        if (null == stats) {
+            return null;
+        }
+        Object avgObjSize = stats.get("avgObjSize");
+        if (!(avgObjSize instanceof Number) && count > 0) {
+            return null;
+        }
+        long size = count > 0 ? (long) (count * ((Number) avgObjSize).doubleValue()) : 0;
+        return new BasicDBObject("count", count).append("size", size);
+    }
+
+    /**
+     * Divide the number of documents and bytes given by collection statistics
+     * evenly among some splits, as their estimated count and size.
+     * @param splits the splits, all of type {@link MongoInputSplit}
+     * @param stats collection statistics, as returned by the collStats
+     *              command; nothing is estimated if this is {@code null}
+     */
+    protected static void estimateSplitSizes(
+      final List<? extends InputSplit> splits, final DBObject stats) {
+        if (null == stats || splits.isEmpty()) {
+            return;
+        }
+        Object count = stats.get("count");
+        Object size = stats.get("size");
+        if (!(count instanceof Number && size instanceof Number)) {
+            return;
+        }
+        long splitCount = ((Number) count).longValue() / splits.size();
+        long splitSize = ((Number) size).longValue() / splits.size();
+        for (InputSplit split : splits) {
+            MongoInputSplit mis = (MongoInputSplit) split;
+            mis.setEstimatedCount(splitCount);
+            mis.setEstimatedSize(splitSize);
+        }
+    }
+
     /**
      * Create an instance of MongoInputSplit that represents a view of this
      * splitter's input URI between the given lower/upper bounds. If this
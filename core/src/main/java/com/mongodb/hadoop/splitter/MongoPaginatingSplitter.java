@@ -5,6 +5,7 @@ import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -108,6 +109,17 @@ public class MongoPaginatingSplitter extends MongoCollectionSplitter {
 
                 minBound = maxBound;
             } while (maxBound != null);
+            // Every split but the last holds exactly minDocs documents.
+            DBObject stats = getStatsForEstimate(inputCollection);
+            Object avgObjSize = null == stats ? null : stats.get("avgObjSize");
+            for (InputSplit split : splits) {
+                MongoInputSplit mis = (MongoInputSplit) split;
+                mis.setEstimatedCount(minDocs);
+                if (avgObjSize instanceof Number) {
+                    mis.setEstimatedSize(
+                      minDocs * ((Number) avgObjSize).longValue());
+                }
+            }
         } finally {
             MongoConfigUtil.close(inputCollection.getDB().getMongoClient());
         }
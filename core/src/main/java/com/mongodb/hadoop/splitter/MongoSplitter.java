@@ -16,13 +16,20 @@
 
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.MongoInterruptedException;
 import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.DaemonThreadFactory;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public abstract class MongoSplitter {
 
@@ -53,16 +60,75 @@ public abstract class MongoSplitter {
      */
     public static List<InputSplit> filterEmptySplits(
       final List<InputSplit> splits) {
+        return filterEmptySplits(splits, 1);
+    }
+
+    /**
+     * Get a list of nonempty input splits only, checking several splits at
+     * once. Each check asks for a single {@code _id} within the split.
+     *
+     * @param splits a list of input splits
+     * @param threads the number of splits to check at once
+     * @return a new list of nonempty input splits, in their original order
+     */
+    public static List<InputSplit> filterEmptySplits(
+      final List<InputSplit> splits, final int threads) {
         List<InputSplit> results = new ArrayList<InputSplit>(splits.size());
-        for (InputSplit split : splits) {
-            MongoInputSplit mis = (MongoInputSplit) split;
-            if (mis.getCursor().hasNext()) {
-                results.add(mis);
-            } else {
-                MongoConfigUtil.close(
-                  mis.getCursor().getCollection().getDB().getMongoClient());
+        if (threads <= 1 || splits.size() <= 1) {
+            for (InputSplit split : splits) {
+                if (!((MongoInputSplit) split).isEmpty()) {
+                    results.add(split);
+                }
+            }
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+          Math.min(threads, splits.size()), new DaemonThreadFactory("mongo-split-filter"));
+        try {
+            List<Future<Boolean>> checks =
+              new ArrayList<Future<Boolean>>(splits.size());
+            for (InputSplit split : splits) {
+                final MongoInputSplit mis = (MongoInputSplit) split;
+                checks.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return mis.isEmpty();
+                    }
+                }));
             }
+            for (int i = 0; i < splits.size(); ++i) {
+                if (!checks.get(i).get()) {
+                    results.add(splits.get(i));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException(
+              "Interrupted while filtering empty splits", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(
+              "Could not check for empty splits", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
         return results;
     }
+
+    /**
+     * Get a list of nonempty input splits only, using the number of threads
+     * given by {@link MongoConfigUtil#FILTER_EMPTY_SPLITS_THREADS}.
+     *
+     * @param splits a list of input splits
+     * @return a new list of nonempty input splits
+     */
+    protected List<InputSplit> filterEmptySplitsInParallel(
+      final List<InputSplit> splits) {
+        return filterEmptySplits(
+          splits,
+          MongoConfigUtil.getFilterEmptySplitsThreads(getConfiguration()));
+    }
 }
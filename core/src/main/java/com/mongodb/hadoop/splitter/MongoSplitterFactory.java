@@ -25,7 +25,11 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Examines a collection and dynamically chooses which implementation of MongoSplitter to use, based on our configuration and the
@@ -35,6 +39,11 @@ public final class MongoSplitterFactory {
 
     private static final Log LOG = LogFactory.getLog(MongoSplitterFactory.class);
 
+    // Server versions by cluster, so that buildinfo is only run once per
+    // cluster when splitting many collections.
+    private static final ConcurrentMap<List<String>, List> VERSIONS =
+      new ConcurrentHashMap<List<String>, List>();
+
     private MongoSplitterFactory() {
     }
 
@@ -65,7 +74,6 @@ public final class MongoSplitterFactory {
             MongoClientURI authURI = MongoConfigUtil.getAuthURI(config);
             CommandResult stats;
             DBCollection coll = null;
-            CommandResult buildInfo;
             try {
                 if (authURI != null) {
                     coll = MongoConfigUtil.getCollectionWithAuth(uri, authURI);
@@ -75,57 +83,105 @@ public final class MongoSplitterFactory {
                     coll = MongoConfigUtil.getCollection(uri);
                     stats = coll.getStats();
                 }
-                buildInfo = coll.getDB().command("buildinfo");
-            } finally {
-                if (coll != null) {
-                    MongoConfigUtil.close(coll.getDB().getMongoClient());
-                }
-            }
 
-            if (!stats.getBoolean("ok", false)) {
-                throw new RuntimeException("Unable to calculate input splits from collection stats: " + stats.getString("errmsg"));
-            }
+                if (!stats.getBoolean("ok", false)) {
+                    throw new RuntimeException("Unable to calculate input splits from collection stats: " + stats.getString("errmsg"));
+                }
 
-            if (!stats.getBoolean("sharded", false)) {
-                // Prefer SampleSplitter.
-                List versionArray = (List) buildInfo.get("versionArray");
+                List versionArray = getVersionArray(
+                  coll, authURI != null ? authURI : uri);
                 boolean sampleOperatorSupported = (
                   (Integer) versionArray.get(0) > 3
                     || ((Integer) versionArray.get(0) == 3
                     && (Integer) versionArray.get(1) >= 2));
-                if (sampleOperatorSupported) {
-                    returnVal = new SampleSplitter(config);
+                if (MongoConfigUtil.isCostBasedSplitterEnabled(config)) {
+                    returnVal = new SplitterPlanner(
+                      config, coll, stats, sampleOperatorSupported).choose();
                 } else {
-                    returnVal = new StandaloneMongoSplitter(config);
+                    returnVal = chooseByRules(
+                      config, stats, sampleOperatorSupported);
                 }
-            } else {
-                // Collection is sharded
-                if (MongoConfigUtil.isShardChunkedSplittingEnabled(config)) {
-                    // Creates one split per chunk. 
-                    returnVal = new ShardChunkMongoSplitter(config);
-                } else if (MongoConfigUtil.canReadSplitsFromShards(config)) {
-                    // Creates one split per shard, but ignores chunk bounds. 
-                    // Reads from shards directly (bypassing mongos).
-                    // Not usually recommended.
-                    returnVal = new ShardMongoSplitter(config);
-                } else {
-                    //Not configured to use chunks or shards -
-                    //so treat this the same as if it was an unsharded collection
-                    returnVal = new StandaloneMongoSplitter(config);
+            } finally {
+                if (coll != null) {
+                    MongoConfigUtil.close(coll.getDB().getMongoClient());
                 }
             }
         }
         return returnVal;
     }
 
+    private static MongoCollectionSplitter chooseByRules(
+      final Configuration config, final CommandResult stats,
+      final boolean sampleOperatorSupported) {
+        if (!stats.getBoolean("sharded", false)) {
+            // Prefer SampleSplitter.
+            if (sampleOperatorSupported) {
+                return new SampleSplitter(config);
+            }
+            return new StandaloneMongoSplitter(config);
+        }
+        // Collection is sharded
+        if (MongoConfigUtil.isShardChunkedSplittingEnabled(config)) {
+            // Creates one split per chunk.
+            return new ShardChunkMongoSplitter(config);
+        } else if (MongoConfigUtil.canReadSplitsFromShards(config)) {
+            // Creates one split per shard, but ignores chunk bounds.
+            // Reads from shards directly (bypassing mongos).
+            // Not usually recommended.
+            return new ShardMongoSplitter(config);
+        }
+        //Not configured to use chunks or shards -
+        //so treat this the same as if it was an unsharded collection
+        return new StandaloneMongoSplitter(config);
+    }
+
+    /**
+     * Get the server version of the cluster a collection is on, running
+     * {@code buildinfo} only the first time the cluster is asked about, even
+     * if several threads ask at once.
+     */
+    static List getVersionArray(
+      final DBCollection coll, final MongoClientURI uri) {
+        List<String> cluster = new ArrayList<String>(uri.getHosts());
+        Collections.sort(cluster);
+        List versionArray = VERSIONS.get(cluster);
+        if (null == versionArray) {
+            synchronized (VERSIONS) {
+                versionArray = VERSIONS.get(cluster);
+                if (null == versionArray) {
+                    CommandResult buildInfo =
+                      coll.getDB().command("buildinfo");
+                    versionArray = (List) buildInfo.get("versionArray");
+                    if (versionArray != null) {
+                        VERSIONS.put(cluster, versionArray);
+                    }
+                }
+            }
+        }
+        return versionArray;
+    }
+
     public static MongoSplitter getSplitter(final Configuration config) {
+        MongoConfigUtil.configureClients(config);
         String splitterClassName = config.get(MongoConfigUtil.MONGO_SPLITTER_CLASS);
-        MongoSplitter customSplitter = getSplitterByClass(config, splitterClassName);
-        if (customSplitter != null) {
-            return customSplitter;
-        } else {
-            return getSplitterByStats(MongoConfigUtil.getInputURI(config), config);
+        MongoSplitter splitter = getSplitterByClass(config, splitterClassName);
+        if (null == splitter) {
+            if (MongoConfigUtil.getSplitsCacheDir(config) != null) {
+                // Only choose a splitter if there are no usable cached splits.
+                splitter = new CachingMongoSplitter(config);
+            } else {
+                splitter = getSplitterByStats(
+                  MongoConfigUtil.getInputURI(config), config);
+            }
+        }
+        if (MongoConfigUtil.getPipeline(config) != null) {
+            splitter = new PipelineBoundsSplitter(config, splitter);
+        }
+        if (MongoConfigUtil.getReadRouting(config) != null) {
+            // Members are chosen after caching, since they may change.
+            splitter = new ReadRoutingSplitter(config, splitter);
         }
+        return splitter;
     }
 
 }
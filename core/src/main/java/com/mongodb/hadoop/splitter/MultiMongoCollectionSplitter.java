@@ -18,6 +18,7 @@ package com.mongodb.hadoop.splitter;
 
 import com.mongodb.DBObject;
 import com.mongodb.MongoClientURI;
+import com.mongodb.hadoop.util.DaemonThreadFactory;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,9 +26,15 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.lang.String.format;
 
@@ -46,8 +53,7 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
     @Override
     public List<InputSplit> calculateSplits() throws SplitFailedException {
         List<MongoClientURI> inputURIs = MongoConfigUtil.getMongoURIs(this.getConfiguration(), MongoConfigUtil.INPUT_URI);
-        List<InputSplit> returnVal = new LinkedList<InputSplit>();
-        List<MongoSplitter> splitters = new LinkedList<MongoSplitter>();
+        List<CollectionSplits> splitters = new LinkedList<CollectionSplits>();
 
         //For each input URI that is specified, get the appropriate
         //splitter for each implementation.
@@ -67,8 +73,7 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
                 Configuration confForThisUri = new Configuration(getConfiguration());
                 MongoConfigUtil.setInputURI(confForThisUri, uri);
                 confForThisUri.set(MongoConfigUtil.MONGO_SPLITTER_CLASS, "");
-                splitter = MongoSplitterFactory.getSplitterByStats(uri, confForThisUri);
-                splitters.add(splitter);
+                splitters.add(new CollectionSplits(uri, confForThisUri, null));
             }
         } else {
             //Otherwise the user has set options per-collection.
@@ -97,7 +102,7 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
                     throw new IllegalArgumentException("Invalid JSON format in multi uri config key: each config item must be an "
                                                        + "object with keys/values describing options for each URI.");
                 }
-                MongoSplitter splitter;
+                MongoSplitter splitter = null;
                 Class<? extends MongoSplitter> splitterClass = MongoConfigUtil.getSplitterClass(confForThisUri);
 
                 if (splitterClass != null) {
@@ -118,26 +123,94 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
                     //configuration and input URI.
                     collectionSplitter.setConfiguration(confForThisUri);
                     splitter = collectionSplitter;
-                } else {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(format("Fetching collection stats on namespace: %s.%s; hosts: %s to choose splitter implementation.",
-                              inputURI.getDatabase(), inputURI.getCollection(), inputURI.getHosts()));
-                    }
-                    //No class was specified, so choose one by looking at
-                    //collection stats.
-                    splitter = MongoSplitterFactory.getSplitterByStats(inputURI, confForThisUri);
                 }
-                splitters.add(splitter);
+                //If no class was specified, one is chosen by looking at
+                //collection stats when the splits are calculated.
+                splitters.add(
+                  new CollectionSplits(inputURI, confForThisUri, splitter));
             }
         }
 
-        //Now we have splitters for all the input collections.
-        //Run through all of em, get all the splits for each,
-        //compile them into one big ol' list.
-        for (MongoSplitter splitter : splitters) {
-            returnVal.addAll(splitter.calculateSplits());
+        //Now we know how to split all the input collections.
+        //Get the splits for several collections at once, and
+        //compile them into one big ol' list in the order of the URIs.
+        int threads = Math.min(
+          MongoConfigUtil.getMultiURISplitThreads(getConfiguration()),
+          splitters.size());
+        if (threads <= 1) {
+            List<InputSplit> returnVal = new LinkedList<InputSplit>();
+            for (CollectionSplits splitter : splitters) {
+                returnVal.addAll(splitter.call());
+            }
+            return returnVal;
+        }
+        return calculateSplitsInParallel(splitters, threads);
+    }
+
+    private List<InputSplit> calculateSplitsInParallel(
+      final List<CollectionSplits> splitters, final int threads)
+      throws SplitFailedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+          threads, new DaemonThreadFactory("mongo-multi-splitter"));
+        try {
+            List<Future<List<InputSplit>>> results =
+              new ArrayList<Future<List<InputSplit>>>(splitters.size());
+            for (CollectionSplits splitter : splitters) {
+                results.add(executor.submit(splitter));
+            }
+            List<InputSplit> returnVal = new LinkedList<InputSplit>();
+            for (Future<List<InputSplit>> result : results) {
+                returnVal.addAll(result.get());
+            }
+            return returnVal;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SplitFailedException(
+              "Interrupted while calculating splits", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SplitFailedException) {
+                throw (SplitFailedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SplitFailedException(
+              "Could not calculate splits", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calculates the splits of one input collection, choosing a splitter
+     * from the collection stats if none was given.
+     */
+    private static class CollectionSplits
+      implements Callable<List<InputSplit>> {
+        private final MongoClientURI inputURI;
+        private final Configuration conf;
+        private final MongoSplitter splitter;
+
+        CollectionSplits(
+          final MongoClientURI inputURI, final Configuration conf,
+          final MongoSplitter splitter) {
+            this.inputURI = inputURI;
+            this.conf = conf;
+            this.splitter = splitter;
+        }
+
+        @Override
+        public List<InputSplit> call() throws SplitFailedException {
+            MongoSplitter s = splitter;
+            if (null == s) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(format("Fetching collection stats on namespace: %s.%s; hosts: %s to choose splitter implementation.",
+                          inputURI.getDatabase(), inputURI.getCollection(), inputURI.getHosts()));
+                }
+                s = MongoSplitterFactory.getSplitterByStats(inputURI, conf);
+            }
+            return s.calculateSplits();
         }
-        return returnVal;
     }
 
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.util.List;
+
+/**
+ * Checks that the splits calculated by another splitter can be read through
+ * the aggregation pipeline of {@link MongoConfigUtil#INPUT_PIPELINE}, so
+ * that a job fails while its splits are calculated rather than in its tasks.
+ *
+ * @see MongoInputSplit#checkAggregationBounds()
+ */
+public class PipelineBoundsSplitter extends MongoSplitter {
+
+    private final MongoSplitter delegate;
+
+    /**
+     * Create a new PipelineBoundsSplitter.
+     * @param conf the Configuration
+     * @param delegate the splitter that calculates the splits
+     */
+    public PipelineBoundsSplitter(
+      final Configuration conf, final MongoSplitter delegate) {
+        super(conf);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<InputSplit> calculateSplits() throws SplitFailedException {
+        List<InputSplit> splits = delegate.calculateSplits();
+        for (InputSplit split : splits) {
+            if (!(split instanceof MongoInputSplit)) {
+                continue;
+            }
+            MongoInputSplit mis = (MongoInputSplit) split;
+            if (mis.getPipeline() == null) {
+                continue;
+            }
+            try {
+                mis.checkAggregationBounds();
+            } catch (MongoException e) {
+                throw new SplitFailedException(e.getMessage()
+                  + "; use a splitter whose splits have bounds on a single"
+                  + " field with values of one type", e);
+            }
+        }
+        return splits;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.MongoClientURIBuilder;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spreads the splits calculated by another splitter among the members of
+ * the replica sets they read from, according to
+ * {@link MongoConfigUtil#SPLITS_READ_ROUTING},
+ * {@link MongoConfigUtil#SPLITS_READ_TAGS} and
+ * {@link MongoConfigUtil#SPLITS_MAX_STALENESS}.
+ *
+ * The members of a replica set, with their state, tags and last write, are
+ * found by running {@code isMaster} on each of them. Each split is given one
+ * of the members that may be read from in turn, and reports it as its
+ * location. Splits that read through a {@code mongos}, or from a replica set
+ * none of whose members may be read from, are left to choose a member
+ * themselves, with the read preference added to their URI.
+ */
+public class ReadRoutingSplitter extends MongoSplitter {
+
+    private static final Log LOG = LogFactory.getLog(ReadRoutingSplitter.class);
+
+    private final MongoSplitter delegate;
+
+    /**
+     * Create a new ReadRoutingSplitter.
+     * @param conf the Configuration
+     * @param delegate the splitter that calculates the splits
+     */
+    public ReadRoutingSplitter(
+      final Configuration conf, final MongoSplitter delegate) {
+        super(conf);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<InputSplit> calculateSplits() throws SplitFailedException {
+        List<InputSplit> splits = delegate.calculateSplits();
+        Configuration conf = getConfiguration();
+        String mode = MongoConfigUtil.getReadRouting(conf);
+        List<DBObject> tagSets = MongoConfigUtil.getReadTags(conf);
+        long maxStaleness = MongoConfigUtil.getMaxStaleness(conf);
+
+        // Splits on the same hosts share the same members.
+        Map<List<String>, List<MongoInputSplit>> byHosts =
+          new HashMap<List<String>, List<MongoInputSplit>>();
+        for (InputSplit split : splits) {
+            if (!(split instanceof MongoInputSplit)) {
+                continue;
+            }
+            MongoInputSplit mis = (MongoInputSplit) split;
+            List<String> hosts = new ArrayList<String>(
+              mis.getInputURI().getHosts());
+            Collections.sort(hosts);
+            List<MongoInputSplit> onHosts = byHosts.get(hosts);
+            if (null == onHosts) {
+                onHosts = new ArrayList<MongoInputSplit>();
+                byHosts.put(hosts, onHosts);
+            }
+            onHosts.add(mis);
+        }
+
+        for (List<MongoInputSplit> onHosts : byHosts.values()) {
+            MongoClientURI uri = onHosts.get(0).getInputURI();
+            List<String> eligible = null;
+            if (uri.getURI().startsWith("mongodb://")) {
+                List<Member> members = findMembers(uri);
+                if (members != null) {
+                    eligible = chooseMembers(
+                      members, mode, tagSets, maxStaleness);
+                }
+            }
+            for (int i = 0; i < onHosts.size(); ++i) {
+                MongoInputSplit split = onHosts.get(i);
+                // The URI is used by mongos, and as a fallback when the
+                // member cannot be read from.
+                split.setInputURI(withReadPreference(
+                  split.getInputURI(), mode, tagSets, maxStaleness));
+                if (eligible != null && !eligible.isEmpty()) {
+                    split.setReadHost(eligible.get(i % eligible.size()));
+                }
+            }
+            if (eligible != null) {
+                LOG.info("Spread " + onHosts.size() + " splits on "
+                  + uri.getHosts() + " among " + eligible);
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Find the members of the replica set that a URI connects to.
+     * @param uri the URI
+     * @return the data-bearing members, or {@code null} if the URI does not
+     *         connect to a replica set
+     */
+    private List<Member> findMembers(final MongoClientURI uri) {
+        DBObject isMaster = isMaster(uri);
+        if (null == isMaster || null == isMaster.get("setName")) {
+            // A mongos or a standalone server.
+            return null;
+        }
+        List<String> hosts = new ArrayList<String>();
+        for (String field : new String[]{"hosts", "passives"}) {
+            Object list = isMaster.get(field);
+            if (list instanceof List) {
+                for (Object host : (List) list) {
+                    hosts.add((String) host);
+                }
+            }
+        }
+        List<Member> members = new ArrayList<Member>();
+        for (String host : hosts) {
+            DBObject status = isMaster(MongoConfigUtil.getDirectURI(uri, host));
+            if (status != null) {
+                members.add(new Member(host, status));
+            }
+        }
+        return members;
+    }
+
+    private DBObject isMaster(final MongoClientURI uri) {
+        MongoClientURI authURI = MongoConfigUtil.getAuthURI(getConfiguration());
+        DBCollection coll = null;
+        try {
+            if (authURI != null) {
+                coll = MongoConfigUtil.getCollectionWithAuth(uri, authURI);
+            } else {
+                coll = MongoConfigUtil.getCollection(uri);
+            }
+            CommandResult result =
+              coll.getDB().getSisterDB("admin").command("isMaster");
+            return result.ok() ? result : null;
+        } catch (MongoException e) {
+            LOG.warn("Could not run isMaster on " + uri.getHosts() + ": "
+              + e.getMessage());
+            return null;
+        } finally {
+            if (coll != null) {
+                MongoConfigUtil.close(coll.getDB().getMongoClient());
+            }
+        }
+    }
+
+    /**
+     * Choose the members that splits may read from.
+     * @param members the members of a replica set
+     * @param mode the read preference mode
+     * @param tagSets the tag sets in order of preference; empty for any
+     * @param maxStaleness the largest lag of a secondary, in seconds, or a
+     *                     negative number for any
+     * @return the hosts of the members, possibly empty
+     */
+    static List<String> chooseMembers(
+      final List<Member> members, final String mode,
+      final List<DBObject> tagSets, final long maxStaleness) {
+        Member primary = null;
+        List<Member> secondaries = new ArrayList<Member>();
+        for (Member member : members) {
+            if (member.primary) {
+                primary = member;
+            } else if (member.secondary) {
+                secondaries.add(member);
+            }
+        }
+        if (maxStaleness >= 0 && primary != null
+          && primary.lastWrite != null) {
+            List<Member> fresh = new ArrayList<Member>();
+            for (Member secondary : secondaries) {
+                if (secondary.lastWrite != null
+                  && primary.lastWrite.getTime()
+                  - secondary.lastWrite.getTime() <= maxStaleness * 1000) {
+                    fresh.add(secondary);
+                }
+            }
+            secondaries = fresh;
+        }
+
+        List<Member> candidates = new ArrayList<Member>();
+        if ("primary".equalsIgnoreCase(mode)) {
+            if (primary != null) {
+                candidates.add(primary);
+            }
+            return hosts(candidates);
+        }
+        if ("nearest".equalsIgnoreCase(mode) && primary != null) {
+            candidates.add(primary);
+        }
+        candidates.addAll(secondaries);
+        candidates = matchTags(candidates, tagSets);
+        if (candidates.isEmpty() && primary != null
+          && ("primaryPreferred".equalsIgnoreCase(mode)
+          || "secondaryPreferred".equalsIgnoreCase(mode))) {
+            candidates.add(primary);
+        } else if ("primaryPreferred".equalsIgnoreCase(mode)
+          && primary != null) {
+            candidates = Collections.singletonList(primary);
+        }
+        return hosts(candidates);
+    }
+
+    private static List<Member> matchTags(
+      final List<Member> candidates, final List<DBObject> tagSets) {
+        if (tagSets.isEmpty()) {
+            return candidates;
+        }
+        for (DBObject tagSet : tagSets) {
+            List<Member> matching = new ArrayList<Member>();
+            for (Member member : candidates) {
+                if (member.hasTags(tagSet)) {
+                    matching.add(member);
+                }
+            }
+            if (!matching.isEmpty()) {
+                return matching;
+            }
+        }
+        return new ArrayList<Member>();
+    }
+
+    private static List<String> hosts(final List<Member> members) {
+        List<String> hosts = new ArrayList<String>(members.size());
+        for (Member member : members) {
+            hosts.add(member.host);
+        }
+        return hosts;
+    }
+
+    private static MongoClientURI withReadPreference(
+      final MongoClientURI uri, final String mode,
+      final List<DBObject> tagSets, final long maxStaleness) {
+        if (!uri.getURI().startsWith("mongodb://")) {
+            return uri;
+        }
+        MongoClientURIBuilder builder = new MongoClientURIBuilder(uri)
+          .param("readPreference", mode);
+        if (!tagSets.isEmpty() && !"primary".equalsIgnoreCase(mode)) {
+            // Only one tag set fits in the URI options used here.
+            StringBuilder tags = new StringBuilder();
+            for (String key : tagSets.get(0).keySet()) {
+                if (tags.length() > 0) {
+                    tags.append(',');
+                }
+                tags.append(key).append(':').append(tagSets.get(0).get(key));
+            }
+            builder.param("readPreferenceTags", tags.toString());
+        }
+        if (maxStaleness >= 0 && !"primary".equalsIgnoreCase(mode)) {
+            builder.param("maxStalenessSeconds", String.valueOf(maxStaleness));
+        }
+        return builder.build();
+    }
+
+    /**
+     * A data-bearing member of a replica set, as described by
+     * {@code isMaster}.
+     */
+    static class Member {
+        private final String host;
+        private final boolean primary;
+        private final boolean secondary;
+        private final DBObject tags;
+        private final Date lastWrite;
+
+        Member(final String host, final DBObject isMaster) {
+            this.host = host;
+            primary = Boolean.TRUE.equals(isMaster.get("ismaster"));
+            secondary = Boolean.TRUE.equals(isMaster.get("secondary"));
+            tags = (DBObject) isMaster.get("tags");
+            DBObject write = (DBObject) isMaster.get("lastWrite");
+            lastWrite = write != null
+              ? (Date) write.get("lastWriteDate") : null;
+        }
+
+        boolean hasTags(final DBObject tagSet) {
+            for (String key : tagSet.keySet()) {
+                if (null == tags
+                  || !String.valueOf(tagSet.get(key)).equals(
+                  String.valueOf(tags.get(key)))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
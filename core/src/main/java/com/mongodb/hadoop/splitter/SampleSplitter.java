@@ -15,7 +15,6 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -48,62 +47,83 @@ public class SampleSplitter extends MongoCollectionSplitter {
         DBObject splitKey = MongoConfigUtil.getInputSplitKey(conf);
         DBCollection inputCollection = MongoConfigUtil.getInputCollection(conf);
 
-        CommandResult result = inputCollection.getDB().command(
-          new BasicDBObject("collstats", inputCollection.getName()));
-        if (!result.ok()) {
-            throw new SplitFailedException(
-              "Could not execute command 'collstats': "
-                + result.getErrorMessage());
-        }
-        int count = result.getInt("count");
-        int avgObjSize = result.getInt("avgObjSize");
-        int numDocsPerSplit = (int) Math.floor(
-          splitSizeMB * 1024 * 1024 / avgObjSize);
-        int numSplits = (int) Math.ceil((double) count / numDocsPerSplit);
-        int totalSamples = (int) Math.floor(samplesPerSplit * numSplits);
+        try {
+            CommandResult result = inputCollection.getDB().command(
+              new BasicDBObject("collstats", inputCollection.getName()));
+            if (!result.ok()) {
+                throw new SplitFailedException(
+                  "Could not execute command 'collstats': "
+                    + result.getErrorMessage());
+            }
+            // Only sample the range of keys that the query can match.
+            SplitKeyRange queryRange =
+              SplitKeyRange.fromQuery(MongoConfigUtil.getQuery(conf), splitKey);
+            int count = queryRange.isBounded()
+              ? (int) inputCollection.count(queryRange.toQuery())
+              : result.getInt("count");
+            int avgObjSize = result.getInt("avgObjSize");
+            // The splits only cover the documents that the query can match.
+            DBObject rangeStats = queryRange.isBounded()
+              ? getRangeStats(result, count) : result;
+            int numDocsPerSplit = (int) Math.floor(
+              splitSizeMB * 1024 * 1024 / avgObjSize);
+            int numSplits = (int) Math.ceil((double) count / numDocsPerSplit);
+            int totalSamples = (int) Math.floor(samplesPerSplit * numSplits);
 
-        if (count < numDocsPerSplit) {
-            LOG.warn("Not enough documents for more than one split! Consider "
-                + "setting " + MongoConfigUtil.INPUT_SPLIT_SIZE + " to a "
-                + "lower value.");
-            InputSplit split = createSplitFromBounds(null, null);
-            return Collections.singletonList(split);
-        }
+            if (count < numDocsPerSplit) {
+                LOG.warn("Not enough documents for more than one split! Consider "
+                    + "setting " + MongoConfigUtil.INPUT_SPLIT_SIZE + " to a "
+                    + "lower value.");
+                InputSplit split = createSplitFromBounds(null, null);
+                List<InputSplit> splits = Collections.singletonList(split);
+                estimateSplitSizes(splits, rangeStats);
+                return splits;
+            }
 
-        DBObject[] pipeline = {
-          new BasicDBObjectBuilder()
-            .push("$sample").add("size", totalSamples).get(),
-          new BasicDBObject("$project", splitKey),
-          new BasicDBObject("$sort", splitKey)
-        };
+            List<DBObject> pipeline = new ArrayList<DBObject>();
+            if (queryRange.isBounded()) {
+                pipeline.add(new BasicDBObject("$match", queryRange.toQuery()));
+            }
+            pipeline.add(new BasicDBObjectBuilder()
+              .push("$sample").add("size", totalSamples).get());
+            pipeline.add(new BasicDBObject("$project", splitKey));
+            pipeline.add(new BasicDBObject("$sort", splitKey));
 
-        Cursor aggregationOutput;
-        try {
-            aggregationOutput =
-              inputCollection.aggregate(Arrays.asList(pipeline), AggregationOptions.builder().build());
-        } catch (MongoException e) {
-            throw new SplitFailedException(
-              "Failed to aggregate sample documents. Note that this Splitter "
-                + "implementation is incompatible with MongoDB versions "
-                + "prior to 3.2.", e);
-        }
+            Cursor aggregationOutput;
+            try {
+                aggregationOutput =
+                  inputCollection.aggregate(pipeline, AggregationOptions.builder().build());
+            } catch (MongoException e) {
+                throw new SplitFailedException(
+                  "Failed to aggregate sample documents. Note that this Splitter "
+                    + "implementation is incompatible with MongoDB versions "
+                    + "prior to 3.2.", e);
+            }
 
-        BasicDBObject previousKey = null;
-        List<InputSplit> splits = new ArrayList<InputSplit>(numSplits);
-        int i = 0;
-        while (aggregationOutput.hasNext()) {
-            DBObject sample = aggregationOutput.next();
-            if (i++ % samplesPerSplit == 0) {
-                BasicDBObject bdbo = (BasicDBObject) sample;
-                splits.add(createSplitFromBounds(previousKey, bdbo));
-                previousKey = bdbo;
+            BasicDBObject previousKey = queryRange.getMin();
+            List<InputSplit> splits = new ArrayList<InputSplit>(numSplits);
+            int i = 0;
+            while (aggregationOutput.hasNext()) {
+                DBObject sample = aggregationOutput.next();
+                if (i++ % samplesPerSplit == 0) {
+                    BasicDBObject bdbo = (BasicDBObject) sample;
+                    splits.add(createSplitFromBounds(previousKey, bdbo));
+                    previousKey = bdbo;
+                }
             }
-        }
-        splits.add(createSplitFromBounds(previousKey, null));
+            // Split bounds are exclusive at the top, so an inclusive upper bound
+            // from the query leaves the last split open.
+            splits.add(createSplitFromBounds(
+              previousKey, queryRange.getExclusiveMax()));
+            resolveHints(splits, inputCollection);
 
-        if (MongoConfigUtil.isFilterEmptySplitsEnabled(conf)) {
-            return filterEmptySplits(splits);
+            if (MongoConfigUtil.isFilterEmptySplitsEnabled(conf)) {
+                splits = filterEmptySplitsInParallel(splits);
+            }
+            estimateSplitSizes(splits, rangeStats);
+            return splits;
+        } finally {
+            MongoConfigUtil.close(inputCollection.getDB().getMongoClient());
         }
-        return splits;
     }
 }
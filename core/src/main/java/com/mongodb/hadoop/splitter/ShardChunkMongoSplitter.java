@@ -16,12 +16,18 @@
 
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.CommandResult;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.ReadPreference;
 import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.BSONComparator;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,18 +35,44 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * This class is an implementation of MongoSplitter which can be used on sharded collections. It gets the chunks information from the
- * cluster's config server, and produces one split for each chunk.
+ * cluster's config server, and produces splits that follow the chunk boundaries: adjacent small chunks on the same shard are read as
+ * one split, and chunks that are too large to read in one task are divided further with {@code splitVector} on their own shard.
  */
 public class ShardChunkMongoSplitter extends MongoCollectionSplitter {
 
     private static final Log LOG = LogFactory.getLog(ShardChunkMongoSplitter.class);
 
+    // The default maximum size of a chunk in a sharded cluster.
+    private static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // Orders chunks by namespace and lower bound, so that chunks which are
+    // adjacent in the key space are next to each other.
+    private static final Comparator<DBObject> CHUNK_ORDER =
+      new Comparator<DBObject>() {
+          @Override
+          public int compare(final DBObject c1, final DBObject c2) {
+              String ns1 = (String) c1.get("ns");
+              String ns2 = (String) c2.get("ns");
+              int cmp = String.valueOf(ns1).compareTo(String.valueOf(ns2));
+              if (cmp != 0) {
+                  return cmp;
+              }
+              return BSONComparator.getInstance().compare(
+                (DBObject) c1.get("min"), (DBObject) c2.get("min"));
+          }
+      };
+
+    // The shard key pattern of the input collection, if it is known.
+    private DBObject shardKey;
+
     public ShardChunkMongoSplitter() {
     }
 
@@ -58,11 +90,35 @@ public class ShardChunkMongoSplitter extends MongoCollectionSplitter {
      */
     List<InputSplit> calculateSplitsFromChunks(
       final List<DBObject> chunks, final Map<String, List<String>> shardsMap)
+      throws SplitFailedException {
+        return calculateSplitsFromChunks(chunks, shardsMap, null);
+    }
+
+    /**
+     * Get a list of InputSplits based on a list of MongoDB shard chunks, the
+     * shard key, and a mapping of shard names to host names. The documents
+     * and bytes on each shard are divided evenly among its chunks as their
+     * estimated count and size. Chunks that lie entirely outside of the
+     * range of shard keys that the input query can match are left out, as
+     * are chunks whose {@code ns} is not the input collection.
+     *
+     * With these estimates, adjacent chunks on the same shard are merged
+     * into one split for as long as they fit in the split size, and jumbo
+     * or oversized chunks are divided into several splits. Without them,
+     * only jumbo chunks are divided.
+     *
+     * @param chunks Chunk documents from the config.chunks collection.
+     * @param shardsMap A map of shard name -> an array of hostnames.
+     * @param stats Statistics of the input collection, or {@code null}.
+     * @return A list of InputSplits.
+     */
+    List<InputSplit> calculateSplitsFromChunks(
+      final List<DBObject> chunks, final Map<String, List<String>> shardsMap,
+      final DBObject stats)
       throws SplitFailedException {
 
         boolean targetShards = MongoConfigUtil.canReadSplitsFromShards(getConfiguration());
         List<String> mongosHostNames = MongoConfigUtil.getInputMongosHosts(getConfiguration());
-        MongoClientURI inputURI = MongoConfigUtil.getInputURI(getConfiguration());
         if (targetShards && mongosHostNames.size() > 0) {
             throw new SplitFailedException("Setting both mongo.input.split.read_from_shards and mongo.input.mongos_hosts"
               + " does not make sense. ");
@@ -77,74 +133,347 @@ public class ShardChunkMongoSplitter extends MongoCollectionSplitter {
             }
         }
 
-        List<InputSplit> splits = new ArrayList<InputSplit>(chunks.size());
+        boolean merge = MongoConfigUtil.isShardChunkMergingEnabled(getConfiguration());
+        boolean splitLarge = MongoConfigUtil.isLargeShardChunkSplittingEnabled(getConfiguration());
+        long targetBytes = (long) MongoConfigUtil.getSplitSize(getConfiguration()) * 1024 * 1024;
+        long largeBytes = 2 * Math.max(targetBytes, DEFAULT_CHUNK_SIZE);
+
+        MongoClientURI inputURI = MongoConfigUtil.getInputURI(getConfiguration());
+        String ns = inputURI.getDatabase() + "." + inputURI.getCollection();
+        List<DBObject> sorted = new ArrayList<DBObject>(chunks.size());
         for (DBObject chunk : chunks) {
+            // Chunks of MongoDB 5.0 and later have a uuid instead of an ns.
+            if (null == chunk.get("ns") || ns.equals(chunk.get("ns"))) {
+                sorted.add(chunk);
+            }
+        }
+        Collections.sort(sorted, CHUNK_ORDER);
+        Map<String, long[]> chunkEstimates = estimateChunks(sorted, stats);
+
+        DBObject query = MongoConfigUtil.getQuery(getConfiguration());
+        SplitKeyRange queryRange = null;
+        int pruned = 0;
+        int merged = 0;
+        int divided = 0;
+
+        List<InputSplit> splits = new ArrayList<InputSplit>(sorted.size());
+        ChunkRun run = null;
+        for (DBObject chunk : sorted) {
             BasicDBObject chunkLowerBound = (BasicDBObject) chunk.get("min");
             BasicDBObject chunkUpperBound = (BasicDBObject) chunk.get("max");
-            MongoInputSplit chunkSplit = createSplitFromBounds(chunkLowerBound, chunkUpperBound);
-            chunkSplit.setInputURI(inputURI);
+            if (null == queryRange) {
+                // All chunks of a collection have bounds on the shard key.
+                queryRange = SplitKeyRange.fromQuery(query, chunkLowerBound);
+            }
+            if (!queryRange.overlaps(chunkLowerBound, chunkUpperBound)) {
+                ++pruned;
+                continue;
+            }
             String shard = (String) chunk.get("shard");
-            if (targetShards) {
-                //The job is configured to target shards, so replace the
-                //mongos hostname with the host of the shard's servers
-                List<String> shardHosts = shardsMap.get(shard);
-                if (shardHosts == null) {
-                    throw new SplitFailedException(
-                      "Couldn't find shard ID: " + shard + " in config.shards.");
-                }
+            long[] estimate = chunkEstimates.get(shard);
 
-                MongoClientURI newURI = rewriteURI(inputURI, shardHosts);
-                chunkSplit.setInputURI(newURI);
-            } else if (mongosMap != null) {
-                // Try to use a mongos collocated with one of the shard hosts for the input
-                // split. If the user has their Hadoop/MongoDB clusters configured correctly,
-                // this will allow for reading without having to transfer data over a network.
-                // Note that MongoInputSplit.getLocations() just returns the hostnames from its
-                // input URI.
-                List<String> chunkHosts = shardsMap.get(shard);
-                String mongosHost = null;
-                for (String chunkHost : chunkHosts) {
-                    String[] hostAndPort = chunkHost.split(":");
-                    mongosHost = mongosMap.get(hostAndPort[0]);
-                    if (mongosHost != null) {
-                        break;
+            if (splitLarge && (Boolean.TRUE.equals(chunk.get("jumbo"))
+              || (estimate != null && estimate[1] > largeBytes))) {
+                List<BasicDBObject> splitKeys =
+                  splitLargeChunk(chunk, shardsMap.get(shard));
+                if (!splitKeys.isEmpty()) {
+                    addSplits(splits, run, shardsMap, mongosMap, targetShards);
+                    run = null;
+                    ++divided;
+                    BasicDBObject lowerBound = chunkLowerBound;
+                    List<BasicDBObject> upperBounds =
+                      new ArrayList<BasicDBObject>(splitKeys);
+                    upperBounds.add(chunkUpperBound);
+                    for (BasicDBObject upperBound : upperBounds) {
+                        ChunkRun piece = new ChunkRun(
+                          lowerBound, upperBound, shard, null, estimate);
+                        piece.divide(upperBounds.size());
+                        addSplits(
+                          splits, piece, shardsMap, mongosMap, targetShards);
+                        lowerBound = upperBound;
                     }
-                }
-                if (null == mongosHost) {
-                    // Fall back just to using the given input URI.
-                    chunkSplit.setInputURI(inputURI);
-                } else {
-                    LOG.info("Will read split " + chunkSplit + " from mongos " + mongosHost);
-                    chunkSplit.setInputURI(rewriteURI(inputURI, mongosHost));
+                    continue;
                 }
             }
-            // Add this split to the list for the current shard.
-            chunkSplit.setKeyField(MongoConfigUtil.getInputKey(getConfiguration()));
-            splits.add(chunkSplit);
+
+            if (merge && run != null
+              && run.canAppend(chunk, estimate, targetBytes)) {
+                run.append(chunk, estimate);
+                ++merged;
+                continue;
+            }
+            addSplits(splits, run, shardsMap, mongosMap, targetShards);
+            run = new ChunkRun(chunkLowerBound, chunkUpperBound, shard,
+              (String) chunk.get("ns"), estimate);
+        }
+        addSplits(splits, run, shardsMap, mongosMap, targetShards);
+
+        if (pruned > 0) {
+            LOG.info("Skipped " + pruned + " chunks outside of the range "
+              + "of shard keys matched by the query.");
+        }
+        if (merged > 0 || divided > 0) {
+            LOG.info("Merged " + merged + " chunks into adjacent chunks and "
+              + "divided " + divided + " large chunks, making "
+              + splits.size() + " splits.");
         }
 
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(getConfiguration())) {
-            return filterEmptySplits(splits);
+            return filterEmptySplitsInParallel(splits);
         }
         return splits;
     }
 
-    // Generate one split per chunk.
+    /**
+     * Find the split keys that divide a jumbo or oversized chunk into pieces
+     * of about the split size, by running {@code splitVector} on the shard
+     * that holds the chunk.
+     *
+     * @param chunk the chunk document from the config.chunks collection
+     * @param shardHosts the hosts of the shard that holds the chunk
+     * @return the split keys, in order, or an empty list if the chunk could
+     *         not be divided
+     */
+    List<BasicDBObject> splitLargeChunk(
+      final DBObject chunk, final List<String> shardHosts) {
+        if (null == shardKey || null == shardHosts) {
+            return Collections.emptyList();
+        }
+        MongoClientURI inputURI =
+          MongoConfigUtil.getInputURI(getConfiguration());
+        DBObject cmd = BasicDBObjectBuilder
+          .start("splitVector",
+            inputURI.getDatabase() + "." + inputURI.getCollection())
+          .add("keyPattern", shardKey)
+          .add("min", chunk.get("min"))
+          .add("max", chunk.get("max"))
+          .add("force", false)
+          .add("maxChunkSize", MongoConfigUtil.getSplitSize(getConfiguration()))
+          .get();
+        DBCollection shardCollection = null;
+        try {
+            shardCollection = MongoConfigUtil.getCollection(
+              rewriteURI(inputURI, shardHosts));
+            CommandResult result = shardCollection.getDB()
+              .command(cmd, ReadPreference.primary());
+            if (!result.ok()) {
+                LOG.warn("Could not divide chunk " + chunk.get("min")
+                  + " - " + chunk.get("max") + ": " + result.getErrorMessage());
+                return Collections.emptyList();
+            }
+            List<BasicDBObject> splitKeys = new ArrayList<BasicDBObject>();
+            for (Object key : (BasicDBList) result.get("splitKeys")) {
+                splitKeys.add((BasicDBObject) key);
+            }
+            return splitKeys;
+        } catch (MongoException e) {
+            LOG.warn("Could not divide chunk " + chunk.get("min") + " - "
+              + chunk.get("max") + ": " + e.getMessage());
+            return Collections.emptyList();
+        } finally {
+            if (shardCollection != null) {
+                MongoConfigUtil.close(
+                  shardCollection.getDB().getMongoClient());
+            }
+        }
+    }
+
+    /**
+     * Divide the documents and bytes of each shard, as given by the
+     * collection statistics, evenly among the chunks on that shard.
+     * @return a map of shard name to the estimated documents and bytes of
+     *         one of its chunks; empty if there are no statistics
+     */
+    private static Map<String, long[]> estimateChunks(
+      final List<DBObject> chunks, final DBObject stats) {
+        Map<String, long[]> estimates = new HashMap<String, long[]>();
+        if (null == stats) {
+            return estimates;
+        }
+        Map<String, Integer> chunksPerShard = new HashMap<String, Integer>();
+        for (DBObject chunk : chunks) {
+            String shard = (String) chunk.get("shard");
+            Integer n = chunksPerShard.get(shard);
+            chunksPerShard.put(shard, null == n ? 1 : n + 1);
+        }
+        for (Map.Entry<String, Integer> entry : chunksPerShard.entrySet()) {
+            DBObject shardStats = getShardStats(stats, entry.getKey());
+            if (shardStats != null
+              && shardStats.get("count") instanceof Number
+              && shardStats.get("size") instanceof Number) {
+                estimates.put(entry.getKey(), new long[]{
+                  ((Number) shardStats.get("count")).longValue()
+                    / entry.getValue(),
+                  ((Number) shardStats.get("size")).longValue()
+                    / entry.getValue()});
+            }
+        }
+        return estimates;
+    }
+
+    private void addSplits(
+      final List<InputSplit> splits, final ChunkRun run,
+      final Map<String, List<String>> shardsMap,
+      final Map<String, String> mongosMap, final boolean targetShards)
+      throws SplitFailedException {
+        if (null == run) {
+            return;
+        }
+        MongoClientURI inputURI = MongoConfigUtil.getInputURI(getConfiguration());
+        MongoInputSplit chunkSplit = createSplitFromBounds(run.min, run.max);
+        chunkSplit.setInputURI(inputURI);
+        String shard = run.shard;
+        if (targetShards) {
+            //The job is configured to target shards, so replace the
+            //mongos hostname with the host of the shard's servers
+            List<String> shardHosts = shardsMap.get(shard);
+            if (shardHosts == null) {
+                throw new SplitFailedException(
+                  "Couldn't find shard ID: " + shard + " in config.shards.");
+            }
+
+            MongoClientURI newURI = rewriteURI(inputURI, shardHosts);
+            chunkSplit.setInputURI(newURI);
+        } else if (mongosMap != null) {
+            // Try to use a mongos collocated with one of the shard hosts for the input
+            // split. If the user has their Hadoop/MongoDB clusters configured correctly,
+            // this will allow for reading without having to transfer data over a network.
+            // Note that MongoInputSplit.getLocations() just returns the hostnames from its
+            // input URI.
+            List<String> chunkHosts = shardsMap.get(shard);
+            String mongosHost = null;
+            for (String chunkHost : chunkHosts) {
+                String[] hostAndPort = chunkHost.split(":");
+                mongosHost = mongosMap.get(hostAndPort[0]);
+                if (mongosHost != null) {
+                    break;
+                }
+            }
+            if (null == mongosHost) {
+                // Fall back just to using the given input URI.
+                chunkSplit.setInputURI(inputURI);
+            } else {
+                LOG.info("Will read split " + chunkSplit + " from mongos " + mongosHost);
+                chunkSplit.setInputURI(rewriteURI(inputURI, mongosHost));
+            }
+        }
+        chunkSplit.setKeyField(MongoConfigUtil.getInputKey(getConfiguration()));
+        if (run.size >= 0) {
+            chunkSplit.setEstimatedCount(run.count);
+            chunkSplit.setEstimatedSize(run.size);
+        }
+        splits.add(chunkSplit);
+    }
+
+    // Generate splits from the chunks of the input collection.
     @Override
     public List<InputSplit> calculateSplits() throws SplitFailedException {
         DB configDB = getConfigDB();
-        DBCollection chunksCollection = configDB.getCollection("chunks");
-        Map<String, List<String>> shardsMap;
         try {
-            shardsMap = getShardsMap();
-        } catch (Exception e) {
-            //Something went wrong when trying to
-            //read the shards data from the config server,
-            //so abort the splitting
-            throw new SplitFailedException("Couldn't get shards information from config server", e);
+            DBCollection chunksCollection = configDB.getCollection("chunks");
+            Map<String, List<String>> shardsMap;
+            try {
+                shardsMap = getShardsMap(configDB);
+            } catch (Exception e) {
+                //Something went wrong when trying to
+                //read the shards data from the config server,
+                //so abort the splitting
+                throw new SplitFailedException("Couldn't get shards information from config server", e);
+            }
+            MongoClientURI inputURI =
+              MongoConfigUtil.getInputURI(getConfiguration());
+            DBObject collection = configDB.getCollection("collections").findOne(
+              new BasicDBObject(
+                "_id", inputURI.getDatabase() + "." + inputURI.getCollection()));
+            if (collection != null && collection.get("key") instanceof DBObject) {
+                shardKey = (DBObject) collection.get("key");
+            }
+
+            List<InputSplit> splits = calculateSplitsFromChunks(
+              findChunks(chunksCollection, inputURI, collection), shardsMap,
+              getInputStatsForEstimate(configDB));
+            resolveHints(
+              splits,
+              configDB.getMongoClient().getDB(inputURI.getDatabase())
+                .getCollection(inputURI.getCollection()));
+            return splits;
+        } finally {
+            MongoConfigUtil.close(configDB.getMongoClient());
         }
+    }
+
+    /**
+     * Find the chunks of the input collection. Chunks refer to their
+     * collection by namespace before MongoDB 5.0 and by UUID after.
+     * @param chunksCollection the config.chunks collection
+     * @param inputURI the URI of the input collection
+     * @param collection the document of the input collection from
+     *                   config.collections, or {@code null}
+     * @return the chunk documents
+     */
+    static List<DBObject> findChunks(
+      final DBCollection chunksCollection, final MongoClientURI inputURI,
+      final DBObject collection) {
+        List<DBObject> chunks = chunksCollection.find(new BasicDBObject(
+          "ns", inputURI.getDatabase() + "." + inputURI.getCollection()))
+          .toArray();
+        if (chunks.isEmpty() && collection != null
+          && collection.get("uuid") != null) {
+            chunks = chunksCollection.find(
+              new BasicDBObject("uuid", collection.get("uuid"))).toArray();
+        }
+        return chunks;
+    }
+
+    /**
+     * A range of adjacent chunks on one shard that are read as one split.
+     */
+    private static class ChunkRun {
+        private final BasicDBObject min;
+        private BasicDBObject max;
+        private final String shard;
+        private final String ns;
+        private long count;
+        private long size;
 
-        return calculateSplitsFromChunks(chunksCollection.find().toArray(), shardsMap);
+        ChunkRun(
+          final BasicDBObject min, final BasicDBObject max,
+          final String shard, final String ns, final long[] estimate) {
+            this.min = min;
+            this.max = max;
+            this.shard = shard;
+            this.ns = ns;
+            count = null == estimate ? -1 : estimate[0];
+            size = null == estimate ? -1 : estimate[1];
+        }
+
+        boolean canAppend(
+          final DBObject chunk, final long[] estimate, final long targetBytes) {
+            if (size < 0 || null == estimate
+              || size + estimate[1] > targetBytes
+              || !shard.equals(chunk.get("shard"))) {
+                return false;
+            }
+            String chunkNs = (String) chunk.get("ns");
+            if (ns == null ? chunkNs != null : !ns.equals(chunkNs)) {
+                return false;
+            }
+            return 0 == BSONComparator.getInstance().compare(
+              max, (DBObject) chunk.get("min"));
+        }
+
+        void append(final DBObject chunk, final long[] estimate) {
+            max = (BasicDBObject) chunk.get("max");
+            count += estimate[0];
+            size += estimate[1];
+        }
+
+        void divide(final int pieces) {
+            if (size >= 0) {
+                count /= pieces;
+                size /= pieces;
+            }
+        }
     }
 
 }
@@ -16,6 +16,8 @@
 
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.DB;
+import com.mongodb.DBObject;
 import com.mongodb.MongoClientURI;
 import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -23,6 +25,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,22 +52,26 @@ public class ShardMongoSplitter extends MongoCollectionSplitter {
         MongoClientURI inputURI = MongoConfigUtil.getInputURI(getConfiguration());
 
         Map<String, List<String>> shardsMap;
+        DB configDB = getConfigDB();
         try {
-            shardsMap = getShardsMap();
+            shardsMap = getShardsMap(configDB);
+            DBObject stats = getInputStatsForEstimate(configDB);
 
             for (Entry<String, List<String>> entry : shardsMap.entrySet()) {
                 List<String> shardHosts = entry.getValue();
 
                 MongoInputSplit chunkSplit = createSplitFromBounds(null, null);
                 chunkSplit.setInputURI(rewriteURI(inputURI, shardHosts));
+                estimateSplitSizes(
+                  Collections.singletonList(chunkSplit),
+                  getShardStats(stats, entry.getKey()));
                 returnVal.add(chunkSplit);
             }
         } finally {
-            // getShardsMap() creates a client to a config server. Close it now.
-            MongoConfigUtil.close(getConfigDB().getMongoClient());
+            MongoConfigUtil.close(configDB.getMongoClient());
         }
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(getConfiguration())) {
-            return filterEmptySplits(returnVal);
+            return filterEmptySplitsInParallel(returnVal);
         }
         return returnVal;
     }
@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.DBCollection;
 import com.mongodb.MongoClientURI;
 import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -56,8 +57,16 @@ public class SingleMongoSplitter extends MongoCollectionSplitter {
             LOG.debug(format("SingleMongoSplitter calculating splits for namespace: %s.%s; hosts: %s",
                 inputURI.getDatabase(), inputURI.getCollection(), inputURI.getHosts()));
         }
-        return Collections.singletonList(
+        List<InputSplit> splits = Collections.singletonList(
           (InputSplit) new MongoInputSplit(getConfiguration()));
+        DBCollection inputCollection =
+          MongoConfigUtil.getInputCollection(getConfiguration());
+        try {
+            estimateSplitSizes(splits, getStatsForEstimate(inputCollection));
+        } finally {
+            MongoConfigUtil.close(inputCollection.getDB().getMongoClient());
+        }
+        return splits;
     }
 
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.util.BSONComparator;
+import org.bson.BSONObject;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The range of values of a single-field split key that a query can match,
+ * as given by the range and equality conditions on that field at the top
+ * level of the query or within a top-level {@code $and}. Other conditions
+ * are ignored, so the range may be wider than the set of matching
+ * documents, but never narrower.
+ */
+final class SplitKeyRange {
+
+    private final String field;
+    private Object lower;
+    private boolean lowerInclusive;
+    private Object upper;
+    private boolean upperInclusive;
+
+    private SplitKeyRange(final String field) {
+        this.field = field;
+    }
+
+    /**
+     * Find the range of split key values that a query can match.
+     * @param query the query, may be {@code null}
+     * @param splitKey the split key pattern
+     * @return the range, which is unbounded if the split key has more than
+     *         one field or the query does not limit it
+     */
+    static SplitKeyRange fromQuery(final DBObject query, final DBObject splitKey) {
+        if (splitKey.keySet().size() != 1) {
+            return new SplitKeyRange(null);
+        }
+        return fromQuery(query, splitKey.keySet().iterator().next());
+    }
+
+    /**
+     * Find the range of values of a field that a query can match.
+     * @param query the query, may be {@code null}
+     * @param field the name of the field
+     * @return the range, which is unbounded if the query does not limit the
+     *         field
+     */
+    static SplitKeyRange fromQuery(final DBObject query, final String field) {
+        SplitKeyRange range = new SplitKeyRange(field);
+        if (query != null) {
+            range.addQuery(query);
+        }
+        return range;
+    }
+
+    private void addQuery(final BSONObject query) {
+        Object condition = query.get(field);
+        if (condition != null) {
+            addCondition(condition);
+        }
+        Object and = query.get("$and");
+        if (and instanceof List) {
+            for (Object clause : (List) and) {
+                if (clause instanceof BSONObject) {
+                    addQuery((BSONObject) clause);
+                }
+            }
+        }
+    }
+
+    private void addCondition(final Object condition) {
+        if (condition instanceof BSONObject) {
+            BSONObject operators = (BSONObject) condition;
+            boolean isOperators = false;
+            for (String op : operators.keySet()) {
+                if (!op.startsWith("$")) {
+                    break;
+                }
+                isOperators = true;
+                Object value = operators.get(op);
+                if ("$gt".equals(op)) {
+                    raiseLower(value, false);
+                } else if ("$gte".equals(op)) {
+                    raiseLower(value, true);
+                } else if ("$lt".equals(op)) {
+                    lowerUpper(value, false);
+                } else if ("$lte".equals(op)) {
+                    lowerUpper(value, true);
+                } else if ("$eq".equals(op)) {
+                    raiseLower(value, true);
+                    lowerUpper(value, true);
+                }
+            }
+            if (isOperators) {
+                return;
+            }
+        } else if (condition instanceof Pattern || condition instanceof List) {
+            // A regular expression or array match; not a simple range.
+            return;
+        }
+        raiseLower(condition, true);
+        lowerUpper(condition, true);
+    }
+
+    private void raiseLower(final Object value, final boolean inclusive) {
+        int cmp = null == lower ? 1 : compare(value, lower);
+        if (cmp > 0 || (0 == cmp && !inclusive)) {
+            lower = value;
+            lowerInclusive = inclusive;
+        }
+    }
+
+    private void lowerUpper(final Object value, final boolean inclusive) {
+        int cmp = null == upper ? -1 : compare(value, upper);
+        if (cmp < 0 || (0 == cmp && !inclusive)) {
+            upper = value;
+            upperInclusive = inclusive;
+        }
+    }
+
+    private int compare(final Object a, final Object b) {
+        return BSONComparator.getInstance().compare(
+          new BasicDBObject(field, a), new BasicDBObject(field, b));
+    }
+
+    /**
+     * @return {@code true} if the query limits the split key at all
+     */
+    boolean isBounded() {
+        return lower != null || upper != null;
+    }
+
+    /**
+     * @return the lowest split key that can match, as a document, or
+     *         {@code null} if there is no lower bound
+     */
+    BasicDBObject getMin() {
+        return null == lower ? null : new BasicDBObject(field, lower);
+    }
+
+    /**
+     * @return the highest split key that can match, as a document, or
+     *         {@code null} if there is no upper bound
+     */
+    BasicDBObject getMax() {
+        return null == upper ? null : new BasicDBObject(field, upper);
+    }
+
+    /**
+     * @return the upper bound as an exclusive split boundary, or
+     *         {@code null} if there is no upper bound or it is inclusive
+     */
+    BasicDBObject getExclusiveMax() {
+        return upperInclusive ? null : getMax();
+    }
+
+    /**
+     * @return a query that selects the documents within the range
+     */
+    DBObject toQuery() {
+        BasicDBObject condition = new BasicDBObject();
+        if (lower != null) {
+            condition.put(lowerInclusive ? "$gte" : "$gt", lower);
+        }
+        if (upper != null) {
+            condition.put(upperInclusive ? "$lte" : "$lt", upper);
+        }
+        return new BasicDBObject(field, condition);
+    }
+
+    /**
+     * Determine whether a chunk, whose bounds are on the same single field as
+     * this range, can hold documents within the range.
+     * @param min the inclusive lower bound of the chunk
+     * @param max the exclusive upper bound of the chunk
+     * @return {@code false} if the chunk lies entirely outside of the range
+     */
+    boolean overlaps(final BSONObject min, final BSONObject max) {
+        if (lower != null && max != null && max.containsField(field)) {
+            // The upper bound of the chunk is exclusive, so a chunk that
+            // ends at the lowest matching key holds nothing in the range.
+            if (compare(max.get(field), lower) <= 0) {
+                return false;
+            }
+        }
+        if (upper != null && min != null && min.containsField(field)) {
+            int cmp = compare(min.get(field), upper);
+            if (cmp > 0 || (0 == cmp && !upperInclusive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.DBCollectionCountOptions;
+import com.mongodb.hadoop.input.MongoIndexCache;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses a splitter for a collection by estimating what each candidate
+ * would cost, both to calculate the splits and to run a task per split.
+ *
+ * Costs are in units of one index key scanned by the server. Reading a
+ * document is taken to cost ten keys, a round trip a thousand, and starting
+ * a task, which takes about a second, a million. The facts used are the
+ * collection statistics, whether the split key is indexed, how many
+ * documents match the input query, and, for a sharded collection, how many
+ * chunks it has. The reasoning is logged at INFO level.
+ */
+final class SplitterPlanner {
+
+    private static final Log LOG = LogFactory.getLog(SplitterPlanner.class);
+
+    static final double KEY_COST = 1;
+    static final double FETCH_COST = 10;
+    static final double ROUND_TRIP_COST = 1000;
+    static final double TASK_COST = 1000 * 1000;
+
+    // $sample uses a random cursor when it asks for less than 5% of the
+    // collection, and scans the collection otherwise.
+    private static final double RANDOM_SAMPLE_RATIO = 0.05;
+    private static final long COUNT_TIMEOUT_MILLIS = 2000;
+    private static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final Configuration config;
+    private final DBCollection collection;
+    private final DBObject stats;
+    private final boolean sampleSupported;
+
+    private long count;
+    private long size;
+    private long targetBytes;
+    private long targetDocs;
+    private long matched;
+    private boolean hasQuery;
+    private boolean splitKeyIndexed;
+
+    /**
+     * Create a new SplitterPlanner.
+     * @param config the Configuration for the collection
+     * @param collection the input collection
+     * @param stats the result of collStats on the collection
+     * @param sampleSupported whether the server supports {@code $sample}
+     */
+    SplitterPlanner(
+      final Configuration config, final DBCollection collection,
+      final DBObject stats, final boolean sampleSupported) {
+        this.config = config;
+        this.collection = collection;
+        this.stats = stats;
+        this.sampleSupported = sampleSupported;
+    }
+
+    /**
+     * @return the cheapest splitter for the collection
+     */
+    MongoCollectionSplitter choose() {
+        boolean sharded = Boolean.TRUE.equals(stats.get("sharded"));
+        if (sharded && !MongoConfigUtil.isShardChunkedSplittingEnabled(config)
+          && MongoConfigUtil.canReadSplitsFromShards(config)) {
+            LOG.info("Using ShardMongoSplitter for " + collection.getFullName()
+              + ", since reading from shards directly was asked for.");
+            return new ShardMongoSplitter(config);
+        }
+        gatherFacts();
+        StringBuilder reasons = new StringBuilder(String.format(
+          Locale.ROOT,
+          "Choosing splitter for %s: sharded=%b, count=%d, size=%d, "
+            + "target split=%d bytes/%d documents, query matches=%d, "
+            + "split key indexed=%b.",
+          collection.getFullName(), sharded, count, size, targetBytes,
+          targetDocs, matched, splitKeyIndexed));
+
+        String best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        String[] candidates;
+        double[] costs;
+        if (sharded) {
+            long chunks = countChunks();
+            reasons.append(" chunks=").append(chunks).append('.');
+            candidates = new String[]{"ShardChunkMongoSplitter",
+                                      "MongoPaginatingSplitter"};
+            costs = new double[]{shardChunkCost(chunks), paginatingCost()};
+        } else {
+            candidates = new String[]{"SampleSplitter",
+                                      "StandaloneMongoSplitter",
+                                      "MongoPaginatingSplitter"};
+            costs = new double[]{sampleCost(), standaloneCost(),
+                                 paginatingCost()};
+        }
+        for (int i = 0; i < candidates.length; ++i) {
+            reasons.append(' ').append(candidates[i]).append('=');
+            if (Double.isInfinite(costs[i])) {
+                reasons.append("not applicable");
+            } else {
+                reasons.append(String.format(Locale.ROOT, "%.0f", costs[i]));
+            }
+            if (costs[i] < bestCost) {
+                bestCost = costs[i];
+                best = candidates[i];
+            }
+        }
+
+        MongoCollectionSplitter splitter;
+        if (null == best) {
+            splitter = fallback();
+            reasons.append("; no candidate applies, using ")
+              .append(splitter.getClass().getSimpleName());
+        } else {
+            splitter = create(best);
+            reasons.append("; using ").append(best);
+        }
+        LOG.info(reasons);
+        return splitter;
+    }
+
+    private void gatherFacts() {
+        count = longStat("count", 0);
+        size = longStat("size", 0);
+        long avgObjSize = longStat(
+          "avgObjSize", count > 0 ? Math.max(1, size / count) : 1);
+        targetBytes = (long) MongoConfigUtil.getSplitSize(config) * 1024 * 1024;
+        targetDocs = Math.max(1, targetBytes / Math.max(1, avgObjSize));
+
+        DBObject query = MongoConfigUtil.getQuery(config);
+        hasQuery = query != null && !query.keySet().isEmpty();
+        matched = hasQuery ? countMatches(query) : count;
+
+        DBObject splitKey = MongoConfigUtil.getInputSplitKey(config);
+        try {
+            splitKeyIndexed = MongoIndexCache.findIndexName(
+              collection, splitKey.keySet()) != null;
+        } catch (MongoException e) {
+            LOG.warn("Could not list indexes: " + e.getMessage());
+            splitKeyIndexed = false;
+        }
+    }
+
+    private long countMatches(final DBObject query) {
+        try {
+            return collection.count(
+              query, new DBCollectionCountOptions().maxTime(
+                COUNT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (MongoException e) {
+            // Too slow or not possible; assume the query is not selective.
+            LOG.info("Could not count documents matching the query, "
+              + "assuming all documents match: " + e.getMessage());
+            return count;
+        }
+    }
+
+    private long countChunks() {
+        long chunks = longStat("nchunks", -1);
+        if (chunks < 0) {
+            try {
+                chunks = collection.getDB().getSisterDB("config")
+                  .getCollection("chunks")
+                  .count(new BasicDBObject("ns", collection.getFullName()));
+            } catch (MongoException e) {
+                chunks = 0;
+            }
+        }
+        if (chunks <= 0) {
+            chunks = Math.max(1, size / DEFAULT_CHUNK_SIZE);
+        }
+        return chunks;
+    }
+
+    private long longStat(final String name, final long defaultValue) {
+        Object value = stats.get(name);
+        return value instanceof Number
+          ? ((Number) value).longValue() : defaultValue;
+    }
+
+    /**
+     * The cost of running tasks for a number of splits that cover the whole
+     * collection, of which only those with matching documents do any work.
+     */
+    private double taskCost(final long splits) {
+        long nonEmpty = Math.min(splits, splitsFor(matched));
+        if (MongoConfigUtil.isFilterEmptySplitsEnabled(config)) {
+            // Every split is probed, but only nonempty ones become tasks.
+            return splits * ROUND_TRIP_COST + nonEmpty * TASK_COST;
+        }
+        return splits * TASK_COST;
+    }
+
+    private long splitsFor(final long documents) {
+        return Math.max(1, (documents + targetDocs - 1) / targetDocs);
+    }
+
+    private long splitsBySize() {
+        return Math.max(1, (size + targetBytes - 1) / targetBytes);
+    }
+
+    private double standaloneCost() {
+        if (!splitKeyIndexed) {
+            // splitVector needs an index on the split key.
+            return Double.POSITIVE_INFINITY;
+        }
+        return ROUND_TRIP_COST + count * KEY_COST + taskCost(splitsBySize());
+    }
+
+    private double sampleCost() {
+        if (!sampleSupported
+          || !(splitKeyIndexed || MongoConfigUtil.isRangeQueryEnabled(config))) {
+            return Double.POSITIVE_INFINITY;
+        }
+        long splits = splitsBySize();
+        if (1 == splits) {
+            // Only collStats is run.
+            return ROUND_TRIP_COST + taskCost(1);
+        }
+        long samples = splits * MongoConfigUtil.getSamplesPerSplit(config);
+        double sampling = samples < RANDOM_SAMPLE_RATIO * count
+          ? samples * FETCH_COST : count * FETCH_COST;
+        return 2 * ROUND_TRIP_COST + sampling + taskCost(splits);
+    }
+
+    private double paginatingCost() {
+        long splits = splitsFor(matched);
+        // The splits are calculated one query after another on the client,
+        // which is only worth it when the query rules out at least half of
+        // the splits the other splitters would make.
+        if (!hasQuery || !splitKeyIndexed || 2 * splits > splitsBySize()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // Walking the split key index fetches every document to apply the
+        // query, but only produces splits that hold matching documents.
+        return count * FETCH_COST + splits * (ROUND_TRIP_COST + TASK_COST);
+    }
+
+    private double shardChunkCost(final long chunks) {
+        if (!MongoConfigUtil.isShardChunkedSplittingEnabled(config)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return ROUND_TRIP_COST + chunks * KEY_COST + taskCost(chunks);
+    }
+
+    private MongoCollectionSplitter create(final String name) {
+        if ("SampleSplitter".equals(name)) {
+            return new SampleSplitter(config);
+        } else if ("StandaloneMongoSplitter".equals(name)) {
+            return new StandaloneMongoSplitter(config);
+        } else if ("ShardChunkMongoSplitter".equals(name)) {
+            return new ShardChunkMongoSplitter(config);
+        }
+        if (null == config.get(MongoConfigUtil.INPUT_SPLIT_MIN_DOCS)) {
+            MongoConfigUtil.setInputSplitMinDocs(
+              config, (int) Math.min(Integer.MAX_VALUE, targetDocs));
+        }
+        return new MongoPaginatingSplitter(config);
+    }
+
+    /**
+     * Choose a splitter when none of the candidates apply. A sharded
+     * collection only gets here when chunk splitting is disabled and its
+     * shards are not read directly, so, as with the rules of
+     * {@link MongoSplitterFactory}, it is split like an unsharded one.
+     */
+    private MongoCollectionSplitter fallback() {
+        if (!splitKeyIndexed) {
+            LOG.warn("The split key "
+              + MongoConfigUtil.getInputSplitKey(config)
+              + " is not indexed, so the collection is read as one split.");
+            return new SingleMongoSplitter(config);
+        }
+        return new StandaloneMongoSplitter(config);
+    }
+}
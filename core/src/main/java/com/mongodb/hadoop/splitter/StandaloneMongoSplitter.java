@@ -67,10 +67,21 @@ public class StandaloneMongoSplitter extends MongoCollectionSplitter {
         final DBObject splitKey = MongoConfigUtil.getInputSplitKey(getConfiguration());
         final DBObject splitKeyMax = MongoConfigUtil.getMaxSplitKey(getConfiguration());
         final DBObject splitKeyMin = MongoConfigUtil.getMinSplitKey(getConfiguration());
+        // Only split the range of keys that the query can match, unless the
+        // bounds were given explicitly.
+        final SplitKeyRange queryRange = SplitKeyRange.fromQuery(
+          MongoConfigUtil.getQuery(getConfiguration()), splitKey);
+        final DBObject vectorMin =
+          splitKeyMin.keySet().isEmpty() && queryRange.getMin() != null
+            ? queryRange.getMin() : splitKeyMin;
+        final DBObject vectorMax =
+          splitKeyMax.keySet().isEmpty() && queryRange.getMax() != null
+            ? queryRange.getMax() : splitKeyMax;
         final int splitSize = MongoConfigUtil.getSplitSize(getConfiguration());
         final MongoClientURI inputURI;
         DBCollection inputCollection = null;
         final ArrayList<InputSplit> returnVal;
+        DBObject collectionStats = null;
         try {
             inputURI = MongoConfigUtil.getInputURI(getConfiguration());
             MongoClientURI authURI = MongoConfigUtil.getAuthURI(getConfiguration());
@@ -93,8 +104,8 @@ public class StandaloneMongoSplitter extends MongoCollectionSplitter {
             }
             final DBObject cmd = BasicDBObjectBuilder.start("splitVector", ns)
                                      .add("keyPattern", splitKey)
-                                     .add("min", splitKeyMin)
-                                     .add("max", splitKeyMax)
+                                     .add("min", vectorMin)
+                                     .add("max", vectorMax)
                                           // force:True is misbehaving it seems
                                      .add("force", false)
                                      .add("maxChunkSize", splitSize)
@@ -178,9 +189,10 @@ public class StandaloneMongoSplitter extends MongoCollectionSplitter {
 
             BasicDBObject lastKey = null; // Lower boundary of the first min split
 
-            // If splitKeyMin was given, use it as first boundary.
-            if (!splitKeyMin.toMap().isEmpty()) {
-                lastKey = new BasicDBObject(splitKeyMin.toMap());
+            // If splitKeyMin was given, or the query has a lower bound on
+            // the split key, use it as first boundary.
+            if (!vectorMin.toMap().isEmpty()) {
+                lastKey = new BasicDBObject(vectorMin.toMap());
             }
             for (final Object aSplitData : splitData) {
                 final BasicDBObject currentKey = (BasicDBObject) aSplitData;
@@ -192,19 +204,41 @@ public class StandaloneMongoSplitter extends MongoCollectionSplitter {
             // If splitKeyMax was given, use it as last boundary.
             if (!splitKeyMax.toMap().isEmpty()) {
                 maxKey = new BasicDBObject(splitKeyMax.toMap());
+            } else if (queryRange.getExclusiveMax() != null) {
+                // Split bounds are exclusive at the top, so an inclusive
+                // upper bound from the query leaves the last split open.
+                maxKey = queryRange.getExclusiveMax();
             }
             // Last max split
             final MongoInputSplit lastSplit = createSplitFromBounds(lastKey, maxKey);
             returnVal.add(lastSplit);
+            resolveHints(returnVal, inputCollection);
+            collectionStats = getStatsForEstimate(inputCollection);
+            if (collectionStats != null && queryRange.isBounded()
+              && splitKeyMin.keySet().isEmpty()
+              && splitKeyMax.keySet().isEmpty()) {
+                // The splits only cover the documents that the query can
+                // match.
+                try {
+                    collectionStats = getRangeStats(collectionStats,
+                      inputCollection.count(queryRange.toQuery()));
+                } catch (MongoException e) {
+                    LOG.warn("Could not count the documents in the range of "
+                      + "the query: " + e.getMessage());
+                    collectionStats = null;
+                }
+            }
         } finally {
             if (inputCollection != null) {
                 MongoConfigUtil.close(inputCollection.getDB().getMongoClient());
             }
         }
 
+        List<InputSplit> splits = returnVal;
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(getConfiguration())) {
-            return filterEmptySplits(returnVal);
+            splits = filterEmptySplitsInParallel(returnVal);
         }
-        return returnVal;
+        estimateSplitSizes(splits, collectionStats);
+        return splits;
     }
 }
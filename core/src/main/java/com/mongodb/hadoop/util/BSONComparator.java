@@ -21,8 +21,6 @@ import com.mongodb.LazyDBObject;
 import org.apache.hadoop.io.RawComparator;
 import org.bson.BSONObject;
 import org.bson.BasicBSONObject;
-import org.bson.LazyBSONCallback;
-import org.bson.LazyBSONDecoder;
 import org.bson.LazyBSONList;
 import org.bson.LazyBSONObject;
 import org.bson.types.BSONTimestamp;
@@ -30,6 +28,7 @@ import org.bson.types.BasicBSONList;
 import org.bson.types.Binary;
 import org.bson.types.Code;
 import org.bson.types.CodeWScope;
+import org.bson.types.Decimal128;
 import org.bson.types.MaxKey;
 import org.bson.types.MinKey;
 import org.bson.types.ObjectId;
@@ -50,7 +49,6 @@ public class BSONComparator implements RawComparator<BSONObject> {
 
     private static final BSONComparator INSTANCE;
     private static final Map<Class<?>, Integer> TYPES;
-    private static final LazyBSONDecoder DECODER;
 
     static {
         INSTANCE = new BSONComparator();
@@ -61,8 +59,10 @@ public class BSONComparator implements RawComparator<BSONObject> {
         aType.put(MinKey.class, 1);
         aType.put(null, 2);
         aType.put(Integer.class, 3);
+        aType.put(Long.class, 3);
         aType.put(Double.class, 3);
         aType.put(Float.class, 3);
+        aType.put(Decimal128.class, 3);
         aType.put(String.class, 4);
         aType.put(Symbol.class, 4);
         aType.put(LazyBSONObject.class, 5);
@@ -87,8 +87,6 @@ public class BSONComparator implements RawComparator<BSONObject> {
         aType.put(MaxKey.class, 12);
 
         TYPES = aType;
-
-        DECODER = new LazyBSONDecoder();
     }
 
     public static BSONComparator getInstance() {
@@ -115,9 +113,14 @@ public class BSONComparator implements RawComparator<BSONObject> {
         // Most of the objects have their own comparator
 
         if (one instanceof Number) {
-            // Need to be comparing all numeric values to one another, 
-            // so cast all of them to Double
-            diff = Double.valueOf(one.toString()).compareTo(Double.valueOf(two.toString()));
+            // Need to be comparing all numeric values to one another, so
+            // compare them as doubles, unless both are integers, which a
+            // double cannot hold exactly beyond 2^53
+            if (isIntegral(one) && isIntegral(two)) {
+                diff = compareLongs(((Number) one).longValue(), ((Number) two).longValue());
+            } else {
+                diff = Double.compare(((Number) one).doubleValue(), ((Number) two).doubleValue());
+            }
         } else if (one instanceof String) {
             diff = ((String) one).compareTo((String) two);
         } else if (one instanceof BSONObject) {
@@ -215,16 +218,278 @@ public class BSONComparator implements RawComparator<BSONObject> {
     }
 
 
+    /**
+     * Compare two BSON documents in their serialized form, without decoding
+     * them. Fields are compared in the same way as by
+     * {@link #compare(BSONObject, BSONObject)}: by name, then by the BSON
+     * type order in {@code TYPES}, then by value. Numbers of different types
+     * are compared by value, and strings are compared by code point.
+     */
     @Override
     public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
-        LazyBSONCallback cb = new LazyBSONCallback();
-        DECODER.decode(b1, cb);
-        BSONObject a = (BSONObject) cb.get();
-
-        cb.reset();
-        DECODER.decode(b2, cb);
-        BSONObject b = (BSONObject) cb.get();
-        return compare(a, b);
+        return compareDocuments(b1, s1, b2, s2);
+    }
+
+    /**
+     * @param b1, s1, b2, s2 - the buffers and the offsets of the int32 length at the start of two embedded documents or arrays
+     */
+    private static int compareDocuments(final byte[] b1, final int s1, final byte[] b2, final int s2) {
+        // Each document ends with a 0 byte in place of the next element type.
+        final int end1 = s1 + Bits.readInt(b1, s1) - 1;
+        final int end2 = s2 + Bits.readInt(b2, s2) - 1;
+        int p1 = s1 + 4;
+        int p2 = s2 + 4;
+
+        while (p1 < end1) {
+            // If the key, values up to now are the same, but 2 has more elements left
+            if (p2 >= end2) {
+                return -1;
+            }
+
+            final byte type1 = b1[p1++];
+            final byte type2 = b2[p2++];
+
+            // Different keys at this index
+            final int keyEnd1 = cstringEnd(b1, p1);
+            final int keyEnd2 = cstringEnd(b2, p2);
+            int diff = compareUnsigned(b1, p1, keyEnd1 - p1, b2, p2, keyEnd2 - p2);
+            if (diff != 0) {
+                return diff;
+            }
+            p1 = keyEnd1 + 1;
+            p2 = keyEnd2 + 1;
+
+            final boolean null1 = isNull(type1);
+            final boolean null2 = isNull(type2);
+            if (null1 && !null2) {
+                return -1;
+            }
+            if (null2 && !null1) {
+                return 1;
+            }
+            if (!null1) {
+                // Whether they're the same type
+                final int order = typeOrder(type1);
+                diff = order - typeOrder(type2);
+                if (diff != 0) {
+                    return diff;
+                }
+
+                diff = compareValues(order, type1, b1, p1, type2, b2, p2);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+
+            p1 += valueSize(type1, b1, p1);
+            p2 += valueSize(type2, b2, p2);
+        }
+
+        if (p2 < end2) {
+            return 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compare two serialized values with the same compare order, as given by {@link #typeOrder(byte)}.
+     */
+    private static int compareValues(final int order,
+                                     final byte type1, final byte[] b1, final int p1,
+                                     final byte type2, final byte[] b2, final int p2) {
+        switch (order) {
+            case 3:
+                if (isIntegral(type1) && isIntegral(type2)) {
+                    return compareLongs(integralValue(type1, b1, p1), integralValue(type2, b2, p2));
+                }
+                return Double.compare(doubleValue(type1, b1, p1), doubleValue(type2, b2, p2));
+            case 4:
+                // Strings and symbols, without their terminating 0 byte.
+                return compareUnsigned(b1, p1 + 4, Bits.readInt(b1, p1) - 1, b2, p2 + 4, Bits.readInt(b2, p2) - 1);
+            case 5:
+            case 6:
+                return compareDocuments(b1, p1, b2, p2);
+            case 7:
+                // Binary data, compared like ByteBuffers.
+                return compareSigned(b1, p1 + 5, Bits.readInt(b1, p1), b2, p2 + 5, Bits.readInt(b2, p2));
+            case 8:
+                return compareUnsigned(b1, p1, 12, b2, p2, 12);
+            case 9:
+                return b1[p1] - b2[p2];
+            case 10:
+                if (type1 != type2) {
+                    return type1 - type2;
+                }
+                if (type1 == 0x09) {
+                    return compareLongs(Bits.readLong(b1, p1), Bits.readLong(b2, p2));
+                }
+                // Timestamps are compared by time, then increment.
+                int diff = compareInts(Bits.readInt(b1, p1 + 4), Bits.readInt(b2, p2 + 4));
+                return diff != 0 ? diff : compareInts(Bits.readInt(b1, p1), Bits.readInt(b2, p2));
+            case 1:
+            case 12:
+                return 0;
+            default:
+                // Regular expressions, code, and anything else are compared by their bytes.
+                if (type1 != type2) {
+                    return type1 - type2;
+                }
+                return compareUnsigned(b1, p1, valueSize(type1, b1, p1), b2, p2, valueSize(type2, b2, p2));
+        }
+    }
+
+    /**
+     * @return the compare order of a BSON element type, matching the orders in {@code TYPES}.
+     */
+    private static int typeOrder(final byte type) {
+        switch (type) {
+            case (byte) 0xFF:
+                return 1;
+            case 0x06:
+            case 0x0A:
+                return 2;
+            case 0x01:
+            case 0x10:
+            case 0x12:
+            case 0x13:
+                return 3;
+            case 0x02:
+            case 0x0E:
+                return 4;
+            case 0x03:
+                return 5;
+            case 0x04:
+                return 6;
+            case 0x05:
+                return 7;
+            case 0x07:
+                return 8;
+            case 0x08:
+                return 9;
+            case 0x09:
+            case 0x11:
+                return 10;
+            case 0x0B:
+                return 11;
+            case 0x7F:
+                return 12;
+            case 0x0D:
+            case 0x0F:
+                return 13;
+            default:
+                return 14;
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by a serialized value of the given type
+     */
+    private static int valueSize(final byte type, final byte[] b, final int p) {
+        switch (type) {
+            case 0x06:
+            case 0x0A:
+            case 0x7F:
+            case (byte) 0xFF:
+                return 0;
+            case 0x08:
+                return 1;
+            case 0x10:
+                return 4;
+            case 0x01:
+            case 0x09:
+            case 0x11:
+            case 0x12:
+                return 8;
+            case 0x07:
+                return 12;
+            case 0x13:
+                return 16;
+            case 0x02:
+            case 0x0D:
+            case 0x0E:
+                return 4 + Bits.readInt(b, p);
+            case 0x03:
+            case 0x04:
+            case 0x0F:
+                return Bits.readInt(b, p);
+            case 0x05:
+                return 5 + Bits.readInt(b, p);
+            case 0x0B:
+                int patternEnd = cstringEnd(b, p);
+                return cstringEnd(b, patternEnd + 1) + 1 - p;
+            case 0x0C:
+                return 4 + Bits.readInt(b, p) + 12;
+            default:
+                throw new IllegalArgumentException("Unknown BSON type: " + type);
+        }
+    }
+
+    private static boolean isNull(final byte type) {
+        return type == 0x0A || type == 0x06;
+    }
+
+    private static boolean isIntegral(final Object number) {
+        return number instanceof Integer || number instanceof Long;
+    }
+
+    private static boolean isIntegral(final byte type) {
+        return type == 0x10 || type == 0x12;
+    }
+
+    private static long integralValue(final byte type, final byte[] b, final int p) {
+        return type == 0x10 ? Bits.readInt(b, p) : Bits.readLong(b, p);
+    }
+
+    private static double doubleValue(final byte type, final byte[] b, final int p) {
+        switch (type) {
+            case 0x01:
+                return Double.longBitsToDouble(Bits.readLong(b, p));
+            case 0x13:
+                return Decimal128.fromIEEE754BIDEncoding(Bits.readLong(b, p + 8), Bits.readLong(b, p)).doubleValue();
+            default:
+                return integralValue(type, b, p);
+        }
+    }
+
+    private static int cstringEnd(final byte[] b, final int p) {
+        int end = p;
+        while (b[end] != 0) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int compareUnsigned(final byte[] b1, final int p1, final int l1,
+                                       final byte[] b2, final int p2, final int l2) {
+        final int n = Math.min(l1, l2);
+        for (int i = 0; i < n; i++) {
+            int diff = (b1[p1 + i] & 0xFF) - (b2[p2 + i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return l1 - l2;
+    }
+
+    private static int compareSigned(final byte[] b1, final int p1, final int l1,
+                                     final byte[] b2, final int p2, final int l2) {
+        final int n = Math.min(l1, l2);
+        for (int i = 0; i < n; i++) {
+            int diff = b1[p1 + i] - b2[p2 + i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return l1 - l2;
+    }
+
+    private static int compareInts(final int a, final int b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
+    }
+
+    private static int compareLongs(final long a, final long b) {
+        return a < b ? -1 : (a == b ? 0 : 1);
     }
 
 }
@@ -2,6 +2,7 @@ package com.mongodb.hadoop.util;
 
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.util.Progressable;
 
@@ -21,6 +22,13 @@ public final class CompatUtils {
     public interface TaskAttemptContext extends Progressable {
         Configuration getConfiguration();
         TaskAttemptID getTaskAttemptID();
+
+        /**
+         * Get a Counter for the TaskAttempt.
+         * @param counterName the Enum naming the counter
+         * @return the Counter, or {@code null} if counters are not available
+         */
+        Counter getCounter(Enum<?> counterName);
     }
 
     private interface CompatProxy {}
@@ -37,9 +45,18 @@ public final class CompatUtils {
         @Override
         public Object invoke(final Object proxy, final Method method, final Object[] args)
           throws Throwable {
-            Method m = target.getClass().getMethod(
-              method.getName(),
-              method.getParameterTypes());
+            Method m;
+            try {
+                m = target.getClass().getMethod(
+                  method.getName(),
+                  method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                // Not every version of Hadoop provides counters here.
+                if ("getCounter".equals(method.getName())) {
+                    return null;
+                }
+                throw e;
+            }
             return m.invoke(target, args);
         }
     }
@@ -69,6 +86,11 @@ public final class CompatUtils {
             public void progress() {
                 // Do nothing.
             }
+
+            @Override
+            public Counter getCounter(final Enum<?> counterName) {
+                return null;
+            }
         };
     }
 
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads, so that a thread pool never keeps a task
+ * JVM from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Create a new DaemonThreadFactory.
+     * @param prefix the name of the threads, which is followed by a dash and
+     *               the number of the thread
+     */
+    public DaemonThreadFactory(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+        Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares MongoClients among all threads of the JVM.
+ *
+ * There is one client per connection string, so different credentials get
+ * different clients. Each call to {@link #acquire} must be balanced by a call
+ * to {@link #release}. A client that nobody holds is kept open for the idle
+ * timeout, so that the next task or reader in the same JVM does not have to
+ * discover the servers and authenticate again, and is closed after that.
+ */
+final class MongoClientCache {
+
+    private static final Log LOG = LogFactory.getLog(MongoClientCache.class);
+
+    private static final Map<String, CachedClient> CLIENTS =
+      new HashMap<String, CachedClient>();
+    private static final Map<MongoClient, CachedClient> BY_CLIENT =
+      new IdentityHashMap<MongoClient, CachedClient>();
+
+    private static int maxPoolSize;
+    private static long idleTimeout =
+      MongoConfigUtil.DEFAULT_CLIENT_IDLE_TIMEOUT;
+    private static ScheduledExecutorService evictor;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                closeAll();
+            }
+        }, "mongo-client-cache-shutdown"));
+    }
+
+    private MongoClientCache() {
+    }
+
+    /**
+     * Set the number of connections per server for clients created from now
+     * on, unless their URI sets {@code maxPoolSize} itself.
+     * @param size the pool size, or 0 to use the driver's default
+     */
+    static synchronized void setMaxPoolSize(final int size) {
+        maxPoolSize = size;
+    }
+
+    /**
+     * Set how long a client that nobody holds stays open.
+     * @param millis the idle timeout in milliseconds; clients are closed
+     *               as soon as they are released if this is not positive
+     */
+    static synchronized void setIdleTimeout(final long millis) {
+        idleTimeout = millis;
+    }
+
+    /**
+     * Get the client for a URI, creating it if necessary.
+     * @param uri the MongoClientURI
+     * @return the shared MongoClient for the URI
+     */
+    static synchronized MongoClient acquire(final MongoClientURI uri) {
+        String key = uri.getURI();
+        CachedClient cached = CLIENTS.get(key);
+        if (null == cached) {
+            cached = new CachedClient(
+              key, uri.getHosts(), new MongoClient(withPoolSize(uri)));
+            CLIENTS.put(key, cached);
+            BY_CLIENT.put(cached.client, cached);
+        }
+        ++cached.references;
+        return cached.client;
+    }
+
+    /**
+     * Give up one reference to a client obtained from {@link #acquire}.
+     * Clients that did not come from the cache are ignored.
+     * @param client the MongoClient
+     */
+    static synchronized void release(final MongoClient client) {
+        CachedClient cached = BY_CLIENT.get(client);
+        if (null == cached || 0 == cached.references) {
+            return;
+        }
+        if (--cached.references > 0) {
+            return;
+        }
+        if (idleTimeout <= 0) {
+            remove(cached);
+            return;
+        }
+        cached.idleSince = System.currentTimeMillis();
+        startEvictor();
+    }
+
+    /**
+     * Close all clients, whether or not they are still held.
+     */
+    static synchronized void closeAll() {
+        for (CachedClient cached
+          : new ArrayList<CachedClient>(CLIENTS.values())) {
+            remove(cached);
+        }
+    }
+
+    /**
+     * @return the number of clients that are currently open
+     */
+    static synchronized int size() {
+        return CLIENTS.size();
+    }
+
+    private static synchronized void evictIdle() {
+        long now = System.currentTimeMillis();
+        List<CachedClient> idle = new ArrayList<CachedClient>();
+        for (CachedClient cached : CLIENTS.values()) {
+            if (0 == cached.references
+              && now - cached.idleSince >= idleTimeout) {
+                idle.add(cached);
+            }
+        }
+        for (CachedClient cached : idle) {
+            remove(cached);
+        }
+        if (CLIENTS.isEmpty() && evictor != null) {
+            evictor.shutdown();
+            evictor = null;
+        }
+    }
+
+    private static void remove(final CachedClient cached) {
+        CLIENTS.remove(cached.key);
+        BY_CLIENT.remove(cached.client);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Closing MongoClient for " + cached.hosts);
+        }
+        cached.client.close();
+    }
+
+    private static void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactory() {
+              @Override
+              public Thread newThread(final Runnable r) {
+                  Thread t = new Thread(r, "mongo-client-evictor");
+                  t.setDaemon(true);
+                  return t;
+              }
+          });
+        long period = Math.max(1, idleTimeout / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static MongoClientURI withPoolSize(final MongoClientURI uri) {
+        if (maxPoolSize <= 0 || hasOption(uri.getURI(), "maxpoolsize")) {
+            return uri;
+        }
+        return new MongoClientURI(
+          uri.getURI(),
+          MongoClientOptions.builder().connectionsPerHost(maxPoolSize));
+    }
+
+    private static boolean hasOption(final String uri, final String option) {
+        int query = uri.indexOf('?');
+        if (query < 0) {
+            return false;
+        }
+        for (String pair : uri.substring(query + 1).split("[&;]")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            if (name.equalsIgnoreCase(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class CachedClient {
+        private final String key;
+        private final List<String> hosts;
+        private final MongoClient client;
+        private int references;
+        private long idleSince;
+
+        CachedClient(
+          final String key, final List<String> hosts,
+          final MongoClient client) {
+            this.key = key;
+            this.hosts = hosts;
+            this.client = client;
+        }
+    }
+}
@@ -34,6 +34,8 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.OutputFormat;
@@ -43,11 +45,12 @@ import org.apache.hadoop.mapreduce.Reducer;
 import java.io.IOException;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -85,10 +88,94 @@ public final class MongoConfigUtil {
     public static final String INPUT_MONGOS_HOSTS = "mongo.input.mongos_hosts";
     public static final String OUTPUT_URI = "mongo.output.uri";
     public static final String OUTPUT_BATCH_SIZE = "mongo.output.batch.size";
+
+    /**
+     * <p>
+     * The maximum encoded size, in bytes, of the operations sent to MongoDB
+     * in one bulk write. A batch is sent as soon as it reaches either this
+     * size or {@link #OUTPUT_BATCH_SIZE} operations, so a batch may exceed
+     * this size by at most one document. Records written directly to
+     * MongoDB are encoded once more to measure them while this is set.
+     * </p>
+     * <p>
+     * Defaults to {@code 0}, which limits batches by number of operations
+     * only.
+     * </p>
+     */
+    public static final String OUTPUT_BATCH_BYTES = "mongo.output.batch.bytes";
+    public static final long DEFAULT_OUTPUT_BATCH_BYTES = 0;
+
+    /**
+     * <p>
+     * If {@code true}, {@link #OUTPUT_BATCH_SIZE} is only the initial number
+     * of operations per bulk write. The batch size then grows while bulk
+     * writes complete in well under {@link #OUTPUT_BATCH_TARGET_LATENCY},
+     * and is halved when a bulk write is slower than that or fails.
+     * </p>
+     * <p>
+     * Defaults to {@code false}
+     * </p>
+     */
+    public static final String OUTPUT_BATCH_ADAPTIVE = "mongo.output.batch.adaptive";
+
+    /**
+     * The target time, in milliseconds, for one bulk write to complete when
+     * {@link #OUTPUT_BATCH_ADAPTIVE} is enabled. Defaults to
+     * {@link #DEFAULT_OUTPUT_BATCH_TARGET_LATENCY}.
+     */
+    public static final String OUTPUT_BATCH_TARGET_LATENCY =
+      "mongo.output.batch.target_latency_ms";
+    public static final int DEFAULT_OUTPUT_BATCH_TARGET_LATENCY = 1000;
     public static final String OUTPUT_BULK_ORDERED = "mongo.output.bulk.ordered";
 
+    /**
+     * <p>
+     * The number of threads MongoOutputCommitter uses to send bulk writes to
+     * MongoDB when committing a task. When greater than 1, records are
+     * decoded from the temporary file while earlier batches are in flight,
+     * and each thread sends its own batches. Ordered bulk writes (see
+     * {@link #OUTPUT_BULK_ORDERED}) always use a single writer thread.
+     * </p>
+     * <p>
+     * Defaults to {@code 1}
+     * </p>
+     */
+    public static final String OUTPUT_BULK_THREADS = "mongo.output.bulk.threads";
+
+    /**
+     * <p>
+     * If {@code true}, MongoRecordWriter sends its output to MongoDB in
+     * batches while the task runs, instead of buffering all output in a
+     * temporary file and writing it when the task is committed.
+     * </p>
+     * <p>
+     * Documents are written as upserts keyed on {@code _id}, so that a task
+     * attempt that fails or is run speculatively can be re-run safely.
+     * Note that any writes made by an attempt that is later killed are
+     * not rolled back.
+     * </p>
+     * <p>
+     * Defaults to {@code false}
+     * </p>
+     */
+    public static final String OUTPUT_DIRECT = "mongo.output.direct";
+
     public static final String MONGO_SPLITTER_CLASS = "mongo.splitter.class";
 
+    /**
+     * <p>
+     * Whether to choose a splitter by estimating the cost of each one from
+     * the collection statistics, split key indexes and the selectivity of
+     * the input query, when {@link #MONGO_SPLITTER_CLASS} is not set. When
+     * {@code false}, SampleSplitter is used for unsharded collections on
+     * MongoDB 3.2 and later, and ShardChunkMongoSplitter for sharded ones.
+     * </p>
+     * <p>
+     * Defaults to {@code true}.
+     * </p>
+     */
+    public static final String SPLITTER_COST_BASED = "mongo.splitter.cost_based";
+
     /**
      * <p>
      * The MongoDB field to read from for the Mapper Input.
@@ -102,11 +189,70 @@ public final class MongoConfigUtil {
      */
     public static final String INPUT_KEY = "mongo.input.key";
     public static final String INPUT_NOTIMEOUT = "mongo.input.notimeout";
+    /**
+     * <p>
+     * The number of documents the server returns in each batch of an input cursor.
+     * </p>
+     * <p>
+     * Defaults to {@code 0}, which leaves the batch size to the server.
+     * </p>
+     */
+    public static final String INPUT_BATCH_SIZE = "mongo.input.batch_size";
+    /**
+     * <p>
+     * The number of batches of documents a background thread reads ahead of the record reader, so that fetching documents from the
+     * server overlaps with processing them in the mapper. A batch is {@link #INPUT_BATCH_SIZE} documents, or
+     * {@link #DEFAULT_INPUT_PREFETCH_BATCH_SIZE} if that is not set.
+     * </p>
+     * <p>
+     * Defaults to {@code 0}, which reads documents only when the mapper asks for them.
+     * </p>
+     */
+    public static final String INPUT_PREFETCH_BATCHES = "mongo.input.prefetch_batches";
+    public static final int DEFAULT_INPUT_PREFETCH_BATCH_SIZE = 1000;
+    /**
+     * <p>
+     * How many times in a row a record reader reopens its cursor after a retryable error, such as a primary stepdown, a network error or
+     * a cursor that timed out on the server. The cursor continues after the last document read, by the min/max bounds of the split, so
+     * only splits with such bounds and without a sort can be resumed. The reader fails once the attempts are used up.
+     * </p>
+     * <p>
+     * Defaults to {@code 3}
+     * </p>
+     */
+    public static final String INPUT_RESUME_MAX_ATTEMPTS = "mongo.input.resume.max_attempts";
+    /**
+     * <p>
+     * How long, in milliseconds, a record reader waits before it first reopens its cursor after a retryable error. The wait doubles with
+     * every further attempt in a row.
+     * </p>
+     * <p>
+     * Defaults to {@code 1000}
+     * </p>
+     */
+    public static final String INPUT_RESUME_BACKOFF = "mongo.input.resume.backoff_ms";
     public static final String INPUT_QUERY = "mongo.input.query";
     public static final String INPUT_FIELDS = "mongo.input.fields";
     public static final String INPUT_SORT = "mongo.input.sort";
     public static final String INPUT_LIMIT = "mongo.input.limit";
     public static final String INPUT_SKIP = "mongo.input.skip";
+    /**
+     * <p>
+     * A JSON array of aggregation stages, such as {@code [{"$group": {"_id": "$state", "n": {"$sum": 1}}}]}, that each split runs on its
+     * documents, so that records are the results of the pipeline rather than the documents themselves. The documents of a split are
+     * matched, sorted, skipped, limited and projected first, as they would be by a query, so {@link #INPUT_QUERY} and the like still
+     * apply. Each split runs the pipeline separately, so stages like {@code $group} give partial results per split that the job must
+     * combine, e.g. by summing the counts of each split.
+     * </p>
+     * <p>
+     * The bounds of each split are matched as a range on their field, so they must be on a single field, and both ends of a split must
+     * have the same type unless one of them is open, MinKey or MaxKey. Otherwise the job fails when its splits are calculated.
+     * </p>
+     * <p>
+     * Unset by default, which reads the documents of each split with a query.
+     * </p>
+     */
+    public static final String INPUT_PIPELINE = "mongo.input.pipeline";
     public static final String INPUT_LAZY_BSON = "mongo.input.lazy_bson";
 
 
@@ -116,6 +262,29 @@ public final class MongoConfigUtil {
     public static final String BSON_WRITE_SPLITS = "bson.split.write_splits";
     public static final String BSON_OUTPUT_BUILDSPLITS = "bson.output.build_splits";
     public static final String BSON_PATHFILTER = "bson.pathfilter.class";
+    /**
+     * The number of threads used to calculate the splits of a BSON file that
+     * has no ".splits" file. Defaults to the number of available processors.
+     */
+    public static final String BSON_SPLIT_THREADS = "bson.split.threads";
+    /**
+     * Write BSON output as a block-compressed container file, which can be
+     * split at block boundaries. Defaults to {@code false}.
+     *
+     * @see com.mongodb.hadoop.io.BSONBlockFile
+     */
+    public static final String BSON_OUTPUT_BLOCK_COMPRESS = "bson.output.block.compress";
+    /**
+     * The {@link org.apache.hadoop.io.compress.CompressionCodec} used to
+     * compress the blocks of a block-compressed BSON file. Defaults to
+     * {@link org.apache.hadoop.io.compress.DefaultCodec}.
+     */
+    public static final String BSON_OUTPUT_BLOCK_CODEC = "bson.output.block.codec";
+    /**
+     * The number of uncompressed bytes of documents to collect into each block
+     * of a block-compressed BSON file. Defaults to 1MB.
+     */
+    public static final String BSON_OUTPUT_BLOCK_SIZE = "bson.output.block.size";
 
     // Settings specific to reading from GridFS.
     public static final String GRIDFS_DELIMITER_PATTERN =
@@ -169,6 +338,49 @@ public final class MongoConfigUtil {
     public static final String ENABLE_FILTER_EMPTY_SPLITS =
       "mongo.input.splits.filter_empty";
 
+    /**
+     * The number of threads used to check for empty splits when
+     * {@link #ENABLE_FILTER_EMPTY_SPLITS} is enabled. Defaults to {@code 8}.
+     */
+    public static final String FILTER_EMPTY_SPLITS_THREADS =
+      "mongo.input.splits.filter_empty.threads";
+
+    /**
+     * The number of input collections whose splits are calculated at once
+     * by {@link com.mongodb.hadoop.splitter.MultiMongoCollectionSplitter}.
+     * Defaults to {@code 4}.
+     */
+    public static final String INPUT_MULTI_URI_THREADS =
+      "mongo.input.multi_uri.threads";
+
+    /**
+     * A directory, on any Hadoop FileSystem, in which the splits calculated
+     * for a collection are kept for later jobs with the same input settings.
+     * A cached plan is used as long as a sharded collection has the same
+     * chunk versions and the document count and data size of the collection
+     * are within {@link #INPUT_SPLITS_CACHE_MAX_DRIFT} of what they were.
+     * This does not apply when {@link #MONGO_SPLITTER_CLASS} is set. Unset
+     * by default, which disables the cache.
+     */
+    public static final String INPUT_SPLITS_CACHE_DIR =
+      "mongo.input.splits.cache.dir";
+
+    /**
+     * The largest relative change in the document count or data size of a
+     * collection for which splits cached in {@link #INPUT_SPLITS_CACHE_DIR}
+     * are still used. Defaults to {@code 0.1}.
+     */
+    public static final String INPUT_SPLITS_CACHE_MAX_DRIFT =
+      "mongo.input.splits.cache.max_drift";
+
+    /**
+     * How long, in milliseconds, splits cached in
+     * {@link #INPUT_SPLITS_CACHE_DIR} are kept. Older files are not used, and
+     * are deleted whenever a job writes to the cache. Defaults to 7 days.
+     */
+    public static final String INPUT_SPLITS_CACHE_MAX_AGE =
+      "mongo.input.splits.cache.max_age_ms";
+
     /**
      * When {@link #SPLITS_USE_RANGEQUERY} is enabled, this option sets the
      * minimum number of documents to be contained in each MongoInputSplit
@@ -247,6 +459,27 @@ public final class MongoConfigUtil {
      * result in data being run multiple times <p> Defaults to {@code true }
      */
     public static final String SPLITS_USE_CHUNKS = "mongo.input.split.read_shard_chunks";
+    /**
+     * <p>
+     * If {@code true}, adjacent shard chunks on the same shard are read as one split for as long as their estimated size together does
+     * not exceed {@link #INPUT_SPLIT_SIZE}. This only applies when {@link #SPLITS_USE_CHUNKS} is {@code true}.
+     * </p>
+     * <p>
+     * Defaults to {@code true}
+     * </p>
+     */
+    public static final String SPLITS_MERGE_CHUNKS = "mongo.input.split.merge_shard_chunks";
+    /**
+     * <p>
+     * If {@code true}, jumbo shard chunks and chunks estimated to hold more than twice the larger of {@link #INPUT_SPLIT_SIZE} and the
+     * default chunk size of 64MB are divided into several splits by running {@code splitVector} on their own shard. This only applies
+     * when {@link #SPLITS_USE_CHUNKS} is {@code true}.
+     * </p>
+     * <p>
+     * Defaults to {@code true}
+     * </p>
+     */
+    public static final String SPLITS_SPLIT_LARGE_CHUNKS = "mongo.input.split.split_large_shard_chunks";
     /**
      * <p>
      * If true then shards are replica sets run queries on slaves. If set this will override any option passed on the URI.
@@ -257,6 +490,38 @@ public final class MongoConfigUtil {
      */
     public static final String SPLITS_SLAVE_OK = "mongo.input.split.allow_read_from_secondaries";
 
+    /**
+     * <p>
+     * The read preference mode, such as {@code secondaryPreferred} or {@code nearest}, by which each split is given a member of a replica
+     * set to read from. Splits are spread evenly among the members that the mode, {@link #SPLITS_READ_TAGS} and
+     * {@link #SPLITS_MAX_STALENESS} allow, and report that member as their location. Splits that read through a {@code mongos} get the
+     * read preference in their URI instead.
+     * </p>
+     * <p>
+     * Unset by default, which reads from the members chosen by the input URI.
+     * </p>
+     */
+    public static final String SPLITS_READ_ROUTING = "mongo.input.split.read_routing";
+    /**
+     * <p>
+     * A JSON array of tag sets, such as {@code [{"dc": "east"}, {}]}, that the members chosen by {@link #SPLITS_READ_ROUTING} must
+     * match. The first tag set that matches any member is used.
+     * </p>
+     * <p>
+     * Unset by default, which allows members with any tags.
+     * </p>
+     */
+    public static final String SPLITS_READ_TAGS = "mongo.input.split.read_tags";
+    /**
+     * <p>
+     * How far, in seconds, a secondary chosen by {@link #SPLITS_READ_ROUTING} may lag behind the primary.
+     * </p>
+     * <p>
+     * Defaults to {@code -1}, which allows any lag.
+     * </p>
+     */
+    public static final String SPLITS_MAX_STALENESS = "mongo.input.split.max_staleness_seconds";
+
     /**
      * <p>
      * If true then queries for splits will be constructed using $lt/$gt instead of $min and $max.
@@ -268,22 +533,31 @@ public final class MongoConfigUtil {
     public static final String SPLITS_USE_RANGEQUERY = "mongo.input.split.use_range_queries";
 
     /**
-     * One client per thread
+     * <p>
+     * The maximum number of connections to each server held by a MongoClient,
+     * unless the connection string sets {@code maxPoolSize} itself. MongoClients
+     * are shared by all threads in a JVM, so this bounds the number of
+     * connections each task JVM opens to a server.
+     * </p>
+     * <p>
+     * Defaults to {@code 0}, which leaves the driver's default in place.
+     * </p>
+     */
+    public static final String CLIENT_MAX_POOL_SIZE = "mongo.client.max_pool_size";
+
+    /**
+     * <p>
+     * How long, in milliseconds, a shared MongoClient that is no longer used
+     * stays open for reuse by later readers and writers in the same JVM. If
+     * this is not positive, clients are closed as soon as they are released.
+     * </p>
+     * <p>
+     * Defaults to {@code 60000}.
+     * </p>
      */
-    private static final ThreadLocal<Map<MongoClientURI, MongoClient>> CLIENTS =
-      new ThreadLocal<Map<MongoClientURI, MongoClient>>() {
-          @Override public Map<MongoClientURI, MongoClient> initialValue() {
-              return new HashMap<MongoClientURI, MongoClient>();
-          }
-      };
+    public static final String CLIENT_IDLE_TIMEOUT = "mongo.client.idle_timeout_ms";
 
-    private static final ThreadLocal<Map<MongoClient, MongoClientURI>> URI_MAP =
-      new ThreadLocal<Map<MongoClient, MongoClientURI>>() {
-          @Override
-          public Map<MongoClient, MongoClientURI> initialValue() {
-              return new HashMap<MongoClient, MongoClientURI>();
-          }
-      };
+    static final long DEFAULT_CLIENT_IDLE_TIMEOUT = 60000;
 
     private MongoConfigUtil() {
     }
@@ -481,6 +755,7 @@ public final class MongoConfigUtil {
     }
 
     public static DBCollection getOutputCollection(final Configuration conf) {
+        configureClients(conf);
         try {
             return getCollection(getOutputURI(conf));
         } catch (final Exception e) {
@@ -489,6 +764,7 @@ public final class MongoConfigUtil {
     }
 
     public static DBCollection getInputCollection(final Configuration conf) {
+        configureClients(conf);
         try {
             return getCollection(getInputURI(conf));
         } catch (final Exception e) {
@@ -579,6 +855,97 @@ public final class MongoConfigUtil {
         conf.setBoolean(OUTPUT_BULK_ORDERED, ordered);
     }
 
+    /**
+     * Get the maximum encoded size of the operations sent to MongoDB in one
+     * bulk write.
+     * @param conf the Configuration
+     * @return the maximum size in bytes, or {@code 0} if there is no limit
+     * @see #OUTPUT_BATCH_BYTES
+     */
+    public static long getBatchBytes(final Configuration conf) {
+        return conf.getLong(OUTPUT_BATCH_BYTES, DEFAULT_OUTPUT_BATCH_BYTES);
+    }
+
+    /**
+     * Set the maximum encoded size of the operations sent to MongoDB in one
+     * bulk write.
+     * @param conf the Configuration
+     * @param bytes the maximum size in bytes, or {@code 0} for no limit
+     * @see #OUTPUT_BATCH_BYTES
+     */
+    public static void setBatchBytes(final Configuration conf, final long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException(
+              OUTPUT_BATCH_BYTES + " must not be negative.");
+        }
+        conf.setLong(OUTPUT_BATCH_BYTES, bytes);
+    }
+
+    public static boolean isAdaptiveBatching(final Configuration conf) {
+        return conf.getBoolean(OUTPUT_BATCH_ADAPTIVE, false);
+    }
+
+    public static void setAdaptiveBatching(final Configuration conf, final boolean adaptive) {
+        conf.setBoolean(OUTPUT_BATCH_ADAPTIVE, adaptive);
+    }
+
+    public static int getBatchTargetLatency(final Configuration conf) {
+        return conf.getInt(
+          OUTPUT_BATCH_TARGET_LATENCY, DEFAULT_OUTPUT_BATCH_TARGET_LATENCY);
+    }
+
+    public static void setBatchTargetLatency(final Configuration conf, final int millis) {
+        conf.setInt(OUTPUT_BATCH_TARGET_LATENCY, millis);
+    }
+
+    /**
+     * Get the number of threads used to send bulk writes to MongoDB when
+     * committing a task.
+     * @param conf the Configuration
+     * @return the number of threads
+     * @see #OUTPUT_BULK_THREADS
+     */
+    public static int getBulkWriteThreads(final Configuration conf) {
+        return conf.getInt(OUTPUT_BULK_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads used to send bulk writes to MongoDB when
+     * committing a task.
+     * @param conf the Configuration
+     * @param threads the number of threads
+     * @see #OUTPUT_BULK_THREADS
+     */
+    public static void setBulkWriteThreads(final Configuration conf, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+              OUTPUT_BULK_THREADS + " must be at least 1.");
+        }
+        conf.setInt(OUTPUT_BULK_THREADS, threads);
+    }
+
+    /**
+     * Get whether output should be written to MongoDB directly while the
+     * task runs, rather than from a temporary file when the task commits.
+     * @param conf the Configuration
+     * @return true if output is written directly, false otherwise
+     * @see #OUTPUT_DIRECT
+     */
+    public static boolean isDirectOutput(final Configuration conf) {
+        return conf.getBoolean(OUTPUT_DIRECT, false);
+    }
+
+    /**
+     * Set whether output should be written to MongoDB directly while the
+     * task runs, rather than from a temporary file when the task commits.
+     * @param conf the Configuration
+     * @param direct true if output should be written directly
+     * @see #OUTPUT_DIRECT
+     */
+    public static void setDirectOutput(final Configuration conf, final boolean direct) {
+        conf.setBoolean(OUTPUT_DIRECT, direct);
+    }
+
     /**
      * Set the maximum number of documents that should be loaded into memory
      * and sent in a batch to MongoDB as the output of a job.
@@ -692,6 +1059,40 @@ public final class MongoConfigUtil {
         conf.setInt(INPUT_SKIP, skip);
     }
 
+    /**
+     * @param conf the Configuration
+     * @return the stages of the aggregation pipeline that each split runs,
+     *         or {@code null} if splits are read with a query
+     */
+    public static List<DBObject> getPipeline(final Configuration conf) {
+        if (null == conf.get(INPUT_PIPELINE)) {
+            return null;
+        }
+        Object stages = JSON.parse(conf.get(INPUT_PIPELINE));
+        if (!(stages instanceof List)) {
+            throw new IllegalArgumentException(
+              INPUT_PIPELINE + " must be a JSON array of aggregation stages.");
+        }
+        List<DBObject> pipeline = new ArrayList<DBObject>();
+        for (Object stage : (List) stages) {
+            pipeline.add((DBObject) stage);
+        }
+        return pipeline;
+    }
+
+    public static void setPipeline(final Configuration conf, final String pipeline) {
+        setJSON(conf, INPUT_PIPELINE, pipeline);
+    }
+
+    /**
+     * Set the aggregation pipeline that each split runs on its documents.
+     * @param conf the Configuration
+     * @param pipeline the stages of the pipeline
+     */
+    public static void setPipeline(final Configuration conf, final List<DBObject> pipeline) {
+        conf.set(INPUT_PIPELINE, JSON.serialize(pipeline));
+    }
+
     public static boolean getLazyBSON(final Configuration conf) {
         return conf.getBoolean(INPUT_LAZY_BSON, false);
     }
@@ -717,6 +1118,56 @@ public final class MongoConfigUtil {
         return conf.getBoolean(ENABLE_FILTER_EMPTY_SPLITS, false);
     }
 
+    public static int getMultiURISplitThreads(final Configuration conf) {
+        return conf.getInt(INPUT_MULTI_URI_THREADS, 4);
+    }
+
+    public static void setMultiURISplitThreads(
+      final Configuration conf, final int threads) {
+        conf.setInt(INPUT_MULTI_URI_THREADS, threads);
+    }
+
+    public static String getSplitsCacheDir(final Configuration conf) {
+        return conf.get(INPUT_SPLITS_CACHE_DIR);
+    }
+
+    /**
+     * Set the directory in which calculated splits are cached.
+     * @param conf the Configuration
+     * @param dir the directory
+     */
+    public static void setSplitsCacheDir(
+      final Configuration conf, final String dir) {
+        conf.set(INPUT_SPLITS_CACHE_DIR, dir);
+    }
+
+    public static float getSplitsCacheMaxDrift(final Configuration conf) {
+        return conf.getFloat(INPUT_SPLITS_CACHE_MAX_DRIFT, 0.1f);
+    }
+
+    public static void setSplitsCacheMaxDrift(
+      final Configuration conf, final float drift) {
+        conf.setFloat(INPUT_SPLITS_CACHE_MAX_DRIFT, drift);
+    }
+
+    public static long getSplitsCacheMaxAge(final Configuration conf) {
+        return conf.getLong(INPUT_SPLITS_CACHE_MAX_AGE, 7L * 24 * 60 * 60 * 1000);
+    }
+
+    public static void setSplitsCacheMaxAge(
+      final Configuration conf, final long maxAgeMillis) {
+        conf.setLong(INPUT_SPLITS_CACHE_MAX_AGE, maxAgeMillis);
+    }
+
+    public static int getFilterEmptySplitsThreads(final Configuration conf) {
+        return conf.getInt(FILTER_EMPTY_SPLITS_THREADS, 8);
+    }
+
+    public static void setFilterEmptySplitsThreads(
+      final Configuration conf, final int threads) {
+        conf.setInt(FILTER_EMPTY_SPLITS_THREADS, threads);
+    }
+
     public static void setInputSplitMinDocs(
       final Configuration conf, final int value) {
         if (value < 0) {
@@ -775,6 +1226,34 @@ public final class MongoConfigUtil {
         return conf.getBoolean(SPLITS_USE_CHUNKS, true);
     }
 
+    public static boolean isShardChunkMergingEnabled(final Configuration conf) {
+        return conf.getBoolean(SPLITS_MERGE_CHUNKS, true);
+    }
+
+    /**
+     * Set whether adjacent shard chunks on the same shard are merged into
+     * splits of up to the split size.
+     * @param conf the Configuration
+     * @param value enables merging shard chunks
+     */
+    public static void setShardChunkMergingEnabled(final Configuration conf, final boolean value) {
+        conf.setBoolean(SPLITS_MERGE_CHUNKS, value);
+    }
+
+    public static boolean isLargeShardChunkSplittingEnabled(final Configuration conf) {
+        return conf.getBoolean(SPLITS_SPLIT_LARGE_CHUNKS, true);
+    }
+
+    /**
+     * Set whether jumbo or oversized shard chunks are divided into several
+     * splits with {@code splitVector}.
+     * @param conf the Configuration
+     * @param value enables dividing large shard chunks
+     */
+    public static void setLargeShardChunkSplittingEnabled(final Configuration conf, final boolean value) {
+        conf.setBoolean(SPLITS_SPLIT_LARGE_CHUNKS, value);
+    }
+
     public static int getSamplesPerSplit(final Configuration conf) {
         return conf.getInt(
           SampleSplitter.SAMPLES_PER_SPLIT,
@@ -795,6 +1274,82 @@ public final class MongoConfigUtil {
         conf.setBoolean(SPLITS_USE_CHUNKS, value);
     }
 
+    public static String getReadRouting(final Configuration conf) {
+        return conf.get(SPLITS_READ_ROUTING);
+    }
+
+    /**
+     * Set the read preference mode by which splits are spread among the
+     * members of a replica set.
+     * @param conf the Configuration
+     * @param mode the read preference mode, e.g. {@code secondaryPreferred}
+     */
+    public static void setReadRouting(final Configuration conf, final String mode) {
+        conf.set(SPLITS_READ_ROUTING, mode);
+    }
+
+    /**
+     * @param conf the Configuration
+     * @return the tag sets that the members splits read from must match, in
+     *         order of preference; empty if any member will do
+     */
+    public static List<DBObject> getReadTags(final Configuration conf) {
+        List<DBObject> tagSets = new ArrayList<DBObject>();
+        if (conf.get(SPLITS_READ_TAGS) != null) {
+            for (Object tagSet : (List) getDBObject(conf, SPLITS_READ_TAGS)) {
+                tagSets.add((DBObject) tagSet);
+            }
+        }
+        return tagSets;
+    }
+
+    public static void setReadTags(final Configuration conf, final String tagSets) {
+        setJSON(conf, SPLITS_READ_TAGS, tagSets);
+    }
+
+    public static long getMaxStaleness(final Configuration conf) {
+        return conf.getLong(SPLITS_MAX_STALENESS, -1);
+    }
+
+    public static void setMaxStaleness(final Configuration conf, final long seconds) {
+        conf.setLong(SPLITS_MAX_STALENESS, seconds);
+    }
+
+    /**
+     * Get a URI that connects directly to one member of a replica set, with
+     * the same credentials, namespace and other options as the given URI.
+     * @param uri the MongoClientURI, with the {@code mongodb://} scheme
+     * @param host the member, as {@code host:port}
+     * @return the URI for the member
+     */
+    public static MongoClientURI getDirectURI(final MongoClientURI uri, final String host) {
+        String rest = uri.getURI().substring("mongodb://".length());
+        String options = "";
+        int query = rest.indexOf('?');
+        if (query >= 0) {
+            options = rest.substring(query + 1);
+            rest = rest.substring(0, query);
+        }
+        int at = rest.lastIndexOf('@');
+        int slash = rest.indexOf('/', at + 1);
+        StringBuilder direct = new StringBuilder("mongodb://")
+          .append(rest.substring(0, at + 1))
+          .append(host)
+          .append(slash >= 0 ? rest.substring(slash) : "/");
+        char separator = '?';
+        for (String option : options.split("[&;]")) {
+            String name = option.toLowerCase(Locale.ROOT);
+            if (option.isEmpty() || name.startsWith("replicaset=")
+              || name.startsWith("directconnection=")) {
+                continue;
+            }
+            direct.append(separator).append(option);
+            separator = '&';
+        }
+        direct.append(separator).append("directConnection=true");
+        return new MongoClientURI(direct.toString());
+    }
+
     public static boolean canReadSplitsFromSecondary(final Configuration conf) {
         return conf.getBoolean(SPLITS_SLAVE_OK, false);
     }
@@ -899,6 +1454,45 @@ public final class MongoConfigUtil {
         return conf.getBoolean(INPUT_NOTIMEOUT, false);
     }
 
+    public static int getInputBatchSize(final Configuration conf) {
+        return conf.getInt(INPUT_BATCH_SIZE, 0);
+    }
+
+    public static void setInputBatchSize(final Configuration conf, final int batchSize) {
+        conf.setInt(INPUT_BATCH_SIZE, batchSize);
+    }
+
+    public static int getResumeMaxAttempts(final Configuration conf) {
+        return conf.getInt(INPUT_RESUME_MAX_ATTEMPTS, 3);
+    }
+
+    public static void setResumeMaxAttempts(final Configuration conf, final int attempts) {
+        conf.setInt(INPUT_RESUME_MAX_ATTEMPTS, attempts);
+    }
+
+    public static long getResumeBackoff(final Configuration conf) {
+        return conf.getLong(INPUT_RESUME_BACKOFF, 1000);
+    }
+
+    public static void setResumeBackoff(final Configuration conf, final long millis) {
+        conf.setLong(INPUT_RESUME_BACKOFF, millis);
+    }
+
+    public static int getPrefetchBatches(final Configuration conf) {
+        return conf.getInt(INPUT_PREFETCH_BATCHES, 0);
+    }
+
+    /**
+     * Set how many batches of documents are read ahead of the record reader
+     * by a background thread.
+     * @param conf the Configuration
+     * @param batches the number of batches, or {@code 0} to disable reading
+     *                ahead
+     */
+    public static void setPrefetchBatches(final Configuration conf, final int batches) {
+        conf.setInt(INPUT_PREFETCH_BATCHES, batches);
+    }
+
     //BSON-specific config functions.
     public static boolean getBSONReadSplits(final Configuration conf) {
         return conf.getBoolean(BSON_READ_SPLITS, true);
@@ -941,6 +1535,74 @@ public final class MongoConfigUtil {
         conf.set(BSON_SPLITS_PATH, path);
     }
 
+    public static boolean isBSONOutputBlockCompressed(final Configuration conf) {
+        return conf.getBoolean(BSON_OUTPUT_BLOCK_COMPRESS, false);
+    }
+
+    public static void setBSONOutputBlockCompressed(final Configuration conf, final boolean val) {
+        conf.setBoolean(BSON_OUTPUT_BLOCK_COMPRESS, val);
+    }
+
+    public static Class<? extends CompressionCodec> getBSONOutputBlockCodec(final Configuration conf) {
+        return conf.getClass(BSON_OUTPUT_BLOCK_CODEC, DefaultCodec.class, CompressionCodec.class);
+    }
+
+    public static void setBSONOutputBlockCodec(final Configuration conf, final Class<? extends CompressionCodec> val) {
+        conf.setClass(BSON_OUTPUT_BLOCK_CODEC, val, CompressionCodec.class);
+    }
+
+    public static int getBSONOutputBlockSize(final Configuration conf) {
+        return conf.getInt(BSON_OUTPUT_BLOCK_SIZE, 1024 * 1024);
+    }
+
+    public static void setBSONOutputBlockSize(final Configuration conf, final int size) {
+        conf.setInt(BSON_OUTPUT_BLOCK_SIZE, size);
+    }
+
+    public static int getClientMaxPoolSize(final Configuration conf) {
+        return conf.getInt(CLIENT_MAX_POOL_SIZE, 0);
+    }
+
+    public static void setClientMaxPoolSize(final Configuration conf, final int size) {
+        conf.setInt(CLIENT_MAX_POOL_SIZE, size);
+    }
+
+    public static long getClientIdleTimeout(final Configuration conf) {
+        return conf.getLong(CLIENT_IDLE_TIMEOUT, DEFAULT_CLIENT_IDLE_TIMEOUT);
+    }
+
+    public static void setClientIdleTimeout(final Configuration conf, final long millis) {
+        conf.setLong(CLIENT_IDLE_TIMEOUT, millis);
+    }
+
+    /**
+     * Apply the {@link #CLIENT_MAX_POOL_SIZE} and {@link #CLIENT_IDLE_TIMEOUT}
+     * settings to the MongoClients shared within this JVM. The pool size only
+     * affects clients created afterwards.
+     * @param conf the Configuration
+     */
+    public static void configureClients(final Configuration conf) {
+        MongoClientCache.setMaxPoolSize(getClientMaxPoolSize(conf));
+        MongoClientCache.setIdleTimeout(getClientIdleTimeout(conf));
+    }
+
+    public static int getBSONSplitThreads(final Configuration conf) {
+        return conf.getInt(
+          BSON_SPLIT_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static void setBSONSplitThreads(final Configuration conf, final int threads) {
+        conf.setInt(BSON_SPLIT_THREADS, threads);
+    }
+
+    public static boolean isCostBasedSplitterEnabled(final Configuration conf) {
+        return conf.getBoolean(SPLITTER_COST_BASED, true);
+    }
+
+    public static void setCostBasedSplitterEnabled(final Configuration conf, final boolean value) {
+        conf.setBoolean(SPLITTER_COST_BASED, value);
+    }
+
     public static Class<? extends MongoSplitter> getSplitterClass(final Configuration conf) {
         return conf.getClass(MONGO_SPLITTER_CLASS, null, MongoSplitter.class);
     }
@@ -1023,27 +1685,20 @@ public final class MongoConfigUtil {
         return newConf;
     }
 
+    /**
+     * Release a MongoClient obtained through one of the methods of this
+     * class that return a collection. The client is shared within the JVM
+     * and is only closed once nobody uses it and it has been idle for
+     * {@link #CLIENT_IDLE_TIMEOUT}.
+     * @param client the MongoClient
+     */
     public static void close(final MongoClient client) {
-            MongoClientURI uri = URI_MAP.get().remove(client);
-            if (uri != null) {
-                MongoClient remove;
-                remove = CLIENTS.get().remove(uri);
-                if (remove != client) {
-                    throw new IllegalStateException("different clients found");
-                }
-                client.close();
-            }
+        MongoClientCache.release(client);
     }
 
     private static MongoClient getMongoClient(final MongoClientURI uri) throws UnknownHostException {
-        MongoClient mongoClient = CLIENTS.get().get(uri);
-            if (mongoClient == null) {
-                mongoClient = new MongoClient(uri);
-                CLIENTS.get().put(uri, mongoClient);
-                URI_MAP.get().put(mongoClient, uri);
-            }
-            return mongoClient;
-        }
+        return MongoClientCache.acquire(uri);
+    }
 
     /**
      * Load Properties stored in a .properties file.
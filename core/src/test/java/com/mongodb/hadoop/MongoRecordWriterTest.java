@@ -0,0 +1,74 @@
+package com.mongodb.hadoop;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkUpdateRequestBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.output.MongoOutputCommitter;
+import com.mongodb.hadoop.output.MongoRecordWriter;
+import com.mongodb.hadoop.util.CompatUtils;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MongoRecordWriterTest {
+
+    @Test
+    public void testDirectOutput() throws IOException {
+        JobConf conf = new JobConf();
+        String taskName = "attempt_local138413205_0007_r_000000_0";
+        conf.set("mapreduce.task.tmp.dir", "/tmp");
+        MongoConfigUtil.setDirectOutput(conf, true);
+        MongoConfigUtil.setBatchSize(conf, 2);
+        CompatUtils.TaskAttemptContext context =
+          CompatUtils.getTaskAttemptContext(conf, taskName);
+
+        BulkUpdateRequestBuilder updateBuilder =
+          mock(BulkUpdateRequestBuilder.class);
+        BulkWriteRequestBuilder writeBuilder =
+          mock(BulkWriteRequestBuilder.class);
+        when(writeBuilder.upsert()).thenReturn(updateBuilder);
+        BulkWriteOperation bulkOp = mock(BulkWriteOperation.class);
+        when(bulkOp.find(any(BasicDBObject.class))).thenReturn(writeBuilder);
+        DBCollection collection = mock(DBCollection.class);
+        when(collection.initializeOrderedBulkOperation()).thenReturn(bulkOp);
+        when(collection.getDB()).thenReturn(mock(DB.class));
+
+        MongoRecordWriter<IntWritable, BSONWritable> writer =
+          new MongoRecordWriter<IntWritable, BSONWritable>(
+            collection, context);
+        for (int i = 0; i < 5; ++i) {
+            writer.write(
+              new IntWritable(i),
+              new BSONWritable(new BasicDBObject("i", i)));
+        }
+        // Two full batches are sent while writing.
+        verify(bulkOp, times(2)).execute();
+        writer.close((org.apache.hadoop.mapreduce.TaskAttemptContext) null);
+        // The last, partial batch is sent when the writer is closed.
+        verify(bulkOp, times(3)).execute();
+        // Every document is written as an upsert keyed on _id.
+        verify(updateBuilder, times(5)).replaceOne(any(BasicDBObject.class));
+
+        // Nothing is left for the committer to do.
+        FileSystem fs = FileSystem.getLocal(conf);
+        assertFalse(
+          fs.exists(MongoOutputCommitter.getTaskAttemptPath(context)));
+        assertFalse(new MongoOutputCommitter().needsTaskCommit(context));
+    }
+
+}
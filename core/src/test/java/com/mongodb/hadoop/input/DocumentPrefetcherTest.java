@@ -0,0 +1,160 @@
+package com.mongodb.hadoop.input;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocumentPrefetcherTest {
+
+    private List<DBObject> documents(final int count) {
+        List<DBObject> documents = new ArrayList<DBObject>();
+        for (int i = 0; i < count; ++i) {
+            documents.add(new BasicDBObject("_id", i));
+        }
+        return documents;
+    }
+
+    @Test
+    public void testReadsAllDocumentsInOrder() {
+        DocumentPrefetcher prefetcher =
+          new DocumentPrefetcher(documents(100).iterator(), 7);
+        try {
+            for (int i = 0; i < 100; ++i) {
+                assertTrue(prefetcher.hasNext());
+                assertEquals(i, prefetcher.next().get("_id"));
+            }
+            assertFalse(prefetcher.hasNext());
+            assertFalse(prefetcher.hasNext());
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    /**
+     * Returns two documents, then throws the failure, which must be a
+     * RuntimeException or an Error.
+     */
+    private Iterator<DBObject> failing(final Throwable failure) {
+        final Iterator<DBObject> source = documents(2).iterator();
+        return new Iterator<DBObject>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public DBObject next() {
+                if (source.hasNext()) {
+                    return source.next();
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Test
+    public void testRethrowsAfterEarlierDocuments() {
+        DocumentPrefetcher prefetcher = new DocumentPrefetcher(
+          failing(new MongoException("cursor killed")), 10);
+        try {
+            assertEquals(0, prefetcher.next().get("_id"));
+            assertEquals(1, prefetcher.next().get("_id"));
+            try {
+                prefetcher.hasNext();
+                fail("Expected the cursor's error.");
+            } catch (MongoException e) {
+                assertEquals("cursor killed", e.getMessage());
+            }
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRethrowsError() {
+        Error error = new OutOfMemoryError("decoding a large document");
+        DocumentPrefetcher prefetcher =
+          new DocumentPrefetcher(failing(error), 10);
+        try {
+            assertEquals(0, prefetcher.next().get("_id"));
+            assertEquals(1, prefetcher.next().get("_id"));
+            try {
+                prefetcher.hasNext();
+                fail("Expected the cursor's error.");
+            } catch (OutOfMemoryError e) {
+                assertSame(error, e);
+            }
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseWaitsForCursor() throws InterruptedException {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final AtomicBoolean inCursor = new AtomicBoolean();
+        Iterator<DBObject> slow = new Iterator<DBObject>() {
+            @Override
+            public boolean hasNext() {
+                // Like a getMore that does not notice the interrupt.
+                inCursor.set(true);
+                reading.countDown();
+                long end = System.currentTimeMillis() + 1500;
+                while (System.currentTimeMillis() < end) {
+                    try {
+                        Thread.sleep(end - System.currentTimeMillis());
+                    } catch (InterruptedException e) {
+                        // Keep going.
+                    }
+                }
+                inCursor.set(false);
+                return false;
+            }
+
+            @Override
+            public DBObject next() {
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        DocumentPrefetcher prefetcher = new DocumentPrefetcher(slow, 10);
+        reading.await();
+        prefetcher.close();
+        assertFalse(inCursor.get());
+    }
+
+    @Test
+    public void testCloseWhileReadingAhead() {
+        // The background thread blocks on the full queue.
+        DocumentPrefetcher prefetcher =
+          new DocumentPrefetcher(documents(1000).iterator(), 1);
+        assertEquals(0, prefetcher.next().get("_id"));
+        prefetcher.close();
+    }
+}
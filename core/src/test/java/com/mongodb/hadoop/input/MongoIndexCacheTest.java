@@ -0,0 +1,53 @@
+package com.mongodb.hadoop.input;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MongoIndexCacheTest {
+
+    @After
+    public void tearDown() {
+        MongoIndexCache.clear();
+    }
+
+    private static DBObject index(final String name, final DBObject key) {
+        return new BasicDBObject("name", name).append("key", key);
+    }
+
+    @Test
+    public void testFindIndexName() {
+        DBCollection collection = mock(DBCollection.class);
+        when(collection.getFullName()).thenReturn("db.coll");
+        List<DBObject> indexes = Arrays.asList(
+          index("_id_", new BasicDBObject("_id", 1)),
+          index("a_1_b_1", new BasicDBObject("a", 1).append("b", 1)));
+        when(collection.getIndexInfo()).thenReturn(indexes);
+
+        assertEquals("a_1_b_1", MongoIndexCache.findIndexName(
+          collection, new HashSet<String>(Arrays.asList("b", "a"))));
+        assertEquals("_id_", MongoIndexCache.findIndexName(
+          collection, Collections.singleton("_id")));
+        // Both lookups are served by one read of the indexes.
+        verify(collection, times(1)).getIndexInfo();
+
+        // A missing index causes the indexes to be read again.
+        assertNull(MongoIndexCache.findIndexName(
+          collection, Collections.singleton("c")));
+        verify(collection, times(2)).getIndexInfo();
+    }
+}
@@ -0,0 +1,182 @@
+package com.mongodb.hadoop.input;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.ServerAddress;
+import org.bson.BasicBSONEncoder;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResumableCursorTest {
+
+    private static DBObject doc(final int id, final int key) {
+        return new BasicDBObject("_id", id).append("k", key);
+    }
+
+    /**
+     * A cursor over some documents that fails with an error once they are
+     * read, if an error is given.
+     */
+    private static DBCursor cursorOf(
+      final List<DBObject> documents, final MongoException failure) {
+        final Iterator<DBObject> it = documents.iterator();
+        DBCursor cursor = mock(DBCursor.class);
+        when(cursor.hasNext()).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) {
+                if (!it.hasNext() && failure != null) {
+                    throw failure;
+                }
+                return it.hasNext();
+            }
+        });
+        when(cursor.next()).thenAnswer(new Answer<DBObject>() {
+            @Override
+            public DBObject answer(final InvocationOnMock invocation) {
+                return it.next();
+            }
+        });
+        return cursor;
+    }
+
+    private static class FakeCursors extends ResumableCursor {
+        private final LinkedList<DBCursor> cursors;
+        private final List<MongoInputSplit> opened =
+          new ArrayList<MongoInputSplit>();
+
+        FakeCursors(final MongoInputSplit split, final DBCursor... cursors) {
+            super(split);
+            this.cursors = new LinkedList<DBCursor>(Arrays.asList(cursors));
+        }
+
+        @Override
+        protected DBCursor openCursor(final MongoInputSplit toRead) {
+            opened.add(toRead);
+            return cursors.removeFirst();
+        }
+
+        @Override
+        protected void closeCursor(final DBCursor toClose) {
+        }
+    }
+
+    private static MongoInputSplit boundedSplit() {
+        MongoInputSplit split = new MongoInputSplit();
+        split.setInputURI(
+          new MongoClientURI("mongodb://localhost:27017/mongo_hadoop.resume"));
+        split.setMin(new BasicDBObject("k", 0));
+        split.setMax(new BasicDBObject("k", 100));
+        split.setResumeBackoff(0);
+        return split;
+    }
+
+    private static List<Object> readIds(final ResumableCursor cursor) {
+        List<Object> ids = new ArrayList<Object>();
+        while (cursor.hasNext()) {
+            ids.add(cursor.next().get("_id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testResumeAfterLastKey() {
+        MongoException stepdown =
+          new MongoSocketException("connection reset", new ServerAddress());
+        // Two documents share the key 2; only one of them was read.
+        FakeCursors cursor = new FakeCursors(
+          boundedSplit(),
+          cursorOf(Arrays.asList(doc(0, 1), doc(1, 2)), stepdown),
+          cursorOf(Arrays.asList(doc(1, 2), doc(2, 2), doc(3, 3)), null));
+
+        assertTrue(cursor.isResumable());
+        assertEquals(Arrays.<Object>asList(0, 1, 2, 3), readIds(cursor));
+        assertEquals(2, cursor.opened.size());
+        assertEquals(
+          new BasicDBObject("k", 2), cursor.opened.get(1).getMin());
+        assertEquals(
+          new BasicDBObject("k", 100), cursor.opened.get(1).getMax());
+    }
+
+    @Test
+    public void testGiveUpAfterAttempts() {
+        MongoException stepdown =
+          new MongoSocketException("connection reset", new ServerAddress());
+        MongoInputSplit split = boundedSplit();
+        split.setResumeAttempts(1);
+        FakeCursors cursor = new FakeCursors(
+          split,
+          cursorOf(Arrays.asList(doc(0, 1)), stepdown),
+          cursorOf(new ArrayList<DBObject>(), stepdown));
+        assertEquals(0, cursor.next().get("_id"));
+        try {
+            cursor.hasNext();
+            fail("Expected the error once the attempts are used up.");
+        } catch (MongoSocketException e) {
+            assertEquals(2, cursor.opened.size());
+        }
+    }
+
+    @Test
+    public void testNotResumable() {
+        MongoException failure = new MongoException("bad query");
+        FakeCursors cursor = new FakeCursors(
+          boundedSplit(), cursorOf(new ArrayList<DBObject>(), failure));
+        try {
+            cursor.hasNext();
+            fail("Expected an error that is not retryable to be thrown.");
+        } catch (MongoException e) {
+            assertEquals("bad query", e.getMessage());
+        }
+
+        // Without bounds, documents are not read in key order.
+        assertFalse(new ResumableCursor(new MongoInputSplit()).isResumable());
+        MongoInputSplit projected = boundedSplit();
+        projected.setFields(new BasicDBObject("other", 1));
+        assertFalse(new ResumableCursor(projected).isResumable());
+        projected.setFields(new BasicDBObject("k", 1));
+        assertTrue(new ResumableCursor(projected).isResumable());
+    }
+
+    @Test
+    public void testCountsBytesDecoded() {
+        MongoException stepdown =
+          new MongoSocketException("connection reset", new ServerAddress());
+        DBCursor first = cursorOf(Arrays.asList(doc(0, 1)), stepdown);
+        DBCursor second = cursorOf(Arrays.asList(doc(1, 2)), null);
+        FakeCursors cursor = new FakeCursors(boundedSplit(), first, second);
+        assertEquals(Arrays.<Object>asList(0, 1), readIds(cursor));
+
+        // Both the first cursor and the resumed one decode through the reader.
+        ArgumentCaptor<DBDecoderFactory> factories =
+          ArgumentCaptor.forClass(DBDecoderFactory.class);
+        verify(first).setDecoderFactory(factories.capture());
+        verify(second).setDecoderFactory(factories.capture());
+        byte[] bytes = new BasicBSONEncoder().encode(doc(0, 1));
+        for (DBDecoderFactory factory : factories.getAllValues()) {
+            assertEquals(doc(0, 1), factory.create().decode(bytes, (DBCollection) null));
+        }
+        assertEquals(2L * bytes.length, cursor.getBytesRead());
+    }
+}
@@ -0,0 +1,110 @@
+package com.mongodb.hadoop.io;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.mapred.BSONFileInputFormat;
+import com.mongodb.hadoop.output.BSONFileRecordWriter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BSONBlockFileTest {
+
+    private static final int NUM_DOCS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JobConf job;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        job = new JobConf();
+        MongoConfigUtil.setBSONOutputBlockSize(job, 4096);
+        MongoConfigUtil.setBSONWriteSplits(job, false);
+        path = new Path(
+          folder.getRoot().toURI().toString(),
+          "part-m-00000" + BSONBlockFile.EXTENSION);
+        BSONFileRecordWriter<Object, BSONWritable> writer =
+          new BSONFileRecordWriter<Object, BSONWritable>(
+            BSONBlockFile.createWriter(path, job));
+        for (int i = 0; i < NUM_DOCS; ++i) {
+            writer.write(null, new BSONWritable(
+              new BasicDBObject("i", i).append("padding", "abcdefgh")));
+        }
+        writer.close((TaskAttemptContext) null);
+        job.set("mapred.input.dir", path.toString());
+        job.set("mapreduce.input.fileinputformat.inputdir", path.toString());
+    }
+
+    private List<Integer> readAll(final FileSplit[] splits)
+      throws IOException {
+        BSONFileInputFormat inputFormat = new BSONFileInputFormat();
+        List<Integer> values = new ArrayList<Integer>();
+        BSONWritable writable = new BSONWritable();
+        for (FileSplit split : splits) {
+            RecordReader<NullWritable, BSONWritable> reader =
+              inputFormat.getRecordReader(split, job, null);
+            while (reader.next(null, writable)) {
+                values.add((Integer) writable.getDoc().get("i"));
+            }
+        }
+        return values;
+    }
+
+    private void assertAllDocuments(final List<Integer> values) {
+        assertEquals(NUM_DOCS, values.size());
+        for (int i = 0; i < NUM_DOCS; ++i) {
+            assertEquals(i, (int) values.get(i));
+        }
+    }
+
+    @Test
+    public void testSplitAtBlocks() throws IOException {
+        FileSystem fs = path.getFileSystem(job);
+        assertTrue(BSONBlockFile.isBlockFile(fs, path));
+        // The file is compressed.
+        assertTrue(fs.getFileStatus(path).getLen() < NUM_DOCS * 30);
+
+        job.set("mapreduce.input.fileinputformat.split.maxsize", "1000");
+        FileSplit[] splits = new BSONFileInputFormat().getSplits(job, 1);
+        assertTrue(splits.length > 1);
+        assertAllDocuments(readAll(splits));
+    }
+
+    @Test
+    public void testArbitrarySplits() throws IOException {
+        // Documents belong to the split in which their block starts.
+        long length = path.getFileSystem(job).getFileStatus(path).getLen();
+        List<FileSplit> splits = new ArrayList<FileSplit>();
+        for (long start = 0; start < length; start += 777) {
+            splits.add(new FileSplit(
+              path, start, Math.min(777, length - start), new String[]{}));
+        }
+        assertAllDocuments(
+          readAll(splits.toArray(new FileSplit[splits.size()])));
+    }
+
+    @Test
+    public void testNotBlockFile() throws IOException {
+        Path plain = new Path(folder.newFile("plain.bson").toURI().toString());
+        assertFalse(BSONBlockFile.isBlockFile(plain.getFileSystem(job), plain));
+    }
+}
@@ -0,0 +1,119 @@
+package com.mongodb.hadoop.io;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BSONWritableComparatorTest {
+
+    private static byte[] serialize(final BSONObject doc) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        new BSONWritable(doc).write(out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    private static int signum(final int n) {
+        return n < 0 ? -1 : (n > 0 ? 1 : 0);
+    }
+
+    private static int rawCompare(final BSONObject a, final BSONObject b)
+      throws IOException {
+        // Offset the documents in their buffers, as in a sort buffer.
+        byte[] bytesA = serialize(a);
+        byte[] bytesB = serialize(b);
+        byte[] bufA = new byte[bytesA.length + 3];
+        byte[] bufB = new byte[bytesB.length + 7];
+        System.arraycopy(bytesA, 0, bufA, 3, bytesA.length);
+        System.arraycopy(bytesB, 0, bufB, 7, bytesB.length);
+        return new BSONWritableComparator().compare(
+          bufA, 3, bytesA.length, bufB, 7, bytesB.length);
+    }
+
+    @Test
+    public void testRawCompareMatchesObjectCompare() throws IOException {
+        ObjectId id1 = new ObjectId("5150ca3a2d3d4d5ee2fd1b01");
+        ObjectId id2 = new ObjectId("5150ca3a2d3d4d5ee2fd1bf0");
+        List<BSONObject> docs = Arrays.<BSONObject>asList(
+          new BasicBSONObject("_id", 1),
+          new BasicBSONObject("_id", 2),
+          new BasicBSONObject("_id", 1.5),
+          new BasicBSONObject("_id", -3.0),
+          new BasicBSONObject("_id", 1.1f),
+          new BasicBSONObject("_id", Long.MAX_VALUE - 1),
+          new BasicBSONObject("_id", Long.MAX_VALUE),
+          new BasicBSONObject("_id", Decimal128.parse("1.5")),
+          new BasicBSONObject("_id", Decimal128.parse("-7.25")),
+          new BasicBSONObject("_id", "abc"),
+          new BasicBSONObject("_id", "abd"),
+          new BasicBSONObject("_id", "ab"),
+          new BasicBSONObject("_id", "\u00e9t\u00e9"),
+          new BasicBSONObject("_id", null),
+          new BasicBSONObject("_id", id1),
+          new BasicBSONObject("_id", id2),
+          new BasicBSONObject("_id", true),
+          new BasicBSONObject("_id", false),
+          new BasicBSONObject("_id", new Date(1000L)),
+          new BasicBSONObject("_id", new Date(-1000L)),
+          new BasicBSONObject("_id", new BSONTimestamp(5, 1)),
+          new BasicBSONObject("_id", new BSONTimestamp(5, 2)),
+          new BasicBSONObject("_id", new byte[] {1, 2, 3}),
+          new BasicBSONObject("_id", new byte[] {1, -2}),
+          new BasicBSONObject("_id", new BasicBSONObject("a", 1).append("b", "x")),
+          new BasicBSONObject("_id", new BasicBSONObject("a", 1).append("b", "y")),
+          new BasicBSONObject("_id", new BasicBSONObject("a", 1)),
+          new BasicBSONObject("_id", 1).append("x", 2),
+          new BasicBSONObject("_id", 1).append("y", 2),
+          new BasicBSONObject("id", 1),
+          new BasicBSONObject());
+
+        BSONWritableComparator comparator = new BSONWritableComparator();
+        for (BSONObject a : docs) {
+            for (BSONObject b : docs) {
+                int expected;
+                try {
+                    expected = signum(comparator.compare(
+                      new BSONWritable(a), new BSONWritable(b)));
+                } catch (ClassCastException e) {
+                    // Dates and timestamps cannot be compared as objects.
+                    continue;
+                }
+                assertEquals(a + " vs " + b, expected, signum(rawCompare(a, b)));
+            }
+        }
+    }
+
+    @Test
+    public void testNumbersCompareAcrossTypes() throws IOException {
+        assertEquals(0, rawCompare(
+          new BasicBSONObject("n", 2), new BasicBSONObject("n", 2.0)));
+        assertEquals(0, rawCompare(
+          new BasicBSONObject("n", 2L), new BasicBSONObject("n", 2)));
+        assertTrue(rawCompare(
+          new BasicBSONObject("n", 3L), new BasicBSONObject("n", 2.5)) > 0);
+        assertTrue(rawCompare(
+          new BasicBSONObject("n", Long.MAX_VALUE - 1),
+          new BasicBSONObject("n", Long.MAX_VALUE)) < 0);
+        assertTrue(rawCompare(
+          new BasicBSONObject("n", 100), new BasicBSONObject("n", "1")) < 0);
+
+        BSONWritableComparator comparator = new BSONWritableComparator();
+        assertTrue(comparator.compare(
+          new BSONWritable(new BasicBSONObject("n", Long.MAX_VALUE - 1)),
+          new BSONWritable(new BasicBSONObject("n", Long.MAX_VALUE))) < 0);
+        assertEquals(0, comparator.compare(
+          new BSONWritable(new BasicBSONObject("n", Decimal128.parse("2.5"))),
+          new BSONWritable(new BasicBSONObject("n", 2.5))));
+    }
+}
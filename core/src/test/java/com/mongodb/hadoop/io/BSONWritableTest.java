@@ -6,6 +6,8 @@ import org.apache.hadoop.io.ArrayWritable;
 import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.ByteWritable;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.io.IntWritable;
@@ -15,12 +17,17 @@ import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.SortedMapWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.bson.BasicBSONEncoder;
 import org.bson.BasicBSONObject;
+import org.bson.LazyBSONCallback;
+import org.bson.LazyBSONObject;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 import static com.mongodb.hadoop.io.BSONWritable.toBSON;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -72,4 +79,60 @@ public class BSONWritableTest {
         // Catchall
         assertEquals("hi", toBSON("hi"));
     }
+
+    private static byte[] serialize(final BSONWritable writable)
+      throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        writable.write(out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    private static void deserialize(
+      final BSONWritable writable, final byte[] bytes) throws IOException {
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(bytes, bytes.length);
+        writable.readFields(in);
+    }
+
+    @Test
+    public void testRawPassthrough() throws IOException {
+        BasicBSONObject large = new BasicBSONObject("_id", 1)
+          .append("a", "a fairly long string value")
+          .append("b", new BasicBSONObject("c", 3.14));
+        BasicBSONObject small = new BasicBSONObject("_id", 2);
+        byte[] largeBytes = serialize(new BSONWritable(large));
+        byte[] smallBytes = serialize(new BSONWritable(small));
+
+        // Documents that are not modified are written verbatim, and the same
+        // backing buffer serves documents of different sizes.
+        BSONWritable writable = new BSONWritable();
+        deserialize(writable, largeBytes);
+        assertArrayEquals(largeBytes, serialize(writable));
+        deserialize(writable, smallBytes);
+        assertArrayEquals(smallBytes, serialize(writable));
+        assertEquals(small, writable.getDoc());
+
+        // Documents handed out by getDoc() may be modified.
+        deserialize(writable, largeBytes);
+        writable.getDoc().put("d", "added");
+        BSONWritable copy = new BSONWritable();
+        deserialize(copy, serialize(writable));
+        assertEquals(
+          new BasicBSONObject(large).append("d", "added"), copy.getDoc());
+
+        // toString, equals and hashCode do not give up the raw bytes.
+        deserialize(writable, largeBytes);
+        assertEquals(new BSONWritable(large), writable);
+        assertEquals(new BSONWritable(large).hashCode(), writable.hashCode());
+        assertTrue(writable.toString().contains("fairly long"));
+        assertArrayEquals(largeBytes, serialize(writable));
+    }
+
+    @Test
+    public void testLazyBSONObjectPassthrough() throws IOException {
+        BasicBSONObject doc = new BasicBSONObject("_id", 1).append("a", "b");
+        byte[] bytes = new BasicBSONEncoder().encode(doc);
+        LazyBSONObject lazy = new LazyBSONObject(bytes, new LazyBSONCallback());
+        assertArrayEquals(bytes, serialize(new BSONWritable(lazy)));
+    }
 }
@@ -1,11 +1,26 @@
 package com.mongodb.hadoop.io;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.fail;
 
 public class MongoInputSplitTest {
 
@@ -40,4 +55,175 @@ public class MongoInputSplitTest {
         MongoInputSplit mis2 = new MongoInputSplit(mis);
         assertEquals(mis, mis2);
     }
+
+    @Test
+    public void testSerializedFields() throws IOException {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, "mongodb://input/db.coll");
+        MongoConfigUtil.setInputBatchSize(conf, 500);
+        MongoConfigUtil.setPrefetchBatches(conf, 2);
+        MongoInputSplit mis = new MongoInputSplit(conf);
+        assertEquals(-1, mis.getEstimatedCount());
+        assertEquals(Long.MAX_VALUE, mis.getLength());
+
+        mis.setEstimatedCount(100);
+        mis.setEstimatedSize(4096);
+        assertEquals(4096, mis.getLength());
+        mis.setHint("value_1");
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        mis.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        MongoInputSplit read = new MongoInputSplit();
+        read.readFields(in);
+        assertEquals(100, read.getEstimatedCount());
+        assertEquals(4096, read.getEstimatedSize());
+        assertEquals("value_1", read.getHint());
+        assertEquals(500, read.getBatchSize());
+        assertEquals(2, read.getPrefetchBatches());
+        assertEquals(1000, read.getPrefetchCapacity());
+        assertEquals(100, new MongoInputSplit(read).getEstimatedCount());
+    }
+
+    @Test
+    public void testAggregationPipeline() throws IOException {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, "mongodb://input/db.coll");
+        MongoConfigUtil.setQuery(conf, "{\"state\": \"NY\", \"_id\": {\"$ne\": 7}}");
+        MongoConfigUtil.setLimit(conf, 50);
+        MongoConfigUtil.setPipeline(
+          conf, "[{\"$group\": {\"_id\": \"$city\", \"n\": {\"$sum\": 1}}}]");
+        MongoInputSplit mis = new MongoInputSplit(conf);
+        mis.setMin(new BasicDBObject("_id", 0));
+        mis.setMax(new BasicDBObject("_id", 100));
+
+        DBObject group = new BasicDBObject("$group",
+          new BasicDBObject("_id", "$city").append(
+            "n", new BasicDBObject("$sum", 1)));
+        assertEquals(Arrays.asList(group), mis.getPipeline());
+
+        // The bounds of the split are kept apart from the query on the same
+        // field.
+        BasicDBList conditions = new BasicDBList();
+        conditions.add(new BasicDBObject("state", "NY").append(
+          "_id", new BasicDBObject("$ne", 7)));
+        conditions.add(new BasicDBObject("_id",
+          new BasicDBObject("$gte", 0).append("$lt", 100)));
+        List<DBObject> expected = Arrays.<DBObject>asList(
+          new BasicDBObject("$match", new BasicDBObject("$and", conditions)),
+          new BasicDBObject("$limit", 50),
+          group);
+        assertEquals(expected, mis.getAggregationPipeline());
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        mis.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        MongoInputSplit read = new MongoInputSplit();
+        read.readFields(in);
+        assertEquals(expected, read.getAggregationPipeline());
+    }
+
+    private static MongoInputSplit bounded(final DBObject min, final DBObject max) {
+        MongoInputSplit mis = new MongoInputSplit();
+        mis.setMin(min);
+        mis.setMax(max);
+        return mis;
+    }
+
+    private static void assertBoundsRejected(final MongoInputSplit mis) {
+        try {
+            mis.checkAggregationBounds();
+            fail("Expected the bounds to be rejected: " + mis);
+        } catch (MongoException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testAggregationBounds() {
+        assertNull(bounded(null, null).checkAggregationBounds());
+        assertEquals("_id", bounded(
+          new BasicDBObject("_id", 1), new BasicDBObject("_id", 2L))
+          .checkAggregationBounds());
+        assertEquals("_id", bounded(
+          new BasicDBObject("_id", new MinKey()), new BasicDBObject("_id", "a"))
+          .checkAggregationBounds());
+        assertEquals("_id", bounded(
+          new BasicDBObject("_id", "z"), new BasicDBObject("_id", new MaxKey()))
+          .checkAggregationBounds());
+        assertEquals("_id", bounded(null, new BasicDBObject("_id", 5))
+          .checkAggregationBounds());
+
+        // Numbers sort before strings in the index, but {$gte: 5, $lt: "a"}
+        // matches nothing.
+        assertBoundsRejected(bounded(
+          new BasicDBObject("_id", 5), new BasicDBObject("_id", "a")));
+        assertBoundsRejected(bounded(
+          new BasicDBObject("a", 1).append("b", 1),
+          new BasicDBObject("a", 2).append("b", 1)));
+        assertBoundsRejected(bounded(
+          new BasicDBObject("_id", new ObjectId()),
+          new BasicDBObject("_id", new MinKey())));
+    }
+
+    @Test
+    public void testAggregationOpenBounds() {
+        ObjectId id = new ObjectId();
+
+        // {$lt: ObjectId} alone would leave out the numbers, strings and
+        // other types that sort before ObjectIds.
+        BasicDBList branches = new BasicDBList();
+        branches.add(new BasicDBObject("_id",
+          new BasicDBObject("$gte", new MinKey()).append("$lt", id)));
+        branches.add(new BasicDBObject("_id", new BasicDBObject(
+          "$type", Arrays.asList(-1, 1, 16, 18, 19, 2, 14, 3, 4, 5))));
+        branches.add(new BasicDBObject("_id", null));
+        assertEquals(
+          new BasicDBObject("$match", new BasicDBObject("$or", branches)),
+          bounded(new BasicDBObject("_id", new MinKey()),
+                  new BasicDBObject("_id", id))
+            .getAggregationPipeline().get(0));
+
+        // A MaxKey bound leaves out MaxKey values, an open one does not.
+        branches = new BasicDBList();
+        branches.add(new BasicDBObject("_id",
+          new BasicDBObject("$gte", id).append("$lt", new MaxKey())));
+        branches.add(new BasicDBObject("_id", new BasicDBObject(
+          "$type", Arrays.asList(8, 9, 17, 11, 12, 13, 15))));
+        assertEquals(
+          new BasicDBObject("$match", new BasicDBObject("$or", branches)),
+          bounded(new BasicDBObject("_id", id),
+                  new BasicDBObject("_id", new MaxKey()))
+            .getAggregationPipeline().get(0));
+        branches.set(0, new BasicDBObject("_id", new BasicDBObject("$gte", id)));
+        branches.set(1, new BasicDBObject("_id", new BasicDBObject(
+          "$type", Arrays.asList(8, 9, 17, 11, 12, 13, 15, 127))));
+        assertEquals(
+          new BasicDBObject("$match", new BasicDBObject("$or", branches)),
+          bounded(new BasicDBObject("_id", id), null)
+            .getAggregationPipeline().get(0));
+
+        // Bounds within one type stay a plain range, and the branches are
+        // kept apart from an $or in the query.
+        MongoInputSplit mis = bounded(null, new BasicDBObject("_id", 5));
+        mis.setQuery(new BasicDBObject("$or", new BasicDBList()));
+        BasicDBList conditions = new BasicDBList();
+        conditions.add(new BasicDBObject("$or", new BasicDBList()));
+        branches = new BasicDBList();
+        branches.add(new BasicDBObject("_id", new BasicDBObject("$lt", 5)));
+        branches.add(new BasicDBObject("_id",
+          new BasicDBObject("$type", Arrays.asList(-1))));
+        branches.add(new BasicDBObject("_id", null));
+        conditions.add(new BasicDBObject("$or", branches));
+        assertEquals(
+          new BasicDBObject("$match", new BasicDBObject("$and", conditions)),
+          mis.getAggregationPipeline().get(0));
+        assertEquals(
+          new BasicDBObject("$match", new BasicDBObject("_id",
+            new BasicDBObject("$gte", 1).append("$lt", 2L))),
+          bounded(new BasicDBObject("_id", 1), new BasicDBObject("_id", 2L))
+            .getAggregationPipeline().get(0));
+    }
 }
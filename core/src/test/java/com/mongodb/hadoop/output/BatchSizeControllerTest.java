@@ -0,0 +1,61 @@
+package com.mongodb.hadoop.output;
+
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchSizeControllerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(5000);
+
+    @Test
+    public void testFixedBatchSize() {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setBatchSize(conf, 500);
+        BatchSizeController controller = new BatchSizeController(conf);
+
+        assertEquals(0, controller.onSuccess(500, FAST));
+        assertEquals(0, controller.onSuccess(500, SLOW));
+        assertEquals(0, controller.onError());
+        assertEquals(500, controller.getBatchSize());
+    }
+
+    @Test
+    public void testAdaptiveBatchSize() {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setBatchSize(conf, 400);
+        MongoConfigUtil.setAdaptiveBatching(conf, true);
+        BatchSizeController controller = new BatchSizeController(conf);
+
+        // Fast, full batches grow the batch size.
+        assertTrue(controller.onSuccess(400, FAST) > 0);
+        assertEquals(500, controller.getBatchSize());
+
+        // Fast batches that were not full say nothing about larger batches.
+        assertEquals(0, controller.onSuccess(10, FAST));
+        assertEquals(500, controller.getBatchSize());
+
+        // Slow batches and errors halve the batch size.
+        assertTrue(controller.onSuccess(500, SLOW) < 0);
+        assertEquals(250, controller.getBatchSize());
+        assertTrue(controller.onError() < 0);
+        assertEquals(125, controller.getBatchSize());
+
+        // The batch size stays within what the server accepts.
+        for (int i = 0; i < 100; ++i) {
+            controller.onError();
+        }
+        assertEquals(1, controller.getBatchSize());
+        for (int i = 0; i < 100; ++i) {
+            controller.onSuccess(controller.getBatchSize(), FAST);
+        }
+        assertEquals(
+          BatchSizeController.MAX_BATCH_SIZE, controller.getBatchSize());
+    }
+}
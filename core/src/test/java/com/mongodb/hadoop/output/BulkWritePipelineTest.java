@@ -0,0 +1,148 @@
+package com.mongodb.hadoop.output;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.util.CompatUtils;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BulkWritePipelineTest {
+
+    private static CompatUtils.TaskAttemptContext context(final int batchSize) {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setBatchSize(conf, batchSize);
+        MongoConfigUtil.setBulkOrdered(conf, false);
+        return CompatUtils.getTaskAttemptContext(
+          conf, "attempt_201501010000_0000_r_000000_0");
+    }
+
+    /**
+     * A collection whose bulk operations record the ids of each batch they
+     * execute, or fail with the given error.
+     */
+    private static DBCollection collection(
+      final List<List<Object>> batches, final Throwable failure) {
+        DBCollection collection = mock(DBCollection.class);
+        when(collection.initializeUnorderedBulkOperation()).thenAnswer(
+          new Answer<BulkWriteOperation>() {
+              @Override
+              public BulkWriteOperation answer(
+                final InvocationOnMock invocation) {
+                  return bulkOperation(batches, failure);
+              }
+          });
+        return collection;
+    }
+
+    private static BulkWriteOperation bulkOperation(
+      final List<List<Object>> batches, final Throwable failure) {
+        final List<Object> ids = new ArrayList<Object>();
+        BulkWriteOperation bulkOp = mock(BulkWriteOperation.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                ids.add(((DBObject) invocation.getArguments()[0]).get("_id"));
+                return null;
+            }
+        }).when(bulkOp).insert(any(DBObject.class));
+        when(bulkOp.execute()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation)
+              throws Throwable {
+                if (failure != null) {
+                    throw failure;
+                }
+                batches.add(ids);
+                return null;
+            }
+        });
+        return bulkOp;
+    }
+
+    @Test
+    public void testSeveralWriters() throws IOException {
+        List<List<Object>> batches =
+          Collections.synchronizedList(new ArrayList<List<Object>>());
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection(batches, null), context(10), 3);
+        for (int i = 0; i < 1000; ++i) {
+            pipeline.put(new BasicDBObject("_id", i), 0);
+        }
+        pipeline.finish();
+
+        // Every operation is written once, and each batch keeps the order
+        // in which its operations were queued.
+        List<Integer> written = new ArrayList<Integer>();
+        for (List<Object> batch : batches) {
+            for (int i = 1; i < batch.size(); ++i) {
+                assertTrue((Integer) batch.get(i - 1) < (Integer) batch.get(i));
+            }
+            for (Object id : batch) {
+                written.add((Integer) id);
+            }
+        }
+        Collections.sort(written);
+        assertEquals(1000, written.size());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(i, (int) written.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWriterFailure() throws IOException {
+        MongoException error = new MongoException("write failed");
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection(new ArrayList<List<Object>>(), error), context(1), 2);
+        try {
+            for (int i = 0; i < 1000; ++i) {
+                pipeline.put(new BasicDBObject("_id", i), 0);
+            }
+            pipeline.finish();
+            fail("Expected the failure of the writers");
+        } catch (MongoException e) {
+            assertSame(error, e);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFinishAfterWriterError() throws IOException {
+        Error error = new StackOverflowError();
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection(new ArrayList<List<Object>>(), error), context(1), 1);
+        try {
+            // The writer dies on the first operation, so the queue fills up.
+            for (int i = 0; i < 1000; ++i) {
+                pipeline.put(new BasicDBObject("_id", i), 0);
+            }
+            fail("Expected the failure of the writer");
+        } catch (IOException e) {
+            assertSame(error, e.getCause());
+        }
+        try {
+            pipeline.finish();
+            fail("Expected the failure of the writer");
+        } catch (IOException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+}
@@ -18,6 +18,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -165,11 +166,9 @@ public class BSONSplitterTest {
         FileSplit fileSplit = new FileSplit(
           inventoryPath, 2000L, 100L, new String[]{}
         );
-        // Writing the split file is enabled by default, so this will cause
-        // the BSONSplitter to create the splits file for later tests.
         assertEquals(2130L, splitter.getStartingPositionForSplit(fileSplit));
 
-        // Test with splits file, which was created by the previous call to
+        // Test with the position cached by the previous call to
         // getStartingPositionForSplit.
         assertEquals(2130L, splitter.getStartingPositionForSplit(fileSplit));
 
@@ -178,6 +177,40 @@ public class BSONSplitterTest {
         assertEquals(2130L, splitter.getStartingPositionForSplit(fileSplit));
     }
 
+    @Test
+    public void testGetStartingPositionForSplitWithoutSplitsFile()
+      throws IOException {
+        // Find every document boundary in the file.
+        List<Long> boundaries = new ArrayList<Long>();
+        FSDataInputStream stream = fs.open(file.getPath());
+        try {
+            while (stream.getPos() < file.getLen()) {
+                boundaries.add(stream.getPos());
+                stream.seek(stream.getPos() + Integer.reverseBytes(stream.readInt()));
+            }
+        } finally {
+            stream.close();
+        }
+        // Splits after the last document begin at the end of the file.
+        boundaries.add(file.getLen());
+
+        Configuration positionConfig = new Configuration(conf);
+        MongoConfigUtil.setBSONReadSplits(positionConfig, false);
+        BSONSplitter splitter = new BSONSplitter();
+        splitter.setConf(positionConfig);
+        int next = 0;
+        for (long start = 0; start < file.getLen(); start += 997) {
+            while (boundaries.get(next) < start) {
+                ++next;
+            }
+            FileSplit fileSplit = new FileSplit(
+              file.getPath(), start, 997, new String[]{});
+            assertEquals(
+              (long) boundaries.get(next),
+              splitter.getStartingPositionForSplit(fileSplit));
+        }
+    }
+
     @Test
     public void testCreateFileSplit() throws IOException {
         BSONFileSplit splitResult = SPLITTER.createFileSplit(
@@ -232,6 +265,46 @@ public class BSONSplitterTest {
         }
     }
 
+    @Test
+    public void testSplitFileInParallel() throws IOException {
+        Configuration parallelConfig = new Configuration(conf);
+        parallelConfig.set(
+          "mapreduce.input.fileinputformat.split.maxsize", "5000");
+        BSONSplitter splitter = new BSONSplitter();
+        splitter.setConf(parallelConfig);
+        // Pretend the file has small blocks, so that it has many regions.
+        FileStatus smallBlocks = new FileStatus(
+          file.getLen(), false, 1, 12345, file.getModificationTime(),
+          file.getPath());
+
+        MongoConfigUtil.setBSONSplitThreads(parallelConfig, 1);
+        List<BSONFileSplit> sequentialSplits = splitter.splitFile(smallBlocks);
+        MongoConfigUtil.setBSONSplitThreads(parallelConfig, 4);
+        List<BSONFileSplit> parallelSplits = splitter.splitFile(smallBlocks);
+        assertSplitsEqual(sequentialSplits, parallelSplits);
+
+        // The splits cover the whole file, and each one begins with a
+        // complete document.
+        long expectedStart = 0;
+        FSDataInputStream stream = fs.open(file.getPath());
+        BSONDecoder decoder = new BasicBSONDecoder();
+        BSONCallback callback = new BasicBSONCallback();
+        try {
+            for (BSONFileSplit split : parallelSplits) {
+                assertEquals(expectedStart, split.getStart());
+                assertTrue(split.getLength() > 0);
+                expectedStart += split.getLength();
+                stream.seek(split.getStart());
+                callback.reset();
+                decoder.decode(stream, callback);
+                assertTrue(((BSONObject) callback.get()).containsField("_id"));
+            }
+        } finally {
+            stream.close();
+        }
+        assertEquals(file.getLen(), expectedStart);
+    }
+
     @Test
     public void testReadSplits() throws IOException {
         SPLITTER.setInputPath(null);
@@ -0,0 +1,140 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.MongoClientURI;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MultiMongoCollectionSplitterTest {
+
+    private static final String DELAY = "test.split.delay_ms";
+
+    /**
+     * Returns one split for its collection after a delay, or fails for the
+     * collection named "missing".
+     */
+    public static class FakeSplitter extends MongoCollectionSplitter {
+        @Override
+        public List<InputSplit> calculateSplits() throws SplitFailedException {
+            MongoClientURI uri =
+              MongoConfigUtil.getInputURI(getConfiguration());
+            if ("missing".equals(uri.getCollection())) {
+                throw new SplitFailedException("No such collection: missing");
+            }
+            try {
+                Thread.sleep(getConfiguration().getInt(DELAY, 0));
+            } catch (InterruptedException e) {
+                throw new SplitFailedException("Interrupted", e);
+            }
+            List<InputSplit> splits = new ArrayList<InputSplit>();
+            splits.add(new MongoInputSplit(getConfiguration()));
+            return splits;
+        }
+    }
+
+    private static Configuration multiConf(final String... collections) {
+        BasicDBList uris = new BasicDBList();
+        for (int i = 0; i < collections.length; ++i) {
+            uris.add(new BasicDBObject(MongoConfigUtil.INPUT_URI,
+              "mongodb://localhost:27017/mongo_hadoop." + collections[i])
+              .append(MongoConfigUtil.MONGO_SPLITTER_CLASS,
+                FakeSplitter.class.getName())
+              // Earlier collections take longer.
+              .append(DELAY, 50 * (collections.length - i)));
+        }
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setDBObject(
+          conf, MultiMongoCollectionSplitter.MULTI_COLLECTION_CONF_KEY, uris);
+        MongoConfigUtil.setMultiURISplitThreads(conf, 4);
+        return conf;
+    }
+
+    @Test
+    public void testSplitsInOrderOfURIs() throws SplitFailedException {
+        List<InputSplit> splits = new MultiMongoCollectionSplitter(
+          multiConf("a", "b", "c", "d")).calculateSplits();
+        List<String> collections = new ArrayList<String>();
+        for (InputSplit split : splits) {
+            collections.add(
+              ((MongoInputSplit) split).getInputURI().getCollection());
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d"), collections);
+    }
+
+    @Test
+    public void testSplitFailedException() {
+        try {
+            new MultiMongoCollectionSplitter(
+              multiConf("a", "missing", "c")).calculateSplits();
+            fail("Expected SplitFailedException");
+        } catch (SplitFailedException e) {
+            assertEquals("No such collection: missing", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testVersionSharedAcrossThreads() throws Exception {
+        final AtomicInteger buildInfos = new AtomicInteger();
+        final List<Integer> version = Arrays.asList(3, 2, 0);
+        final CommandResult buildInfo = mock(CommandResult.class);
+        when(buildInfo.get("versionArray")).thenReturn(version);
+        DB db = mock(DB.class);
+        when(db.command("buildinfo")).thenAnswer(new Answer<CommandResult>() {
+            @Override
+            public CommandResult answer(final InvocationOnMock invocation)
+              throws InterruptedException {
+                buildInfos.incrementAndGet();
+                Thread.sleep(50);
+                return buildInfo;
+            }
+        });
+        final DBCollection coll = mock(DBCollection.class);
+        when(coll.getDB()).thenReturn(db);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List>> results = new ArrayList<Future<List>>();
+            for (int i = 0; i < 8; ++i) {
+                // Each collection is on the same cluster.
+                final MongoClientURI uri = new MongoClientURI(
+                  "mongodb://buildinfo-b:27017,buildinfo-a:27017/test.c" + i);
+                results.add(executor.submit(new Callable<List>() {
+                    @Override
+                    public List call() {
+                        return MongoSplitterFactory.getVersionArray(coll, uri);
+                    }
+                }));
+            }
+            for (Future<List> result : results) {
+                assertSame(version, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, buildInfos.get());
+    }
+}
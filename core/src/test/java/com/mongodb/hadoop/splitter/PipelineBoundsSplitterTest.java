@@ -0,0 +1,75 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelineBoundsSplitterTest {
+
+    private static MongoSplitter splitting(final List<InputSplit> splits) {
+        return new MongoSplitter() {
+            @Override
+            public List<InputSplit> calculateSplits() {
+                return splits;
+            }
+        };
+    }
+
+    private static List<InputSplit> splits(
+      final Configuration conf, final Object... bounds) {
+        List<InputSplit> splits = new ArrayList<InputSplit>();
+        for (int i = 0; i + 1 < bounds.length; ++i) {
+            MongoInputSplit split = new MongoInputSplit(conf);
+            split.setMin(new BasicDBObject("_id", bounds[i]));
+            split.setMax(new BasicDBObject("_id", bounds[i + 1]));
+            splits.add(split);
+        }
+        return splits;
+    }
+
+    private static Configuration conf() {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, "mongodb://localhost:27017/db.coll");
+        MongoConfigUtil.setPipeline(conf, "[{\"$match\": {\"x\": 1}}]");
+        return conf;
+    }
+
+    @Test
+    public void testSameTypes() throws SplitFailedException {
+        Configuration conf = conf();
+        List<InputSplit> splits = splits(conf, 0, 10, 20L, 30.5);
+        assertSame(splits,
+          new PipelineBoundsSplitter(conf, splitting(splits)).calculateSplits());
+    }
+
+    @Test
+    public void testMixedTypes() {
+        Configuration conf = conf();
+        try {
+            new PipelineBoundsSplitter(
+              conf, splitting(splits(conf, 0, 10, "a", "b"))).calculateSplits();
+            fail("Expected SplitFailedException");
+        } catch (SplitFailedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("different types"));
+        }
+    }
+
+    @Test
+    public void testWithoutPipeline() throws SplitFailedException {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, "mongodb://localhost:27017/db.coll");
+        List<InputSplit> splits = splits(conf, 0, "a");
+        assertSame(splits,
+          new PipelineBoundsSplitter(conf, splitting(splits)).calculateSplits());
+    }
+}
@@ -0,0 +1,78 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.splitter.ReadRoutingSplitter.Member;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadRoutingSplitterTest {
+
+    private static final List<DBObject> ANY_TAGS =
+      Collections.<DBObject>emptyList();
+
+    private Member member(
+      final String host, final boolean primary, final String dc,
+      final long lastWrite) {
+        return new Member(host, new BasicDBObject("ismaster", primary)
+          .append("secondary", !primary)
+          .append("tags", new BasicDBObject("dc", dc))
+          .append("lastWrite",
+            new BasicDBObject("lastWriteDate", new Date(lastWrite))));
+    }
+
+    private List<Member> members() {
+        List<Member> members = new ArrayList<Member>();
+        members.add(member("a:27017", true, "east", 100000));
+        members.add(member("b:27017", false, "east", 99000));
+        members.add(member("c:27017", false, "west", 40000));
+        return members;
+    }
+
+    @Test
+    public void testModes() {
+        assertEquals(Arrays.asList("b:27017", "c:27017"),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "secondary", ANY_TAGS, -1));
+        assertEquals(Arrays.asList("a:27017", "b:27017", "c:27017"),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "nearest", ANY_TAGS, -1));
+        assertEquals(Collections.singletonList("a:27017"),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "primaryPreferred", ANY_TAGS, -1));
+    }
+
+    @Test
+    public void testTagsAndStaleness() {
+        List<DBObject> tagSets = new ArrayList<DBObject>();
+        tagSets.add(new BasicDBObject("dc", "west"));
+        tagSets.add(new BasicDBObject("dc", "east"));
+        assertEquals(Collections.singletonList("c:27017"),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "secondaryPreferred", tagSets, -1));
+
+        // c is a minute behind, so the next tag set is used.
+        assertEquals(Collections.singletonList("b:27017"),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "secondaryPreferred", tagSets, 30));
+
+        // No secondary matches, so fall back to the primary.
+        assertEquals(Collections.singletonList("a:27017"),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "secondaryPreferred",
+            Collections.<DBObject>singletonList(
+              new BasicDBObject("dc", "north")), -1));
+        assertEquals(Collections.<String>emptyList(),
+          ReadRoutingSplitter.chooseMembers(
+            members(), "secondary",
+            Collections.<DBObject>singletonList(
+              new BasicDBObject("dc", "north")), -1));
+    }
+}
@@ -1,8 +1,12 @@
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClientURI;
+import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.testutils.BaseHadoopTest;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
@@ -14,11 +18,14 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class ShardChunkMongoSplitterTest extends BaseHadoopTest {
 
@@ -56,4 +63,178 @@ public class ShardChunkMongoSplitterTest extends BaseHadoopTest {
         assertEquals("mongo.sh01.dc1:27018", splits.get(0).getLocations()[0]);
         assertEquals("mongo.sh02.dc2:27018", splits.get(1).getLocations()[0]);
     }
+
+    private Map<String, List<String>> twoShards() {
+        Map<String, List<String>> shardsMap = new HashMap<String, List<String>>();
+        shardsMap.put("sh01", Collections.singletonList("mongo.sh01:27017"));
+        shardsMap.put("sh02", Collections.singletonList("mongo.sh02:27017"));
+        return shardsMap;
+    }
+
+    private DBObject shardStats(final long sh01Size, final long sh02Size) {
+        return new BasicDBObject("shards", new BasicDBObject(
+          "sh01", new BasicDBObject("count", 4000L).append("size", sh01Size))
+          .append("sh02", new BasicDBObject("count", 1000L)
+            .append("size", sh02Size)));
+    }
+
+    private Configuration chunkConf() {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(
+          conf, new MongoClientURI("mongodb://mongos:27017/hadoop.test"));
+        MongoConfigUtil.setSplitSize(conf, 8);
+        return conf;
+    }
+
+    @Test
+    public void testMergeAdjacentChunks() throws SplitFailedException {
+        // Four 2MB chunks on sh01, given out of order, and one on sh02 in the
+        // middle of them.
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        chunks.add(createChunk("i", 300, 400, "sh01"));
+        chunks.add(createChunk("i", new MinKey(), 100, "sh01"));
+        chunks.add(createChunk("i", 100, 200, "sh01"));
+        chunks.add(createChunk("i", 200, 300, "sh02"));
+        chunks.add(createChunk("i", 400, new MaxKey(), "sh01"));
+        splitter.setConfiguration(chunkConf());
+
+        List<InputSplit> splits = splitter.calculateSplitsFromChunks(
+          chunks, twoShards(), shardStats(8 * 1024 * 1024, 1024 * 1024));
+        assertEquals(3, splits.size());
+        MongoInputSplit first = (MongoInputSplit) splits.get(0);
+        assertEquals(new BasicDBObject("i", 200), first.getMax());
+        assertEquals(2000, first.getEstimatedCount());
+        assertEquals(4 * 1024 * 1024, first.getEstimatedSize());
+        MongoInputSplit last = (MongoInputSplit) splits.get(2);
+        assertEquals(new BasicDBObject("i", 300), last.getMin());
+
+        // Without statistics, every chunk is its own split.
+        assertEquals(5, splitter.calculateSplitsFromChunks(
+          chunks, twoShards(), null).size());
+
+        Configuration conf = chunkConf();
+        MongoConfigUtil.setShardChunkMergingEnabled(conf, false);
+        splitter.setConfiguration(conf);
+        assertEquals(5, splitter.calculateSplitsFromChunks(
+          chunks, twoShards(), shardStats(8 * 1024 * 1024, 1024 * 1024))
+          .size());
+    }
+
+    @Test
+    public void testDivideLargeChunks() throws SplitFailedException {
+        ShardChunkMongoSplitter dividing = new ShardChunkMongoSplitter() {
+            @Override
+            List<BasicDBObject> splitLargeChunk(
+              final DBObject chunk, final List<String> shardHosts) {
+                assertEquals("mongo.sh01:27017", shardHosts.get(0));
+                return Arrays.asList(
+                  new BasicDBObject("i", 10), new BasicDBObject("i", 20));
+            }
+        };
+        dividing.setConfiguration(chunkConf());
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        chunks.add(createChunk("i", new MinKey(), 100, "sh01"));
+        chunks.add(createChunk("i", 100, new MaxKey(), "sh02"));
+
+        // A 300MB chunk is divided.
+        List<InputSplit> splits = dividing.calculateSplitsFromChunks(
+          chunks, twoShards(), shardStats(300L * 1024 * 1024, 1024));
+        assertEquals(4, splits.size());
+        assertEquals(new BasicDBObject("i", 10),
+          ((MongoInputSplit) splits.get(1)).getMin());
+        assertEquals(new BasicDBObject("i", 100),
+          ((MongoInputSplit) splits.get(2)).getMax());
+        assertEquals(100L * 1024 * 1024,
+          ((MongoInputSplit) splits.get(0)).getEstimatedSize());
+
+        // A jumbo chunk is divided even without statistics.
+        chunks.get(0).put("jumbo", true);
+        assertEquals(4, dividing.calculateSplitsFromChunks(
+          chunks, twoShards(), null).size());
+    }
+
+    @Test
+    public void testPruneChunksOutsideQuery() throws SplitFailedException {
+        Configuration conf = chunkConf();
+        MongoConfigUtil.setQuery(conf, new BasicDBObject(
+          "i", new BasicDBObject("$gte", 150).append("$lt", 250)));
+        MongoConfigUtil.setShardChunkMergingEnabled(conf, false);
+        splitter.setConfiguration(conf);
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        chunks.add(createChunk("i", new MinKey(), 100, "sh01"));
+        chunks.add(createChunk("i", 100, 200, "sh01"));
+        chunks.add(createChunk("i", 200, 300, "sh02"));
+        chunks.add(createChunk("i", 300, new MaxKey(), "sh02"));
+
+        List<InputSplit> splits = splitter.calculateSplitsFromChunks(
+          chunks, twoShards(), null);
+        assertEquals(2, splits.size());
+        assertEquals(new BasicDBObject("i", 100),
+          ((MongoInputSplit) splits.get(0)).getMin());
+        assertEquals(new BasicDBObject("i", 300),
+          ((MongoInputSplit) splits.get(1)).getMax());
+    }
+
+    @Test
+    public void testChunksOfOtherCollections() throws SplitFailedException {
+        // Two chunks of hadoop.test on sh01, and many chunks of another
+        // collection with a different shard key, some of them on sh01.
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        for (int i = 0; i < 10; ++i) {
+            DBObject other = createChunk("a", i, i + 1, i % 2 == 0 ? "sh01" : "sh02");
+            other.put("ns", "hadoop.other");
+            chunks.add(other);
+        }
+        DBObject first = createChunk("i", new MinKey(), 100, "sh01");
+        first.put("ns", "hadoop.test");
+        DBObject second = createChunk("i", 100, new MaxKey(), "sh01");
+        second.put("ns", "hadoop.test");
+        chunks.add(first);
+        chunks.add(second);
+        Configuration conf = chunkConf();
+        MongoConfigUtil.setQuery(conf, new BasicDBObject("i", 150));
+        MongoConfigUtil.setShardChunkMergingEnabled(conf, false);
+        splitter.setConfiguration(conf);
+
+        // The query range is on the shard key of hadoop.test, and the
+        // documents on sh01 are divided among its two chunks only.
+        List<InputSplit> splits = splitter.calculateSplitsFromChunks(
+          chunks, twoShards(), shardStats(8 * 1024 * 1024, 1024 * 1024));
+        assertEquals(1, splits.size());
+        MongoInputSplit split = (MongoInputSplit) splits.get(0);
+        assertEquals(new BasicDBObject("i", 100), split.getMin());
+        assertEquals(2000, split.getEstimatedCount());
+        assertEquals(4 * 1024 * 1024, split.getEstimatedSize());
+    }
+
+    @Test
+    public void testFindChunks() {
+        List<DBObject> byNs = Arrays.asList(
+          createChunk("i", new MinKey(), new MaxKey(), "sh01"));
+        List<DBObject> byUuid = Arrays.asList(
+          createChunk("j", new MinKey(), new MaxKey(), "sh02"));
+        DBCursor nsCursor = mock(DBCursor.class);
+        when(nsCursor.toArray()).thenReturn(byNs);
+        DBCursor emptyCursor = mock(DBCursor.class);
+        when(emptyCursor.toArray()).thenReturn(new ArrayList<DBObject>());
+        DBCursor uuidCursor = mock(DBCursor.class);
+        when(uuidCursor.toArray()).thenReturn(byUuid);
+        DBCollection chunksCollection = mock(DBCollection.class);
+        when(chunksCollection.find(new BasicDBObject("ns", "hadoop.test")))
+          .thenReturn(nsCursor);
+        when(chunksCollection.find(new BasicDBObject("ns", "hadoop.new")))
+          .thenReturn(emptyCursor);
+        when(chunksCollection.find(new BasicDBObject("uuid", "new-uuid")))
+          .thenReturn(uuidCursor);
+
+        assertEquals(byNs, ShardChunkMongoSplitter.findChunks(
+          chunksCollection,
+          new MongoClientURI("mongodb://mongos:27017/hadoop.test"),
+          new BasicDBObject("_id", "hadoop.test")));
+        // MongoDB 5.0 and later.
+        assertEquals(byUuid, ShardChunkMongoSplitter.findChunks(
+          chunksCollection,
+          new MongoClientURI("mongodb://mongos:27017/hadoop.new"),
+          new BasicDBObject("_id", "hadoop.new").append("uuid", "new-uuid")));
+    }
 }
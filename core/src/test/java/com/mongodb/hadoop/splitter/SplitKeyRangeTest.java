@@ -0,0 +1,110 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SplitKeyRangeTest {
+
+    private static final DBObject SPLIT_KEY = new BasicDBObject("_id", 1);
+
+    @Test
+    public void testUnbounded() {
+        assertFalse(SplitKeyRange.fromQuery(null, SPLIT_KEY).isBounded());
+        assertFalse(SplitKeyRange.fromQuery(
+          new BasicDBObject("other", 5), SPLIT_KEY).isBounded());
+        assertFalse(SplitKeyRange.fromQuery(
+          new BasicDBObject("_id", Pattern.compile("^a")),
+          SPLIT_KEY).isBounded());
+        // Compound split keys are not supported.
+        assertFalse(SplitKeyRange.fromQuery(
+          new BasicDBObject("a", 5),
+          new BasicDBObject("a", 1).append("b", 1)).isBounded());
+    }
+
+    @Test
+    public void testRange() {
+        SplitKeyRange range = SplitKeyRange.fromQuery(
+          new BasicDBObject("_id",
+            new BasicDBObject("$gte", 10).append("$lt", 20)), SPLIT_KEY);
+        assertTrue(range.isBounded());
+        assertEquals(new BasicDBObject("_id", 10), range.getMin());
+        assertEquals(new BasicDBObject("_id", 20), range.getMax());
+        assertEquals(new BasicDBObject("_id", 20), range.getExclusiveMax());
+        assertEquals(
+          new BasicDBObject("_id",
+            new BasicDBObject("$gte", 10).append("$lt", 20)),
+          range.toQuery());
+    }
+
+    @Test
+    public void testEqualityAndConjunction() {
+        SplitKeyRange range = SplitKeyRange.fromQuery(
+          new BasicDBObject("_id", 15), SPLIT_KEY);
+        assertEquals(new BasicDBObject("_id", 15), range.getMin());
+        assertEquals(new BasicDBObject("_id", 15), range.getMax());
+        // An inclusive upper bound cannot be an exclusive split boundary.
+        assertNull(range.getExclusiveMax());
+
+        BasicDBList and = new BasicDBList();
+        and.add(new BasicDBObject("_id", new BasicDBObject("$gt", 5)));
+        and.add(new BasicDBObject("_id", new BasicDBObject("$gte", 10)));
+        and.add(new BasicDBObject("_id", new BasicDBObject("$lte", 30)));
+        range = SplitKeyRange.fromQuery(
+          new BasicDBObject("$and", and)
+            .append("_id", new BasicDBObject("$lt", 25)), SPLIT_KEY);
+        assertEquals(
+          new BasicDBObject("_id",
+            new BasicDBObject("$gte", 10).append("$lt", 25)),
+          range.toQuery());
+    }
+
+    @Test
+    public void testOverlaps() {
+        SplitKeyRange range = SplitKeyRange.fromQuery(
+          new BasicDBObject("_id",
+            new BasicDBObject("$gte", 10).append("$lte", 20)), SPLIT_KEY);
+        assertFalse(range.overlaps(
+          new BasicDBObject("_id", new MinKey()),
+          new BasicDBObject("_id", 10)));
+        assertTrue(range.overlaps(
+          new BasicDBObject("_id", new MinKey()),
+          new BasicDBObject("_id", 11)));
+        assertTrue(range.overlaps(
+          new BasicDBObject("_id", 20),
+          new BasicDBObject("_id", new MaxKey())));
+        assertFalse(range.overlaps(
+          new BasicDBObject("_id", 21),
+          new BasicDBObject("_id", new MaxKey())));
+
+        range = SplitKeyRange.fromQuery(
+          new BasicDBObject("_id", new BasicDBObject("$lt", 20)), SPLIT_KEY);
+        assertFalse(range.overlaps(
+          new BasicDBObject("_id", 20),
+          new BasicDBObject("_id", new MaxKey())));
+    }
+
+    @Test
+    public void testRangeStats() {
+        DBObject stats = new BasicDBObject("count", 100000L)
+          .append("size", 10000000L).append("avgObjSize", 100);
+        assertEquals(new BasicDBObject("count", 500L).append("size", 50000L),
+          MongoCollectionSplitter.getRangeStats(stats, 500));
+        assertEquals(new BasicDBObject("count", 0L).append("size", 0L),
+          MongoCollectionSplitter.getRangeStats(
+            new BasicDBObject("count", 0), 0));
+        assertNull(MongoCollectionSplitter.getRangeStats(
+          new BasicDBObject("count", 0), 10));
+        assertNull(MongoCollectionSplitter.getRangeStats(null, 10));
+    }
+}
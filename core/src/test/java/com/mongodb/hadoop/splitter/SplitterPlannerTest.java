@@ -0,0 +1,105 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.client.model.DBCollectionCountOptions;
+import com.mongodb.hadoop.input.MongoIndexCache;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SplitterPlannerTest {
+
+    private DBCollection collection;
+    private DBObject stats;
+    private Configuration conf;
+
+    @Before
+    public void setUp() {
+        collection = mock(DBCollection.class);
+        when(collection.getFullName()).thenReturn("db.planner");
+        List<DBObject> indexes = Collections.<DBObject>singletonList(
+          new BasicDBObject("name", "_id_")
+            .append("key", new BasicDBObject("_id", 1)));
+        when(collection.getIndexInfo()).thenReturn(indexes);
+        // 10 million documents of 1KB each.
+        stats = new BasicDBObject("ok", 1.0)
+          .append("count", 10000000L)
+          .append("size", 10000000000L)
+          .append("avgObjSize", 1000);
+        conf = new Configuration();
+    }
+
+    @After
+    public void tearDown() {
+        MongoIndexCache.clear();
+    }
+
+    private MongoCollectionSplitter choose() {
+        return new SplitterPlanner(conf, collection, stats, true).choose();
+    }
+
+    private void setMatches(final long matches) {
+        MongoConfigUtil.setQuery(conf, new BasicDBObject("x", 1));
+        when(collection.count(
+          any(DBObject.class), any(DBCollectionCountOptions.class)))
+          .thenReturn(matches);
+    }
+
+    @Test
+    public void testPrefersSampling() {
+        assertTrue(choose() instanceof SampleSplitter);
+        assertTrue(new SplitterPlanner(conf, collection, stats, false).choose()
+          instanceof StandaloneMongoSplitter);
+    }
+
+    @Test
+    public void testSelectiveQuery() {
+        setMatches(1000);
+        assertTrue(choose() instanceof MongoPaginatingSplitter);
+        // One split's worth of 1KB documents.
+        assertEquals(
+          8 * 1024 * 1024 / 1000, MongoConfigUtil.getInputSplitMinDocs(conf));
+
+        // Empty splits are cheap to drop, so sampling wins again.
+        MongoConfigUtil.setEnableFilterEmptySplits(conf, true);
+        assertTrue(choose() instanceof SampleSplitter);
+    }
+
+    @Test
+    public void testUnselectiveQuery() {
+        setMatches(9000000);
+        assertTrue(choose() instanceof SampleSplitter);
+    }
+
+    @Test
+    public void testSplitKeyNotIndexed() {
+        MongoConfigUtil.setInputSplitKeyPattern(conf, "{\"a\": 1}");
+        assertTrue(choose() instanceof SingleMongoSplitter);
+    }
+
+    @Test
+    public void testSharded() {
+        stats.put("sharded", true);
+        stats.put("nchunks", 200);
+        assertTrue(choose() instanceof ShardChunkMongoSplitter);
+
+        MongoConfigUtil.setShardChunkSplittingEnabled(conf, false);
+        assertTrue(choose() instanceof StandaloneMongoSplitter);
+
+        MongoConfigUtil.setReadSplitsFromShards(conf, true);
+        assertTrue(choose() instanceof ShardMongoSplitter);
+    }
+}
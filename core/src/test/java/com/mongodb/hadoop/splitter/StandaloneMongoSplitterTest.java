@@ -152,4 +152,50 @@ public class StandaloneMongoSplitterTest {
         }
         assertSplitsCount(collection.count(query), splits);
     }
+
+    @Test
+    public void testFilterEmptySplitsInParallel() throws SplitFailedException {
+        Configuration config = new Configuration();
+        DBObject query = new BasicDBObject("value", new BasicDBObject("$gt", 35000));
+        MongoConfigUtil.setInputURI(config, uri);
+        MongoConfigUtil.setEnableFilterEmptySplits(config, true);
+        MongoConfigUtil.setFilterEmptySplitsThreads(config, 4);
+        MongoConfigUtil.setQuery(config, query);
+        MongoConfigUtil.setSplitSize(config, 1);
+        List<InputSplit> splits =
+          new StandaloneMongoSplitter(config).calculateSplits();
+
+        Object lastMin = null;
+        for (InputSplit split : splits) {
+            MongoInputSplit mis = (MongoInputSplit) split;
+            assertFalse(mis.isEmpty());
+            // Splits stay in order.
+            Object min = mis.getMin().get("value");
+            if (lastMin != null) {
+                assertTrue((Integer) lastMin < (Integer) min);
+            }
+            lastMin = min;
+        }
+        assertSplitsCount(collection.count(query), splits);
+    }
+
+    @Test
+    public void testEstimatesCoverQueryRange() throws SplitFailedException {
+        Configuration config = new Configuration();
+        DBObject query = new BasicDBObject("_id", new BasicDBObject("$gte", 36000));
+        MongoConfigUtil.setInputURI(config, uri);
+        MongoConfigUtil.setQuery(config, query);
+        MongoConfigUtil.setSplitSize(config, 1);
+        List<InputSplit> splits =
+          new StandaloneMongoSplitter(config).calculateSplits();
+
+        // The 4000 matching documents are divided among the splits, rather
+        // than the whole collection.
+        long estimated = 0;
+        for (InputSplit split : splits) {
+            estimated += ((MongoInputSplit) split).getEstimatedCount();
+        }
+        assertTrue(String.valueOf(estimated), estimated <= 4000);
+        assertTrue(String.valueOf(estimated), estimated > 4000 - splits.size());
+    }
 }
@@ -23,12 +23,14 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.AbstractSerDe;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.SerDeStats;
 import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
@@ -47,10 +49,12 @@ import org.bson.types.ObjectId;
 import org.bson.types.Symbol;
 
 import java.sql.Timestamp;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -85,8 +89,14 @@ public class BSONSerDe extends AbstractSerDe {
     public Map<String, String> hiveToMongo;
     //CHECKSTYLE:ON
 
+    // how to read each column from a document, in the order of the columns
+    private ColumnAccessor[] columnAccessors;
+
+    // whether each column is read by the query, or null if all of them are
+    private boolean[] readColumns;
+
     // A row represents a row in the Hive table 
-    private List<Object> row = new ArrayList<Object>();
+    private LazyRow row;
 
     // BSONWritable to hold documents to be serialized.
     private BSONWritable bsonWritable;
@@ -128,6 +138,10 @@ public class BSONSerDe extends AbstractSerDe {
         docOI =
             TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(docTypeInfo);
 
+        compileColumns();
+        readColumns = getReadColumns(conf, columnAccessors.length);
+        row = new LazyRow();
+
         // Create the BSONWritable instance for future use.
         bsonWritable = new BSONWritable();
     }
@@ -180,56 +194,102 @@ public class BSONSerDe extends AbstractSerDe {
 
 
     /**
-     * Given a Writable object of BSON, turn it into a Hive table row
+     * Compile the accessors for the columns of the table, so that the column
+     * mapping is only resolved once rather than for every row.
+     */
+    private void compileColumns() {
+        List<String> structFieldNames = docTypeInfo.getAllStructFieldNames();
+        columnAccessors = new ColumnAccessor[structFieldNames.size()];
+        for (int i = 0; i < columnAccessors.length; i++) {
+            String fieldName = structFieldNames.get(i);
+
+            // get the corresponding field name in MongoDB
+            String mongoMapping;
+            if (hiveToMongo == null) {
+                mongoMapping = fieldName;
+            } else {
+                mongoMapping = hiveToMongo.containsKey(fieldName)
+                               ? hiveToMongo.get(fieldName)
+                               : fieldName;
+            }
+            columnAccessors[i] = new ColumnAccessor(
+              fieldName, mongoMapping.split("\\.", -1),
+              compile(docTypeInfo.getStructFieldTypeInfo(fieldName), fieldName));
+        }
+    }
+
+
+    /**
+     * Find out which columns the query reads, as pushed down by Hive through
+     * {@link ColumnProjectionUtils}.
+     * @param conf the Configuration, which may be {@code null}
+     * @param numColumns the number of columns in the table
+     * @return whether each column is read, or {@code null} if all of them are
+     */
+    private static boolean[] getReadColumns(final Configuration conf, final int numColumns) {
+        if (conf == null || conf.getBoolean(ColumnProjectionUtils.READ_ALL_COLUMNS, true)) {
+            return null;
+        }
+        boolean[] read = new boolean[numColumns];
+        for (Integer id : ColumnProjectionUtils.getReadColumnIDs(conf)) {
+            if (id >= 0 && id < numColumns) {
+                read[id] = true;
+            }
+        }
+        return read;
+    }
+
+
+    /**
+     * Given a Writable object of BSON, turn it into a Hive table row. The
+     * columns of the row are only converted when Hive asks for them, and
+     * columns that the query does not read are always {@code null}.
      */
     @Override
     //CHECKSTYLE:OFF
     public Object deserialize(final Writable writable) throws SerDeException {
         //CHECKSTYLE:ON
-        BSONObject doc;
-        row.clear();
-
         // Make sure it's a BSONWritable object
         if (writable instanceof BSONWritable) {
-            doc = ((BSONWritable) writable).getDoc();
+            row.reset(((BSONWritable) writable).getDoc());
         } else {
             throw new SerDeException(format("%srequires a BSONWritable object, not%s", getClass(), writable.getClass()));
         }
-
-        // For each field, cast it to a HIVE type and add to the current row
-        Object value;
-        List<String> structFieldNames = docTypeInfo.getAllStructFieldNames();
-        for (String fieldName : structFieldNames) {
-            try {
-                TypeInfo fieldTypeInfo = docTypeInfo.getStructFieldTypeInfo(fieldName);
-
-                // get the corresponding field name in MongoDB
-                String mongoMapping;
-                if (hiveToMongo == null) {
-                    mongoMapping = fieldName;
-                } else {
-                    mongoMapping = hiveToMongo.containsKey(fieldName)
-                                   ? hiveToMongo.get(fieldName)
-                                   : fieldName;
-                }
-                value = deserializeField(getValue(doc, mongoMapping), fieldTypeInfo, fieldName);
-            } catch (Exception e) {
-                LOG.warn("Could not find the appropriate field for name " + fieldName);
-                value = null;
-            }
-            row.add(value);
-        }
-
         return row;
     }
 
-    private Object getValue(final BSONObject doc, final String mongoMapping) {
-        if (mongoMapping.contains(".")) {
-            int index = mongoMapping.indexOf('.');
-            BSONObject object = (BSONObject) doc.get(mongoMapping.substring(0, index));
-            return getValue(object, mongoMapping.substring(index + 1));
+
+    /**
+     * Cast a field of a document to the HIVE type of a column.
+     * @param doc the document
+     * @param column the index of the column
+     * @return the Hive representation of the field
+     */
+    private Object deserializeColumn(final BSONObject doc, final int column) {
+        if (readColumns != null && !readColumns[column]) {
+            return null;
         }
-        return doc.get(mongoMapping);
+        ColumnAccessor accessor = columnAccessors[column];
+        try {
+            return accessor.converter.deserialize(accessor.getValue(doc));
+        } catch (Exception e) {
+            LOG.warn("Could not find the appropriate field for name " + accessor.name);
+            return null;
+        }
+    }
+
+
+    /**
+     * Get the Hive representation of the MongoDB field that a column is mapped
+     * to, the same value that the column has in the row returned by
+     * {@link #deserialize(Writable)}.
+     * @param doc the document
+     * @param column the index of the column
+     * @return the value of the column, which is read through the column's
+     *         {@code ObjectInspector}, or {@code null}
+     */
+    public Object getConvertedColumnValue(final BSONObject doc, final int column) {
+        return deserializeColumn(doc, column);
     }
 
 
@@ -241,95 +301,91 @@ public class BSONSerDe extends AbstractSerDe {
      * @return the Hive representation of the value
      */
     public Object deserializeField(final Object value, final TypeInfo valueTypeInfo, final String ext) {
-        if (value != null) {
-            switch (valueTypeInfo.getCategory()) {
-                case LIST:
-                    return deserializeList(value, (ListTypeInfo) valueTypeInfo, ext);
-                case MAP:
-                    return deserializeMap(value, (MapTypeInfo) valueTypeInfo, ext);
-                case PRIMITIVE:
-                    return deserializePrimitive(value, (PrimitiveTypeInfo) valueTypeInfo);
-                case STRUCT:
-                    // Supports both struct and map, but should use struct 
-                    return deserializeStruct(value, (StructTypeInfo) valueTypeInfo, ext);
-                case UNION:
-                    // Mongo also has no union
-                    LOG.warn("BSONSerDe does not support unions.");
-                    return null;
-                default:
-                    // Must be an unknown (a Mongo specific type)
-                    return deserializeMongoType(value);
-            }
-        }
-        return null;
+        return compile(valueTypeInfo, ext).deserialize(value);
     }
 
 
     /**
-     * Deserialize a List with the same listElemTypeInfo for its elements
-     * @param value the value for which to get the Hive representation
-     * @param valueTypeInfo a description of the value's type
-     * @param ext the field name
-     * @return the Hive representation of the value
+     * Compile the conversion of values of a given {@code TypeInfo} to their
+     * Hive representation.
+     * @param valueTypeInfo a description of the values' type
+     * @param ext the hive mapping(s) seen so far before the values are encountered
+     * @return the converter
      */
-    private Object deserializeList(final Object value, final ListTypeInfo valueTypeInfo, final String ext) {
-        BasicBSONList list = (BasicBSONList) value;
-        TypeInfo listElemTypeInfo = valueTypeInfo.getListElementTypeInfo();
-
-        for (int i = 0; i < list.size(); i++) {
-            list.set(i, deserializeField(list.get(i), listElemTypeInfo, ext));
+    private FieldConverter compile(final TypeInfo valueTypeInfo, final String ext) {
+        switch (valueTypeInfo.getCategory()) {
+            case LIST:
+                return new ListConverter(
+                  compile(((ListTypeInfo) valueTypeInfo).getListElementTypeInfo(), ext));
+            case MAP:
+                return new MapConverter(
+                  compile(((MapTypeInfo) valueTypeInfo).getMapValueTypeInfo(), ext));
+            case PRIMITIVE:
+                return new PrimitiveConverter(
+                  ((PrimitiveTypeInfo) valueTypeInfo).getPrimitiveCategory());
+            case STRUCT:
+                // Supports both struct and map, but should use struct
+                return compileStruct((StructTypeInfo) valueTypeInfo, ext);
+            case UNION:
+                // Mongo also has no union
+                LOG.warn("BSONSerDe does not support unions.");
+                return UNION_CONVERTER;
+            default:
+                // Must be an unknown (a Mongo specific type)
+                return MONGO_TYPE_CONVERTER;
         }
-        return list.toArray();
     }
 
 
     /**
-     * deserialize the struct stored in 'value' ext : the hive mapping(s) seen so far before 'value' is encountered.
-     * @param value the value for which to get the Hive representation
-     * @param valueTypeInfo a description of the value's type
+     * Compile the conversion of a struct, resolving the MongoDB field name of
+     * each of its fields. ext : the hive mapping(s) seen so far before the
+     * struct is encountered.
+     * @param valueTypeInfo a description of the struct's type
      * @param ext the field name
-     * @return the Hive representation of the value
+     * @return the converter
      */
-    @SuppressWarnings("unchecked")
-    private Object deserializeStruct(final Object value, final StructTypeInfo valueTypeInfo, final String ext) {
-        // ObjectId will be stored in a special struct
-        if (value instanceof ObjectId) {
-            return deserializeObjectId(value, valueTypeInfo);
-        } else {
-            Map<Object, Object> map = (Map<Object, Object>) value;
-
-            ArrayList<String> structNames = valueTypeInfo.getAllStructFieldNames();
-            ArrayList<TypeInfo> structTypes = valueTypeInfo.getAllStructFieldTypeInfos();
-
-            List<Object> struct = new ArrayList<Object>(structNames.size());
-
-            for (int i = 0; i < structNames.size(); i++) {
-                String fieldName = structNames.get(i).toLowerCase();
-
-                // hiveMapping -> prefixed by parent struct names. 
-                // For example, in {"wife":{"name":{"first":"Sydney"}}},
-                // the hiveMapping of "first" is "wife.name.first"
-                String hiveMapping = ext.length() == 0 ? fieldName : ext + "." + fieldName;
-
-                // get the corresponding field name in MongoDB
-                String mongoMapping;
-                if (hiveToMongo == null) {
-                    mongoMapping = hiveMapping;
+    private FieldConverter compileStruct(final StructTypeInfo valueTypeInfo, final String ext) {
+        ArrayList<String> structNames = valueTypeInfo.getAllStructFieldNames();
+        ArrayList<TypeInfo> structTypes = valueTypeInfo.getAllStructFieldTypeInfos();
+
+        String[] mongoFields = new String[structNames.size()];
+        FieldConverter[] converters = new FieldConverter[structNames.size()];
+        for (int i = 0; i < structNames.size(); i++) {
+            String fieldName = structNames.get(i).toLowerCase();
+
+            // hiveMapping -> prefixed by parent struct names.
+            // For example, in {"wife":{"name":{"first":"Sydney"}}},
+            // the hiveMapping of "first" is "wife.name.first"
+            String hiveMapping = ext.length() == 0 ? fieldName : ext + "." + fieldName;
+
+            // get the corresponding field name in MongoDB
+            String mongoMapping;
+            if (hiveToMongo == null) {
+                mongoMapping = hiveMapping;
+            } else {
+                if (hiveToMongo.containsKey(hiveMapping)) {
+                    mongoMapping = hiveToMongo.get(hiveMapping);
                 } else {
-                    if (hiveToMongo.containsKey(hiveMapping)) {
-                        mongoMapping = hiveToMongo.get(hiveMapping);
-                    } else {
-                        mongoMapping = ext.length() > 0 && hiveToMongo.containsKey(ext)
-                                       ? hiveToMongo.get(ext) + "." + fieldName
-                                       : hiveMapping;
-                    }
+                    mongoMapping = ext.length() > 0 && hiveToMongo.containsKey(ext)
+                                   ? hiveToMongo.get(ext) + "." + fieldName
+                                   : hiveMapping;
                 }
+            }
+
+            mongoFields[i] = extractMongoField(mongoMapping, hiveMapping, ext);
+            converters[i] = compile(structTypes.get(i), hiveMapping);
+        }
 
-                String nextFieldTrans = extractMongoField(mongoMapping, hiveMapping, ext);
-                struct.add(deserializeField(map.get(nextFieldTrans), structTypes.get(i), hiveMapping));
+        // ObjectId will be stored in a special struct
+        List<String> objectIdFields = new ArrayList<String>();
+        for (String structName : structNames) {
+            if (structName.equals(OID) || structName.equals(BSON_TYPE)) {
+                objectIdFields.add(structName);
             }
-            return struct;
         }
+        return new StructConverter(mongoFields, converters,
+          objectIdFields.toArray(new String[objectIdFields.size()]));
     }
 
 
@@ -360,71 +416,12 @@ public class BSONSerDe extends AbstractSerDe {
     }
 
 
-    /**
-     * Also deserialize a Map with the same mapElemTypeInfo
-     * @param value the value for which to get the Hive representation
-     * @param valueTypeInfo a description of the value's type
-     * @param ext the field name
-     * @return the Hive representation of the value
-     */
-    private Object deserializeMap(final Object value, final MapTypeInfo valueTypeInfo, final String ext) {
-        BasicBSONObject b = (BasicBSONObject) value;
-        TypeInfo mapValueTypeInfo = valueTypeInfo.getMapValueTypeInfo();
-
-        for (Entry<String, Object> entry : b.entrySet()) {
-            b.put(entry.getKey(), deserializeField(entry.getValue(), mapValueTypeInfo, ext));
-        }
-
-        return b.toMap();
-    }
-
-
-    /**
-     * Most primitives are included, but some are specific to Mongo instances
-     * @param value the value for which to get the Hive representation
-     * @param valueTypeInfo a description of the value's type
-     * @return the Hive representation of the value
-     */
-    private Object deserializePrimitive(final Object value, final PrimitiveTypeInfo valueTypeInfo) {
-        switch (valueTypeInfo.getPrimitiveCategory()) {
-            case BINARY:
-                return value;
-            case BOOLEAN:
-                return value;
-            case DOUBLE:
-                return ((Number) value).doubleValue();
-            case FLOAT:
-                return ((Number) value).floatValue();
-            case INT:
-                return ((Number) value).intValue();
-            case LONG:
-                return ((Number) value).longValue();
-            case SHORT:
-                return ((Number) value).shortValue();
-            case STRING:
-                return value.toString();
-            case TIMESTAMP:
-                if (value instanceof Date) {
-                    return new Timestamp(((Date) value).getTime());
-                } else if (value instanceof BSONTimestamp) {
-                    return new Timestamp(((BSONTimestamp) value).getTime() * 1000L);
-                } else if (value instanceof String) {
-                    return Timestamp.valueOf((String) value);
-                } else {
-                    return value;
-                }
-            default:
-                return deserializeMongoType(value);
-        }
-    }
-
-
     /**
      * For Mongo Specific types, return the most appropriate java types
      * @param value the value for which to get the Hive representation
      * @return the Hive representation of the value
      */
-    private Object deserializeMongoType(final Object value) {
+    private static Object deserializeMongoType(final Object value) {
         if (value instanceof Symbol) {
             return value.toString();
         } else {
@@ -435,30 +432,6 @@ public class BSONSerDe extends AbstractSerDe {
     }
 
 
-    /**
-     * Parses an ObjectId into the corresponding struct declared in Hive
-     * @param value the value for which to get the Hive representation
-     * @param valueTypeInfo a description of the value's type
-     * @return the Hive representation of the value
-     */
-    private Object deserializeObjectId(final Object value, final StructTypeInfo valueTypeInfo) {
-        ArrayList<String> structNames = valueTypeInfo.getAllStructFieldNames();
-
-        List<Object> struct = new ArrayList<Object>(structNames.size());
-        for (String structName : structNames) {
-            LOG.warn("SWEET ------ structName is " + structName);
-            if (structName.equals(OID)) {
-                struct.add(value.toString());
-            } else if (structName.equals(BSON_TYPE)) {
-                // the bson type is an int order type
-                // http://docs.mongodb.org.manual/faq/developers/
-                struct.add(BSON_NUM);
-            }
-        }
-        return struct;
-    }
-
-
     @Override
     //CHECKSTYLE:OFF
     public ObjectInspector getObjectInspector() throws SerDeException {
@@ -658,4 +631,228 @@ public class BSONSerDe extends AbstractSerDe {
                 return oi.getPrimitiveJavaObject(obj);
         }
     }
+
+
+    /**
+     * A row of the Hive table that converts each of its columns from the
+     * document the first time it is asked for. The row is reused for each
+     * document, like the rows of other SerDes.
+     */
+    private final class LazyRow extends AbstractList<Object> {
+        private final Object[] values = new Object[columnAccessors.length];
+        private final boolean[] converted = new boolean[columnAccessors.length];
+        private BSONObject doc;
+
+        void reset(final BSONObject newDoc) {
+            doc = newDoc;
+            Arrays.fill(converted, false);
+        }
+
+        @Override
+        public Object get(final int index) {
+            if (!converted[index]) {
+                values[index] = deserializeColumn(doc, index);
+                converted[index] = true;
+            }
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+
+    /**
+     * Reads one column of a row from a document.
+     */
+    private static final class ColumnAccessor {
+        private final String name;
+        // the path to the field in MongoDB, split on "."
+        private final String[] path;
+        private final FieldConverter converter;
+
+        ColumnAccessor(final String name, final String[] path, final FieldConverter converter) {
+            this.name = name;
+            this.path = path;
+            this.converter = converter;
+        }
+
+        Object getValue(final BSONObject doc) {
+            Object value = doc;
+            for (String key : path) {
+                if (!(value instanceof BSONObject)) {
+                    return null;
+                }
+                value = ((BSONObject) value).get(key);
+            }
+            return value;
+        }
+    }
+
+
+    /**
+     * Converts values of one type, resolved when the SerDe is initialized, to
+     * their Hive representation.
+     */
+    private abstract static class FieldConverter {
+        Object deserialize(final Object value) {
+            return value == null ? null : convert(value);
+        }
+
+        abstract Object convert(Object value);
+    }
+
+
+    /**
+     * Deserialize a List with the same element type for its elements
+     */
+    private static final class ListConverter extends FieldConverter {
+        private final FieldConverter elementConverter;
+
+        ListConverter(final FieldConverter elementConverter) {
+            this.elementConverter = elementConverter;
+        }
+
+        @Override
+        Object convert(final Object value) {
+            BasicBSONList list = (BasicBSONList) value;
+            Object[] array = new Object[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = elementConverter.deserialize(list.get(i));
+            }
+            return array;
+        }
+    }
+
+
+    /**
+     * Also deserialize a Map with the same value type
+     */
+    private static final class MapConverter extends FieldConverter {
+        private final FieldConverter valueConverter;
+
+        MapConverter(final FieldConverter valueConverter) {
+            this.valueConverter = valueConverter;
+        }
+
+        @Override
+        Object convert(final Object value) {
+            BasicBSONObject b = (BasicBSONObject) value;
+            Map<String, Object> map = new LinkedHashMap<String, Object>(b.size() * 2);
+            for (Entry<String, Object> entry : b.entrySet()) {
+                map.put(entry.getKey(), valueConverter.deserialize(entry.getValue()));
+            }
+            return map;
+        }
+    }
+
+
+    /**
+     * Deserialize a struct from a document, or from an ObjectId.
+     */
+    private static final class StructConverter extends FieldConverter {
+        // the MongoDB field name for each field of the struct
+        private final String[] mongoFields;
+        private final FieldConverter[] converters;
+        // the fields of the struct that are filled in from an ObjectId
+        private final String[] objectIdFields;
+
+        StructConverter(final String[] mongoFields, final FieldConverter[] converters,
+                        final String[] objectIdFields) {
+            this.mongoFields = mongoFields;
+            this.converters = converters;
+            this.objectIdFields = objectIdFields;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object convert(final Object value) {
+            if (value instanceof ObjectId) {
+                List<Object> struct = new ArrayList<Object>(objectIdFields.length);
+                for (String structName : objectIdFields) {
+                    if (structName.equals(OID)) {
+                        struct.add(value.toString());
+                    } else {
+                        // the bson type is an int order type
+                        // http://docs.mongodb.org.manual/faq/developers/
+                        struct.add(BSON_NUM);
+                    }
+                }
+                return struct;
+            }
+
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            List<Object> struct = new ArrayList<Object>(mongoFields.length);
+            for (int i = 0; i < mongoFields.length; i++) {
+                struct.add(converters[i].deserialize(map.get(mongoFields[i])));
+            }
+            return struct;
+        }
+    }
+
+
+    /**
+     * Most primitives are included, but some are specific to Mongo instances
+     */
+    private static final class PrimitiveConverter extends FieldConverter {
+        private final PrimitiveCategory category;
+
+        PrimitiveConverter(final PrimitiveCategory category) {
+            this.category = category;
+        }
+
+        @Override
+        Object convert(final Object value) {
+            switch (category) {
+                case BINARY:
+                    return value;
+                case BOOLEAN:
+                    return value;
+                case BYTE:
+                    return ((Number) value).byteValue();
+                case DOUBLE:
+                    return ((Number) value).doubleValue();
+                case FLOAT:
+                    return ((Number) value).floatValue();
+                case INT:
+                    return ((Number) value).intValue();
+                case LONG:
+                    return ((Number) value).longValue();
+                case SHORT:
+                    return ((Number) value).shortValue();
+                case STRING:
+                    return value.toString();
+                case TIMESTAMP:
+                    if (value instanceof Date) {
+                        return new Timestamp(((Date) value).getTime());
+                    } else if (value instanceof BSONTimestamp) {
+                        return new Timestamp(((BSONTimestamp) value).getTime() * 1000L);
+                    } else if (value instanceof String) {
+                        return Timestamp.valueOf((String) value);
+                    } else {
+                        return value;
+                    }
+                default:
+                    return deserializeMongoType(value);
+            }
+        }
+    }
+
+
+    private static final FieldConverter UNION_CONVERTER = new FieldConverter() {
+        @Override
+        Object convert(final Object value) {
+            return null;
+        }
+    };
+
+
+    private static final FieldConverter MONGO_TYPE_CONVERTER = new FieldConverter() {
+        @Override
+        Object convert(final Object value) {
+            return deserializeMongoType(value);
+        }
+    };
 }
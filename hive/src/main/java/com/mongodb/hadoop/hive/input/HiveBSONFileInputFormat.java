@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.mapred.BSONFileInputFormat;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+
+/**
+ * An InputFormat that reads BSON files into Hive tables, in batches of rows
+ * when Hive runs the query with vectorized execution.
+ */
+public class HiveBSONFileInputFormat extends BSONFileInputFormat
+  implements VectorizedInputFormatInterface {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public RecordReader<NullWritable, BSONWritable> getRecordReader(
+      final InputSplit split, final JobConf job, final Reporter reporter)
+      throws IOException {
+        RecordReader<NullWritable, BSONWritable> reader =
+          super.getRecordReader(split, job, reporter);
+        if (Utilities.isVectorMode(job)) {
+            return (RecordReader) new VectorizedBSONRecordReader(
+              reader, job, (FileSplit) split);
+        }
+        return reader;
+    }
+}
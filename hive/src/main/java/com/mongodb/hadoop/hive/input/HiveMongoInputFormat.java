@@ -33,16 +33,11 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.Utilities;
-import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
-import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
 import org.apache.hadoop.hive.ql.io.HiveInputFormat;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileSplit;
@@ -56,8 +51,8 @@ import org.bson.BSONObject;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -65,16 +60,8 @@ import java.util.Map;
  * Defines a HiveInputFormat for use in reading data from MongoDB into a hive table
  * 
  */
-public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWritable> {
-
-    private static final String EQUAL_OP = GenericUDFOPEqual.class.getName();
-    private static final Map<String, String> MONGO_OPS =
-      new HashMap<String, String>() {{
-          put(GenericUDFOPLessThan.class.getName(), "$lt");
-          put(GenericUDFOPEqualOrLessThan.class.getName(), "$lte");
-          put(GenericUDFOPGreaterThan.class.getName(), "$gt");
-          put(GenericUDFOPEqualOrGreaterThan.class.getName(), "$gte");
-      }};
+public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWritable>
+  implements VectorizedInputFormatInterface {
 
     private static final Log LOG = LogFactory.getLog(HiveMongoInputFormat.class);
 
@@ -90,15 +77,82 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
         // Get column name mapping.
         Map<String, String> colToMongoNames = columnMapping(conf);
 
+        MongoInputSplit delegate = (MongoInputSplit) mhis.getDelegate();
+        if (delegate.getPipeline() != null) {
+            delegate.setPipeline(
+              getPipeline(conf, colToMongoNames, delegate.getPipeline()));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Running MongoDB pipeline: " + delegate.getPipeline());
+            }
+            return createRecordReader(delegate, conf, mhis, reporter);
+        }
+
         // Add projection from Hive.
         DBObject mongoProjection = getProjection(conf, colToMongoNames);
-        MongoInputSplit delegate = (MongoInputSplit) mhis.getDelegate();
         if (mongoProjection != null) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Adding MongoDB projection : " + mongoProjection);
             }
             delegate.setFields(mongoProjection);
         }
+        DBObject filter = getQuery(conf, colToMongoNames);
+        if (filter != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Adding MongoDB query: " + filter);
+            }
+            delegate.setQuery(filter);
+        }
+        return createRecordReader(delegate, conf, mhis, reporter);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RecordReader<BSONWritable, BSONWritable> createRecordReader(
+      final MongoInputSplit delegate, final JobConf conf,
+      final MongoHiveInputSplit mhis, final Reporter reporter)
+      throws IOException {
+        MongoConfigUtil.configureClients(conf);
+        // return MongoRecordReader. Delegate is of type 'MongoInputSplit'
+        MongoRecordReader reader = new MongoRecordReader(delegate, reporter);
+        if (Utilities.isVectorMode(conf)) {
+            // Hive asks for batches of rows instead.
+            return (RecordReader) new VectorizedBSONRecordReader(reader, conf, mhis);
+        }
+        return reader;
+    }
+
+    /**
+     * Get the aggregation pipeline for a table with
+     * {@link MongoConfigUtil#INPUT_PIPELINE}. The columns of such a table are
+     * the fields of the results of the pipeline, so the filter and projection
+     * from Hive are added as stages at its end, instead of to the query of
+     * the split.
+     * @param conf the job configuration
+     * @param colToMongoNames the mapping of columns to fields
+     * @param pipeline the pipeline of the table
+     * @return the pipeline to run
+     */
+    List<DBObject> getPipeline(
+      final JobConf conf, final Map<String, String> colToMongoNames,
+      final List<DBObject> pipeline) {
+        List<DBObject> stages = new ArrayList<DBObject>(pipeline);
+        DBObject filter = getFilter(conf, colToMongoNames);
+        if (filter != null) {
+            stages.add(new BasicDBObject("$match", filter));
+        }
+        DBObject projection = getProjection(conf, colToMongoNames);
+        if (projection != null) {
+            stages.add(new BasicDBObject("$project", projection));
+        }
+        return stages;
+    }
+
+    /**
+     * Get the query for the documents that Hive reads, which combines the
+     * filter pushed down from Hive with the query of the table.
+     * @return the query, or {@code null} if there is neither
+     */
+    DBObject getQuery(
+      final JobConf conf, final Map<String, String> colToMongoNames) {
         // Filter from Hive.
         DBObject filter = getFilter(conf, colToMongoNames);
         // Combine with filter from table, if there is one.
@@ -115,15 +169,7 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
                 filter = new BasicDBObject("$and", conditions);
             }
         }
-        if (filter != null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Adding MongoDB query: " + filter);
-            }
-            delegate.setQuery(filter);
-        }
-
-        // return MongoRecordReader. Delegate is of type 'MongoInputSplit'
-        return new MongoRecordReader(delegate);
+        return filter;
     }
 
     DBObject getFilter(
@@ -132,55 +178,21 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
         if (serializedExpr != null) {
             ExprNodeGenericFuncDesc expr =
               Utilities.deserializeExpression(serializedExpr);
-            IndexPredicateAnalyzer analyzer =
-              IndexPredicateAnalyzer.createAnalyzer(false);
-
-            // Allow all column names.
-            String columnNamesStr =
-              conf.get(ColumnProjectionUtils.READ_COLUMN_NAMES_CONF_STR);
-            String[] columnNames =
-              StringUtils.split(columnNamesStr, '\\', StringUtils.COMMA);
-            for (String colName : columnNames) {
-                analyzer.allowColumnName(colName);
+            MongoPredicateTranslator translator =
+              new MongoPredicateTranslator(colToMongoNames);
+
+            // Any part that cannot be translated is still evaluated by Hive.
+            List<ExprNodeDesc> pushed = new ArrayList<ExprNodeDesc>();
+            translator.decompose(expr, pushed, new ArrayList<ExprNodeDesc>());
+            if (pushed.isEmpty()) {
+                return null;
             }
-
-            List<IndexSearchCondition> searchConditions =
-              new LinkedList<IndexSearchCondition>();
-            analyzer.analyzePredicate(expr, searchConditions);
-
-            return getFilter(searchConditions, colToMongoNames);
+            return translator.translate(
+              MongoPredicateTranslator.conjunction(pushed));
         }
         return null;
     }
 
-    DBObject getFilter(
-      final List<IndexSearchCondition> searchConditions,
-      final Map<String, String> colToMongoNames) {
-        DBObject filter = new BasicDBObject();
-        for (IndexSearchCondition isc : searchConditions) {
-            String comparisonName = isc.getComparisonOp();
-            Object constant = isc.getConstantDesc().getValue();
-            String columnName = isc.getColumnDesc().getColumn();
-            String mongoName = resolveMongoName(columnName, colToMongoNames);
-
-            if (EQUAL_OP.equals(comparisonName)) {
-                filter.put(mongoName, constant);
-            } else {
-                String mongoOp = MONGO_OPS.get(comparisonName);
-                if (mongoOp != null) {
-                    filter.put(
-                      mongoName, new BasicDBObject(mongoOp, constant));
-                } else {
-                    // Log the fact that we don't support this operator.
-                    // It's still ok to return a query; we'll just return a
-                    // super set of the documents needed by Hive.
-                    LOG.warn("unsupported operator type: " + comparisonName);
-                }
-            }
-        }
-        return filter;
-    }
-
     DBObject getProjection(
       final JobConf conf, final Map<String, String> colToMongoNames) {
         boolean readAllCols =
@@ -223,27 +235,26 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
 
     private String resolveMongoName(
       final String colName, final Map<String, String> colNameMapping) {
-        if (null == colNameMapping) {
-            return colName;
-        }
-        String mapped = colNameMapping.get(colName);
-        if (null == mapped) {
-            // Check to see if the column name is a prefix for a name in the column name mapping.
-            for (Map.Entry<String, String> entry : colNameMapping.entrySet()) {
-                if (entry.getKey().startsWith(colName + ".")) {
-                    return entry.getValue().split("\\.")[0];
-                }
-            }
-            return colName;
-        }
-        return mapped;
+        return new MongoPredicateTranslator(colNameMapping)
+          .resolveMongoName(colName);
     }
 
     @Override
     public FileSplit[] getSplits(final JobConf conf, final int numSplits)
         throws IOException {
         try {
-            MongoSplitter splitterImpl = MongoSplitterFactory.getSplitter(conf);
+            // Let the splitter skip the ranges of the split key that the
+            // filter rules out.
+            // The filter of a table with a pipeline applies to its results
+            // rather than its documents.
+            JobConf splitConf = conf;
+            DBObject query = conf.get(MongoConfigUtil.INPUT_PIPELINE) != null
+                             ? null : getQuery(conf, columnMapping(conf));
+            if (query != null) {
+                splitConf = new JobConf(conf);
+                MongoConfigUtil.setQuery(splitConf, query);
+            }
+            MongoSplitter splitterImpl = MongoSplitterFactory.getSplitter(splitConf);
             final List<org.apache.hadoop.mapreduce.InputSplit> splits =
                 splitterImpl.calculateSplits();
             InputSplit[] splitIns = splits.toArray(new InputSplit[splits.size()]);
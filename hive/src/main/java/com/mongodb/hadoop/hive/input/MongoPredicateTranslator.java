@@ -0,0 +1,407 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Translates Hive filter expressions into MongoDB queries.
+ *
+ * Comparisons between a column and a constant, {@code IN}, {@code NOT IN},
+ * {@code BETWEEN}, {@code NOT BETWEEN}, {@code IS [NOT] NULL}, {@code LIKE}
+ * patterns that only end in {@code %}, and {@code AND} and {@code OR} of
+ * those can be translated. The query matches a document only if Hive would
+ * keep the row read from it, so that Hive need not evaluate the translated
+ * expressions again; in particular, rows where the column is {@code NULL}
+ * never match a comparison, as in SQL.
+ */
+public class MongoPredicateTranslator {
+
+    private static final Map<Class<? extends GenericUDF>, String> MONGO_OPS =
+      new HashMap<Class<? extends GenericUDF>, String>();
+    private static final Map<String, String> FLIPPED_OPS =
+      new HashMap<String, String>();
+
+    static {
+        MONGO_OPS.put(GenericUDFOPLessThan.class, "$lt");
+        MONGO_OPS.put(GenericUDFOPEqualOrLessThan.class, "$lte");
+        MONGO_OPS.put(GenericUDFOPGreaterThan.class, "$gt");
+        MONGO_OPS.put(GenericUDFOPEqualOrGreaterThan.class, "$gte");
+        FLIPPED_OPS.put("$lt", "$gt");
+        FLIPPED_OPS.put("$lte", "$gte");
+        FLIPPED_OPS.put("$gt", "$lt");
+        FLIPPED_OPS.put("$gte", "$lte");
+    }
+
+    private final Map<String, String> colToMongoNames;
+
+    /**
+     * Create a new MongoPredicateTranslator.
+     * @param colToMongoNames the MongoDB field for each Hive column that is
+     *                        mapped, or {@code null} if none are
+     */
+    public MongoPredicateTranslator(final Map<String, String> colToMongoNames) {
+        this.colToMongoNames = colToMongoNames;
+    }
+
+    /**
+     * Translate an expression.
+     * @param expr the expression
+     * @return the MongoDB query, or {@code null} if the expression cannot be
+     *         translated as a whole
+     */
+    public DBObject translate(final ExprNodeDesc expr) {
+        if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+            return null;
+        }
+        ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) expr;
+        GenericUDF udf = func.getGenericUDF();
+        List<ExprNodeDesc> children = func.getChildren();
+
+        if (udf instanceof GenericUDFOPAnd) {
+            List<DBObject> queries = new ArrayList<DBObject>();
+            for (ExprNodeDesc child : children) {
+                DBObject query = translate(child);
+                if (null == query) {
+                    return null;
+                }
+                queries.add(query);
+            }
+            return and(queries);
+        } else if (udf instanceof GenericUDFOPOr) {
+            BasicDBList queries = new BasicDBList();
+            for (ExprNodeDesc child : children) {
+                DBObject query = translate(child);
+                if (null == query) {
+                    return null;
+                }
+                queries.add(query);
+            }
+            return new BasicDBObject("$or", queries);
+        } else if (udf instanceof GenericUDFOPNot) {
+            return translateNot(children.get(0));
+        } else if (udf instanceof GenericUDFOPNull
+          || udf instanceof GenericUDFOPNotNull) {
+            String field = getField(children.get(0));
+            if (null == field) {
+                return null;
+            }
+            return udf instanceof GenericUDFOPNull
+                   ? new BasicDBObject(field, null)
+                   : new BasicDBObject(field, new BasicDBObject("$ne", null));
+        } else if (udf instanceof GenericUDFIn) {
+            return translateIn(children, false);
+        } else if (udf instanceof GenericUDFBetween) {
+            return translateBetween(children);
+        } else if (udf instanceof GenericUDFBridge
+          && UDFLike.class.getName().equals(
+               ((GenericUDFBridge) udf).getUdfClassName())) {
+            return translateLike(children);
+        }
+        return translateComparison(udf, children);
+    }
+
+    /**
+     * Split a predicate into the conjuncts that can be translated and those
+     * that cannot.
+     * @param predicate the predicate
+     * @param pushed receives the conjuncts that can be translated
+     * @param residual receives the conjuncts that cannot
+     */
+    public void decompose(final ExprNodeDesc predicate,
+                          final List<ExprNodeDesc> pushed,
+                          final List<ExprNodeDesc> residual) {
+        if (predicate instanceof ExprNodeGenericFuncDesc
+          && ((ExprNodeGenericFuncDesc) predicate).getGenericUDF()
+               instanceof GenericUDFOPAnd) {
+            for (ExprNodeDesc child : predicate.getChildren()) {
+                decompose(child, pushed, residual);
+            }
+        } else if (translate(predicate) != null) {
+            pushed.add(predicate);
+        } else {
+            residual.add(predicate);
+        }
+    }
+
+    /**
+     * Combine expressions with {@code AND}.
+     * @param exprs the expressions
+     * @return the conjunction, or {@code null} if there are no expressions or
+     *         only one that is not a function, such as a boolean column
+     */
+    public static ExprNodeGenericFuncDesc conjunction(final List<ExprNodeDesc> exprs) {
+        if (exprs.size() == 1 && exprs.get(0) instanceof ExprNodeGenericFuncDesc) {
+            return (ExprNodeGenericFuncDesc) exprs.get(0);
+        } else if (exprs.size() < 2) {
+            return null;
+        }
+        ExprNodeDesc conjunction = exprs.get(0);
+        for (int i = 1; i < exprs.size(); i++) {
+            List<ExprNodeDesc> children = new ArrayList<ExprNodeDesc>(2);
+            children.add(conjunction);
+            children.add(exprs.get(i));
+            conjunction = new ExprNodeGenericFuncDesc(
+              TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(), children);
+        }
+        return (ExprNodeGenericFuncDesc) conjunction;
+    }
+
+    private DBObject translateComparison(
+      final GenericUDF udf, final List<ExprNodeDesc> children) {
+        if (children.size() != 2) {
+            return null;
+        }
+        String field = getField(children.get(0));
+        ExprNodeDesc constant = children.get(1);
+        boolean flipped = false;
+        if (null == field) {
+            field = getField(children.get(1));
+            constant = children.get(0);
+            flipped = true;
+        }
+        Object value = getValue(constant);
+        // Comparisons with NULL are left to Hive.
+        if (null == field || null == value) {
+            return null;
+        }
+
+        if (udf instanceof GenericUDFOPEqual) {
+            return new BasicDBObject(field, value);
+        } else if (udf instanceof GenericUDFOPNotEqual) {
+            // $ne alone would match documents without the field.
+            BasicDBList excluded = new BasicDBList();
+            excluded.add(value);
+            excluded.add(null);
+            return new BasicDBObject(field, new BasicDBObject("$nin", excluded));
+        }
+        String mongoOp = MONGO_OPS.get(udf.getClass());
+        if (null == mongoOp) {
+            return null;
+        }
+        if (flipped) {
+            mongoOp = FLIPPED_OPS.get(mongoOp);
+        }
+        return new BasicDBObject(field, new BasicDBObject(mongoOp, value));
+    }
+
+    private DBObject translateNot(final ExprNodeDesc child) {
+        if (!(child instanceof ExprNodeGenericFuncDesc)) {
+            return null;
+        }
+        ExprNodeGenericFuncDesc func = (ExprNodeGenericFuncDesc) child;
+        GenericUDF udf = func.getGenericUDF();
+        if (udf instanceof GenericUDFIn) {
+            return translateIn(func.getChildren(), true);
+        } else if (udf instanceof GenericUDFOPNull) {
+            return translate(new ExprNodeGenericFuncDesc(
+              TypeInfoFactory.booleanTypeInfo, new GenericUDFOPNotNull(),
+              func.getChildren()));
+        } else if (udf instanceof GenericUDFOPNotNull) {
+            return translate(new ExprNodeGenericFuncDesc(
+              TypeInfoFactory.booleanTypeInfo, new GenericUDFOPNull(),
+              func.getChildren()));
+        }
+        return null;
+    }
+
+    private DBObject translateIn(final List<ExprNodeDesc> children, final boolean negated) {
+        String field = getField(children.get(0));
+        if (null == field) {
+            return null;
+        }
+        BasicDBList values = new BasicDBList();
+        for (int i = 1; i < children.size(); i++) {
+            if (!(children.get(i) instanceof ExprNodeConstantDesc)) {
+                return null;
+            }
+            Object value = ((ExprNodeConstantDesc) children.get(i)).getValue();
+            if (null == value) {
+                if (negated) {
+                    // NOT IN a list with NULL is never true.
+                    return null;
+                }
+                // NULL in the list never matches anything.
+                continue;
+            } else if (!isSupported(value)) {
+                return null;
+            }
+            values.add(value);
+        }
+        if (negated) {
+            values.add(null);
+            return new BasicDBObject(field, new BasicDBObject("$nin", values));
+        }
+        return new BasicDBObject(field, new BasicDBObject("$in", values));
+    }
+
+    private DBObject translateBetween(final List<ExprNodeDesc> children) {
+        // BETWEEN has a constant that says whether it is negated, the column,
+        // and the bounds.
+        if (children.size() != 4) {
+            return null;
+        }
+        Object negated = getValue(children.get(0));
+        String field = getField(children.get(1));
+        Object low = getValue(children.get(2));
+        Object high = getValue(children.get(3));
+        if (!(negated instanceof Boolean) || null == field
+          || null == low || null == high) {
+            return null;
+        }
+        if ((Boolean) negated) {
+            BasicDBList outside = new BasicDBList();
+            outside.add(new BasicDBObject(field, new BasicDBObject("$lt", low)));
+            outside.add(new BasicDBObject(field, new BasicDBObject("$gt", high)));
+            return new BasicDBObject("$or", outside);
+        }
+        return new BasicDBObject(
+          field, new BasicDBObject("$gte", low).append("$lte", high));
+    }
+
+    private DBObject translateLike(final List<ExprNodeDesc> children) {
+        if (children.size() != 2) {
+            return null;
+        }
+        String field = getField(children.get(0));
+        Object pattern = getValue(children.get(1));
+        if (null == field || !(pattern instanceof String)) {
+            return null;
+        }
+        String like = (String) pattern;
+        int wildcard = like.length();
+        while (wildcard > 0 && like.charAt(wildcard - 1) == '%') {
+            wildcard--;
+        }
+        String prefix = like.substring(0, wildcard);
+        if (prefix.indexOf('%') >= 0 || prefix.indexOf('_') >= 0
+          || prefix.indexOf('\\') >= 0) {
+            return null;
+        }
+        if (wildcard == like.length()) {
+            // No wildcards at all.
+            return new BasicDBObject(field, prefix);
+        }
+        // Anchored regular expressions of literal characters can use indexes.
+        return new BasicDBObject(
+          field, Pattern.compile("^" + escapeRegex(prefix)));
+    }
+
+    private static String escapeRegex(final String literal) {
+        StringBuilder escaped = new StringBuilder(literal.length());
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static DBObject and(final List<DBObject> queries) {
+        // Use a single document when the fields do not overlap, like the
+        // queries written by hand, and $and otherwise.
+        BasicDBObject merged = new BasicDBObject();
+        for (DBObject query : queries) {
+            for (String key : query.keySet()) {
+                if (merged.containsField(key) || key.startsWith("$")) {
+                    BasicDBList conjuncts = new BasicDBList();
+                    conjuncts.addAll(queries);
+                    return new BasicDBObject("$and", conjuncts);
+                }
+                merged.put(key, query.get(key));
+            }
+        }
+        return merged;
+    }
+
+    private String getField(final ExprNodeDesc expr) {
+        if (!(expr instanceof ExprNodeColumnDesc)) {
+            return null;
+        }
+        return resolveMongoName(((ExprNodeColumnDesc) expr).getColumn());
+    }
+
+    private static Object getValue(final ExprNodeDesc expr) {
+        if (!(expr instanceof ExprNodeConstantDesc)) {
+            return null;
+        }
+        Object value = ((ExprNodeConstantDesc) expr).getValue();
+        return isSupported(value) ? value : null;
+    }
+
+    private static boolean isSupported(final Object value) {
+        // Other constants, like decimals, have no BSON equivalent that
+        // compares the same way. BSONSerDe does not read DATE columns.
+        return value instanceof String || value instanceof Number
+          || value instanceof Boolean
+          || value instanceof Date && !(value instanceof java.sql.Date);
+    }
+
+    /**
+     * Get the MongoDB field for a Hive column.
+     * @param colName the name of the column
+     * @return the name of the field
+     */
+    public String resolveMongoName(final String colName) {
+        if (null == colToMongoNames) {
+            return colName;
+        }
+        String mapped = colToMongoNames.get(colName);
+        if (null == mapped) {
+            // Check to see if the column name is a prefix for a name in the column name mapping.
+            for (Map.Entry<String, String> entry : colToMongoNames.entrySet()) {
+                if (entry.getKey().startsWith(colName + ".")) {
+                    return entry.getValue().split("\\.")[0];
+                }
+            }
+            return colName;
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.hadoop.hive.BSONSerDe;
+import com.mongodb.hadoop.io.BSONWritable;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DecimalColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampUtils;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
+import org.apache.hadoop.hive.ql.io.IOPrepareCache;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.serde2.io.DateWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.bson.BSONObject;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A RecordReader for Hive's vectorized execution engine, which fills the
+ * column vectors of a {@link VectorizedRowBatch} straight from the BSON
+ * documents read by another RecordReader.
+ *
+ * Each value is converted by {@link BSONSerDe#getConvertedColumnValue} and
+ * read through the {@code ObjectInspector} of its column, so that a query
+ * sees the same values whether or not it is vectorized. Hive does not
+ * vectorize queries that use columns of complex types, so those are never
+ * read here.
+ */
+public class VectorizedBSONRecordReader
+  implements RecordReader<NullWritable, VectorizedRowBatch> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RecordReader<Object, BSONWritable> reader;
+    private final BSONSerDe serde;
+    private final VectorizedRowBatchCtx rbCtx;
+    // the inspector of each column of the table, or null if it is not primitive
+    private final PrimitiveObjectInspector[] inspectors;
+    private final Object key;
+    private final BSONWritable value;
+    private boolean addPartitionCols = true;
+
+    /**
+     * Create a VectorizedBSONRecordReader for a split of a Hive table.
+     * @param reader the RecordReader for the documents in the split
+     * @param conf the job configuration
+     * @param split the split
+     * @throws IOException if the table cannot be found in the job
+     */
+    public <K> VectorizedBSONRecordReader(
+      final RecordReader<K, BSONWritable> reader, final JobConf conf,
+      final FileSplit split) throws IOException {
+        this(reader, createSerDe(conf, split), createContext(conf, split));
+    }
+
+    @SuppressWarnings("unchecked")
+    <K> VectorizedBSONRecordReader(
+      final RecordReader<K, BSONWritable> reader, final BSONSerDe serde,
+      final VectorizedRowBatchCtx rbCtx) {
+        this.reader = (RecordReader<Object, BSONWritable>) reader;
+        this.serde = serde;
+        this.rbCtx = rbCtx;
+        List<TypeInfo> columnTypes = serde.columnTypes;
+        inspectors = new PrimitiveObjectInspector[columnTypes.size()];
+        for (int i = 0; i < inspectors.length; i++) {
+            if (columnTypes.get(i) instanceof PrimitiveTypeInfo) {
+                // BSONSerDe inspects its rows with the standard Java inspectors.
+                inspectors[i] = (PrimitiveObjectInspector)
+                  TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(
+                    columnTypes.get(i));
+            }
+        }
+        key = this.reader.createKey();
+        value = this.reader.createValue();
+    }
+
+    private static BSONSerDe createSerDe(
+      final JobConf conf, final FileSplit split) throws IOException {
+        Map<String, PartitionDesc> pathToPartitionInfo =
+          Utilities.getMapWork(conf).getPathToPartitionInfo();
+        PartitionDesc part = HiveFileFormatUtils.getPartitionDescFromPathRecursively(
+          pathToPartitionInfo, split.getPath(),
+          IOPrepareCache.get().getPartitionDescMap());
+        Properties props = part.getPartSpec() == null || part.getPartSpec().isEmpty()
+                           ? part.getTableDesc().getProperties()
+                           : part.getProperties();
+        BSONSerDe serde = new BSONSerDe();
+        try {
+            serde.initialize(conf, props);
+        } catch (Exception e) {
+            throw new IOException("Could not initialize BSONSerDe", e);
+        }
+        return serde;
+    }
+
+    private static VectorizedRowBatchCtx createContext(
+      final JobConf conf, final FileSplit split) throws IOException {
+        VectorizedRowBatchCtx rbCtx = new VectorizedRowBatchCtx();
+        try {
+            rbCtx.init(conf, split);
+        } catch (Exception e) {
+            throw new IOException("Could not create vectorized row batch context", e);
+        }
+        return rbCtx;
+    }
+
+    @Override
+    public boolean next(final NullWritable ignored, final VectorizedRowBatch batch)
+      throws IOException {
+        // The partition columns are the same throughout the split, but Hive
+        // may not call createValue() for each reader.
+        if (addPartitionCols && rbCtx != null) {
+            try {
+                rbCtx.addPartitionColsToBatch(batch);
+            } catch (HiveException e) {
+                throw new IOException(e);
+            }
+            addPartitionCols = false;
+        }
+
+        // Only reset the columns filled here, so that partition columns keep
+        // their values.
+        for (int column = 0; column < inspectors.length; column++) {
+            if (batch.cols[column] != null) {
+                batch.cols[column].reset();
+            }
+        }
+        batch.selectedInUse = false;
+
+        int row = 0;
+        int maxSize = batch.getMaxSize();
+        while (row < maxSize && reader.next(key, value)) {
+            addRow(value.getDoc(), batch, row++);
+        }
+        batch.size = row;
+        return row > 0;
+    }
+
+    /**
+     * Fill in one row of a batch from a document.
+     * @param doc the document
+     * @param batch the batch
+     * @param row the index of the row in the batch
+     */
+    void addRow(final BSONObject doc, final VectorizedRowBatch batch, final int row) {
+        for (int column = 0; column < inspectors.length; column++) {
+            ColumnVector vector = batch.cols[column];
+            // Columns that the query does not read have no vector.
+            if (vector != null
+              && !setValue(vector, row, inspectors[column],
+                           serde.getConvertedColumnValue(doc, column))) {
+                vector.noNulls = false;
+                vector.isNull[row] = true;
+            }
+        }
+    }
+
+    /**
+     * Set one value of a column vector.
+     * @param vector the column vector
+     * @param row the index of the row in the batch
+     * @param oi the inspector of the column
+     * @param value the value of the column, as returned by
+     *              {@link BSONSerDe#getConvertedColumnValue}
+     * @return {@code false} if the value is {@code null}, or the column has a
+     *         type that cannot be vectorized
+     */
+    private static boolean setValue(
+      final ColumnVector vector, final int row,
+      final PrimitiveObjectInspector oi, final Object value) {
+        if (value == null || oi == null) {
+            return false;
+        }
+        switch (oi.getPrimitiveCategory()) {
+            case BOOLEAN:
+                ((LongColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getBoolean(value, oi) ? 1 : 0;
+                return true;
+            case BYTE:
+                ((LongColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getByte(value, oi);
+                return true;
+            case SHORT:
+                ((LongColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getShort(value, oi);
+                return true;
+            case INT:
+                ((LongColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getInt(value, oi);
+                return true;
+            case LONG:
+                ((LongColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getLong(value, oi);
+                return true;
+            case FLOAT:
+                ((DoubleColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getFloat(value, oi);
+                return true;
+            case DOUBLE:
+                ((DoubleColumnVector) vector).vector[row] =
+                  PrimitiveObjectInspectorUtils.getDouble(value, oi);
+                return true;
+            case DATE:
+                ((LongColumnVector) vector).vector[row] = DateWritable.dateToDays(
+                  PrimitiveObjectInspectorUtils.getDate(value, oi));
+                return true;
+            case TIMESTAMP:
+                ((LongColumnVector) vector).vector[row] = TimestampUtils.getTimeNanoSec(
+                  PrimitiveObjectInspectorUtils.getTimestamp(value, oi));
+                return true;
+            case DECIMAL:
+                ((DecimalColumnVector) vector).set(
+                  row, PrimitiveObjectInspectorUtils.getHiveDecimal(value, oi));
+                return true;
+            case STRING:
+                setBytes(vector, row,
+                  PrimitiveObjectInspectorUtils.getString(value, oi).getBytes(UTF8));
+                return true;
+            case VARCHAR:
+                setBytes(vector, row, PrimitiveObjectInspectorUtils
+                  .getHiveVarchar(value, oi).getValue().getBytes(UTF8));
+                return true;
+            case CHAR:
+                setBytes(vector, row, PrimitiveObjectInspectorUtils
+                  .getHiveChar(value, oi).getStrippedValue().getBytes(UTF8));
+                return true;
+            case BINARY:
+                // The bytes may belong to the document, which is reused.
+                BytesWritable binary = PrimitiveObjectInspectorUtils.getBinary(value, oi);
+                setBytes(vector, row,
+                  Arrays.copyOf(binary.getBytes(), binary.getLength()));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void setBytes(
+      final ColumnVector vector, final int row, final byte[] bytes) {
+        ((BytesColumnVector) vector).setRef(row, bytes, 0, bytes.length);
+    }
+
+    @Override
+    public NullWritable createKey() {
+        return NullWritable.get();
+    }
+
+    @Override
+    public VectorizedRowBatch createValue() {
+        try {
+            return rbCtx.createVectorizedRowBatch();
+        } catch (HiveException e) {
+            throw new RuntimeException("Could not create vectorized row batch", e);
+        }
+    }
+
+    @Override
+    public long getPos() throws IOException {
+        return reader.getPos();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        return reader.getProgress();
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.hive.output;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.mapred.BSONFileOutputFormat;
 import com.mongodb.hadoop.mapred.output.BSONFileRecordWriter;
@@ -65,6 +66,11 @@ public class HiveBSONFileOutputFormat<K, V>
 
         LOG.info("Output going into " + fileOutputPath);
 
+        if (MongoConfigUtil.isBSONOutputBlockCompressed(jc)) {
+            return new HiveBSONFileRecordWriter(
+              BSONBlockFile.createWriter(fileOutputPath, jc));
+        }
+
         FileSystem fs = fileOutputPath.getFileSystem(jc);
         FSDataOutputStream outFile = fs.create(fileOutputPath);
 
@@ -91,6 +97,10 @@ public class HiveBSONFileOutputFormat<K, V>
             super(outFile, splitFile, splitSize);
         }
 
+        public HiveBSONFileRecordWriter(final BSONBlockFile.Writer blockWriter) {
+            super(blockWriter);
+        }
+
         @Override
         public void close(final boolean toClose) throws IOException {
             super.close((TaskAttemptContext) null);
@@ -3,6 +3,7 @@ package com.mongodb.hadoop.hive;
 import com.mongodb.hadoop.io.BSONWritable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.io.TimestampWritable;
 import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
@@ -19,7 +20,9 @@ import org.junit.Test;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -380,4 +383,56 @@ public class BSONSerDeTest {
         Object serialized = serde.serialize(obj, oi);
         assertThat(new BSONWritable(bObject), equalTo(serialized));
     }
+
+
+    @Test
+    public void testDeserializeMappedColumns() throws SerDeException {
+        Properties tblProperties = new Properties();
+        tblProperties.setProperty(serdeConstants.LIST_COLUMNS, "id,name,tags");
+        tblProperties.setProperty(serdeConstants.LIST_COLUMN_TYPES,
+          "struct<oid:string,bsontype:int>,struct<first:string,last:string>,"
+            + "array<struct<k:string,v:int>>");
+        tblProperties.setProperty(BSONSerDe.MONGO_COLS,
+          "{\"id\":\"_id\",\"name.first\":\"person.given\"}");
+        BSONSerDe serde = new BSONSerDe();
+        serde.initialize(new Configuration(), tblProperties);
+
+        ObjectId id = new ObjectId();
+        BasicBSONList tags = new BasicBSONList();
+        tags.add(new BasicBSONObject("k", "a").append("v", 1));
+        BasicBSONObject doc = new BasicBSONObject("_id", id)
+          .append("person",
+            new BasicBSONObject("given", "Ada").append("last", "Lovelace"))
+          .append("tags", tags);
+
+        List<?> row = (List<?>) serde.deserialize(new BSONWritable(doc));
+        assertEquals(Arrays.<Object>asList(id.toString(), 8), row.get(0));
+        assertEquals(Arrays.<Object>asList("Ada", "Lovelace"), row.get(1));
+        Object[] converted = (Object[]) row.get(2);
+        assertEquals(Arrays.<Object>asList("a", 1), converted[0]);
+
+        // A missing parent gives a null column.
+        row = (List<?>) serde.deserialize(new BSONWritable(new BasicBSONObject()));
+        assertEquals(Arrays.asList(null, null, null), row);
+    }
+
+
+    @Test
+    public void testDeserializeReadColumns() throws SerDeException {
+        Properties tblProperties = new Properties();
+        tblProperties.setProperty(serdeConstants.LIST_COLUMNS, "a,b,c");
+        tblProperties.setProperty(serdeConstants.LIST_COLUMN_TYPES, "int,string,int");
+        Configuration conf = new Configuration();
+        conf.setBoolean(ColumnProjectionUtils.READ_ALL_COLUMNS, false);
+        conf.set(ColumnProjectionUtils.READ_COLUMN_IDS_CONF_STR, "1,2");
+        BSONSerDe serde = new BSONSerDe();
+        serde.initialize(conf, tblProperties);
+
+        BasicBSONObject doc = new BasicBSONObject("a", 1).append("b", 2).append("c", 3);
+        List<?> row = (List<?>) serde.deserialize(new BSONWritable(doc));
+        assertEquals(Arrays.<Object>asList(null, "2", 3), row);
+
+        row = (List<?>) serde.deserialize(new BSONWritable(new BasicBSONObject("c", 4)));
+        assertEquals(Arrays.<Object>asList(null, null, 4), row);
+    }
 }
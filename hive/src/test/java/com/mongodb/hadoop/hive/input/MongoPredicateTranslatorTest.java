@@ -0,0 +1,167 @@
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFUpper;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MongoPredicateTranslatorTest {
+
+    private final MongoPredicateTranslator translator =
+      new MongoPredicateTranslator(
+        Collections.singletonMap("i", "mongo_i"));
+
+    private static ExprNodeDesc column(final String name) {
+        return new ExprNodeColumnDesc(
+          TypeInfoFactory.intTypeInfo, name, "test_tab", false);
+    }
+
+    private static ExprNodeDesc constant(final Object value) {
+        if (null == value) {
+            return new ExprNodeConstantDesc(TypeInfoFactory.intTypeInfo, null);
+        }
+        return new ExprNodeConstantDesc(value);
+    }
+
+    private static ExprNodeGenericFuncDesc func(
+      final GenericUDF udf, final ExprNodeDesc... children) {
+        return new ExprNodeGenericFuncDesc(
+          TypeInfoFactory.booleanTypeInfo, udf, Arrays.asList(children));
+    }
+
+    private static BasicDBList list(final Object... values) {
+        BasicDBList list = new BasicDBList();
+        list.addAll(Arrays.asList(values));
+        return list;
+    }
+
+    @Test
+    public void testEquals() {
+        // i = 20
+        assertEquals(new BasicDBObject("mongo_i", 20),
+          translator.translate(
+            func(new GenericUDFOPEqual(), column("i"), constant(20))));
+    }
+
+    @Test
+    public void testCompare() {
+        // i >= 20
+        assertEquals(
+          new BasicDBObject("mongo_i", new BasicDBObject("$gte", 20)),
+          translator.translate(func(new GenericUDFOPEqualOrGreaterThan(),
+            column("i"), constant(20))));
+    }
+
+    @Test
+    public void testAnd() {
+        // i < 50 AND j > 20
+        assertEquals(
+          new BasicDBObject("mongo_i", new BasicDBObject("$lt", 50))
+            .append("j", new BasicDBObject("$gt", 20)),
+          translator.translate(func(new GenericUDFOPAnd(),
+            func(new GenericUDFOPLessThan(), column("i"), constant(50)),
+            func(new GenericUDFOPGreaterThan(), column("j"), constant(20)))));
+    }
+
+    @Test
+    public void testIn() {
+        // i IN (1, 2, NULL)
+        assertEquals(
+          new BasicDBObject("mongo_i", new BasicDBObject("$in", list(1, 2))),
+          translator.translate(func(new GenericUDFIn(),
+            column("i"), constant(1), constant(2), constant(null))));
+
+        // j NOT IN (1, 2)
+        assertEquals(
+          new BasicDBObject("j", new BasicDBObject("$nin", list(1, 2, null))),
+          translator.translate(func(new GenericUDFOPNot(),
+            func(new GenericUDFIn(), column("j"), constant(1), constant(2)))));
+    }
+
+    @Test
+    public void testBetweenAndNull() {
+        // i BETWEEN 1 AND 5 AND j IS NOT NULL
+        assertEquals(
+          new BasicDBObject("mongo_i",
+            new BasicDBObject("$gte", 1).append("$lte", 5))
+            .append("j", new BasicDBObject("$ne", null)),
+          translator.translate(func(new GenericUDFOPAnd(),
+            func(new GenericUDFBetween(),
+              constant(false), column("i"), constant(1), constant(5)),
+            func(new GenericUDFOPNotNull(), column("j")))));
+    }
+
+    @Test
+    public void testOr() {
+        // 10 > i OR j = 3
+        assertEquals(
+          new BasicDBObject("$or", list(
+            new BasicDBObject("mongo_i", new BasicDBObject("$gt", 10)),
+            new BasicDBObject("j", 3))),
+          translator.translate(func(new GenericUDFOPOr(),
+            func(new GenericUDFOPLessThan(), constant(10), column("i")),
+            func(new GenericUDFOPEqual(), column("j"), constant(3)))));
+    }
+
+    @Test
+    public void testLike() {
+        GenericUDFBridge like =
+          new GenericUDFBridge("like", true, UDFLike.class.getName());
+        DBObject query = translator.translate(
+          func(like, column("s"), constant("a.b%")));
+        assertEquals("^a\\.b", ((Pattern) query.get("s")).pattern());
+
+        assertEquals(new BasicDBObject("s", "abc"),
+          translator.translate(func(like, column("s"), constant("abc"))));
+        assertNull(translator.translate(func(like, column("s"), constant("a%c"))));
+        assertNull(translator.translate(func(like, column("s"), constant("a_%"))));
+    }
+
+    @Test
+    public void testDecompose() {
+        // i = 1 AND upper(s) = 'A'
+        ExprNodeGenericFuncDesc pushable =
+          func(new GenericUDFOPEqual(), column("i"), constant(1));
+        ExprNodeGenericFuncDesc residual = func(new GenericUDFOPEqual(),
+          new ExprNodeGenericFuncDesc(TypeInfoFactory.stringTypeInfo,
+            new GenericUDFUpper(), Arrays.asList(column("s"))),
+          constant("A"));
+        List<ExprNodeDesc> pushed = new ArrayList<ExprNodeDesc>();
+        List<ExprNodeDesc> kept = new ArrayList<ExprNodeDesc>();
+        translator.decompose(
+          func(new GenericUDFOPAnd(), pushable, residual), pushed, kept);
+
+        assertEquals(Arrays.<ExprNodeDesc>asList(pushable), pushed);
+        assertSame(residual, MongoPredicateTranslator.conjunction(kept));
+        assertNull(translator.translate(residual));
+    }
+}
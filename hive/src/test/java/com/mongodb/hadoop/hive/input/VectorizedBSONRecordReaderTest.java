@@ -0,0 +1,223 @@
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.hadoop.hive.BSONSerDe;
+import com.mongodb.hadoop.io.BSONWritable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.TimestampUtils;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.RecordReader;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VectorizedBSONRecordReaderTest {
+
+    private static RecordReader<NullWritable, BSONWritable> documents(
+      final List<BSONObject> docs) {
+        final Iterator<BSONObject> it = docs.iterator();
+        return new RecordReader<NullWritable, BSONWritable>() {
+            @Override
+            public boolean next(final NullWritable key, final BSONWritable value) {
+                if (!it.hasNext()) {
+                    return false;
+                }
+                value.setDoc(it.next());
+                return true;
+            }
+
+            @Override
+            public NullWritable createKey() {
+                return NullWritable.get();
+            }
+
+            @Override
+            public BSONWritable createValue() {
+                return new BSONWritable();
+            }
+
+            @Override
+            public long getPos() {
+                return 0;
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public float getProgress() {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testFillBatch() throws Exception {
+        Properties tblProperties = new Properties();
+        tblProperties.setProperty(serdeConstants.LIST_COLUMNS, "i,d,s,ts,skipped");
+        tblProperties.setProperty(serdeConstants.LIST_COLUMN_TYPES,
+          "bigint,double,string,timestamp,string");
+        tblProperties.setProperty(BSONSerDe.MONGO_COLS, "{\"d\":\"sub.d\"}");
+        BSONSerDe serde = new BSONSerDe();
+        serde.initialize(new Configuration(), tblProperties);
+
+        Date date = new Date(1234567L);
+        List<BSONObject> docs = Arrays.<BSONObject>asList(
+          new BasicBSONObject("i", 1).append("sub", new BasicBSONObject("d", 1.5))
+            .append("s", "one").append("ts", date),
+          new BasicBSONObject("i", "not a number").append("s", 2),
+          new BasicBSONObject("i", 3L));
+        VectorizedBSONRecordReader reader =
+          new VectorizedBSONRecordReader(documents(docs), serde, null);
+
+        VectorizedRowBatch batch = new VectorizedRowBatch(5, 2);
+        LongColumnVector longs = new LongColumnVector(2);
+        DoubleColumnVector doubles = new DoubleColumnVector(2);
+        BytesColumnVector strings = new BytesColumnVector(2);
+        LongColumnVector timestamps = new LongColumnVector(2);
+        batch.cols[0] = longs;
+        batch.cols[1] = doubles;
+        batch.cols[2] = strings;
+        batch.cols[3] = timestamps;
+        // Column 4 is not read by the query.
+
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(2, batch.size);
+        assertEquals(1, longs.vector[0]);
+        assertTrue(longs.isNull[1]);
+        assertEquals(1.5, doubles.vector[0], 0);
+        assertTrue(doubles.isNull[1]);
+        assertEquals("one", new String(
+          strings.vector[0], strings.start[0], strings.length[0], "UTF-8"));
+        assertEquals("2", new String(
+          strings.vector[1], strings.start[1], strings.length[1], "UTF-8"));
+        assertEquals(1234567000000L, timestamps.vector[0]);
+        assertTrue(timestamps.isNull[1]);
+
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(1, batch.size);
+        assertEquals(3, longs.vector[0]);
+        assertFalse(longs.isNull[0]);
+        assertTrue(doubles.isNull[0]);
+
+        assertFalse(reader.next(NullWritable.get(), batch));
+    }
+
+    @Test
+    public void testSameValuesAsRows() throws Exception {
+        Properties tblProperties = new Properties();
+        tblProperties.setProperty(serdeConstants.LIST_COLUMNS,
+          "b,sh,i,l,f,d,bool,s,id,sym,bin,ts,bts,missing");
+        tblProperties.setProperty(serdeConstants.LIST_COLUMN_TYPES,
+          "tinyint,smallint,int,bigint,float,double,boolean,string,string,"
+            + "string,binary,timestamp,timestamp,int");
+        BSONSerDe serde = new BSONSerDe();
+        serde.initialize(new Configuration(), tblProperties);
+
+        BSONObject doc = new BasicBSONObject("b", 7)
+          .append("sh", 300L)
+          .append("i", 2.5)
+          .append("l", 1L << 40)
+          .append("f", 1.25)
+          .append("d", 3)
+          .append("bool", true)
+          .append("s", 42)
+          .append("id", new ObjectId("5321aa5a1ca3c4b6ab0ca95e"))
+          .append("sym", new Symbol("symbol"))
+          .append("bin", new byte[]{1, 2, 3})
+          .append("ts", new Date(1234567L))
+          .append("bts", new BSONTimestamp(1234, 1));
+
+        VectorizedBSONRecordReader reader = new VectorizedBSONRecordReader(
+          documents(Arrays.asList(doc)), serde, null);
+        VectorizedRowBatch batch = new VectorizedRowBatch(14, 1);
+        for (int i = 0; i < 14; ++i) {
+            if (i == 4 || i == 5) {
+                batch.cols[i] = new DoubleColumnVector(1);
+            } else if (i >= 7 && i <= 10) {
+                batch.cols[i] = new BytesColumnVector(1);
+            } else {
+                batch.cols[i] = new LongColumnVector(1);
+            }
+        }
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(1, batch.size);
+
+        Object row = serde.deserialize(new BSONWritable(doc));
+        StructObjectInspector rowOI =
+          (StructObjectInspector) serde.getObjectInspector();
+        List<? extends StructField> fields = rowOI.getAllStructFieldRefs();
+        for (int i = 0; i < fields.size(); ++i) {
+            StructField field = fields.get(i);
+            Object expected = ((PrimitiveObjectInspector) field
+              .getFieldObjectInspector()).getPrimitiveJavaObject(
+                rowOI.getStructFieldData(row, field));
+            assertEquals(field.getFieldName(), expected,
+              vectorValue(batch.cols[i], expected));
+        }
+    }
+
+    /**
+     * Get the first value of a column vector, in the representation that a
+     * row has for the same value.
+     */
+    private static Object vectorValue(
+      final ColumnVector vector, final Object rowValue) throws Exception {
+        if (vector.isNull[0]) {
+            return null;
+        }
+        if (vector instanceof DoubleColumnVector) {
+            double value = ((DoubleColumnVector) vector).vector[0];
+            return rowValue instanceof Float ? (Object) (float) value : value;
+        }
+        if (vector instanceof BytesColumnVector) {
+            BytesColumnVector bytes = (BytesColumnVector) vector;
+            byte[] value = Arrays.copyOfRange(
+              bytes.vector[0], bytes.start[0], bytes.start[0] + bytes.length[0]);
+            if (rowValue instanceof byte[]) {
+                assertArrayEquals((byte[]) rowValue, value);
+                return rowValue;
+            }
+            return new String(value, "UTF-8");
+        }
+        long value = ((LongColumnVector) vector).vector[0];
+        if (rowValue instanceof Byte) {
+            return (byte) value;
+        } else if (rowValue instanceof Short) {
+            return (short) value;
+        } else if (rowValue instanceof Integer) {
+            return (int) value;
+        } else if (rowValue instanceof Boolean) {
+            return value == 1;
+        } else if (rowValue instanceof Timestamp) {
+            Timestamp timestamp = new Timestamp(0);
+            TimestampUtils.assignTimeInNanoSec(value, timestamp);
+            return timestamp;
+        }
+        return value;
+    }
+}